@@ -0,0 +1,73 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.HashingUrlsApplication;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <pre>
+ * Shared fixtures of the benchmarks:
+ *
+ * - the URL corpus, which covers plain, IDN, percent-escaped and IP-literal
+ *   hosts as well as long query strings
+ * - an application context without a web server, so that every stage is
+ *   measured as it is wired in the service
+ * </pre>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BenchmarkCorpus {
+
+    private static final String CORPUS = "/benchmark-corpus.txt";
+
+    /**
+     * Reads the URLs of the corpus, skipping blank lines and comments.
+     *
+     * @return URL {@code String}s of the corpus, in file order
+     */
+    static List<String> urls() {
+        try (InputStream inputStream = BenchmarkCorpus.class.getResourceAsStream(CORPUS);
+                BufferedReader reader =
+                        new BufferedReader(
+                                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            List<String> urls = new ArrayList<>();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    urls.add(line);
+                }
+            }
+            return Collections.unmodifiableList(urls);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + CORPUS, e);
+        }
+    }
+
+    /**
+     * Starts the application without a web server.
+     *
+     * @param properties additional {@code key=value} properties
+     * @return the running application context
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(HashingUrlsApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("spring.main.banner-mode=off", "logging.level.root=warn")
+                .properties(properties)
+                .run();
+    }
+}
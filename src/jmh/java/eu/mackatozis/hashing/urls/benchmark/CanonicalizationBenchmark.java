@@ -0,0 +1,63 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link CanonicalizationService#canonicalizeUrl(String)} over
+ * the URLs of the corpus, for each canonicalization engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalizationBenchmark {
+
+    @Param({"regex", "single-pass"})
+    private String engine;
+
+    private ConfigurableApplicationContext context;
+
+    private CanonicalizationService canonicalizationService;
+
+    private List<String> urls;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        context = BenchmarkCorpus.start("hashing-urls.canonicalization.engine=" + engine);
+        canonicalizationService = context.getBean(CanonicalizationService.class);
+        urls = BenchmarkCorpus.urls();
+
+        for (String url : urls) {
+            canonicalizationService.canonicalizeUrl(url);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String canonicalizeUrl(Cursor cursor) throws MalformedURLException {
+        return canonicalizationService.canonicalizeUrl(urls.get(cursor.next(urls.size())));
+    }
+}
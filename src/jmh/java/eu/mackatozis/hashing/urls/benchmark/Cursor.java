@@ -0,0 +1,27 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread position in a list of inputs, so that each invocation of a
+ * benchmark processes the next input and the whole list is cycled through.
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+    private int index;
+
+    /**
+     * Advances to the next index of a list, wrapping around at its end.
+     *
+     * @param size size of the list
+     * @return the next index
+     */
+    public int next(int size) {
+        if (++index >= size) {
+            index = 0;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,86 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.ExpressionExtractionService;
+import eu.mackatozis.hashing.urls.service.ExpressionVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ExpressionExtractionService#extractExpressions(String)}
+ * over the canonical URLs of the corpus, and of
+ * {@link ExpressionExtractionService#forEachExpression(ParsedUrl, ExpressionVisitor)}
+ * over the same URLs, parsed ahead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionExtractionBenchmark {
+
+    private ConfigurableApplicationContext context;
+
+    private ExpressionExtractionService expressionExtractionService;
+
+    private List<String> canonicalUrls;
+
+    private List<ParsedUrl> parsedUrls;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        context = BenchmarkCorpus.start();
+        expressionExtractionService = context.getBean(ExpressionExtractionService.class);
+        canonicalUrls = new ArrayList<>();
+
+        CanonicalizationService canonicalizationService =
+                context.getBean(CanonicalizationService.class);
+        for (String url : BenchmarkCorpus.urls()) {
+            canonicalUrls.add(canonicalizationService.canonicalizeUrl(url));
+        }
+
+        parsedUrls = new ArrayList<>();
+        for (String canonicalUrl : canonicalUrls) {
+            ParsedUrl parsedUrl = new ParsedUrl();
+            parsedUrl.parse(canonicalUrl);
+            parsedUrls.add(parsedUrl);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Set<String> extractExpressions(Cursor cursor) {
+        return expressionExtractionService.extractExpressions(
+                canonicalUrls.get(cursor.next(canonicalUrls.size())));
+    }
+
+    @Benchmark
+    public void forEachExpression(Cursor cursor, Blackhole blackhole) {
+        expressionExtractionService.forEachExpression(
+                parsedUrls.get(cursor.next(parsedUrls.size())),
+                (expression, hostLength, length) -> blackhole.consume(length));
+    }
+}
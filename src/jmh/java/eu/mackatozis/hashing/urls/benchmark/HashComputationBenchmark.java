@@ -0,0 +1,167 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.HashPrefix;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.ExpressionExtractionService;
+import eu.mackatozis.hashing.urls.service.ExpressionVisitor;
+import eu.mackatozis.hashing.urls.service.HashComputationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the SHA256 digest and hash prefix computation of
+ * {@link HashComputationService} over the expressions of the corpus, with and
+ * without the expression digest cache, for each SHA256 backend.
+ * {@code computeSha256HashOfExpressions} hashes all the expressions of a URL
+ * one by one, in the order they are extracted in, so that the leading bytes
+ * they share are hashed incrementally, while
+ * {@code computeSha256HashesOfExpressions} hashes them as a single batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashComputationBenchmark {
+
+    @Param({"false", "true"})
+    private boolean digestCache;
+
+    @Param({"jdk", "commons-codec", "multi-buffer"})
+    private String backend;
+
+    private ConfigurableApplicationContext context;
+
+    private HashComputationService hashComputationService;
+
+    private List<String> expressions;
+
+    private List<byte[]> digests;
+
+    private ExpressionExtractionService expressionExtractionService;
+
+    private List<ParsedUrl> parsedUrls;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+        context =
+                BenchmarkCorpus.start(
+                        "hashing-urls.digest-cache.enabled=" + digestCache,
+                        "hashing-urls.hashing.backend=" + backend);
+        hashComputationService = context.getBean(HashComputationService.class);
+        expressions = new ArrayList<>();
+        digests = new ArrayList<>();
+
+        CanonicalizationService canonicalizationService =
+                context.getBean(CanonicalizationService.class);
+        expressionExtractionService = context.getBean(ExpressionExtractionService.class);
+        parsedUrls = new ArrayList<>();
+        for (String url : BenchmarkCorpus.urls()) {
+            String canonicalUrl = canonicalizationService.canonicalizeUrl(url);
+            expressions.addAll(expressionExtractionService.extractExpressions(canonicalUrl));
+
+            ParsedUrl parsedUrl = new ParsedUrl();
+            parsedUrl.parse(canonicalUrl);
+            parsedUrls.add(parsedUrl);
+        }
+
+        for (String expression : expressions) {
+            byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+            hashComputationService.computeSha256Hash(expression, digest);
+            digests.add(digest);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] computeSha256Hash(Cursor cursor) {
+        byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+        hashComputationService.computeSha256Hash(
+                expressions.get(cursor.next(expressions.size())), digest);
+        return digest;
+    }
+
+    @Benchmark
+    public byte[] computeSha256HashOfExpressions(Cursor cursor) {
+        byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+        expressionExtractionService.forEachExpression(
+                parsedUrls.get(cursor.next(parsedUrls.size())),
+                (expression, hostLength, length) ->
+                        hashComputationService.computeSha256Hash(expression, 0, length, digest));
+        return digest;
+    }
+
+    @Benchmark
+    public byte[][] computeSha256HashesOfExpressions(Cursor cursor, Batch batch) {
+        batch.count = 0;
+        batch.size = 0;
+        expressionExtractionService.forEachExpression(
+                parsedUrls.get(cursor.next(parsedUrls.size())), batch);
+
+        byte[][] digests = new byte[batch.count][HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+        hashComputationService.computeSha256Hashes(
+                batch.data, batch.offsets, batch.lengths, batch.count, digests);
+        return digests;
+    }
+
+    @Benchmark
+    public String computeSha256HashHex(Cursor cursor) {
+        return hashComputationService.computeSha256Hash(
+                expressions.get(cursor.next(expressions.size())));
+    }
+
+    @Benchmark
+    public HashPrefix computeSha256HashPrefix(Cursor cursor) {
+        return hashComputationService.computeSha256HashPrefix(
+                digests.get(cursor.next(digests.size())),
+                HashPrefixLength.MIN_HASH_PREFIX_LENGTH);
+    }
+
+    /**
+     * Expressions of a URL packed one after the other, reused per thread.
+     */
+    @State(Scope.Thread)
+    public static class Batch implements ExpressionVisitor {
+
+        private final byte[] data = new byte[64 * 1024];
+
+        private final int[] offsets = new int[64];
+
+        private final int[] lengths = new int[64];
+
+        private int count;
+
+        private int size;
+
+        @Override
+        public void visit(byte[] expression, int hostLength, int length) {
+            System.arraycopy(expression, 0, data, size, length);
+            offsets[count] = size;
+            lengths[count++] = length;
+            size += length;
+        }
+    }
+}
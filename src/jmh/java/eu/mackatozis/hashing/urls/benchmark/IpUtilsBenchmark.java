@@ -0,0 +1,70 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.util.IpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Throughput of {@link IpUtils#resolveDecimalIpAddress(String)} for each
+ * notation of an IPv4 address:
+ *
+ * - dotted decimal
+ * - dotted octal
+ * - dotted hexadecimal
+ * - a single unsigned integer
+ * - a host name, which is not an IP address at all and is the common case
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpUtilsBenchmark {
+
+    @Param({"decimal", "octal", "hex", "integer", "host"})
+    private String notation;
+
+    private String[] hosts;
+
+    @Setup
+    public void setUp() {
+        switch (notation) {
+            case "decimal":
+                hosts = new String[] {"192.168.0.1", "1.2.3.4", "255.255.255.255", "10.0.0.1"};
+                break;
+            case "octal":
+                hosts = new String[] {"0300.0250.0000.0001", "012.034.01.055", "0177.0.0.01"};
+                break;
+            case "hex":
+                hosts = new String[] {"0xC0.0xA8.0x00.0x01", "0x12.0x43.0x44.0x01", "0x7f.0.0.0x1"};
+                break;
+            case "integer":
+                hosts = new String[] {"3279880203", "3232235521", "16909060", "4294967295"};
+                break;
+            default:
+                hosts =
+                        new String[] {
+                            "www.example.com", "xn--bcher-kva.example", "a.b.c.d.e.f.g.example.com"
+                        };
+        }
+    }
+
+    @Benchmark
+    public String resolveDecimalIpAddress(Cursor cursor) {
+        return IpUtils.resolveDecimalIpAddress(hosts[cursor.next(hosts.length)]);
+    }
+}
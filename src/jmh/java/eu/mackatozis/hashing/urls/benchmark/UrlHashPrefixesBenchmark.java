@@ -0,0 +1,85 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * End-to-end throughput of {@link UrlHashPrefixesService}, from a raw URL to
+ * its expression hashes:
+ *
+ * - one URL at a time, as served by {@code GET /hash-prefixes}
+ * - the whole corpus as one batch, as served by {@code POST /hash-prefixes/batch}
+ *
+ * The result caches are left disabled, so that every URL goes through the
+ * whole pipeline. The pipeline metrics are run both enabled, at their
+ * default sample rate, and disabled, to measure their overhead. The host
+ * cache is run both enabled and disabled, too.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlHashPrefixesBenchmark {
+
+    @Param({"regex", "single-pass"})
+    private String engine;
+
+    @Param({"true", "false"})
+    private boolean metrics;
+
+    @Param({"false", "true"})
+    private boolean hostCache;
+
+    private ConfigurableApplicationContext context;
+
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    private List<String> urls;
+
+    @Setup
+    public void setUp() {
+        context =
+                BenchmarkCorpus.start(
+                        "hashing-urls.canonicalization.engine=" + engine,
+                        "hashing-urls.metrics.enabled=" + metrics,
+                        "hashing-urls.host-cache.enabled=" + hostCache);
+        urlHashPrefixesService = context.getBean(UrlHashPrefixesService.class);
+        urls = BenchmarkCorpus.urls();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UrlHashPrefixes findUrlHashPrefixes(Cursor cursor) throws MalformedURLException {
+        return urlHashPrefixesService.findUrlHashPrefixes(urls.get(cursor.next(urls.size())));
+    }
+
+    @Benchmark
+    public List<UrlHashPrefixes> findUrlHashPrefixesBatch() {
+        return urlHashPrefixesService.findUrlHashPrefixes(urls);
+    }
+}
@@ -0,0 +1,97 @@
+package eu.mackatozis.hashing.urls.benchmark;
+
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Throughput of many small concurrent requests on platform threads against
+ * virtual threads, as switched by {@code hashing-urls.virtual-threads.enabled}:
+ *
+ * - a single URL handed to a request executor, which is either a pool of
+ *   200 platform threads, the size of the default Tomcat pool, or a new
+ *   virtual thread per request
+ * - a small batch, fanned out on the executor of the batch API
+ *
+ * The virtual thread runs need Java 21 or later, e.g.
+ * {@code java -jar target/benchmarks.jar VirtualThreads} on a Java 21 runtime.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+public class VirtualThreadsBenchmark {
+
+    private static final int PLATFORM_REQUEST_THREADS = 200;
+
+    private static final int SMALL_BATCH_SIZE = 16;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    private ExecutorService requestExecutor;
+
+    private List<String> urls;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkCorpus.start("hashing-urls.virtual-threads.enabled=" + virtualThreads);
+        urlHashPrefixesService = context.getBean(UrlHashPrefixesService.class);
+        requestExecutor =
+                virtualThreads
+                        ? VirtualThreads.newVirtualThreadPerTaskExecutor()
+                        : Executors.newFixedThreadPool(PLATFORM_REQUEST_THREADS);
+        urls = BenchmarkCorpus.urls();
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdown();
+        context.close();
+    }
+
+    @Benchmark
+    public UrlHashPrefixes findUrlHashPrefixesRequest(Cursor cursor)
+            throws ExecutionException, InterruptedException {
+        String url = urls.get(cursor.next(urls.size()));
+
+        return requestExecutor.submit(() -> urlHashPrefixesService.findUrlHashPrefixes(url)).get();
+    }
+
+    @Benchmark
+    public List<UrlHashPrefixes> findUrlHashPrefixesSmallBatch(Cursor cursor) {
+        int from = cursor.next(urls.size() - SMALL_BATCH_SIZE);
+
+        return urlHashPrefixesService.findUrlHashPrefixes(
+                urls.subList(from, from + SMALL_BATCH_SIZE));
+    }
+}
@@ -0,0 +1,34 @@
+package eu.mackatozis.hashing.urls.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Provides the executor that runs the batch API of {@code UrlHashPrefixesService}.
+ */
+@Configuration
+@EnableConfigurationProperties(BatchProperties.class)
+public class BatchConfig {
+
+    /**
+     * Work-stealing pool, so that idle workers take over chunks of URLs
+     * from busy ones when some URLs are more expensive than others. Replaced
+     * by {@code VirtualThreadsConfig} when virtual threads are enabled.
+     *
+     * @param batchProperties batch settings
+     * @return {@code ExecutorService} for batch processing
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(
+            name = "hashing-urls.virtual-threads.enabled",
+            havingValue = "false",
+            matchIfMissing = true)
+    public ExecutorService urlHashPrefixesExecutor(BatchProperties batchProperties) {
+        return new ForkJoinPool(batchProperties.getEffectiveParallelism());
+    }
+}
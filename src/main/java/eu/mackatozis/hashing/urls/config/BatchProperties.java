@@ -0,0 +1,32 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the batch API of {@code UrlHashPrefixesService}, bound to
+ * the {@code hashing-urls.batch} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.batch")
+public class BatchProperties {
+
+    /**
+     * Number of worker threads; the number of available processors when not positive.
+     */
+    private int parallelism;
+
+    /**
+     * Upper bound of the number of URLs a single task processes sequentially.
+     */
+    private int maxChunkSize = 256;
+
+    /**
+     * Number of URLs that are read ahead and processed in parallel when the input is a stream.
+     */
+    private int windowSize = 4096;
+
+    public int getEffectiveParallelism() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,12 @@
+package eu.mackatozis.hashing.urls.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds the settings of the offline bulk hashing of a URL file.
+ */
+@Configuration
+@EnableConfigurationProperties(BulkHashingProperties.class)
+public class BulkHashingConfig {
+}
@@ -0,0 +1,52 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the offline bulk hashing of a URL file, bound to the
+ * {@code hashing-urls.bulk} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.bulk")
+public class BulkHashingProperties {
+
+    /**
+     * File of newline-delimited URLs to hash; bulk hashing is disabled when not set.
+     */
+    private Path input;
+
+    /**
+     * File the hash prefixes are written to.
+     */
+    private Path output;
+
+    /**
+     * Format of the output file.
+     */
+    private Format format = Format.TSV;
+
+    /**
+     * Lengths of the hash prefixes written to the TSV format, as accepted by
+     * {@code PrefixLengths.parse}; only the full hash by default.
+     */
+    private String prefixLengths = "full";
+
+    /**
+     * Number of leading digest bytes per expression of the binary format.
+     */
+    private int prefixLength = 32;
+
+    /**
+     * Size of the line-aligned parts of the input file that are hashed as one task.
+     */
+    private DataSize chunkSize = DataSize.ofMegabytes(1);
+
+    public enum Format {
+        TSV,
+        BINARY
+    }
+}
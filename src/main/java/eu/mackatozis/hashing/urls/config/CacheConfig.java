@@ -0,0 +1,54 @@
+package eu.mackatozis.hashing.urls.config;
+
+import eu.mackatozis.hashing.urls.util.DigestCache;
+import eu.mackatozis.hashing.urls.util.HostCache;
+import eu.mackatozis.hashing.urls.util.Sha256Backend;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds the settings of the result cache in front of {@code UrlHashPrefixesService}
+ * and provides the expression digest cache of {@code HashComputationService}
+ * and the host cache of {@code ExpressionExtractionService}.
+ */
+@Configuration
+@EnableConfigurationProperties({
+    CacheProperties.class,
+    DigestCacheProperties.class,
+    HostCacheProperties.class
+})
+public class CacheConfig {
+
+    /**
+     * Cache of expression digests, shared by all requests.
+     *
+     * @param digestCacheProperties digest cache settings
+     * @return {@code DigestCache} of expressions
+     */
+    @Bean
+    @ConditionalOnProperty(name = "hashing-urls.digest-cache.enabled", havingValue = "true")
+    public DigestCache expressionDigestCache(DigestCacheProperties digestCacheProperties) {
+        return new DigestCache(
+                digestCacheProperties.getCapacity(),
+                digestCacheProperties.getEffectiveConcurrencyLevel());
+    }
+
+    /**
+     * Cache of the host suffixes of canonical hosts and the digests of their
+     * host-suffix expressions, shared by all requests.
+     *
+     * @param hostCacheProperties host cache settings
+     * @param sha256Backend {@code Sha256Backend} to compute the digests with
+     * @return {@code HostCache} of canonical hosts
+     */
+    @Bean
+    @ConditionalOnProperty(name = "hashing-urls.host-cache.enabled", havingValue = "true")
+    public HostCache hostCache(HostCacheProperties hostCacheProperties, Sha256Backend sha256Backend) {
+        return new HostCache(
+                hostCacheProperties.getCapacity(),
+                hostCacheProperties.getEffectiveConcurrencyLevel(),
+                sha256Backend);
+    }
+}
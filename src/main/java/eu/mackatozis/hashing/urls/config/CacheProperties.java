@@ -0,0 +1,45 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the result cache in front of {@code UrlHashPrefixesService},
+ * bound to the {@code hashing-urls.cache} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.cache")
+public class CacheProperties {
+
+    /**
+     * Whether results are cached.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of raw URLs whose canonical URL is remembered.
+     */
+    private long maximumSize = 100_000;
+
+    /**
+     * Maximum total number of expressions held by the cached canonical URLs.
+     */
+    private long maximumWeight = 1_000_000;
+
+    /**
+     * Time after which a cached result is evicted; never when zero.
+     */
+    private Duration expireAfterWrite = Duration.ofHours(1);
+
+    /**
+     * Number of concurrently updatable segments; the number of available processors
+     * when not positive.
+     */
+    private int concurrencyLevel;
+
+    public int getEffectiveConcurrencyLevel() {
+        return concurrencyLevel > 0 ? concurrencyLevel : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,33 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the expression digest cache of {@code HashComputationService},
+ * bound to the {@code hashing-urls.digest-cache} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.digest-cache")
+public class DigestCacheProperties {
+
+    /**
+     * Whether the digests of expressions are cached.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of cached digests; rounded up to a power of two, of at most 268,435,456.
+     */
+    private int capacity = 262_144;
+
+    /**
+     * Expected number of concurrently writing threads; the number of available
+     * processors when not positive.
+     */
+    private int concurrencyLevel;
+
+    public int getEffectiveConcurrencyLevel() {
+        return concurrencyLevel > 0 ? concurrencyLevel : Runtime.getRuntime().availableProcessors();
+    }
+}
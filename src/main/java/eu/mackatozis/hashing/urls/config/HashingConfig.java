@@ -0,0 +1,84 @@
+package eu.mackatozis.hashing.urls.config;
+
+import eu.mackatozis.hashing.urls.util.CommonsCodecSha256Backend;
+import eu.mackatozis.hashing.urls.util.JdkSha256Backend;
+import eu.mackatozis.hashing.urls.util.MultiBufferSha256Backend;
+import eu.mackatozis.hashing.urls.util.Sha256Backend;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * Provides the SHA256 backend of {@code HashComputationService}.
+ */
+@Configuration
+@EnableConfigurationProperties(HashingProperties.class)
+public class HashingConfig {
+
+    private static final int[] VALIDATION_LENGTHS = {0, 1, 3, 54, 55, 56, 63, 64, 65, 119, 120, 300};
+
+    /**
+     * SHA256 backend selected by {@code hashing-urls.hashing.backend}. It is
+     * validated against the commons-codec backend before it is used, both
+     * one input at a time and in batches, around the block boundaries where
+     * the backends differ the most.
+     *
+     * @param hashingProperties hashing settings
+     * @return {@code Sha256Backend} to compute digests with
+     * @throws IllegalStateException when the backend computes a wrong digest
+     */
+    @Bean
+    public Sha256Backend sha256Backend(HashingProperties hashingProperties) {
+        Sha256Backend sha256Backend;
+
+        switch (hashingProperties.getBackend()) {
+            case COMMONS_CODEC:
+                sha256Backend = new CommonsCodecSha256Backend();
+                break;
+            case MULTI_BUFFER:
+                sha256Backend = new MultiBufferSha256Backend();
+                break;
+            default:
+                sha256Backend = new JdkSha256Backend();
+                break;
+        }
+
+        validate(sha256Backend, new CommonsCodecSha256Backend());
+        return sha256Backend;
+    }
+
+    private static void validate(Sha256Backend sha256Backend, Sha256Backend reference) {
+        int count = VALIDATION_LENGTHS.length;
+        int[] offsets = new int[count];
+        byte[] data = new byte[Arrays.stream(VALIDATION_LENGTHS).sum()];
+        byte[][] digests = new byte[count][Sha256Backend.DIGEST_LENGTH];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offsets[i - 1] + VALIDATION_LENGTHS[i - 1];
+        }
+
+        sha256Backend.digest(data, offsets, VALIDATION_LENGTHS, count, digests);
+
+        byte[] expected = new byte[Sha256Backend.DIGEST_LENGTH];
+        byte[] actual = new byte[Sha256Backend.DIGEST_LENGTH];
+
+        for (int i = 0; i < count; i++) {
+            reference.digest(data, offsets[i], VALIDATION_LENGTHS[i], expected);
+            sha256Backend.digest(data, offsets[i], VALIDATION_LENGTHS[i], actual);
+
+            if (!Arrays.equals(expected, actual) || !Arrays.equals(expected, digests[i])) {
+                throw new IllegalStateException(
+                        "SHA256 backend "
+                                + sha256Backend.getClass().getSimpleName()
+                                + " computed a wrong digest for "
+                                + VALIDATION_LENGTHS[i]
+                                + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the SHA256 computation of {@code HashComputationService},
+ * bound to the {@code hashing-urls.hashing} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.hashing")
+public class HashingProperties {
+
+    /**
+     * Implementation of SHA256 to compute the digests of expressions with.
+     */
+    private Backend backend = Backend.JDK;
+
+    public enum Backend {
+        JDK,
+        COMMONS_CODEC,
+        MULTI_BUFFER
+    }
+}
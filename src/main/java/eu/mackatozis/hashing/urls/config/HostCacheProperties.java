@@ -0,0 +1,34 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the host cache of {@code ExpressionExtractionService},
+ * bound to the {@code hashing-urls.host-cache} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.host-cache")
+public class HostCacheProperties {
+
+    /**
+     * Whether the host suffixes of canonical hosts and the digests of their
+     * host-suffix expressions are cached.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of cached hosts; rounded up to a power of two, of at most 1,073,741,824.
+     */
+    private int capacity = 262_144;
+
+    /**
+     * Expected number of concurrently writing threads; the number of available
+     * processors when not positive.
+     */
+    private int concurrencyLevel;
+
+    public int getEffectiveConcurrencyLevel() {
+        return concurrencyLevel > 0 ? concurrencyLevel : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,36 @@
+package eu.mackatozis.hashing.urls.config;
+
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the metrics of the hashing pipeline.
+ */
+@Configuration
+@EnableConfigurationProperties(MetricsProperties.class)
+public class MetricsConfig {
+
+    /**
+     * Metrics registered with the Actuator {@code MeterRegistry}; a no-op when
+     * {@code hashing-urls.metrics.enabled=false} or when there is no registry.
+     *
+     * @param metricsProperties metrics settings
+     * @param meterRegistry registry to register the meters with
+     * @return {@code PipelineMetrics} of the hashing pipeline
+     * @throws IllegalArgumentException when the sample rate is not positive
+     */
+    @Bean
+    public PipelineMetrics pipelineMetrics(
+            MetricsProperties metricsProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+
+        if (!metricsProperties.isEnabled() || registry == null) {
+            return PipelineMetrics.DISABLED;
+        }
+        return new PipelineMetrics(registry, metricsProperties.getSampleRate());
+    }
+}
@@ -0,0 +1,23 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the metrics of the hashing pipeline, bound to the
+ * {@code hashing-urls.metrics} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.metrics")
+public class MetricsProperties {
+
+    /**
+     * Whether the stages of the hashing pipeline are measured.
+     */
+    private boolean enabled = true;
+
+    /**
+     * One in how many URLs has its stages timed; {@code 1} to time every URL.
+     */
+    private int sampleRate = 64;
+}
@@ -0,0 +1,21 @@
+package eu.mackatozis.hashing.urls.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Binds the settings of the local threat list, and schedules its updates
+ * when an update source is configured.
+ */
+@Configuration
+@EnableConfigurationProperties(PrefixStoreProperties.class)
+public class PrefixStoreConfig {
+
+    @Configuration
+    @EnableScheduling
+    @ConditionalOnProperty(name = "hashing-urls.prefix-store.diff-path")
+    static class UpdateConfig {
+    }
+}
@@ -0,0 +1,38 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the local threat list, bound to the {@code hashing-urls.prefix-store}
+ * properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.prefix-store")
+public class PrefixStoreProperties {
+
+    /**
+     * Hash prefix store file of the threat list; matching is disabled when not set.
+     */
+    private Path path;
+
+    /**
+     * JSON file holding the latest update of the threat list; updates are disabled
+     * when not set.
+     */
+    private Path diffPath;
+
+    /**
+     * Time between checks for a new update of the threat list.
+     */
+    private Duration updateInterval = Duration.ofMinutes(5);
+
+    /**
+     * Bits of the filter in front of the threat list per prefix; the filter is
+     * disabled when not positive.
+     */
+    private int filterBitsPerPrefix = 10;
+}
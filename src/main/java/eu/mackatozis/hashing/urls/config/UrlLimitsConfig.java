@@ -0,0 +1,12 @@
+package eu.mackatozis.hashing.urls.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Binds the limits on the URLs that are processed.
+ */
+@Configuration
+@EnableConfigurationProperties(UrlLimitsProperties.class)
+public class UrlLimitsConfig {
+}
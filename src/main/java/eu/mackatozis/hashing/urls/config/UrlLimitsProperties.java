@@ -0,0 +1,48 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Limits on the URLs that are processed, bound to the
+ * {@code hashing-urls.limits} properties. A URL that exceeds one of them is
+ * rejected with a {@code UrlLimitExceededException}.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.limits")
+public class UrlLimitsProperties {
+
+    /**
+     * Whether the limits are enforced.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum number of characters of a URL.
+     */
+    private int maxUrlLength = 8192;
+
+    /**
+     * Maximum depth of nested percent-escapes, e.g. 2 for {@code %2541}.
+     */
+    private int maxDecodeIterations = 8;
+
+    /**
+     * Maximum number of host-suffix and path-prefix expressions of a URL. At
+     * most 30 are extracted from any URL, so only a lower value has an effect;
+     * extraction stops at the first expression past it.
+     */
+    private int maxExpressions = 20;
+
+    public int getEffectiveMaxUrlLength() {
+        return enabled ? maxUrlLength : Integer.MAX_VALUE;
+    }
+
+    public int getEffectiveMaxDecodeIterations() {
+        return enabled ? maxDecodeIterations : Integer.MAX_VALUE;
+    }
+
+    public int getEffectiveMaxExpressions() {
+        return enabled ? maxExpressions : Integer.MAX_VALUE;
+    }
+}
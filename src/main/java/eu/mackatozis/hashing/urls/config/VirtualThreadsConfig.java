@@ -0,0 +1,64 @@
+package eu.mackatozis.hashing.urls.config;
+
+import eu.mackatozis.hashing.urls.util.VirtualThreads;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <pre>
+ * Runs Tomcat requests and the batch API of {@code UrlHashPrefixesService} on
+ * virtual threads, enabled with {@code hashing-urls.virtual-threads.enabled=true}
+ * on Java 21 or later. A request which waits on a slow client then parks its
+ * virtual thread instead of holding on to one of a fixed number of platform
+ * threads, so the number of open connections is bounded by
+ * {@code server.tomcat.max-connections} rather than by the thread pool.
+ *
+ * The stages keep their scratch buffers per thread. A virtual thread lives
+ * for a single task, so those buffers are allocated per request, or per chunk
+ * of a batch, instead of being reused.
+ * </pre>
+ */
+@Configuration
+@EnableConfigurationProperties(VirtualThreadsProperties.class)
+@ConditionalOnProperty(name = "hashing-urls.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    /**
+     * Runs each chunk of a batch on a virtual thread. Batch processing is
+     * bound by CPU, so the chunks still run on no more carrier threads than
+     * there are processors.
+     *
+     * @return {@code ExecutorService} for batch processing
+     * @throws IllegalStateException when the running Java version has no virtual threads
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService urlHashPrefixesExecutor() {
+        return VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Hands every request Tomcat accepts to a new virtual thread, in place of
+     * its pool of {@code server.tomcat.max-threads} platform threads. The
+     * connector shares the executor of the batch API, which creates a thread
+     * per task anyway, so that the executor is shut down with the context;
+     * Tomcat leaves executors it did not create running.
+     *
+     * @param urlHashPrefixesExecutor virtual thread per task executor
+     * @return {@code TomcatProtocolHandlerCustomizer} setting the executor of the connector
+     */
+    @Bean
+    @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsCustomizer(
+            ExecutorService urlHashPrefixesExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(urlHashPrefixesExecutor);
+    }
+}
@@ -0,0 +1,18 @@
+package eu.mackatozis.hashing.urls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the virtual thread execution mode, bound to the
+ * {@code hashing-urls.virtual-threads} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "hashing-urls.virtual-threads")
+public class VirtualThreadsProperties {
+
+    /**
+     * Whether requests and the batch API run on virtual threads; needs Java 21 or later.
+     */
+    private boolean enabled;
+}
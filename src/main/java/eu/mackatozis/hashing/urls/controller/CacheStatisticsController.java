@@ -0,0 +1,69 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.service.impl.CachingUrlHashPrefixesServiceImpl;
+import eu.mackatozis.hashing.urls.util.DigestCache;
+import eu.mackatozis.hashing.urls.util.HostCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <pre>
+ * Rest Controller that serves the following endpoint:
+ *
+ * {@code GET /hash-prefixes/cache/stats}
+ *
+ * for the size, hit, miss and eviction counters of the enabled caches.
+ *
+ * Served by the servlet variant of the application; the reactive variant
+ * serves the same endpoint with {@code ReactiveCacheStatisticsController}.
+ * </pre>
+ */
+@RestController
+@RequestMapping("hash-prefixes/cache")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CacheStatisticsController {
+
+    private final ObjectProvider<CachingUrlHashPrefixesServiceImpl> cachingUrlHashPrefixesService;
+
+    private final ObjectProvider<DigestCache> expressionDigestCache;
+
+    private final ObjectProvider<HostCache> hostCache;
+
+    /**
+     * Finds the counters of the enabled caches.
+     *
+     * @return counters of each enabled cache, keyed by {@code "urls"} and
+     * {@code "canonicalUrls"} for the result cache, by {@code "digests"}
+     * for the expression digest cache and by {@code "hosts"} for the host cache
+     */
+    @GetMapping("stats")
+    public Map<String, CacheStatistics> findCacheStatistics() {
+        return findCacheStatistics(cachingUrlHashPrefixesService, expressionDigestCache, hostCache);
+    }
+
+    static Map<String, CacheStatistics> findCacheStatistics(
+            ObjectProvider<CachingUrlHashPrefixesServiceImpl> cachingUrlHashPrefixesService,
+            ObjectProvider<DigestCache> expressionDigestCache,
+            ObjectProvider<HostCache> hostCache) {
+        Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+
+        cachingUrlHashPrefixesService.ifAvailable(
+                service -> {
+                    statistics.put("urls", service.getUrlCacheStatistics());
+                    statistics.put("canonicalUrls", service.getCanonicalUrlCacheStatistics());
+                });
+        expressionDigestCache.ifAvailable(
+                digestCache -> statistics.put("digests", digestCache.getStatistics()));
+        hostCache.ifAvailable(cache -> statistics.put("hosts", cache.getStatistics()));
+        return statistics;
+    }
+}
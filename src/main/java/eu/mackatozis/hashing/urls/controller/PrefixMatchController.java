@@ -0,0 +1,63 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import eu.mackatozis.hashing.urls.service.PrefixMatchService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.MalformedURLException;
+
+/**
+ * <pre>
+ * Rest Controller that serves the following endpoint:
+ *
+ * {@code GET /hash-prefixes/match}
+ *
+ * for matching the input URL {@code String}, which is passed as a request
+ * parameter, against the local threat list. Served only when
+ * {@code hashing-urls.prefix-store.path} is set.
+ *
+ * Served by the servlet variant of the application; the reactive variant
+ * serves the same endpoint with {@code ReactivePrefixMatchController}.
+ * </pre>
+ */
+@RestController
+@RequestMapping("hash-prefixes")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "hashing-urls.prefix-store.path")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class PrefixMatchController {
+
+    private final PrefixMatchService prefixMatchService;
+
+    /**
+     * Matches the input URL {@code String} against the local threat list.
+     *
+     * @param url required URL {@code String} to match
+     * @return {@code HttpStatus.OK} with the matching expressions of the input
+     * URL {@code String}; {@code HttpStatus.BAD_REQUEST} if the
+     * URL {@code String} is a Malformed URL or the {@code "url"}
+     * request param is missing; {@code HttpStatus.UNPROCESSABLE_ENTITY}
+     * if the URL {@code String} exceeds a limit of {@code hashing-urls.limits}.
+     */
+    @GetMapping("match")
+    public ResponseEntity<UrlPrefixMatches> findUrlPrefixMatches(
+            @RequestParam(value = "url") String url) {
+        try {
+            return new ResponseEntity<>(
+                    prefixMatchService.findUrlPrefixMatches(url), HttpStatus.OK);
+        } catch (UrlLimitExceededException e) {
+            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (MalformedURLException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -1,51 +1,291 @@
 package eu.mackatozis.hashing.urls.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.Streams;
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
 import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
 import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.util.HashPrefixesWriter;
+import eu.mackatozis.hashing.urls.util.UrlBatchReader;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Iterator;
 
 /**
  * <pre>
- * Rest Controller that serves a single GET endpoint:
+ * Rest Controller that serves the following endpoints:
  *
- * {@code /url-hash-prefixes}
+ * {@code GET /hash-prefixes}
  *
  * for finding all hash prefixes of the input URL {@code String}
- * which is passed as a request parameter.
+ * which is passed as a request parameter, and
+ *
+ * {@code POST /hash-prefixes/batch}
+ *
+ * for finding all hash prefixes of a stream of URLs, which are
+ * passed in the request body.
+ *
+ * Both endpoints respond with JSON, or with the compact binary format of
+ * {@link HashPrefixesWriter} when {@value #APPLICATION_HASH_PREFIXES_VALUE}
+ * is explicitly accepted.
+ *
+ * The JSON responses hold the hash prefixes of every length from 4 up to
+ * 31 bytes, unless a selection is passed in {@code prefixLengths}, such as
+ * {@code 4}, {@code 4-8,16} or {@code full} for the full hash only. The
+ * binary format carries the leading bytes of each digest up to the longest
+ * length of the selection, which holds every shorter prefix as well, and the
+ * whole digest when no selection or {@code full} is passed.
+ *
+ * Served by the servlet variant of the application; the reactive variant
+ * serves the same endpoints with {@code ReactiveUrlHashPrefixesController}.
  * </pre>
  */
 @RestController
 @RequestMapping("hash-prefixes")
 @RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UrlHashPrefixesController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final String APPLICATION_HASH_PREFIXES_VALUE = "application/x-hash-prefixes";
+
+    public static final MediaType APPLICATION_HASH_PREFIXES =
+            MediaType.parseMediaType(APPLICATION_HASH_PREFIXES_VALUE);
+
+    private static final int FLUSH_INTERVAL = 64;
+
     private final UrlHashPrefixesService urlHashPrefixesService;
 
+    private final ObjectMapper objectMapper;
+
     /**
      * Finds all hash prefixes of the input URL {@code String}.
      *
      * @param url required URL {@code String} to find hash prefixes for
+     * @param prefixLengths lengths of the hash prefixes to find; all of
+     * them when missing
+     * @param accept media types accepted by the client
      * @return {@code HttpStatus.OK} with the hash prefixes of the input
-     * URL {@code String}; {@code HttpStatus.BAD_REQUEST} if the
-     * URL {@code String} is a Malformed URL or the {@code "url"}
-     * request param is missing.
+     * URL {@code String}, in the binary format when it is accepted;
+     * {@code HttpStatus.BAD_REQUEST} if the URL {@code String} is a
+     * Malformed URL, the {@code "url"} request param is missing or the
+     * prefix lengths are out of range;
+     * {@code HttpStatus.UNPROCESSABLE_ENTITY} if the URL {@code String}
+     * exceeds a limit of {@code hashing-urls.limits}.
+     * @throws IOException when writing the binary format fails
      */
     @GetMapping
-    public ResponseEntity<UrlHashPrefixes> findUrlHashPrefixes(
-            @RequestParam(value = "url") String url) {
+    public ResponseEntity<?> findUrlHashPrefixes(
+            @RequestParam(value = "url") String url,
+            @RequestParam(value = "prefixLengths", required = false) String prefixLengths,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept)
+            throws IOException {
+        PrefixLengths selection;
+        UrlHashPrefixes urlHashPrefixes;
         try {
-            return new ResponseEntity<>(
-                    urlHashPrefixesService.findUrlHashPrefixes(url), HttpStatus.OK);
-        } catch (MalformedURLException e) {
+            selection = PrefixLengths.parse(prefixLengths);
+            urlHashPrefixes = urlHashPrefixesService.findUrlHashPrefixes(url, selection);
+        } catch (UrlLimitExceededException e) {
+            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (MalformedURLException | IllegalArgumentException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+
+        if (!acceptsHashPrefixes(accept)) {
+            return new ResponseEntity<>(urlHashPrefixes, HttpStatus.OK);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (HashPrefixesWriter writer =
+                new HashPrefixesWriter(body, binaryPrefixLength(selection))) {
+            writer.write(urlHashPrefixes);
+        }
+        return ResponseEntity.ok().contentType(APPLICATION_HASH_PREFIXES).body(body.toByteArray());
+    }
+
+    /**
+     * Finds all hash prefixes of each URL in the request body, which is either
+     * newline-delimited ({@code text/plain}) or a JSON array of URL {@code String}s
+     * ({@code application/json}).
+     *
+     * <p>The request body is read and the response body is written in windows of
+     * URLs that are processed in parallel, so neither is held in memory as a whole.
+     * Each URL results in one line of newline-delimited JSON; a URL that could not
+     * be processed results in a line holding the URL and an {@code "error"} message
+     * instead of the hash prefixes, and processing continues with the next URL.
+     *
+     * <p>When the binary format is accepted, the records are written in that
+     * format instead, after a single header.
+     *
+     * @param request request with the URLs in its body
+     * @param prefixLengths lengths of the hash prefixes to find; all of
+     *     them when missing
+     * @param response response to write the records to
+     * @throws IOException when writing the response fails
+     */
+    @PostMapping(
+            path = "batch",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public void findUrlHashPrefixesBatch(
+            HttpServletRequest request,
+            @RequestParam(value = "prefixLengths", required = false) String prefixLengths,
+            HttpServletResponse response)
+            throws IOException {
+        PrefixLengths selection;
+        try {
+            selection = PrefixLengths.parse(prefixLengths);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        if (acceptsHashPrefixes(request.getHeader(HttpHeaders.ACCEPT))) {
+            try (UrlBatchReader urls = readUrls(request)) {
+                writeHashPrefixes(urls, selection, response);
+            }
+            return;
+        }
+
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        ObjectWriter writer =
+                objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator =
+                        objectMapper.getFactory().createGenerator(response.getOutputStream());
+                UrlBatchReader urls = readUrls(request)) {
+            generator.setRootValueSeparator(null);
+            int count = 0;
+
+            Iterator<UrlHashPrefixes> results =
+                    urlHashPrefixesService
+                            .findUrlHashPrefixes(Streams.stream(urls), selection)
+                            .iterator();
+
+            while (results.hasNext()) {
+                writeRecord(writer, generator, results.next());
+
+                if (++count % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+
+            if (urls.getError() != null) {
+                UrlHashPrefixes errorRecord =
+                        UrlHashPrefixes.builder()
+                                .error("Could not read urls: " + urls.getError().getMessage())
+                                .build();
+                writeRecord(writer, generator, errorRecord);
+            }
+        }
+    }
+
+    /**
+     * Writes the hash prefixes of each URL in the binary format of
+     * {@link HashPrefixesWriter}, one record per URL after a single header.
+     */
+    private void writeHashPrefixes(
+            UrlBatchReader urls,
+            PrefixLengths prefixLengths,
+            HttpServletResponse response)
+            throws IOException {
+        response.setContentType(APPLICATION_HASH_PREFIXES_VALUE);
+
+        try (HashPrefixesWriter writer =
+                new HashPrefixesWriter(
+                        response.getOutputStream(), binaryPrefixLength(prefixLengths))) {
+            int count = 0;
+
+            Iterator<UrlHashPrefixes> results =
+                    urlHashPrefixesService
+                            .findUrlHashPrefixes(Streams.stream(urls), prefixLengths)
+                            .iterator();
+
+            while (results.hasNext()) {
+                writer.write(results.next());
+
+                if (++count % FLUSH_INTERVAL == 0) {
+                    writer.flush();
+                }
+            }
+
+            if (urls.getError() != null) {
+                writer.write(
+                        UrlHashPrefixes.builder()
+                                .error("Could not read urls: " + urls.getError().getMessage())
+                                .build());
+            }
+        }
+    }
+
+    private UrlBatchReader readUrls(HttpServletRequest request) throws IOException {
+        boolean isJson =
+                MediaType.APPLICATION_JSON.isCompatibleWith(
+                        MediaType.parseMediaType(request.getContentType()));
+
+        return isJson
+                ? UrlBatchReader.ofJsonArray(request.getInputStream(), objectMapper.getFactory())
+                : UrlBatchReader.ofLines(request.getInputStream());
+    }
+
+    /**
+     * The binary format is only written when the client explicitly asks for
+     * it, so that clients accepting anything keep getting JSON. An entry with
+     * a quality of 0 refuses the format, and a malformed header falls back to
+     * JSON as well.
+     */
+    static boolean acceptsHashPrefixes(String accept) {
+        if (accept == null) {
+            return false;
+        }
+
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(mediaType -> mediaType.getQualityValue() > 0
+                            && APPLICATION_HASH_PREFIXES.equalsTypeAndSubtype(mediaType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Every prefix of the selection is a leading part of its longest one, so
+     * the binary format carries that many bytes of each digest; the whole
+     * digest when the selection is the default one or the full hash only.
+     */
+    static int binaryPrefixLength(PrefixLengths prefixLengths) {
+        return prefixLengths.isEmpty() || prefixLengths.equals(PrefixLengths.ALL)
+                ? HashPrefixLength.MAX_HASH_PREFIX_LENGTH
+                : prefixLengths.get(prefixLengths.size() - 1);
+    }
+
+    private void writeRecord(ObjectWriter writer, JsonGenerator generator, UrlHashPrefixes record)
+            throws IOException {
+        writer.writeValue(generator, record);
+        generator.writeRaw('\n');
     }
 }
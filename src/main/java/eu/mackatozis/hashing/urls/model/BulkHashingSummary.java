@@ -0,0 +1,56 @@
+package eu.mackatozis.hashing.urls.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * Counters of a bulk hashing run over a URL file.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkHashingSummary {
+
+    private long urlCount;
+
+    private long errorCount;
+
+    private long expressionCount;
+
+    private long inputBytes;
+
+    private long outputBytes;
+
+    private Duration elapsed;
+
+    public double getUrlsPerSecond() {
+        return urlCount / seconds();
+    }
+
+    public double getInputMegabytesPerSecond() {
+        return inputBytes / (1024.0 * 1024.0) / seconds();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Hashed %,d urls (%,d errors) into %,d expressions in %.3f s: "
+                        + "%,.0f urls/s, %,.1f MB/s of input, %,d bytes of output",
+                urlCount,
+                errorCount,
+                expressionCount,
+                seconds(),
+                getUrlsPerSecond(),
+                getInputMegabytesPerSecond(),
+                outputBytes);
+    }
+
+    private double seconds() {
+        return Math.max(elapsed.toNanos(), 1) / 1e9;
+    }
+}
@@ -0,0 +1,40 @@
+package eu.mackatozis.hashing.urls.model;
+
+import com.google.common.cache.CacheStats;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Hit, miss and eviction counters of a cache.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatistics {
+
+    private long size;
+
+    private long capacity;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private double hitRate;
+
+    private long evictionCount;
+
+    public static CacheStatistics of(CacheStats stats, long size, long capacity) {
+        return CacheStatistics.builder()
+                .size(size)
+                .capacity(capacity)
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+}
@@ -1,22 +1,129 @@
 package eu.mackatozis.hashing.urls.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.Value;
+import lombok.experimental.NonFinal;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Objects;
 
-@NoArgsConstructor
-@AllArgsConstructor
-@Data
+/**
+ * Hashes of a host-suffix or path-prefix expression. Instances are immutable,
+ * since cached ones are shared by every request that hits the cache: the
+ * digest passed to the builder is taken over rather than copied, and is only
+ * ever handed out as a copy.
+ */
+@Value
 @Builder
 public class ExpressionHashes implements Serializable {
 
     private static final long serialVersionUID = 6190943517818522746L;
 
-    private String expression;
-    private String fullHash;
-    private List<String> hashPrefixes;
+    String expression;
+
+    /**
+     * Derived from the digest, when there is one, the first time it is read;
+     * the only field written after construction, always to the same value.
+     */
+    @NonFinal
+    String fullHash;
+
+    /**
+     * Omitted when only the full hash was asked for.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    List<String> hashPrefixes;
+
+    /**
+     * Raw SHA256 digest of the expression.
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    byte[] digest;
+
+    public String getFullHash() {
+        if (fullHash == null && digest != null) {
+            fullHash = HexUtils.encode(digest, digest.length);
+        }
+        return fullHash;
+    }
+
+    /**
+     * Returns a copy of the raw SHA256 digest of the expression.
+     *
+     * @return digest; {@code null} when only the full hash is held
+     */
+    @JsonIgnore
+    public byte[] getDigest() {
+        return digest != null ? digest.clone() : null;
+    }
+
+    /**
+     * Copies the raw SHA256 digest of the expression into the supplied array,
+     * decoding it from the full hash when only that is held.
+     *
+     * @param target array of at least 32 bytes that receives the digest
+     * @throws IllegalStateException when the full hash is not hexadecimal
+     */
+    public void getDigest(byte[] target) {
+        byte[] sha256digest = digest != null ? digest : decodeFullHash();
+        System.arraycopy(sha256digest, 0, target, 0, sha256digest.length);
+    }
+
+    /**
+     * Creates a copy holding only a selection of the hash prefixes. The
+     * digest is shared, and the prefixes are views on it.
+     *
+     * @param prefixLengths lengths of the hash prefixes to keep
+     * @return {@code ExpressionHashes} with the selected hash prefixes
+     */
+    public ExpressionHashes withPrefixLengths(PrefixLengths prefixLengths) {
+        byte[] sha256digest = digest != null ? digest : decodeFullHash();
+
+        return ExpressionHashes.builder()
+                .expression(expression)
+                .fullHash(fullHash)
+                .digest(sha256digest)
+                .hashPrefixes(new HashPrefixList(sha256digest, prefixLengths))
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExpressionHashes)) {
+            return false;
+        }
+        ExpressionHashes that = (ExpressionHashes) o;
+        return Objects.equals(expression, that.expression)
+                && Objects.equals(getFullHash(), that.getFullHash())
+                && Objects.equals(hashPrefixes, that.hashPrefixes);
+    }
+
+    /**
+     * Only the expression is hashed, since the full hash and the hash prefixes
+     * are derived from it. That way adding an instance to a {@code HashSet} does
+     * not force the lazily computed hexadecimal {@code String}s into existence.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(expression);
+    }
+
+    private byte[] decodeFullHash() {
+        try {
+            return Hex.decodeHex(getFullHash());
+        } catch (DecoderException e) {
+            throw new IllegalStateException("Invalid full hash of " + expression, e);
+        }
+    }
 }
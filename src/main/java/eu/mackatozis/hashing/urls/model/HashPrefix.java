@@ -0,0 +1,63 @@
+package eu.mackatozis.hashing.urls.model;
+
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import lombok.AllArgsConstructor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A view on the most significant {@code length} bytes of a SHA256 digest.
+ * The digest is shared, not copied, so creating a prefix does not allocate
+ * anything but the view itself.
+ */
+@AllArgsConstructor
+public final class HashPrefix implements Serializable {
+
+    private static final long serialVersionUID = -1684205930547613371L;
+
+    private final byte[] digest;
+    private final int length;
+
+    public int length() {
+        return length;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + length);
+        }
+        return digest[index];
+    }
+
+    public String toHex() {
+        return HexUtils.encode(digest, length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashPrefix)) {
+            return false;
+        }
+        HashPrefix that = (HashPrefix) o;
+        return length == that.length
+                && Arrays.equals(digest, 0, length, that.digest, 0, that.length);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            result = 31 * result + digest[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,59 @@
+package eu.mackatozis.hashing.urls.model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the hexadecimal hash prefixes of a SHA256 digest, either
+ * from {@code minLength} up to, but not including, {@code maxLength} bytes, or
+ * of a selection of {@link PrefixLengths}.
+ *
+ * <p>The prefixes are {@link HashPrefix} views on the shared digest; their
+ * hexadecimal {@code String} is only created when an element is accessed,
+ * e.g. while the REST layer serializes the response.
+ */
+public final class HashPrefixList extends AbstractList<String>
+        implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 3546802164632907167L;
+
+    private final byte[] digest;
+    private final PrefixLengths prefixLengths;
+
+    public HashPrefixList(byte[] digest, int minLength, int maxLength) {
+        if (minLength > maxLength || maxLength > digest.length) {
+            throw new IllegalArgumentException(
+                    "Invalid hash prefix range [" + minLength + ", " + maxLength + ")");
+        }
+        this.digest = digest;
+        this.prefixLengths =
+                minLength == maxLength
+                        ? PrefixLengths.FULL_HASH_ONLY
+                        : PrefixLengths.range(minLength, maxLength - 1);
+    }
+
+    public HashPrefixList(byte[] digest, PrefixLengths prefixLengths) {
+        if (!prefixLengths.isEmpty()
+                && prefixLengths.get(prefixLengths.size() - 1) > digest.length) {
+            throw new IllegalArgumentException(
+                    "Invalid hash prefix lengths " + prefixLengths);
+        }
+        this.digest = digest;
+        this.prefixLengths = prefixLengths;
+    }
+
+    public HashPrefix prefix(int index) {
+        return new HashPrefix(digest, prefixLengths.get(index));
+    }
+
+    @Override
+    public String get(int index) {
+        return prefix(index).toHex();
+    }
+
+    @Override
+    public int size() {
+        return prefixLengths.size();
+    }
+}
@@ -16,6 +16,8 @@ public class NormalizedUrl implements Serializable {
     private static final long serialVersionUID = 5586247594832685577L;
 
     private String url;
+    private String scheme;
     private String host;
     private String path;
+    private String suffix;
 }
@@ -0,0 +1,233 @@
+package eu.mackatozis.hashing.urls.model;
+
+import eu.mackatozis.hashing.urls.util.IpUtils;
+import eu.mackatozis.hashing.urls.util.UrlUtils;
+import lombok.Getter;
+
+/**
+ * <pre>
+ * Mutable, reusable view of the components of a URL:
+ *
+ * {@code scheme://host[:port][/path][?query]}
+ *
+ * The URL is copied once into a char buffer, and each component is kept as a
+ * pair of offsets into it, so that the stages of the pipeline can share a
+ * single parse of the URL instead of splitting it again into {@code String}s.
+ * Whether the host is an IPv4 address is determined while parsing, too.
+ *
+ * An instance is meant to be held per thread and parsed into over and over;
+ * its buffer grows as needed and is dropped by {@link #release()} once it
+ * grew too large.
+ * </pre>
+ */
+public final class ParsedUrl {
+
+    private static final String HTTP_SCHEME = "http://";
+
+    private static final String HTTPS_SCHEME = "https://";
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+
+    @Getter
+    private int length;
+
+    @Getter
+    private int hostStart;
+
+    @Getter
+    private int hostEnd;
+
+    @Getter
+    private int pathStart;
+
+    @Getter
+    private int pathEnd;
+
+    @Getter
+    private long ipAddress = IpUtils.NOT_AN_IP_ADDRESS;
+
+    /**
+     * Parses a URL, with the same rules as {@link UrlUtils#split(String)}: leading and
+     * trailing whitespace is ignored, the scheme is either {@code http://} or {@code https://},
+     * the host is mandatory and the port, path and query are optional.
+     *
+     * @param url URL to parse
+     * @return {@code true} if the URL was parsed; {@code false} if it is not a valid URL,
+     *     in which case the components are undefined
+     */
+    public boolean parse(CharSequence url) {
+        int start = 0;
+        int end = url.length();
+
+        while (start < end && url.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && url.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        copy(url, start, end);
+        ipAddress = IpUtils.NOT_AN_IP_ADDRESS;
+
+        int position;
+        if (startsWith(HTTP_SCHEME)) {
+            position = HTTP_SCHEME.length();
+        } else if (startsWith(HTTPS_SCHEME)) {
+            position = HTTPS_SCHEME.length();
+        } else {
+            return false;
+        }
+
+        hostStart = position;
+        while (position < length
+                && chars[position] != '/'
+                && chars[position] != ':'
+                && chars[position] != '?') {
+            position++;
+        }
+        hostEnd = position;
+
+        if (hostEnd == hostStart) {
+            return false;
+        }
+
+        if (position < length && chars[position] == ':') {
+            position++;
+            while (position < length && chars[position] >= '0' && chars[position] <= '9') {
+                position++;
+            }
+            if (position == hostEnd + 1) {
+                return false;
+            }
+        }
+
+        pathStart = position;
+        if (position < length && chars[position] == '/') {
+            while (position < length && chars[position] != '?') {
+                position++;
+            }
+        }
+        pathEnd = position;
+
+        if (position < length && chars[position] != '?') {
+            return false;
+        }
+
+        for (; position < length; position++) {
+            if (isLineTerminator(chars[position])) {
+                return false;
+            }
+        }
+
+        ipAddress = IpUtils.parseIpv4Address(chars, hostStart, hostEnd);
+        return true;
+    }
+
+    /**
+     * Takes a URL whose components are already known, such as a canonical URL
+     * assembled from them, instead of parsing it again. The URL is trusted to
+     * be valid, with no surrounding whitespace and no port.
+     *
+     * @param url URL to take
+     * @param hostStart index of the first char of the host
+     * @param hostEnd index past the last char of the host, where the path starts
+     * @param pathEnd index past the last char of the path, where the query starts
+     */
+    public void set(CharSequence url, int hostStart, int hostEnd, int pathEnd) {
+        copy(url, 0, url.length());
+
+        this.hostStart = hostStart;
+        this.hostEnd = hostEnd;
+        this.pathStart = hostEnd;
+        this.pathEnd = pathEnd;
+        this.ipAddress = IpUtils.parseIpv4Address(chars, hostStart, hostEnd);
+    }
+
+    /**
+     * Returns the buffer the offsets point into. It is shared, not copied, and only valid
+     * until the next call to {@link #parse(CharSequence)}.
+     *
+     * @return buffer holding the URL in its first {@link #getLength()} chars
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    public boolean hasPath() {
+        return pathEnd > pathStart;
+    }
+
+    public boolean hasQuery() {
+        return length > pathEnd;
+    }
+
+    public boolean isIpAddress() {
+        return ipAddress != IpUtils.NOT_AN_IP_ADDRESS;
+    }
+
+    public String getHost() {
+        return new String(chars, hostStart, hostEnd - hostStart);
+    }
+
+    public String getPath() {
+        return hasPath() ? new String(chars, pathStart, pathEnd - pathStart) : null;
+    }
+
+    public String getQuery() {
+        return hasQuery() ? new String(chars, pathEnd, length - pathEnd) : null;
+    }
+
+    /**
+     * Drops the buffer when it grew too large while parsing an unusually long URL,
+     * so that a single request does not pin memory to the thread holding this instance.
+     */
+    public void release() {
+        if (chars.length > MAX_RETAINED_CAPACITY) {
+            chars = new char[INITIAL_CAPACITY];
+        }
+        length = 0;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void copy(CharSequence url, int start, int end) {
+        length = end - start;
+
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        if (url instanceof String) {
+            ((String) url).getChars(start, end, chars, 0);
+        } else if (url instanceof StringBuilder) {
+            ((StringBuilder) url).getChars(start, end, chars, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                chars[i - start] = url.charAt(i);
+            }
+        }
+    }
+
+    private boolean startsWith(String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+}
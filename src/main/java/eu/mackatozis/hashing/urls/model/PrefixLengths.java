@@ -0,0 +1,170 @@
+package eu.mackatozis.hashing.urls.model;
+
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.util.StringJoiner;
+
+/**
+ * <pre>
+ * Immutable set of the hash prefix lengths, in bytes, a client asks for.
+ * It is kept as a bit mask, where bit {@code n} stands for a prefix of
+ * {@code n} bytes, and is parsed from a comma-separated list of lengths
+ * and inclusive ranges of lengths:
+ *
+ * {@code 4}          the 4-byte prefix only
+ * {@code 4,32}       the 4-byte prefix and the full hash as a prefix
+ * {@code 4-8,16}     every prefix from 4 up to 8 bytes, and the 16-byte one
+ * {@code full}       no prefixes at all, only the full hash
+ *
+ * {@link #ALL} holds every prefix from 4 up to 31 bytes, which is what is
+ * returned when a client does not ask for specific lengths.
+ * </pre>
+ */
+public final class PrefixLengths implements Serializable {
+
+    private static final long serialVersionUID = -1964735063284915204L;
+
+    public static final PrefixLengths ALL =
+            range(
+                    HashPrefixLength.MIN_HASH_PREFIX_LENGTH,
+                    HashPrefixLength.MAX_HASH_PREFIX_LENGTH - 1);
+
+    public static final PrefixLengths FULL_HASH_ONLY = new PrefixLengths(0L);
+
+    private static final String FULL_HASH = "full";
+
+    private final long mask;
+
+    private PrefixLengths(long mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Creates a set of lengths.
+     *
+     * @param lengths prefix lengths, between 4 and 32 bytes
+     * @return {@code PrefixLengths} of the lengths
+     * @throws IllegalArgumentException when a length is out of range
+     */
+    public static PrefixLengths of(int... lengths) {
+        long mask = 0;
+        for (int length : lengths) {
+            mask |= bit(length);
+        }
+        return new PrefixLengths(mask);
+    }
+
+    /**
+     * Creates a set of the lengths in an inclusive range.
+     *
+     * @param from shortest prefix length, at least 4 bytes
+     * @param to longest prefix length, at most 32 bytes
+     * @return {@code PrefixLengths} of the range
+     * @throws IllegalArgumentException when the range is out of bounds or empty
+     */
+    public static PrefixLengths range(int from, int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid hash prefix range " + from + "-" + to);
+        }
+        return new PrefixLengths((bit(to) << 1) - bit(from));
+    }
+
+    /**
+     * Parses a comma-separated list of lengths and ranges of lengths, or
+     * {@code full} for no prefixes at all.
+     *
+     * @param prefixLengths {@code String} to parse; {@link #ALL} when blank
+     * @return the parsed {@code PrefixLengths}
+     * @throws IllegalArgumentException when a length or range is invalid
+     */
+    public static PrefixLengths parse(String prefixLengths) {
+        if (StringUtils.isBlank(prefixLengths)) {
+            return ALL;
+        } else if (FULL_HASH.equalsIgnoreCase(prefixLengths.trim())) {
+            return FULL_HASH_ONLY;
+        }
+
+        long mask = 0;
+        for (String item : prefixLengths.split(",", -1)) {
+            String[] bounds = item.trim().split("-", -1);
+
+            try {
+                if (bounds.length == 1) {
+                    mask |= bit(Integer.parseInt(bounds[0]));
+                } else if (bounds.length == 2) {
+                    mask |= range(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1])).mask;
+                } else {
+                    throw new IllegalArgumentException("Invalid hash prefix lengths " + item);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid hash prefix lengths " + item, e);
+            }
+        }
+        return new PrefixLengths(mask);
+    }
+
+    public boolean contains(int length) {
+        return length >= 0 && length < Long.SIZE && (mask & 1L << length) != 0;
+    }
+
+    public int size() {
+        return Long.bitCount(mask);
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    /**
+     * Returns the length at an index, in ascending order of lengths.
+     *
+     * @param index index of the length
+     * @return prefix length in bytes
+     * @throws IndexOutOfBoundsException when the index is out of range
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size());
+        }
+
+        long remaining = mask;
+        for (int i = 0; i < index; i++) {
+            remaining &= remaining - 1;
+        }
+        return Long.numberOfTrailingZeros(remaining);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof PrefixLengths && mask == ((PrefixLengths) o).mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(mask);
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return FULL_HASH;
+        }
+
+        StringJoiner joiner = new StringJoiner(",");
+        for (int i = 0; i < size(); i++) {
+            joiner.add(Integer.toString(get(i)));
+        }
+        return joiner.toString();
+    }
+
+    private static long bit(int length) {
+        if (length < HashPrefixLength.MIN_HASH_PREFIX_LENGTH
+                || length > HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Prefix size of a hash prefix should be between 4 and 32 bytes");
+        }
+        return 1L << length;
+    }
+}
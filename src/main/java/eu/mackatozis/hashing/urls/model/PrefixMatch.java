@@ -0,0 +1,26 @@
+package eu.mackatozis.hashing.urls.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+public class PrefixMatch implements Serializable {
+
+    private static final long serialVersionUID = 2953146705834619412L;
+
+    private String expression;
+
+    /**
+     * Prefix of the threat list that the full hash of the expression starts with.
+     */
+    private String hashPrefix;
+
+    private String fullHash;
+}
@@ -0,0 +1,109 @@
+package eu.mackatozis.hashing.urls.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Update of a threat list, in the shape of a Web Risk {@code computeDiff} response.
+ * Byte arrays are base64 encoded in JSON.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+public class ThreatListDiff implements Serializable {
+
+    private static final long serialVersionUID = 4370960164916227314L;
+
+    public enum ResponseType {
+        /**
+         * Removals and additions to apply to the current version of the list.
+         */
+        DIFF,
+        /**
+         * The additions are the whole new version of the list.
+         */
+        RESET
+    }
+
+    private ResponseType responseType;
+
+    private Additions additions;
+
+    private Removals removals;
+
+    private String newVersionToken;
+
+    private Checksum checksum;
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @Builder
+    public static class Additions implements Serializable {
+
+        private static final long serialVersionUID = -1215874806455405233L;
+
+        private List<RawHashes> rawHashes;
+    }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @Builder
+    public static class RawHashes implements Serializable {
+
+        private static final long serialVersionUID = 7731624377395040985L;
+
+        private int prefixSize;
+
+        /**
+         * Prefixes of {@code prefixSize} bytes, concatenated.
+         */
+        private byte[] rawHashes;
+    }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @Builder
+    public static class Removals implements Serializable {
+
+        private static final long serialVersionUID = 2571384403217318166L;
+
+        private RawIndices rawIndices;
+    }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @Builder
+    public static class RawIndices implements Serializable {
+
+        private static final long serialVersionUID = -6519553137290451808L;
+
+        /**
+         * Indices into the lexicographically sorted prefixes of the current version.
+         */
+        private int[] indices;
+    }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @Builder
+    public static class Checksum implements Serializable {
+
+        private static final long serialVersionUID = 8847712034183297001L;
+
+        /**
+         * SHA256 digest of the lexicographically sorted prefixes of the new version.
+         */
+        private byte[] sha256;
+    }
+}
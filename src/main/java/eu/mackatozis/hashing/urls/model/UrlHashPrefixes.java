@@ -1,5 +1,6 @@
 package eu.mackatozis.hashing.urls.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,5 +18,36 @@ public class UrlHashPrefixes implements Serializable {
     private static final long serialVersionUID = -7933479852501735419L;
 
     private String url;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<ExpressionHashes> expressionHashes;
+
+    /**
+     * Reason the hash prefixes of the URL could not be found; only set on the
+     * per-URL records of a batch, where a failure must not abort the whole batch.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+
+    /**
+     * Creates the record of a URL of a batch which could not be processed.
+     *
+     * @param url URL {@code String} that failed
+     * @param e reason it failed
+     * @return {@code UrlHashPrefixes} holding the URL and the error message
+     */
+    public static UrlHashPrefixes error(String url, Throwable e) {
+        return UrlHashPrefixes.builder().url(url).error(errorMessage(e)).build();
+    }
+
+    /**
+     * Returns the message of a per-URL error, which is the simple name of
+     * the exception when it has no message.
+     *
+     * @param e reason a URL failed
+     * @return error message
+     */
+    public static String errorMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
 }
@@ -0,0 +1,24 @@
+package eu.mackatozis.hashing.urls.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+public class UrlPrefixMatches implements Serializable {
+
+    private static final long serialVersionUID = -3385236215904419576L;
+
+    private String url;
+
+    private boolean match;
+
+    private List<PrefixMatch> matches;
+}
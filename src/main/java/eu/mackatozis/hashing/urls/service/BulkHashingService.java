@@ -0,0 +1,11 @@
+package eu.mackatozis.hashing.urls.service;
+
+import eu.mackatozis.hashing.urls.model.BulkHashingSummary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface BulkHashingService {
+
+    BulkHashingSummary hashUrls(Path input, Path output) throws IOException;
+}
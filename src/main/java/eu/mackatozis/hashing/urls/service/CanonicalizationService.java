@@ -1,8 +1,32 @@
 package eu.mackatozis.hashing.urls.service;
 
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+
 import java.net.MalformedURLException;
 
 public interface CanonicalizationService {
 
     String canonicalizeUrl(String url) throws MalformedURLException;
+
+    /**
+     * Canonicalizes the input URL {@code String} into a reusable {@link ParsedUrl},
+     * so that later stages can use its components without parsing it again.
+     *
+     * @param url URL {@code String} to canonicalize
+     * @param parsedUrl {@code ParsedUrl} to parse the canonical URL into
+     * @return {@code parsedUrl} holding the canonical URL; {@code null} if the
+     *     URL {@code String} is empty
+     * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
+     */
+    default ParsedUrl canonicalizeUrl(String url, ParsedUrl parsedUrl)
+            throws MalformedURLException {
+        String canonicalUrl = canonicalizeUrl(url);
+
+        if (canonicalUrl == null) {
+            return null;
+        } else if (!parsedUrl.parse(canonicalUrl)) {
+            throw new MalformedURLException("Could not parse canonical url " + canonicalUrl);
+        }
+        return parsedUrl;
+    }
 }
@@ -1,8 +1,14 @@
 package eu.mackatozis.hashing.urls.service;
 
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+
 import java.util.Set;
 
 public interface ExpressionExtractionService {
 
     Set<String> extractExpressions(String url);
+
+    Set<String> extractExpressions(ParsedUrl url);
+
+    int forEachExpression(ParsedUrl url, ExpressionVisitor visitor);
 }
@@ -0,0 +1,34 @@
+package eu.mackatozis.hashing.urls.service;
+
+/**
+ * Receives the host-suffix and path-prefix expressions of a URL one at a time,
+ * as a slice of a buffer which is shared by all expressions of the URL.
+ */
+@FunctionalInterface
+public interface ExpressionVisitor {
+
+    /**
+     * Visits an expression.
+     *
+     * @param expression buffer holding the UTF-8 encoded expression in its first
+     *     {@code length} bytes; it is overwritten after this call returns
+     * @param hostLength number of leading bytes of the expression which are its host suffix
+     * @param length number of bytes of the expression
+     */
+    void visit(byte[] expression, int hostLength, int length);
+
+    /**
+     * Visits an expression whose SHA256 digest is already known, such as a
+     * host-suffix expression without a path of a host held by the host cache.
+     * Visitors which do not hash the expressions can ignore the digest.
+     *
+     * @param expression buffer holding the UTF-8 encoded expression in its first
+     *     {@code length} bytes; it is overwritten after this call returns
+     * @param hostLength number of leading bytes of the expression which are its host suffix
+     * @param length number of bytes of the expression
+     * @param digest digest of the expression; shared, and should not be modified
+     */
+    default void visit(byte[] expression, int hostLength, int length, byte[] digest) {
+        visit(expression, hostLength, length);
+    }
+}
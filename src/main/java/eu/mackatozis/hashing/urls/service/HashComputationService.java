@@ -1,8 +1,23 @@
 package eu.mackatozis.hashing.urls.service;
 
+import eu.mackatozis.hashing.urls.model.HashPrefix;
+
+import java.nio.ByteBuffer;
+
 public interface HashComputationService {
 
     String computeSha256HashPrefix(String sha256hash, int significantBytes);
 
     String computeSha256Hash(String expression);
+
+    HashPrefix computeSha256HashPrefix(byte[] sha256digest, int significantBytes);
+
+    void computeSha256Hash(String expression, byte[] digest);
+
+    void computeSha256Hash(ByteBuffer data, byte[] digest);
+
+    void computeSha256Hash(byte[] expression, int offset, int length, byte[] digest);
+
+    void computeSha256Hashes(
+            byte[] expressions, int[] offsets, int[] lengths, int count, byte[][] digests);
 }
@@ -0,0 +1,10 @@
+package eu.mackatozis.hashing.urls.service;
+
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+
+import java.net.MalformedURLException;
+
+public interface PrefixMatchService {
+
+    UrlPrefixMatches findUrlPrefixMatches(String url) throws MalformedURLException;
+}
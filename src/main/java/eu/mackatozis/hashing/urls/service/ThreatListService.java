@@ -0,0 +1,15 @@
+package eu.mackatozis.hashing.urls.service;
+
+import eu.mackatozis.hashing.urls.model.ThreatListDiff;
+import eu.mackatozis.hashing.urls.util.PrefixStore;
+
+import java.io.IOException;
+
+public interface ThreatListService {
+
+    PrefixStore getPrefixStore();
+
+    String getVersionToken();
+
+    void applyDiff(ThreatListDiff diff) throws IOException;
+}
@@ -1,10 +1,46 @@
 package eu.mackatozis.hashing.urls.service;
 
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
 import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
 
 import java.net.MalformedURLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface UrlHashPrefixesService {
 
     UrlHashPrefixes findUrlHashPrefixes(String url) throws MalformedURLException;
+
+    UrlHashPrefixes findUrlHashPrefixes(String url, PrefixLengths prefixLengths)
+            throws MalformedURLException;
+
+    List<UrlHashPrefixes> findUrlHashPrefixes(Collection<String> urls);
+
+    Stream<UrlHashPrefixes> findUrlHashPrefixes(Stream<String> urls);
+
+    Stream<UrlHashPrefixes> findUrlHashPrefixes(Stream<String> urls, PrefixLengths prefixLengths);
+
+    UrlHashPrefixesArena findUrlHashPrefixesArena(Collection<String> urls);
+
+    /**
+     * Adds the record of the input URL {@code String} to an arena. A malformed
+     * URL, or one exceeding a limit of {@code hashing-urls.limits}, is added as
+     * an error record; any other failure propagates.
+     *
+     * <p>This default goes through {@code UrlHashPrefixes}; implementations
+     * which can write the record without it should.
+     *
+     * @param url URL {@code String} to find hash prefixes
+     * @param urlIndex index of the URL in its batch
+     * @param arena arena to add the record to
+     */
+    default void findUrlHashPrefixes(String url, int urlIndex, UrlHashPrefixesArena arena) {
+        try {
+            arena.add(urlIndex, findUrlHashPrefixes(url, PrefixLengths.FULL_HASH_ONLY));
+        } catch (MalformedURLException | UrlLimitExceededException e) {
+            arena.addError(urlIndex, url != null ? url : "", UrlHashPrefixes.errorMessage(e));
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package eu.mackatozis.hashing.urls.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a URL exceeds one of the limits of
+ * {@code hashing-urls.limits}, which are enforced before the URL is processed
+ * any further. Unlike a {@code MalformedURLException}, the URL may well be
+ * valid; it is rejected because processing it would take too many resources.
+ */
+@Getter
+public class UrlLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 4405829046021487375L;
+
+    private final Limit limit;
+
+    private final int maximum;
+
+    public UrlLimitExceededException(Limit limit, int maximum) {
+        super(String.format(limit.message, maximum));
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    public enum Limit {
+        URL_LENGTH("The url exceeds the maximum length of %d characters"),
+        DECODE_ITERATIONS("The url exceeds the maximum of %d nested percent-escapes"),
+        EXPRESSIONS("The url exceeds the maximum of %d expressions");
+
+        private final String message;
+
+        Limit(String message) {
+            this.message = message;
+        }
+    }
+}
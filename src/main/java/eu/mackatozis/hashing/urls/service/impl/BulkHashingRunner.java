@@ -0,0 +1,44 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.config.BulkHashingProperties;
+import eu.mackatozis.hashing.urls.model.BulkHashingSummary;
+import eu.mackatozis.hashing.urls.service.BulkHashingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Hashes the URL file of {@code hashing-urls.bulk.input} once the application
+ * has started, and logs the summary of the run. Meant to be run with the
+ * {@code bulk} profile, which starts no web server.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "hashing-urls.bulk.input")
+public class BulkHashingRunner implements ApplicationRunner {
+
+    private final BulkHashingService bulkHashingService;
+
+    private final BulkHashingProperties bulkHashingProperties;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Path input = bulkHashingProperties.getInput();
+        Path output = bulkHashingProperties.getOutput();
+
+        if (output == null) {
+            throw new IllegalArgumentException("hashing-urls.bulk.output should be set");
+        }
+
+        log.info("Hashing urls of {} into {}", input, output);
+        BulkHashingSummary summary = bulkHashingService.hashUrls(input, output);
+        log.info("{}", summary);
+    }
+}
@@ -0,0 +1,557 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.config.BatchProperties;
+import eu.mackatozis.hashing.urls.config.BulkHashingProperties;
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.BulkHashingSummary;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.service.BulkHashingService;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.HashPrefixesWriter;
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <pre>
+ * Hashes a file of newline-delimited URLs into a file of hash prefixes,
+ * without going through HTTP.
+ *
+ * The input file is memory-mapped in regions of up to 1 GB, which are cut
+ * into line-aligned chunks of about {@code hashing-urls.bulk.chunk-size}
+ * bytes. Every chunk is hashed into a {@link UrlHashPrefixesArena}, and
+ * encoded from there, as one task on the batch executor, so that no object
+ * graph is created per URL. The encoded chunks are written in the order of
+ * the input, and at most two chunks per worker are in flight, so memory stays
+ * bounded however large the file is. When a run fails, the chunks in flight
+ * stop at their next URL, on a flag they check between URLs.
+ *
+ * Blank lines are skipped, and carriage returns and surrounding whitespace
+ * are stripped. The output is either the binary format of
+ * {@link HashPrefixesWriter}, or tab-separated lines:
+ *
+ * url  expression  full hash  [hash prefix ...]   one line per expression
+ * url              error message                   for a failed URL
+ *
+ * where the hash prefixes are the ones of {@code hashing-urls.bulk.prefix-lengths}.
+ * Tabs in a URL are written as {@code %09}. In both formats, the expressions
+ * of a URL are written in the order they are extracted in.
+ * </pre>
+ */
+@Service
+@RequiredArgsConstructor
+public class BulkHashingServiceImpl implements BulkHashingService {
+
+    private static final int MAX_REGION_SIZE = 1 << 30;
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    private final UrlHashPrefixesService urlHashPrefixesService;
+
+    private final ExecutorService urlHashPrefixesExecutor;
+
+    private final BatchProperties batchProperties;
+
+    private final BulkHashingProperties bulkHashingProperties;
+
+    /**
+     * Hashes every URL of the input file into the output file.
+     *
+     * @param input file of newline-delimited URLs
+     * @param output file to write the hash prefixes to; replaced when it exists
+     * @return counters of the run
+     * @throws IOException when reading the input or writing the output fails
+     * @throws IllegalArgumentException when the chunk size, the prefix lengths or
+     *     the prefix length are invalid
+     */
+    @Override
+    public BulkHashingSummary hashUrls(Path input, Path output) throws IOException {
+        long started = System.nanoTime();
+        ChunkEncoder encoder = newChunkEncoder();
+        long chunkSize = bulkHashingProperties.getChunkSize().toBytes();
+
+        if (chunkSize <= 0 || chunkSize > MAX_REGION_SIZE / 2) {
+            throw new IllegalArgumentException("Chunk size should be between 1 byte and 512 MB");
+        }
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+                OutputStream outputStream =
+                        new BufferedOutputStream(
+                                Files.newOutputStream(output), OUTPUT_BUFFER_SIZE)) {
+            Counters counters = new Counters();
+            counters.outputBytes = encoder.writeHeader(outputStream);
+
+            Deque<Future<EncodedChunk>> inFlight = new ArrayDeque<>();
+            int maxInFlight = batchProperties.getEffectiveParallelism() * 2;
+            AtomicBoolean cancelled = new AtomicBoolean();
+
+            try {
+                for (ByteBuffer chunk : new Chunks(channel, (int) chunkSize)) {
+                    if (inFlight.size() == maxInFlight) {
+                        write(inFlight.removeFirst(), outputStream, counters);
+                    }
+                    inFlight.addLast(
+                            urlHashPrefixesExecutor.submit(() -> encoder.encode(chunk, cancelled)));
+                }
+                while (!inFlight.isEmpty()) {
+                    write(inFlight.removeFirst(), outputStream, counters);
+                }
+            } finally {
+                // Future.cancel does not interrupt a running task of a ForkJoinPool, so the
+                // chunks in flight stop on the flag, at their next URL.
+                cancelled.set(true);
+                inFlight.forEach(chunk -> chunk.cancel(false));
+            }
+
+            return BulkHashingSummary.builder()
+                    .urlCount(counters.urlCount)
+                    .errorCount(counters.errorCount)
+                    .expressionCount(counters.expressionCount)
+                    .inputBytes(channel.size())
+                    .outputBytes(counters.outputBytes)
+                    .elapsed(Duration.ofNanos(System.nanoTime() - started))
+                    .build();
+        }
+    }
+
+    private ChunkEncoder newChunkEncoder() {
+        if (bulkHashingProperties.getFormat() == BulkHashingProperties.Format.BINARY) {
+            int prefixLength = bulkHashingProperties.getPrefixLength();
+            HashPrefixesWriter.withoutHeader(OutputStream.nullOutputStream(), prefixLength);
+
+            return new BinaryChunkEncoder(prefixLength);
+        }
+        return new TsvChunkEncoder(PrefixLengths.parse(bulkHashingProperties.getPrefixLengths()));
+    }
+
+    private static void write(
+            Future<EncodedChunk> future, OutputStream outputStream, Counters counters)
+            throws IOException {
+        EncodedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+
+        chunk.bytes.writeTo(outputStream);
+        counters.urlCount += chunk.urlCount;
+        counters.errorCount += chunk.errorCount;
+        counters.expressionCount += chunk.expressionCount;
+        counters.outputBytes += chunk.bytes.size();
+    }
+
+    private static final class Counters {
+
+        private long urlCount;
+
+        private long errorCount;
+
+        private long expressionCount;
+
+        private long outputBytes;
+    }
+
+    private static final class EncodedChunk {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private long urlCount;
+
+        private long errorCount;
+
+        private long expressionCount;
+    }
+
+    /**
+     * Line-aligned chunks of a file, as read-only views on memory-mapped
+     * regions of it. A region is only mapped again when the next chunk does
+     * not fit in what is left of it.
+     */
+    private static final class Chunks implements Iterable<ByteBuffer> {
+
+        private final FileChannel channel;
+
+        private final int chunkSize;
+
+        Chunks(FileChannel channel, int chunkSize) {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public Iterator<ByteBuffer> iterator() {
+            return new Iterator<>() {
+
+                private final long size = size(channel);
+
+                private long position;
+
+                private MappedByteBuffer region;
+
+                private long regionStart;
+
+                @Override
+                public boolean hasNext() {
+                    return position < size;
+                }
+
+                @Override
+                public ByteBuffer next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    int from = (int) (position - regionStart);
+                    int end = region == null ? -1 : lineEnd(from);
+
+                    if (end < 0) {
+                        map();
+                        from = 0;
+                        end = lineEnd(from);
+
+                        if (end < 0) {
+                            throw new UncheckedIOException(
+                                    new IOException("Line at byte " + position + " is too long"));
+                        }
+                    }
+
+                    position = regionStart + end;
+                    return region.duplicate().position(from).limit(end).slice();
+                }
+
+                /**
+                 * Finds the end of the chunk starting at {@code from}: after the last line
+                 * break within the chunk size, or after the first one past it for a line
+                 * longer than a chunk. Returns -1 when the chunk runs past the region,
+                 * unless the region ends the file.
+                 */
+                private int lineEnd(int from) {
+                    int capacity = region.capacity();
+                    boolean isLastRegion = regionStart + capacity == size;
+                    int to = (int) Math.min((long) from + chunkSize, capacity);
+
+                    if (to == capacity && isLastRegion) {
+                        return to;
+                    }
+                    for (int i = to - 1; i >= from; i--) {
+                        if (region.get(i) == '\n') {
+                            return i + 1;
+                        }
+                    }
+                    for (int i = to; i < capacity; i++) {
+                        if (region.get(i) == '\n') {
+                            return i + 1;
+                        }
+                    }
+                    return isLastRegion ? capacity : -1;
+                }
+
+                private void map() {
+                    try {
+                        regionStart = position;
+                        region =
+                                channel.map(
+                                        FileChannel.MapMode.READ_ONLY,
+                                        position,
+                                        Math.min(MAX_REGION_SIZE, size - position));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+
+        private static long size(FileChannel channel) {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Hashes the URLs of a chunk into an arena and encodes its records in the
+     * output format.
+     */
+    private abstract class ChunkEncoder {
+
+        abstract long writeHeader(OutputStream outputStream) throws IOException;
+
+        abstract RecordWriter newRecordWriter(ByteArrayOutputStream bytes);
+
+        EncodedChunk encode(ByteBuffer lines, AtomicBoolean cancelled) {
+            EncodedChunk chunk = new EncodedChunk();
+
+            try (UrlHashPrefixesArena arena = hash(lines, cancelled);
+                    RecordWriter recordWriter = newRecordWriter(chunk.bytes)) {
+                UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+                while (cursor.next()) {
+                    chunk.urlCount++;
+                    if (cursor.isError()) {
+                        chunk.errorCount++;
+                    } else {
+                        chunk.expressionCount += cursor.getExpressionCount();
+                    }
+                    recordWriter.write(cursor);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return chunk;
+        }
+
+        /**
+         * Hashes the URLs of a chunk into an arena, unless the run is cancelled
+         * first. The flag is checked between URLs, and raised when the chunk
+         * fails, so that the chunks in flight stop before the failure is taken
+         * in order. The arena is released when the chunk does not complete.
+         */
+        private UrlHashPrefixesArena hash(ByteBuffer lines, AtomicBoolean cancelled) {
+            UrlHashPrefixesArena arena = new UrlHashPrefixesArena();
+            try {
+                hash(lines, cancelled, arena);
+                return arena;
+            } catch (RuntimeException | Error e) {
+                cancelled.set(true);
+                arena.close();
+                throw e;
+            }
+        }
+
+        private void hash(ByteBuffer lines, AtomicBoolean cancelled, UrlHashPrefixesArena arena) {
+            byte[] line = new byte[256];
+            int urlIndex = 0;
+
+            while (lines.hasRemaining()) {
+                if (cancelled.get()) {
+                    throw new CancellationException("Bulk hashing was cancelled");
+                }
+
+                int length = 0;
+
+                while (lines.hasRemaining()) {
+                    byte value = lines.get();
+                    if (value == '\n') {
+                        break;
+                    }
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = value;
+                }
+
+                String url = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+                if (!url.isEmpty()) {
+                    urlHashPrefixesService.findUrlHashPrefixes(url, urlIndex++, arena);
+                }
+            }
+        }
+    }
+
+    private interface RecordWriter extends Closeable {
+
+        void write(UrlHashPrefixesArena.Cursor cursor) throws IOException;
+    }
+
+    private final class BinaryChunkEncoder extends ChunkEncoder {
+
+        private final int prefixLength;
+
+        BinaryChunkEncoder(int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+
+        @Override
+        long writeHeader(OutputStream outputStream) throws IOException {
+            HashPrefixesWriter.writeHeader(outputStream, prefixLength);
+            return HashPrefixesWriter.HEADER_LENGTH;
+        }
+
+        @Override
+        RecordWriter newRecordWriter(ByteArrayOutputStream bytes) {
+            HashPrefixesWriter writer = HashPrefixesWriter.withoutHeader(bytes, prefixLength);
+
+            return new RecordWriter() {
+
+                @Override
+                public void write(UrlHashPrefixesArena.Cursor cursor) throws IOException {
+                    writer.write(cursor);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Writes the TSV lines of a record as UTF-8 bytes, straight from the
+     * arena. Every line is assembled in a reused buffer and written at once.
+     */
+    private final class TsvChunkEncoder extends ChunkEncoder {
+
+        private final PrefixLengths prefixLengths;
+
+        TsvChunkEncoder(PrefixLengths prefixLengths) {
+            this.prefixLengths = prefixLengths;
+        }
+
+        @Override
+        long writeHeader(OutputStream outputStream) {
+            return 0;
+        }
+
+        @Override
+        RecordWriter newRecordWriter(ByteArrayOutputStream bytes) {
+            return new TsvRecordWriter(bytes, prefixLengths);
+        }
+    }
+
+    private static final class TsvRecordWriter implements RecordWriter {
+
+        private static final byte TAB = '\t';
+
+        private static final byte[] ESCAPED_TAB = {'%', '0', '9'};
+
+        private final ByteArrayOutputStream bytes;
+
+        private final PrefixLengths prefixLengths;
+
+        private final byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+
+        private byte[] url = new byte[256];
+
+        private byte[] line = new byte[1024];
+
+        private int lineLength;
+
+        TsvRecordWriter(ByteArrayOutputStream bytes, PrefixLengths prefixLengths) {
+            this.bytes = bytes;
+            this.prefixLengths = prefixLengths;
+        }
+
+        @Override
+        public void write(UrlHashPrefixesArena.Cursor cursor) {
+            int urlLength = cursor.getUrlLength();
+            if (url.length < urlLength) {
+                url = new byte[Math.max(urlLength, url.length * 2)];
+            }
+            cursor.getUrl(url);
+
+            if (cursor.isError()) {
+                lineLength = 0;
+                appendUrl(urlLength);
+                append(TAB);
+                append(TAB);
+                byte[] error = cursor.getError().replace('\t', ' ').getBytes(StandardCharsets.UTF_8);
+                append(error, error.length);
+                append((byte) '\n');
+                bytes.write(line, 0, lineLength);
+                return;
+            }
+
+            for (int i = 0; i < cursor.getExpressionCount(); i++) {
+                lineLength = 0;
+                appendUrl(urlLength);
+                append(TAB);
+
+                int expressionLength = cursor.getExpressionLength(i);
+                ensureCapacity(expressionLength);
+                cursor.getExpression(i, line, lineLength);
+                lineLength += expressionLength;
+                append(TAB);
+
+                int hash = lineLength;
+                cursor.getDigest(i, digest);
+                ensureCapacity(digest.length * 2);
+                HexUtils.encode(digest, digest.length, line, hash);
+                lineLength += digest.length * 2;
+
+                for (int j = 0; j < prefixLengths.size(); j++) {
+                    append(TAB);
+                    append(line, hash, prefixLengths.get(j) * 2);
+                }
+                append((byte) '\n');
+                bytes.write(line, 0, lineLength);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Appends the URL, with its tabs written as {@code %09}.
+         */
+        private void appendUrl(int urlLength) {
+            int from = 0;
+            for (int i = 0; i < urlLength; i++) {
+                if (url[i] == TAB) {
+                    append(url, from, i - from);
+                    append(ESCAPED_TAB, ESCAPED_TAB.length);
+                    from = i + 1;
+                }
+            }
+            append(url, from, urlLength - from);
+        }
+
+        private void append(byte value) {
+            ensureCapacity(1);
+            line[lineLength++] = value;
+        }
+
+        private void append(byte[] source, int length) {
+            append(source, 0, length);
+        }
+
+        private void append(byte[] source, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, offset, line, lineLength, length);
+            lineLength += length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (line.length < lineLength + length) {
+                line = Arrays.copyOf(line, Math.max(lineLength + length, line.length * 2));
+            }
+        }
+    }
+}
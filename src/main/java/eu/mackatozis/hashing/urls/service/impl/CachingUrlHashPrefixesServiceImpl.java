@@ -0,0 +1,235 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import eu.mackatozis.hashing.urls.config.CacheProperties;
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.net.MalformedURLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * Caches the results of {@link UrlHashPrefixesServiceImpl} in two levels:
+ *
+ * - raw URL to canonical URL, which saves the canonicalization of URLs
+ *   that are seen again verbatim
+ * - canonical URL to expression hashes, which saves the expression extraction
+ *   and hashing of URLs that differ only in their spelling
+ *
+ * The first level is bounded by number of entries, the second by the total
+ * number of expressions it holds, and both expire a while after they are written.
+ * Both caches are split into independently locked segments and lookups do not
+ * lock at all, so concurrent requests never wait on each other, except for two
+ * requests loading the same canonical URL, where the second waits for the first.
+ *
+ * Enabled with {@code hashing-urls.cache.enabled=true}.
+ * </pre>
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "hashing-urls.cache.enabled", havingValue = "true")
+public class CachingUrlHashPrefixesServiceImpl implements UrlHashPrefixesService {
+
+    private final CanonicalizationService canonicalizationService;
+
+    private final UrlHashPrefixesServiceImpl urlHashPrefixesService;
+
+    private final UrlHashPrefixesBatchProcessor urlHashPrefixesBatchProcessor;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final Cache<String, String> urlCache;
+
+    private final Cache<String, Set<ExpressionHashes>> canonicalUrlCache;
+
+    private final long maximumSize;
+
+    private final long maximumWeight;
+
+    public CachingUrlHashPrefixesServiceImpl(
+            CanonicalizationService canonicalizationService,
+            UrlHashPrefixesServiceImpl urlHashPrefixesService,
+            UrlHashPrefixesBatchProcessor urlHashPrefixesBatchProcessor,
+            PipelineMetrics pipelineMetrics,
+            CacheProperties cacheProperties) {
+        this.canonicalizationService = canonicalizationService;
+        this.urlHashPrefixesService = urlHashPrefixesService;
+        this.urlHashPrefixesBatchProcessor = urlHashPrefixesBatchProcessor;
+        this.pipelineMetrics = pipelineMetrics;
+        this.maximumSize = cacheProperties.getMaximumSize();
+        this.maximumWeight = cacheProperties.getMaximumWeight();
+
+        this.urlCache =
+                newCacheBuilder(cacheProperties)
+                        .maximumSize(cacheProperties.getMaximumSize())
+                        .build();
+        this.canonicalUrlCache =
+                newCacheBuilder(cacheProperties)
+                        .maximumWeight(cacheProperties.getMaximumWeight())
+                        .weigher(
+                                (String canonicalUrl, Set<ExpressionHashes> expressionHashes) ->
+                                        Math.max(1, expressionHashes.size()))
+                        .build();
+    }
+
+    /**
+     * Finds all hash prefixes of the input URL {@code String}, from the cache when
+     * the URL or its canonical form has been seen before.
+     *
+     * @param url URL {@code String} to find hash prefixes
+     * @return URL hash prefixes; the expression hashes are shared between calls
+     *         and cannot be modified
+     * @throws MalformedURLException when supplied URL {@code String} is
+     *         a malformed URL
+     */
+    @Override
+    public UrlHashPrefixes findUrlHashPrefixes(String url) throws MalformedURLException {
+        return findUrlHashPrefixes(url, PrefixLengths.ALL);
+    }
+
+    /**
+     * Finds a selection of the hash prefixes of the input URL {@code String}.
+     * The cache always holds every hash prefix; a selection is taken as views
+     * on the cached digests.
+     *
+     * @param url URL {@code String} to find hash prefixes
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @return URL hash prefixes
+     * @throws MalformedURLException when supplied URL {@code String} is
+     *         a malformed URL
+     */
+    @Override
+    public UrlHashPrefixes findUrlHashPrefixes(String url, PrefixLengths prefixLengths)
+            throws MalformedURLException {
+        if (StringUtils.isBlank(url)) {
+            pipelineMetrics.recordMalformedUrl();
+            throw new MalformedURLException("The url should not be empty");
+        }
+
+        String canonicalUrl = urlCache.getIfPresent(url);
+
+        if (canonicalUrl == null) {
+            try {
+                canonicalUrl = canonicalizationService.canonicalizeUrl(url);
+            } catch (MalformedURLException e) {
+                pipelineMetrics.recordMalformedUrl();
+                throw e;
+            }
+            urlCache.put(url, canonicalUrl);
+        }
+
+        return UrlHashPrefixes.builder()
+                .url(url)
+                .expressionHashes(
+                        selectHashPrefixes(findExpressionHashes(canonicalUrl), prefixLengths))
+                .build();
+    }
+
+    @Override
+    public List<UrlHashPrefixes> findUrlHashPrefixes(Collection<String> urls) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixes(urls, PrefixLengths.ALL, this);
+    }
+
+    @Override
+    public Stream<UrlHashPrefixes> findUrlHashPrefixes(Stream<String> urls) {
+        return findUrlHashPrefixes(urls, PrefixLengths.ALL);
+    }
+
+    @Override
+    public Stream<UrlHashPrefixes> findUrlHashPrefixes(
+            Stream<String> urls, PrefixLengths prefixLengths) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixes(urls, prefixLengths, this);
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} into an arena,
+     * through the caches. The records are added from the cached
+     * {@code UrlHashPrefixes}.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @return arena holding a record per URL, in the order of the input; to
+     *     be closed by the caller
+     */
+    @Override
+    public UrlHashPrefixesArena findUrlHashPrefixesArena(Collection<String> urls) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixesArena(urls, this);
+    }
+
+    /**
+     * Returns the counters of the raw URL cache.
+     *
+     * @return statistics of the raw URL cache
+     */
+    public CacheStatistics getUrlCacheStatistics() {
+        return CacheStatistics.of(urlCache.stats(), urlCache.size(), maximumSize);
+    }
+
+    /**
+     * Returns the counters of the canonical URL cache. Its capacity is counted
+     * in expressions rather than entries.
+     *
+     * @return statistics of the canonical URL cache
+     */
+    public CacheStatistics getCanonicalUrlCacheStatistics() {
+        return CacheStatistics.of(
+                canonicalUrlCache.stats(), canonicalUrlCache.size(), maximumWeight);
+    }
+
+    private Set<ExpressionHashes> findExpressionHashes(String canonicalUrl) {
+        try {
+            return canonicalUrlCache.get(
+                    canonicalUrl,
+                    () ->
+                            Collections.unmodifiableSet(
+                                    urlHashPrefixesService.findExpressionHashes(canonicalUrl)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    private static Set<ExpressionHashes> selectHashPrefixes(
+            Set<ExpressionHashes> expressionHashes, PrefixLengths prefixLengths) {
+        if (PrefixLengths.ALL.equals(prefixLengths)) {
+            return expressionHashes;
+        }
+
+        Set<ExpressionHashes> selected = new HashSet<>();
+        for (ExpressionHashes hashes : expressionHashes) {
+            selected.add(hashes.withPrefixLengths(prefixLengths));
+        }
+        return selected;
+    }
+
+    private static CacheBuilder<Object, Object> newCacheBuilder(CacheProperties cacheProperties) {
+        CacheBuilder<Object, Object> builder =
+                CacheBuilder.newBuilder()
+                        .concurrencyLevel(cacheProperties.getEffectiveConcurrencyLevel())
+                        .recordStats();
+
+        if (!cacheProperties.getExpireAfterWrite().isZero()) {
+            builder.expireAfterWrite(cacheProperties.getExpireAfterWrite());
+        }
+        return builder;
+    }
+}
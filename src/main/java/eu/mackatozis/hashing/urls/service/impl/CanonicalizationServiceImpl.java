@@ -1,18 +1,22 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
 import com.google.common.base.CharMatcher;
+import eu.mackatozis.hashing.urls.config.UrlLimitsProperties;
 import eu.mackatozis.hashing.urls.model.NormalizedUrl;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
 import eu.mackatozis.hashing.urls.model.UrlComponents;
 import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException.Limit;
+import eu.mackatozis.hashing.urls.util.CanonicalizationEvent;
 import eu.mackatozis.hashing.urls.util.IpUtils;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
 import eu.mackatozis.hashing.urls.util.UrlUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.net.IDN;
 import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,9 +27,25 @@ import java.util.regex.Pattern;
  * {@code scheme://hostname/path}
  *
  * It strips off fragments and queries.
+ *
+ * This is the default engine, selected when
+ * {@code hashing-urls.canonicalization.engine} is missing or set to {@code regex}.
+ *
+ * A URL that takes longer than a threshold to canonicalize, e.g. because of
+ * deeply nested percent-escapes, is recorded as a {@link CanonicalizationEvent}.
+ *
+ * When {@code hashing-urls.limits.enabled=true}, URLs that are longer than
+ * {@code max-url-length}, or nest percent-escapes deeper than
+ * {@code max-decode-iterations}, are rejected with a
+ * {@link UrlLimitExceededException}. Every remaining step is linear in the
+ * length of the URL, so the cost of a URL is bounded by the limits.
  * </pre>
  */
 @Service
+@ConditionalOnProperty(
+        name = "hashing-urls.canonicalization.engine",
+        havingValue = "regex",
+        matchIfMissing = true)
 public class CanonicalizationServiceImpl implements CanonicalizationService {
 
     private static final Pattern HTTP_SCHEME_PATTERN =
@@ -37,6 +57,21 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
     private static final Pattern HEX_SYMBOL_PATTERN =
             Pattern.compile("\\\\x([0-9a-f]+)", Pattern.CASE_INSENSITIVE);
 
+    private static final String ENGINE = "regex";
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final int maxUrlLength;
+
+    private final int maxDecodeIterations;
+
+    public CanonicalizationServiceImpl(
+            PipelineMetrics pipelineMetrics, UrlLimitsProperties urlLimitsProperties) {
+        this.pipelineMetrics = pipelineMetrics;
+        this.maxUrlLength = urlLimitsProperties.getEffectiveMaxUrlLength();
+        this.maxDecodeIterations = urlLimitsProperties.getEffectiveMaxDecodeIterations();
+    }
+
     /**
      * Canonicalizes the input URL {@code String}.
      *
@@ -44,32 +79,100 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
      * @return canonicalized URL {@code String} if canonicalized successfully;
      * {@code null} otherwise
      * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
+     * @throws UrlLimitExceededException when supplied URL {@code String} exceeds a limit
      */
     @Override
     public String canonicalizeUrl(String url) throws MalformedURLException {
-        if (StringUtils.isBlank(url)) {
+        CanonicalUrl canonicalUrl = canonicalize(url);
+        return canonicalUrl != null ? canonicalUrl.url : null;
+    }
+
+    /**
+     * Canonicalizes the input URL {@code String} into a reusable {@link ParsedUrl}.
+     * The offsets of the host and the path are taken from the components the
+     * canonical URL is assembled from, instead of parsing the canonical URL again.
+     *
+     * @param url URL {@code String} to canonicalize
+     * @param parsedUrl {@code ParsedUrl} to set the canonical URL into
+     * @return {@code parsedUrl} holding the canonical URL; {@code null} if the
+     *     URL {@code String} is empty
+     * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
+     * @throws UrlLimitExceededException when supplied URL {@code String} exceeds a limit
+     */
+    @Override
+    public ParsedUrl canonicalizeUrl(String url, ParsedUrl parsedUrl)
+            throws MalformedURLException {
+        CanonicalUrl canonicalUrl = canonicalize(url);
+
+        if (canonicalUrl == null) {
             return null;
+        } else if (canonicalUrl.hostEnd == canonicalUrl.hostStart) {
+            throw new MalformedURLException("Could not parse canonical url " + canonicalUrl.url);
         }
+        parsedUrl.set(
+                canonicalUrl.url,
+                canonicalUrl.hostStart,
+                canonicalUrl.hostEnd,
+                canonicalUrl.pathEnd);
+        return parsedUrl;
+    }
 
-        NormalizedUrl normalizedUrl = normalizeUrl(url);
-
-        String host = canonicalizeHost(normalizedUrl);
-        String path = canonicalizePath(normalizedUrl);
+    private CanonicalUrl canonicalize(String url) throws MalformedURLException {
+        if (StringUtils.isBlank(url)) {
+            return null;
+        } else if (url.length() > maxUrlLength) {
+            throw new UrlLimitExceededException(Limit.URL_LENGTH, maxUrlLength);
+        }
 
-        url = normalizedUrl
-                        .getUrl()
-                        .replace(normalizedUrl.getHost(), host)
-                        .replace(normalizedUrl.getPath(), path);
+        CanonicalizationEvent event = new CanonicalizationEvent();
+        event.begin();
+
+        CanonicalUrl canonicalUrl = null;
+        try {
+            NormalizedUrl normalizedUrl = normalizeUrl(url, event);
+
+            String host = encode(canonicalizeHost(normalizedUrl));
+            String path = encode(canonicalizePath(normalizedUrl));
+            String suffix = encode(normalizedUrl.getSuffix());
+
+            // The suffix is either the query, or what is left of the path when there is none.
+            int hostStart = normalizedUrl.getScheme().length();
+            int hostEnd = hostStart + host.length();
+            int pathEnd = hostEnd + path.length() + (suffix.startsWith("?") ? 0 : suffix.length());
+
+            canonicalUrl =
+                    new CanonicalUrl(
+                            normalizedUrl.getScheme() + host + path + suffix,
+                            hostStart,
+                            hostEnd,
+                            pathEnd);
+            return canonicalUrl;
+        } catch (UrlLimitExceededException e) {
+            event.setLimitExceeded(e.getLimit().name());
+            throw e;
+        } finally {
+            event.complete(ENGINE, url, canonicalUrl != null ? canonicalUrl.url : null);
+        }
+    }
 
-        StringBuilder builder = new StringBuilder();
-        for (char ch : url.toCharArray()) {
+    /**
+     * Percent-escapes every control, non-ASCII, {@code #} and {@code %}
+     * character of a component of the canonical URL, and converts its
+     * {@code \xYY} hex symbols. Both are applied per character or per symbol,
+     * so the components can be encoded one by one.
+     *
+     * @param component component of the canonical URL
+     * @return encoded component
+     */
+    private static String encode(String component) {
+        StringBuilder builder = new StringBuilder(component.length());
+        for (char ch : component.toCharArray()) {
             if (ch <= 32 || ch >= 127 || ch == '#' || ch == '%') {
                 builder.append(UrlUtils.encode(Character.toString(ch)).toUpperCase());
             } else {
                 builder.append(ch);
             }
         }
-
         return convertSlashHexSymbols(builder.toString());
     }
 
@@ -88,10 +191,12 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
      * </ul>
      *
      * @param url URL {@code String} to canonicalize
+     * @param event event to count the percent-escapes in
      * @return normalized URL {@code String}
      * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
      */
-    private NormalizedUrl normalizeUrl(String url) throws MalformedURLException {
+    private NormalizedUrl normalizeUrl(String url, CanonicalizationEvent event)
+            throws MalformedURLException {
         url = url.trim();
 
         if (!HTTP_SCHEME_PATTERN.matcher(url).find()) {
@@ -101,15 +206,8 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
         boolean isAscii = CharMatcher.ascii().matchesAllOf(url);
 
         if (!isAscii) {
-            try {
-                URI tmp = new URI(url);
-                String authorityPunyCode = IDN.toASCII(tmp.getAuthority());
-                url = url.replace(tmp.getAuthority(), authorityPunyCode);
-            } catch (URISyntaxException e) {
-                throw new MalformedURLException(
-                        "Could not convert host part to ASCII Punycode representation of url "
-                                + url);
-            }
+            url = UrlUtils.convertAuthorityToAscii(url);
+            pipelineMetrics.recordIdnConversion();
         }
 
         url = url.replaceAll("[\t\r\n]", "");
@@ -119,31 +217,29 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
             url = url.substring(0, fragmentIndex);
         }
 
-        url = stripPercentEscapes(url);
+        url = stripPercentEscapes(url, event);
 
         UrlComponents urlComponents = UrlUtils.split(url);
 
         if (urlComponents != null) {
-            if (StringUtils.isNotBlank(urlComponents.getPort())) {
-                url = url.replaceFirst(urlComponents.getPort(), "");
+            int end = url.length();
+            while (end > 0 && url.charAt(end - 1) <= ' ') {
+                end--;
             }
 
-            String path;
-
-            if (urlComponents.getPath() == null) {
-                path = "/";
+            String path = StringUtils.defaultString(urlComponents.getPath());
+            String suffix = StringUtils.defaultString(urlComponents.getQuery()) + url.substring(end);
 
-                if (urlComponents.getQuery() == null) {
-                    url = url + "/";
-                }
-            } else {
-                path = urlComponents.getPath();
+            if (urlComponents.getPath() == null && urlComponents.getQuery() == null) {
+                suffix = suffix + "/";
             }
 
             return NormalizedUrl.builder()
-                    .url(url)
+                    .url(urlComponents.getScheme() + urlComponents.getHost() + path + suffix)
+                    .scheme(urlComponents.getScheme())
                     .host(urlComponents.getHost())
                     .path(path)
+                    .suffix(suffix)
                     .build();
         } else {
             throw new MalformedURLException("Could not normalize url " + url);
@@ -151,29 +247,49 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
     }
 
     /**
-     * Repeatedly removes percent-escapes from the URL until it has no more percent-escapes
+     * Repeatedly removes percent-escapes from the URL until it has no more percent-escapes.
+     * Every pass decodes one level of nested percent-escapes, so the number of passes is
+     * bounded by {@code hashing-urls.limits.max-decode-iterations}.
      *
      * @param url URL {@code String} to process
+     * @param event event to count the passes and percent-escapes in
      * @return percent-escaped free URL @code String}
+     * @throws UrlLimitExceededException when the URL needs too many passes
      */
-    private String stripPercentEscapes(String url) {
-        while (PERCENT_SYMBOL_PATTERN.matcher(url).find()) {
-            StringBuffer buffer = new StringBuffer();
+    private String stripPercentEscapes(String url, CanonicalizationEvent event) {
+        int passes = 0;
+        int decodes = 0;
+
+        Matcher matcher = PERCENT_SYMBOL_PATTERN.matcher(url);
+        StringBuilder buffer = new StringBuilder(url.length());
+
+        while (matcher.find()) {
+            if (++passes > maxDecodeIterations) {
+                throw new UrlLimitExceededException(Limit.DECODE_ITERATIONS, maxDecodeIterations);
+            }
+
+            buffer.setLength(0);
             StringBuilder builder = new StringBuilder();
-            Matcher matcher = PERCENT_SYMBOL_PATTERN.matcher(url);
             String decoded;
 
-            while (matcher.find()) {
+            do {
                 decoded = UrlUtils.decode(matcher.group());
+                decodes++;
 
                 if (decoded.equals("$") || decoded.equals("\\")) {
                     decoded = builder.append("\\").append(decoded).toString();
                 }
                 matcher.appendReplacement(buffer, decoded);
-            }
+            } while (matcher.find());
+
             matcher.appendTail(buffer);
             url = buffer.toString();
+            matcher.reset(url);
         }
+
+        event.setPercentDecodePasses(passes);
+        event.setPercentDecodes(decodes);
+        pipelineMetrics.recordPercentDecodes(decodes);
         return url;
     }
 
@@ -196,15 +312,13 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
     private String canonicalizeHost(NormalizedUrl normalizedUrl) {
         String host = normalizedUrl.getHost().toLowerCase();
 
-        host = host.replaceFirst("^[.]+", "")
-                        .replaceFirst("[.]+$", "")
-                        .replaceAll("(\\.)+\\1+", ".");
+        host = collapseRepeated(StringUtils.strip(host, "."), '.');
 
-        if (IpUtils.isIpAddress(host) && !IpUtils.isDecimalIpAddress(host)) {
-            String ipAddress = IpUtils.resolveDecimalIpAddress(host);
-            if (StringUtils.isNotBlank(ipAddress)) {
-                host = ipAddress;
-            }
+        String ipAddress = IpUtils.resolveDecimalIpAddress(host);
+
+        if (ipAddress != null) {
+            pipelineMetrics.recordIpLiteral();
+            return ipAddress;
         }
         return host;
     }
@@ -227,10 +341,34 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
         String path = normalizedUrl.getPath();
 
         path = path.replaceAll("/\\./", "/")
-                        .replaceAll("/\\w+/\\.\\./?", "/")
-                        .replaceAll("(/)+\\1+", "/");
+                        .replaceAll("/\\w+/\\.\\./?", "/");
 
-        return path;
+        return collapseRepeated(path, '/');
+    }
+
+    /**
+     * Replaces every run of consecutive {@code ch} characters with a single one, in a
+     * single scan rather than with a backreference, which backtracks on long runs.
+     *
+     * @param value {@code String} to process
+     * @param ch character to collapse
+     * @return processed {@code String}
+     */
+    private static String collapseRepeated(String value, char ch) {
+        int index = value.indexOf(String.valueOf(ch).repeat(2));
+        if (index < 0) {
+            return value;
+        }
+
+        StringBuilder builder = new StringBuilder(value.length()).append(value, 0, index + 1);
+        for (int i = index + 1; i < value.length(); i++) {
+            char current = value.charAt(i);
+
+            if (current != ch || value.charAt(i - 1) != ch) {
+                builder.append(current);
+            }
+        }
+        return builder.toString();
     }
 
     /**
@@ -239,7 +377,7 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
      * @param input input {@code String} to process
      * @return processed {@code String}
      */
-    private String convertSlashHexSymbols(String input) {
+    private static String convertSlashHexSymbols(String input) {
         StringBuffer buffer = new StringBuffer();
         Matcher matcher = HEX_SYMBOL_PATTERN.matcher(input);
 
@@ -250,4 +388,22 @@ public class CanonicalizationServiceImpl implements CanonicalizationService {
         matcher.appendTail(buffer);
         return buffer.toString();
     }
+
+    private static final class CanonicalUrl {
+
+        private final String url;
+
+        private final int hostStart;
+
+        private final int hostEnd;
+
+        private final int pathEnd;
+
+        CanonicalUrl(String url, int hostStart, int hostEnd, int pathEnd) {
+            this.url = url;
+            this.hostStart = hostStart;
+            this.hostEnd = hostEnd;
+            this.pathEnd = pathEnd;
+        }
+    }
 }
@@ -1,12 +1,15 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
-import eu.mackatozis.hashing.urls.model.UrlComponents;
-import eu.mackatozis.hashing.urls.util.IpUtils;
-import eu.mackatozis.hashing.urls.util.UrlUtils;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
 import eu.mackatozis.hashing.urls.service.ExpressionExtractionService;
+import eu.mackatozis.hashing.urls.service.ExpressionVisitor;
+import eu.mackatozis.hashing.urls.util.HostCache;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -30,6 +33,18 @@ import java.util.Set;
  * ]
  * }
  * </pre>
+ *
+ * <p>The expressions are enumerated over per-thread, reused byte buffers: the
+ * host suffixes are offsets into the encoded host, and the path prefixes are
+ * lengths of either the encoded path and query, or of the path rebuilt from
+ * its components. Every expression is assembled into a single shared buffer
+ * and handed to an {@link ExpressionVisitor}, so no {@code String}s are created
+ * unless the caller asks for them.
+ *
+ * <p>When {@code hashing-urls.host-cache.enabled=true}, the encoded host and its
+ * host suffixes are looked up in a {@link HostCache} instead, and the host-suffix
+ * expressions without a path are visited along with their digest, which the
+ * cache computed the first time it saw the host.
  */
 @Service
 public class ExpressionExtractionServiceImpl implements ExpressionExtractionService {
@@ -38,6 +53,16 @@ public class ExpressionExtractionServiceImpl implements ExpressionExtractionServ
 
     private static final int MAX_PATH_COMBINATIONS = 6;
 
+    private static final ThreadLocal<ParsedUrl> PARSED_URL = ThreadLocal.withInitial(ParsedUrl::new);
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final HostCache hostCache;
+
+    public ExpressionExtractionServiceImpl(ObjectProvider<HostCache> hostCache) {
+        this.hostCache = hostCache.getIfAvailable();
+    }
+
     /**
      * Extracts all possible host-suffix and path-prefix expressions
      * for the input URL {@code String}.
@@ -49,109 +74,311 @@ public class ExpressionExtractionServiceImpl implements ExpressionExtractionServ
      */
     @Override
     public Set<String> extractExpressions(String url) {
-        UrlComponents urlComponents = UrlUtils.split(url);
-
-        if (urlComponents == null) {
+        if (StringUtils.isBlank(url)) {
             return Collections.emptySet();
         }
 
-        Set<String> urls = new HashSet<>();
-
-        String host = urlComponents.getHost();
-        String path = urlComponents.getPath();
-        String query = urlComponents.getQuery();
+        ParsedUrl parsedUrl = PARSED_URL.get();
+        try {
+            return parsedUrl.parse(url) ? extractExpressions(parsedUrl) : Collections.emptySet();
+        } finally {
+            parsedUrl.release();
+        }
+    }
 
-        Set<String> hostSuffixExpressions = extractHostSuffixExpressions(host);
-        Set<String> pathPrefixExpressions = extractPathPrefixExpressions(path, query);
+    /**
+     * Extracts all possible host-suffix and path-prefix expressions
+     * for an already parsed URL.
+     *
+     * @param url {@code ParsedUrl} to extract expressions for
+     * @return {@code Set} of all possible host-suffix and
+     *     path-prefix expressions
+     */
+    @Override
+    public Set<String> extractExpressions(ParsedUrl url) {
+        Set<String> expressions = new HashSet<>();
 
-        for (String hostSuffix : hostSuffixExpressions) {
-            for (String pathPrefix : pathPrefixExpressions) {
-                urls.add(hostSuffix + pathPrefix);
-            }
-        }
+        forEachExpression(
+                url,
+                (expression, hostLength, length) ->
+                        expressions.add(
+                                new String(expression, 0, length, StandardCharsets.UTF_8)));
 
-        return urls;
+        return expressions;
     }
 
     /**
-     * Extracts all possible host-suffix expressions, which are at most five.
-     * They are:
-     *
-     * <ul>
-     *   <li>The exact hostname in the URL
-     *   <li>Up to four hostnames formed by starting with the last five
-     *       components and successively removing the leading component.
-     *       The top-level domain can be skipped. These additional hostnames
-     *       should not be checked if the host is an IP address
-     * </ul>
+     * Visits every distinct host-suffix and path-prefix expression of an
+     * already parsed URL. The expressions of each host suffix are visited
+     * one after the other.
      *
-     * @param host host {@code String} to extract expressions for
-     * @return {@code Set} of host-suffix expressions
+     * @param url {@code ParsedUrl} to extract expressions for
+     * @param visitor {@code ExpressionVisitor} to visit each expression with
+     * @return number of expressions visited
      */
-    private Set<String> extractHostSuffixExpressions(String host) {
-        Set<String> suffixExpressions = new HashSet<>();
-        suffixExpressions.add(host);
+    @Override
+    public int forEachExpression(ParsedUrl url, ExpressionVisitor visitor) {
+        Workspace workspace = WORKSPACE.get();
+        try {
+            workspace.extractHostSuffixes(url, hostCache);
+            workspace.extractPathPrefixes(url);
 
-        if (!IpUtils.isIpAddress(host)) {
-            String[] hostArray = host.split("\\.");
-            StringBuilder builder = new StringBuilder();
+            return workspace.visit(visitor);
+        } finally {
+            workspace.release();
+        }
+    }
+
+    /**
+     * Per-thread scratch space, holding the UTF-8 encoded host, path and query
+     * of the URL, the host suffixes and path prefixes, and the expression buffer.
+     */
+    private static final class Workspace {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+        private byte[] host = new byte[INITIAL_CAPACITY];
+        private int hostLength;
+
+        private final int[] suffixStarts = new int[MAX_HOST_COMBINATIONS];
+        private int suffixCount;
+
+        private byte[] pathQuery = new byte[INITIAL_CAPACITY];
+
+        private byte[] components = new byte[INITIAL_CAPACITY];
 
-            int start = (hostArray.length <= MAX_HOST_COMBINATIONS
-                            ? 1
-                            : hostArray.length - MAX_HOST_COMBINATIONS);
-            int end = hostArray.length;
+        private final byte[][] prefixSources = new byte[MAX_PATH_COMBINATIONS + 3][];
+        private final int[] prefixLengths = new int[MAX_PATH_COMBINATIONS + 3];
+        private int prefixCount;
 
-            for (int i = start; i < end - 1; i++) {
-                builder.setLength(0);
+        private byte[] expression = new byte[INITIAL_CAPACITY];
 
-                for (int j = i; j < end; j++) {
-                    builder.append(hostArray[j]).append(".");
+        private HostCache.Entry hostEntry;
+
+        /**
+         * Extracts all possible host-suffix expressions, which are at most five.
+         * They are:
+         *
+         * <ul>
+         *   <li>The exact hostname in the URL
+         *   <li>Up to four hostnames formed by starting with the last five
+         *       components and successively removing the leading component.
+         *       The top-level domain can be skipped. These additional hostnames
+         *       should not be checked if the host is an IP address
+         * </ul>
+         *
+         * <p>A host held by the host cache is not encoded nor scanned again.
+         */
+        void extractHostSuffixes(ParsedUrl url, HostCache hostCache) {
+            if (hostCache != null) {
+                hostEntry = hostCache.get(url.getChars(), url.getHostStart(), url.getHostEnd());
+                if (hostEntry != null) {
+                    return;
                 }
+            }
+
+            host = encode(url, url.getHostStart(), url.getHostEnd(), host, 0);
+            hostLength = encodedLength;
+
+            suffixStarts[0] = 0;
+            suffixCount = 1;
+
+            if (!url.isIpAddress()) {
+                int dots = 0;
 
-                suffixExpressions.add(StringUtils.chop(builder.toString()));
+                // each dot from the second last one onwards starts a suffix of one more component
+                for (int i = hostLength - 1; i > 0 && dots < MAX_HOST_COMBINATIONS; i--) {
+                    if (host[i] == '.' && ++dots > 1) {
+                        suffixStarts[suffixCount++] = i + 1;
+                    }
+                }
+            }
+
+            if (hostCache != null) {
+                hostEntry =
+                        hostCache.put(
+                                url.getChars(),
+                                url.getHostStart(),
+                                url.getHostEnd(),
+                                host,
+                                hostLength,
+                                suffixStarts,
+                                suffixCount);
             }
         }
-        return suffixExpressions;
-    }
 
-    /**
-     * Extracts all possible path-prefix expressions, which are at most six.
-     * They are:
-     *
-     * <ul>
-     *   <li>The exact path of the URL, including query parameters
-     *   <li>The exact path of the URL, without query parameters
-     *   <li>The four paths formed by starting at the root "(/)"
-     *       and successively appending path components,
-     *       including a trailing slash
-     * </ul>
-     *
-     * @param path path {@code String} to extract expressions for
-     * @param query query {@code String}
-     * @return {@code Set} of path-prefix expressions
-     */
-    private Set<String> extractPathPrefixExpressions(String path, String query) {
-        Set<String> prefixExpression = new HashSet<>();
+        /**
+         * Extracts all possible path-prefix expressions, which are at most six.
+         * They are:
+         *
+         * <ul>
+         *   <li>The exact path of the URL, including query parameters
+         *   <li>The exact path of the URL, without query parameters
+         *   <li>The four paths formed by starting at the root "(/)"
+         *       and successively appending path components,
+         *       including a trailing slash
+         * </ul>
+         *
+         * <p>A URL without a path is treated as if its path was the root.
+         */
+        void extractPathPrefixes(ParsedUrl url) {
+            int pathStart = url.getPathStart();
+            int pathEnd = url.getPathEnd();
+            int pathLength;
+
+            if (url.hasPath()) {
+                pathQuery = encode(url, pathStart, pathEnd, pathQuery, 0);
+                pathLength = encodedLength;
+            } else {
+                pathQuery[0] = '/';
+                pathLength = 1;
+            }
+            pathQuery = encode(url, pathEnd, url.getLength(), pathQuery, pathLength);
+            int pathQueryLength = encodedLength;
+
+            prefixCount = 0;
+            if (url.hasQuery()) {
+                addPrefix(pathQuery, pathQueryLength);
+            }
+            addPrefix(pathQuery, pathLength);
+            addPrefix(pathQuery, 1);
+
+            int maxExpressions = url.hasQuery() ? MAX_PATH_COMBINATIONS : MAX_PATH_COMBINATIONS - 1;
+
+            // trailing slashes do not start another component
+            while (pathLength > 0 && pathQuery[pathLength - 1] == '/') {
+                pathLength--;
+            }
+
+            int length = 0;
+            int componentStart = 0;
+
+            for (int i = 0; i < maxExpressions && componentStart <= pathLength && pathLength > 0; i++) {
+                boolean hasDot = false;
+                int componentEnd = componentStart;
+
+                while (componentEnd < pathLength && pathQuery[componentEnd] != '/') {
+                    hasDot |= pathQuery[componentEnd] == '.';
+                    componentEnd++;
+                }
 
-        if (query != null) {
-            prefixExpression.add(path + query);
+                components = ensureCapacity(components, length + componentEnd - componentStart + 1);
+                System.arraycopy(
+                        pathQuery, componentStart, components, length, componentEnd - componentStart);
+                length += componentEnd - componentStart;
+
+                if (!hasDot) {
+                    components[length++] = '/';
+                }
+                addPrefix(components, length);
+
+                componentStart = componentEnd + 1;
+            }
         }
-        prefixExpression.add(path);
-        prefixExpression.add("/");
 
-        int maxExpressions = (query == null ? MAX_PATH_COMBINATIONS - 1 : MAX_PATH_COMBINATIONS);
+        /**
+         * Visits the expressions of every host suffix and path prefix. The
+         * path prefix of length one is {@code /}, so with a cached host its
+         * expressions are visited along with their digest.
+         */
+        int visit(ExpressionVisitor visitor) {
+            byte[] hostSource = hostEntry != null ? hostEntry.getHost() : host;
+            int hostSourceLength = hostEntry != null ? hostSource.length : hostLength;
+            int suffixes = hostEntry != null ? hostEntry.getSuffixCount() : suffixCount;
+            int count = 0;
 
-        StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < suffixes; i++) {
+                int suffixStart = hostEntry != null ? hostEntry.getSuffixStart(i) : suffixStarts[i];
+                int suffixLength = hostSourceLength - suffixStart;
 
-        String[] pathArray = path.split("/");
+                for (int j = 0; j < prefixCount; j++) {
+                    int length = suffixLength + prefixLengths[j];
 
-        int upperBound = Math.min(pathArray.length, maxExpressions);
+                    expression = ensureCapacity(expression, length);
+                    System.arraycopy(hostSource, suffixStart, expression, 0, suffixLength);
+                    System.arraycopy(
+                            prefixSources[j], 0, expression, suffixLength, prefixLengths[j]);
 
-        for (int i = 0; i < upperBound; i++) {
-            builder.append(pathArray[i]).append(!pathArray[i].contains(".") ? "/" : "");
-            prefixExpression.add(builder.toString());
+                    if (hostEntry != null && prefixLengths[j] == 1) {
+                        visitor.visit(expression, suffixLength, length, hostEntry.getDigest(i));
+                    } else {
+                        visitor.visit(expression, suffixLength, length);
+                    }
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Adds a path prefix, unless the same bytes were already added. The
+         * {@code components} array is only appended to, so prefixes pointing
+         * into it remain valid.
+         */
+        private void addPrefix(byte[] source, int length) {
+            for (int i = 0; i < prefixCount; i++) {
+                if (prefixLengths[i] == length
+                        && Arrays.equals(prefixSources[i], 0, length, source, 0, length)) {
+                    return;
+                }
+            }
+            prefixSources[prefixCount] = source;
+            prefixLengths[prefixCount++] = length;
         }
 
-        return prefixExpression;
+        private int encodedLength;
+
+        /**
+         * UTF-8 encodes a range of the URL into {@code target} at {@code offset}, growing it
+         * when needed, and leaves the end of the encoded bytes in {@code encodedLength}.
+         */
+        private byte[] encode(ParsedUrl url, int start, int end, byte[] target, int offset) {
+            char[] chars = url.getChars();
+            target = ensureCapacity(target, offset + end - start);
+
+            for (int i = start; i < end; i++) {
+                char ch = chars[i];
+
+                if (ch >= 0x80) {
+                    byte[] bytes = new String(chars, i, end - i).getBytes(StandardCharsets.UTF_8);
+                    target = ensureCapacity(target, offset + bytes.length);
+                    System.arraycopy(bytes, 0, target, offset, bytes.length);
+                    encodedLength = offset + bytes.length;
+                    return target;
+                }
+                target[offset++] = (byte) ch;
+            }
+            encodedLength = offset;
+            return target;
+        }
+
+        /**
+         * Drops buffers which grew too large while processing an unusually long URL,
+         * so that a single request does not pin memory to the thread.
+         */
+        void release() {
+            if (host.length > MAX_RETAINED_CAPACITY) {
+                host = new byte[INITIAL_CAPACITY];
+            }
+            if (pathQuery.length > MAX_RETAINED_CAPACITY) {
+                pathQuery = new byte[INITIAL_CAPACITY];
+            }
+            if (components.length > MAX_RETAINED_CAPACITY) {
+                components = new byte[INITIAL_CAPACITY];
+            }
+            if (expression.length > MAX_RETAINED_CAPACITY) {
+                expression = new byte[INITIAL_CAPACITY];
+            }
+            Arrays.fill(prefixSources, null);
+            hostEntry = null;
+        }
+
+        private static byte[] ensureCapacity(byte[] array, int capacity) {
+            return array.length < capacity
+                    ? Arrays.copyOf(array, Math.max(capacity, array.length * 2))
+                    : array;
+        }
     }
 }
@@ -1,10 +1,20 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
 import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.HashPrefix;
 import eu.mackatozis.hashing.urls.service.HashComputationService;
+import eu.mackatozis.hashing.urls.util.DigestCache;
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import eu.mackatozis.hashing.urls.util.Sha256Backend;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
 /**
  * <pre>
  * This class deals with computing hash prefixes of all the possible
@@ -22,11 +32,46 @@ import org.springframework.stereotype.Service;
  *
  * It also computed the full hash for the given URL host-suffix and
  * path-prefix expression.
+ *
+ * The binary variants digest into a caller-supplied array using a
+ * per-thread, reused {@code MessageDigest} and represent hash prefixes
+ * as views on that array, so no hexadecimal {@code String}s are created.
+ *
+ * When {@code hashing-urls.digest-cache.enabled=true}, the binary digests of
+ * expressions are cached across URLs and requests. Host-suffix expressions
+ * without a path recur in every URL of their host, so they are given a head
+ * start against eviction and are in practice hashed once per crawl.
+ *
+ * Digests are computed by the {@link Sha256Backend} selected by
+ * {@code hashing-urls.hashing.backend}. Batches of expressions are handed to
+ * the backend as a whole, so that it can hash several of them in lockstep.
  * </pre>
  */
 @Service
 public class HashComputationServiceImpl implements HashComputationService {
 
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST =
+            ThreadLocal.withInitial(DigestUtils::getSha256Digest);
+
+    private static final ThreadLocal<byte[]> EXPRESSION_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[256]);
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 16 * 1024;
+
+    private static final int EXPRESSION_FREQUENCY = 1;
+
+    private static final int HOST_EXPRESSION_FREQUENCY = 8;
+
+    private final DigestCache expressionDigestCache;
+
+    private final Sha256Backend sha256Backend;
+
+    public HashComputationServiceImpl(
+            ObjectProvider<DigestCache> expressionDigestCache, Sha256Backend sha256Backend) {
+        this.expressionDigestCache = expressionDigestCache.getIfAvailable();
+        this.sha256Backend = sha256Backend;
+    }
+
     /**
      * Computes the SHA256 hash prefix by the most significant [4-32] bytes
      * of the input SHA256-formatted hash {@code String}.
@@ -55,6 +100,187 @@ public class HashComputationServiceImpl implements HashComputationService {
      */
     @Override
     public String computeSha256Hash(String expression) {
-        return DigestUtils.sha256Hex(expression);
+        byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+        digest(expression, digest);
+        return HexUtils.encode(digest, digest.length);
+    }
+
+    /**
+     * Creates a view on the most significant [4-32] bytes of the input
+     * SHA256 digest. The digest is not copied.
+     *
+     * @param sha256digest digest to compute prefix for
+     * @param prefixSize the number of bytes
+     * @return SHA256 hash prefix view
+     */
+    @Override
+    public HashPrefix computeSha256HashPrefix(byte[] sha256digest, int prefixSize) {
+        if (prefixSize >= HashPrefixLength.MIN_HASH_PREFIX_LENGTH
+                && prefixSize <= HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            return new HashPrefix(sha256digest, prefixSize);
+        } else {
+            throw new IllegalArgumentException(
+                    "Prefix size of a hash prefix should be between 4 and 32 bytes");
+        }
+    }
+
+    /**
+     * Computes the full-length SHA256 digest of the UTF-8 encoded
+     * input expression {@code String} into the supplied array, or copies
+     * it from the digest cache when it is enabled and holds the expression.
+     *
+     * @param expression expression to compute full-length hash for
+     * @param digest array of at least {@link HashPrefixLength#MAX_HASH_PREFIX_LENGTH}
+     *     bytes that receives the digest
+     */
+    @Override
+    public void computeSha256Hash(String expression, byte[] digest) {
+        if (digest.length < HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Digest array should be at least 32 bytes long");
+        }
+
+        if (expressionDigestCache == null) {
+            digest(expression, digest);
+        } else if (!expressionDigestCache.get(expression, digest)) {
+            digest(expression, digest);
+            expressionDigestCache.put(
+                    expression,
+                    digest,
+                    expression.indexOf('/') == expression.length() - 1
+                            ? HOST_EXPRESSION_FREQUENCY
+                            : EXPRESSION_FREQUENCY);
+        }
+    }
+
+    /**
+     * Computes the full-length SHA256 digest of the remaining bytes of the
+     * input buffer into the supplied array. The position of the buffer is
+     * not changed. Buffers without an accessible array, such as direct ones,
+     * are hashed with the {@code MessageDigest} of commons-codec.
+     *
+     * @param data bytes to compute full-length hash for
+     * @param digest array of at least {@link HashPrefixLength#MAX_HASH_PREFIX_LENGTH}
+     *     bytes that receives the digest
+     */
+    @Override
+    public void computeSha256Hash(ByteBuffer data, byte[] digest) {
+        if (digest.length < HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Digest array should be at least 32 bytes long");
+        }
+
+        if (data.hasArray()) {
+            sha256Backend.digest(
+                    data.array(), data.arrayOffset() + data.position(), data.remaining(), digest);
+            return;
+        }
+
+        MessageDigest messageDigest = SHA256_DIGEST.get();
+        messageDigest.update(data.duplicate());
+        finish(messageDigest, digest);
+    }
+
+    /**
+     * Computes the full-length SHA256 digest of a range of UTF-8 encoded
+     * expression bytes into the supplied array, or copies it from the digest
+     * cache when it is enabled and holds the expression. The bytes are only
+     * decoded into a {@code String} when the digest cache is enabled.
+     *
+     * @param expression array holding the UTF-8 encoded expression
+     * @param offset index of the first byte of the expression
+     * @param length number of bytes of the expression
+     * @param digest array of at least {@link HashPrefixLength#MAX_HASH_PREFIX_LENGTH}
+     *     bytes that receives the digest
+     */
+    @Override
+    public void computeSha256Hash(byte[] expression, int offset, int length, byte[] digest) {
+        if (digest.length < HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Digest array should be at least 32 bytes long");
+        }
+
+        if (expressionDigestCache == null) {
+            sha256Backend.digest(expression, offset, length, digest);
+            return;
+        }
+
+        String key = new String(expression, offset, length, StandardCharsets.UTF_8);
+        if (!expressionDigestCache.get(key, digest)) {
+            sha256Backend.digest(expression, offset, length, digest);
+            expressionDigestCache.put(
+                    key,
+                    digest,
+                    key.indexOf('/') == key.length() - 1
+                            ? HOST_EXPRESSION_FREQUENCY
+                            : EXPRESSION_FREQUENCY);
+        }
+    }
+
+    /**
+     * Computes the full-length SHA256 digests of several ranges of UTF-8
+     * encoded expression bytes into the supplied arrays. Without the digest
+     * cache, the whole batch is handed to the SHA256 backend at once.
+     *
+     * @param expressions array holding the UTF-8 encoded expressions
+     * @param offsets index of the first byte of each expression
+     * @param lengths number of bytes of each expression
+     * @param count number of expressions
+     * @param digests arrays of at least {@link HashPrefixLength#MAX_HASH_PREFIX_LENGTH}
+     *     bytes that receive the digest of each expression
+     */
+    @Override
+    public void computeSha256Hashes(
+            byte[] expressions, int[] offsets, int[] lengths, int count, byte[][] digests) {
+        for (int i = 0; i < count; i++) {
+            if (digests[i].length < HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+                throw new IllegalArgumentException(
+                        "Digest array should be at least 32 bytes long");
+            }
+        }
+
+        if (expressionDigestCache == null) {
+            sha256Backend.digest(expressions, offsets, lengths, count, digests);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            computeSha256Hash(expressions, offsets[i], lengths[i], digests[i]);
+        }
+    }
+
+    private void digest(String expression, byte[] digest) {
+        int length = expression.length();
+        byte[] buffer = EXPRESSION_BUFFER.get();
+
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+            if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+                EXPRESSION_BUFFER.set(buffer);
+            }
+        }
+
+        boolean isAscii = true;
+        for (int i = 0; i < length && isAscii; i++) {
+            char ch = expression.charAt(i);
+            buffer[i] = (byte) ch;
+            isAscii = ch < 0x80;
+        }
+
+        if (isAscii) {
+            sha256Backend.digest(buffer, 0, length, digest);
+        } else {
+            byte[] bytes = expression.getBytes(StandardCharsets.UTF_8);
+            sha256Backend.digest(bytes, 0, bytes.length, digest);
+        }
+    }
+
+    private static void finish(MessageDigest messageDigest, byte[] digest) {
+        try {
+            messageDigest.digest(digest, 0, HashPrefixLength.MAX_HASH_PREFIX_LENGTH);
+        } catch (DigestException e) {
+            messageDigest.reset();
+            throw new IllegalStateException("Could not compute SHA256 digest", e);
+        }
     }
 }
@@ -0,0 +1,72 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixMatch;
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import eu.mackatozis.hashing.urls.service.PrefixMatchService;
+import eu.mackatozis.hashing.urls.service.ThreatListService;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import eu.mackatozis.hashing.urls.util.PrefixStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class deals with matching all the possible host-suffix and path-prefix
+ * expressions of a URL {@code String} against the hash prefixes of the local
+ * threat list.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "hashing-urls.prefix-store.path")
+public class PrefixMatchServiceImpl implements PrefixMatchService {
+
+    private final UrlHashPrefixesService urlHashPrefixesService;
+
+    private final ThreatListService threatListService;
+
+    /**
+     * Finds the expressions of the input URL {@code String} whose full-length
+     * hash starts with a hash prefix of the threat list. A match only means
+     * that the URL may be unsafe; the full hashes of the matching prefixes have
+     * to be looked up to confirm it.
+     *
+     * @param url URL {@code String} to match
+     * @return matching expressions and their hash prefixes
+     * @throws MalformedURLException when supplied URL {@code String} is
+     *         a malformed URL
+     */
+    @Override
+    public UrlPrefixMatches findUrlPrefixMatches(String url) throws MalformedURLException {
+        List<PrefixMatch> matches = new ArrayList<>();
+        PrefixStore prefixStore = threatListService.getPrefixStore();
+        byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+
+        for (ExpressionHashes expressionHashes :
+                urlHashPrefixesService.findUrlHashPrefixes(url).getExpressionHashes()) {
+            expressionHashes.getDigest(digest);
+            int prefixLength = prefixStore.match(digest);
+
+            if (prefixLength > 0) {
+                matches.add(
+                        PrefixMatch.builder()
+                                .expression(expressionHashes.getExpression())
+                                .hashPrefix(HexUtils.encode(digest, prefixLength))
+                                .fullHash(expressionHashes.getFullHash())
+                                .build());
+            }
+        }
+
+        return UrlPrefixMatches.builder()
+                .url(url)
+                .match(!matches.isEmpty())
+                .matches(matches)
+                .build();
+    }
+}
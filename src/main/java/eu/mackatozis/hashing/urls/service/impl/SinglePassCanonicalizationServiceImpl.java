@@ -0,0 +1,639 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.config.UrlLimitsProperties;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException.Limit;
+import eu.mackatozis.hashing.urls.util.CanonicalizationEvent;
+import eu.mackatozis.hashing.urls.util.IpUtils;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
+import eu.mackatozis.hashing.urls.util.UrlUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.net.MalformedURLException;
+
+/**
+ * <pre>
+ * Regex-free implementation of {@link CanonicalizationService} that produces
+ * the same output as {@link CanonicalizationServiceImpl}:
+ *
+ * {@code scheme://hostname/path}
+ *
+ * Instead of chaining regular expressions, the URL is processed by a small,
+ * constant number of hand-written scans over a per-thread, reusable char buffer:
+ *
+ * 1. tabs and CR/LF are skipped, the fragment is cut off and percent-escapes
+ *    are repeatedly decoded, all while copying the input into the buffer
+ * 2. the buffer is split into scheme, host, port, path and query
+ * 3. the host and the path are canonicalized in place
+ * 4. the result is percent-encoded while being copied into the output
+ *
+ * It is selected by setting {@code hashing-urls.canonicalization.engine}
+ * to {@code single-pass}. A URL that takes longer than a threshold to
+ * canonicalize is recorded as a {@link CanonicalizationEvent}.
+ *
+ * Every scan is linear in the length of the URL. When
+ * {@code hashing-urls.limits.enabled=true}, URLs that are longer than
+ * {@code max-url-length}, or nest percent-escapes deeper than
+ * {@code max-decode-iterations}, are rejected with a
+ * {@link UrlLimitExceededException}, as they are by the regex engine.
+ * </pre>
+ */
+@Service
+@ConditionalOnProperty(name = "hashing-urls.canonicalization.engine", havingValue = "single-pass")
+public class SinglePassCanonicalizationServiceImpl implements CanonicalizationService {
+
+    private static final String HTTP_SCHEME = "http://";
+
+    private static final String HTTPS_SCHEME = "https://";
+
+    private static final String ENGINE = "single-pass";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final int MAX_IP_ADDRESS_LENGTH = "255.255.255.255".length();
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final int maxUrlLength;
+
+    private final int maxDecodeIterations;
+
+    public SinglePassCanonicalizationServiceImpl(
+            PipelineMetrics pipelineMetrics, UrlLimitsProperties urlLimitsProperties) {
+        this.pipelineMetrics = pipelineMetrics;
+        this.maxUrlLength = urlLimitsProperties.getEffectiveMaxUrlLength();
+        this.maxDecodeIterations = urlLimitsProperties.getEffectiveMaxDecodeIterations();
+    }
+
+    /**
+     * Canonicalizes the input URL {@code String}.
+     *
+     * @param url URL {@code String} to canonicalize
+     * @return canonicalized URL {@code String} if canonicalized successfully;
+     * {@code null} otherwise
+     * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
+     */
+    @Override
+    public String canonicalizeUrl(String url) throws MalformedURLException {
+        if (StringUtils.isBlank(url)) {
+            return null;
+        }
+
+        Workspace workspace = WORKSPACE.get();
+        try {
+            return canonicalize(url, workspace).toString();
+        } finally {
+            workspace.release();
+        }
+    }
+
+    /**
+     * Canonicalizes the input URL {@code String} into a reusable {@link ParsedUrl},
+     * straight from the output buffer, without creating the canonical URL {@code String}.
+     *
+     * @param url URL {@code String} to canonicalize
+     * @param parsedUrl {@code ParsedUrl} to parse the canonical URL into
+     * @return {@code parsedUrl} holding the canonical URL; {@code null} if the
+     *     URL {@code String} is empty
+     * @throws MalformedURLException when supplied URL {@code String} is a malformed URL
+     */
+    @Override
+    public ParsedUrl canonicalizeUrl(String url, ParsedUrl parsedUrl)
+            throws MalformedURLException {
+        if (StringUtils.isBlank(url)) {
+            return null;
+        }
+
+        Workspace workspace = WORKSPACE.get();
+        try {
+            CharSequence canonicalUrl = canonicalize(url, workspace);
+
+            if (!parsedUrl.parse(canonicalUrl)) {
+                throw new MalformedURLException("Could not parse canonical url " + canonicalUrl);
+            }
+            return parsedUrl;
+        } finally {
+            workspace.release();
+        }
+    }
+
+    private CharSequence canonicalize(String url, Workspace workspace)
+            throws MalformedURLException {
+        if (url.length() > maxUrlLength) {
+            throw new UrlLimitExceededException(Limit.URL_LENGTH, maxUrlLength);
+        }
+
+        CanonicalizationEvent event = new CanonicalizationEvent();
+        event.begin();
+
+        CharSequence canonicalUrl = null;
+        try {
+            canonicalUrl = canonicalize(url, workspace, event);
+            return canonicalUrl;
+        } catch (UrlLimitExceededException e) {
+            event.setLimitExceeded(e.getLimit().name());
+            throw e;
+        } finally {
+            event.complete(ENGINE, url, canonicalUrl);
+        }
+    }
+
+    private CharSequence canonicalize(
+            String url, Workspace workspace, CanonicalizationEvent event)
+            throws MalformedURLException {
+        int start = 0;
+        int end = url.length();
+
+        while (start < end && url.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && url.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        boolean hasScheme = url.regionMatches(true, start, HTTP_SCHEME, 0, HTTP_SCHEME.length())
+                || url.regionMatches(true, start, HTTPS_SCHEME, 0, HTTPS_SCHEME.length());
+
+        if (!isAscii(url, start, end)) {
+            String input = url.substring(start, end);
+            url = UrlUtils.convertAuthorityToAscii(hasScheme ? input : HTTP_SCHEME + input);
+            pipelineMetrics.recordIdnConversion();
+            start = 0;
+            end = url.length();
+            hasScheme = true;
+        }
+
+        int decodes = workspace.decode(url, start, end, !hasScheme, maxDecodeIterations);
+        event.setPercentDecodes(decodes);
+        pipelineMetrics.recordPercentDecodes(decodes);
+
+        if (!workspace.split()) {
+            throw new MalformedURLException(
+                    "Could not normalize url " + workspace.bufferToString());
+        }
+
+        if (workspace.canonicalizeHost()) {
+            pipelineMetrics.recordIpLiteral();
+        }
+        workspace.canonicalizePath();
+
+        return workspace.encode();
+    }
+
+    private static boolean isAscii(String url, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (url.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hexValue(char ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        } else if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        } else if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char ch) {
+        return (ch >= 'a' && ch <= 'z')
+                || (ch >= 'A' && ch <= 'Z')
+                || (ch >= '0' && ch <= '9')
+                || ch == '_';
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    /**
+     * Per-thread scratch space. Offsets of the URL components point into {@code buffer},
+     * while the canonicalized host and path are kept in their own arrays.
+     */
+    private static final class Workspace {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+
+        private char[] buffer = new char[INITIAL_CAPACITY];
+        private int length;
+
+        private char[] host = new char[INITIAL_CAPACITY];
+        private int hostLength;
+
+        private char[] path = new char[INITIAL_CAPACITY];
+        private int pathLength;
+
+        private int hostStart;
+        private int hostEnd;
+        private int portStart;
+        private int portEnd;
+        private int pathStart;
+        private int pathEnd;
+        private boolean hasPath;
+        private boolean hasQuery;
+
+        private int[] depths = new int[0];
+
+        private final StringBuilder output = new StringBuilder(INITIAL_CAPACITY);
+
+        /**
+         * Copies {@code url[start, end)} into the buffer, skipping tabs and CR/LF characters,
+         * stopping at the fragment and decoding percent-escapes on the fly. Whenever the tail
+         * of the buffer forms an escape it is replaced by the decoded character, which may in
+         * turn complete another escape, so the result contains no percent-escapes at all.
+         *
+         * <p>Unless {@code maxDepth} is unlimited, the depth of every buffered character is
+         * tracked alongside it: 0 for an input character and one more than the deepest of its
+         * escape for a decoded one, which is the number of passes a decoder that decodes one
+         * level of escapes per pass would need.
+         *
+         * @return the number of percent-escapes decoded
+         * @throws UrlLimitExceededException when escapes are nested deeper than {@code maxDepth}
+         */
+        int decode(String url, int start, int end, boolean prependScheme, int maxDepth) {
+            ensureCapacity(end - start + HTTPS_SCHEME.length() + 1);
+            length = 0;
+            int decodes = 0;
+
+            boolean isLimited = maxDepth != Integer.MAX_VALUE;
+            if (isLimited && depths.length < buffer.length) {
+                depths = new int[buffer.length];
+            }
+
+            if (prependScheme) {
+                HTTP_SCHEME.getChars(0, HTTP_SCHEME.length(), buffer, 0);
+                length = HTTP_SCHEME.length();
+            }
+
+            for (int i = start; i < end; i++) {
+                char ch = url.charAt(i);
+
+                if (ch == '#') {
+                    break;
+                } else if (ch == '\t' || ch == '\r' || ch == '\n') {
+                    continue;
+                }
+
+                if (isLimited) {
+                    depths[length] = 0;
+                }
+                buffer[length++] = ch;
+
+                while (length >= 3 && buffer[length - 3] == '%') {
+                    int high = hexValue(buffer[length - 2]);
+                    int low = hexValue(buffer[length - 1]);
+
+                    if (high < 0 || low < 0) {
+                        break;
+                    }
+
+                    int decoded = (high << 4) | low;
+                    length -= 3;
+
+                    if (isLimited) {
+                        int depth =
+                                1 + Math.max(
+                                        depths[length],
+                                        Math.max(depths[length + 1], depths[length + 2]));
+
+                        if (depth > maxDepth) {
+                            throw new UrlLimitExceededException(Limit.DECODE_ITERATIONS, maxDepth);
+                        }
+                        depths[length] = depth;
+                    }
+                    // a lone byte above 0x7f is not valid UTF-8 and decodes to the replacement char
+                    buffer[length++] = decoded < 0x80 ? (char) decoded : '\uFFFD';
+                    decodes++;
+                }
+            }
+            return decodes;
+        }
+
+        /**
+         * Splits the buffer into its components, with the same rules as
+         * {@link UrlUtils#split(String)}.
+         *
+         * @return {@code true} if the buffer holds a valid URL; {@code false} otherwise
+         */
+        boolean split() {
+            int start = 0;
+            int end = length;
+
+            while (start < end && buffer[start] <= ' ') {
+                start++;
+            }
+            while (end > start && buffer[end - 1] <= ' ') {
+                end--;
+            }
+
+            int position;
+            if (regionMatches(start, end, HTTP_SCHEME)) {
+                position = start + HTTP_SCHEME.length();
+            } else if (regionMatches(start, end, HTTPS_SCHEME)) {
+                position = start + HTTPS_SCHEME.length();
+            } else {
+                return false;
+            }
+
+            hostStart = position;
+            while (position < end
+                    && buffer[position] != '/'
+                    && buffer[position] != ':'
+                    && buffer[position] != '?') {
+                position++;
+            }
+            hostEnd = position;
+
+            if (hostEnd == hostStart) {
+                return false;
+            }
+
+            portStart = position;
+            if (position < end && buffer[position] == ':') {
+                position++;
+                while (position < end && buffer[position] >= '0' && buffer[position] <= '9') {
+                    position++;
+                }
+                if (position == portStart + 1) {
+                    return false;
+                }
+            }
+            portEnd = position;
+
+            pathStart = position;
+            hasPath = position < end && buffer[position] == '/';
+            if (hasPath) {
+                while (position < end && buffer[position] != '?') {
+                    position++;
+                }
+            }
+            pathEnd = position;
+
+            if (position < end && buffer[position] != '?') {
+                return false;
+            }
+
+            hasQuery = position < end;
+            for (; position < end; position++) {
+                if (isLineTerminator(buffer[position])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Lowercases the host, removes all leading and trailing dots, replaces consecutive
+         * dots with a single dot and normalizes any non-decimal IP address.
+         *
+         * @return {@code true} if the host is an IP address; {@code false} otherwise
+         */
+        boolean canonicalizeHost() {
+            ensureHostCapacity(hostEnd - hostStart);
+            hostLength = 0;
+
+            boolean pendingDot = false;
+            for (int i = hostStart; i < hostEnd; i++) {
+                char ch = buffer[i];
+
+                if (ch == '.') {
+                    pendingDot = hostLength > 0;
+                } else {
+                    if (pendingDot) {
+                        host[hostLength++] = '.';
+                        pendingDot = false;
+                    }
+                    host[hostLength++] = Character.toLowerCase(ch);
+                }
+            }
+
+            long ipAddress = IpUtils.parseIpv4Address(host, 0, hostLength);
+
+            if (ipAddress != IpUtils.NOT_AN_IP_ADDRESS) {
+                ensureHostCapacity(MAX_IP_ADDRESS_LENGTH);
+                hostLength = IpUtils.formatIpv4Address(ipAddress, host, 0);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Replaces {@code /./} with {@code /}, removes {@code /../} along with the preceding
+         * path component and replaces consecutive slashes with a single slash. Each step is a
+         * single left-to-right scan which rewrites the path in place.
+         */
+        void canonicalizePath() {
+            if (!hasPath) {
+                pathLength = 0;
+                return;
+            }
+
+            pathLength = pathEnd - pathStart;
+            ensurePathCapacity(pathLength);
+            System.arraycopy(buffer, pathStart, path, 0, pathLength);
+
+            int read = 0;
+            int write = 0;
+            while (read < pathLength) {
+                if (read + 2 < pathLength
+                        && path[read] == '/'
+                        && path[read + 1] == '.'
+                        && path[read + 2] == '/') {
+                    path[write++] = '/';
+                    read += 3;
+                } else {
+                    path[write++] = path[read++];
+                }
+            }
+            pathLength = write;
+
+            read = 0;
+            write = 0;
+            while (read < pathLength) {
+                int matchEnd = matchParentSegment(read);
+
+                if (matchEnd > 0) {
+                    path[write++] = '/';
+                    read = matchEnd;
+                } else {
+                    path[write++] = path[read++];
+                }
+            }
+            pathLength = write;
+
+            read = 0;
+            write = 0;
+            while (read < pathLength) {
+                char ch = path[read++];
+                path[write++] = ch;
+
+                if (ch == '/') {
+                    while (read < pathLength && path[read] == '/') {
+                        read++;
+                    }
+                }
+            }
+            pathLength = write;
+        }
+
+        /**
+         * Matches {@code /segment/..} optionally followed by a slash at {@code start},
+         * where the segment consists of word characters only.
+         *
+         * @return the end of the match; {@code -1} if there is no match
+         */
+        private int matchParentSegment(int start) {
+            if (path[start] != '/') {
+                return -1;
+            }
+
+            int position = start + 1;
+            while (position < pathLength && isWordChar(path[position])) {
+                position++;
+            }
+
+            if (position == start + 1
+                    || position + 2 >= pathLength
+                    || path[position] != '/'
+                    || path[position + 1] != '.'
+                    || path[position + 2] != '.') {
+                return -1;
+            }
+
+            position += 3;
+            return position < pathLength && path[position] == '/' ? position + 1 : position;
+        }
+
+        /**
+         * Assembles the canonical URL from the scheme, the canonical host, the canonical path
+         * and the remaining query, percent-encoding special characters and converting
+         * {@code \xYY} to {@code %YY} along the way.
+         *
+         * @return the canonical URL, valid until the next call
+         */
+        CharSequence encode() {
+            output.setLength(0);
+
+            encode(buffer, 0, hostStart);
+            encode(host, 0, hostLength);
+            encode(buffer, hostEnd, portStart);
+            encode(buffer, portEnd, pathStart);
+            encode(path, 0, pathLength);
+            encode(buffer, pathEnd, length);
+
+            if (!hasPath && !hasQuery) {
+                output.append('/');
+            }
+
+            return output;
+        }
+
+        private void encode(char[] chars, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char ch = chars[i];
+
+                if (ch == '\\'
+                        && i + 2 < end
+                        && (chars[i + 1] == 'x' || chars[i + 1] == 'X')
+                        && hexValue(chars[i + 2]) >= 0) {
+                    output.append('%');
+                    i++;
+                } else if (ch <= 32 || ch >= 127 || ch == '#' || ch == '%') {
+                    appendEncoded(ch);
+                } else {
+                    output.append(ch);
+                }
+            }
+        }
+
+        private void appendEncoded(char ch) {
+            if (Character.isSurrogate(ch)) {
+                // a lone surrogate can not be encoded as UTF-8 and becomes a question mark
+                appendEscape('?');
+            } else if (ch < 0x80) {
+                appendEscape(ch);
+            } else if (ch < 0x800) {
+                appendEscape(0xc0 | (ch >> 6));
+                appendEscape(0x80 | (ch & 0x3f));
+            } else {
+                appendEscape(0xe0 | (ch >> 12));
+                appendEscape(0x80 | ((ch >> 6) & 0x3f));
+                appendEscape(0x80 | (ch & 0x3f));
+            }
+        }
+
+        private void appendEscape(int value) {
+            output.append('%').append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0xf]);
+        }
+
+        String bufferToString() {
+            return new String(buffer, 0, length);
+        }
+
+        /**
+         * Drops buffers which grew too large while processing an unusually long URL,
+         * so that a single request does not pin memory to the thread.
+         */
+        void release() {
+            if (buffer.length > MAX_RETAINED_CAPACITY) {
+                buffer = new char[INITIAL_CAPACITY];
+            }
+            if (depths.length > MAX_RETAINED_CAPACITY) {
+                depths = new int[0];
+            }
+            if (host.length > MAX_RETAINED_CAPACITY) {
+                host = new char[INITIAL_CAPACITY];
+            }
+            if (path.length > MAX_RETAINED_CAPACITY) {
+                path = new char[INITIAL_CAPACITY];
+            }
+            if (output.capacity() > MAX_RETAINED_CAPACITY) {
+                output.setLength(0);
+                output.trimToSize();
+            }
+        }
+
+        private boolean regionMatches(int start, int end, String prefix) {
+            if (end - start < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (buffer[start + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (buffer.length < capacity) {
+                buffer = new char[Math.max(capacity, buffer.length * 2)];
+            }
+        }
+
+        private void ensureHostCapacity(int capacity) {
+            if (host.length < capacity) {
+                host = new char[Math.max(capacity, host.length * 2)];
+            }
+        }
+
+        private void ensurePathCapacity(int capacity) {
+            if (path.length < capacity) {
+                path = new char[Math.max(capacity, path.length * 2)];
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.config.PrefixStoreProperties;
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.ThreatListDiff;
+import eu.mackatozis.hashing.urls.service.HashComputationService;
+import eu.mackatozis.hashing.urls.service.ThreatListService;
+import eu.mackatozis.hashing.urls.util.FileUtils;
+import eu.mackatozis.hashing.urls.util.HexUtils;
+import eu.mackatozis.hashing.urls.util.PrefixFilter;
+import eu.mackatozis.hashing.urls.util.PrefixStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <pre>
+ * This class deals with holding the current version of the local threat list
+ * and with updating it.
+ *
+ * The current version is a memory-mapped {@code PrefixStore} together with its
+ * version token, which is kept in a file next to the store. An update is applied
+ * to the current version without rebuilding it, its checksum is verified, and it
+ * is written to the store file, which is then mapped and swapped in. Readers
+ * always see a complete version and are never blocked by an update; a reader
+ * that started on the previous version finishes on it.
+ *
+ * Both files are replaced atomically, the store first, and the version file
+ * holds the checksum of the store it belongs to next to the token. A token
+ * whose checksum does not match the store on startup, because the process
+ * stopped between the two writes, is dropped, and so is the token of a
+ * version an update failed to apply to, so that the next update is a reset
+ * rather than one more diff against the wrong base.
+ *
+ * Every version is filtered by a {@code PrefixFilter}, which is kept in a file
+ * next to the store as well, so that it is only rebuilt on startup when it is
+ * missing or older than the store. An update adds the prefixes it adds to the
+ * filter of the previous version instead of rebuilding it; the prefixes it
+ * removes stay in the filter as false positives, until the filter holds a
+ * quarter more keys than it is sized for and is rebuilt.
+ * </pre>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "hashing-urls.prefix-store.path")
+public class ThreatListServiceImpl implements ThreatListService {
+
+    private static final String VERSION_FILE_SUFFIX = ".version";
+
+    private static final String FILTER_FILE_SUFFIX = ".filter";
+
+    private static final int MAX_FILTER_LOAD_PERCENT = 125;
+
+    private final HashComputationService hashComputationService;
+
+    private final Path path;
+
+    private final Path versionPath;
+
+    private final Path filterPath;
+
+    private final int filterBitsPerPrefix;
+
+    private final AtomicReference<Version> current;
+
+    public ThreatListServiceImpl(
+            HashComputationService hashComputationService,
+            PrefixStoreProperties prefixStoreProperties)
+            throws IOException {
+        this.hashComputationService = hashComputationService;
+        this.path = prefixStoreProperties.getPath();
+        this.versionPath = path.resolveSibling(path.getFileName() + VERSION_FILE_SUFFIX);
+        this.filterPath = path.resolveSibling(path.getFileName() + FILTER_FILE_SUFFIX);
+        this.filterBitsPerPrefix = prefixStoreProperties.getFilterBitsPerPrefix();
+        PrefixStore prefixStore = withFilter(PrefixStore.open(path), false);
+        this.current =
+                new AtomicReference<>(new Version(prefixStore, readVersionToken(prefixStore)));
+        log.info(
+                "Loaded threat list with {} prefixes{}",
+                getPrefixStore().size(),
+                describeFilter(getPrefixStore().getFilter()));
+    }
+
+    /**
+     * Returns the current version of the threat list.
+     *
+     * @return hash prefixes of the threat list
+     */
+    @Override
+    public PrefixStore getPrefixStore() {
+        return current.get().prefixStore;
+    }
+
+    /**
+     * Returns the token of the current version of the threat list.
+     *
+     * @return version token; {@code null} if the list was never updated
+     */
+    @Override
+    public String getVersionToken() {
+        return current.get().token;
+    }
+
+    /**
+     * Applies an update to the current version of the threat list and swaps
+     * the result in. Updates are applied one at a time.
+     *
+     * @param diff update of the threat list
+     * @throws IOException when the new version could not be written
+     * @throws IllegalArgumentException when the update does not apply to the
+     *         current version or its checksum does not match the result
+     */
+    @Override
+    public synchronized void applyDiff(ThreatListDiff diff) throws IOException {
+        boolean isReset = diff.getResponseType() == ThreatListDiff.ResponseType.RESET;
+        PrefixStore additions = PrefixStore.ofRawHashes(rawHashes(diff));
+        PrefixStore updated =
+                isReset ? additions : getPrefixStore().applyDiff(removalIndices(diff), additions);
+
+        byte[] checksum = checksum(updated);
+
+        if (diff.getChecksum() == null
+                || !Arrays.equals(checksum, diff.getChecksum().getSha256())) {
+            dropVersionToken();
+            throw new IllegalArgumentException(
+                    "Checksum of threat list version " + diff.getNewVersionToken()
+                            + " does not match, computed "
+                            + HexUtils.encode(checksum, checksum.length));
+        }
+
+        updated.writeTo(path);
+        FileUtils.writeAtomically(
+                versionPath,
+                StandardCharsets.UTF_8.encode(
+                        diff.getNewVersionToken() + '\n'
+                                + HexUtils.encode(checksum, checksum.length) + '\n'));
+
+        PrefixStore prefixStore = PrefixStore.open(path);
+        prefixStore = isReset ? withFilter(prefixStore, true) : withFilter(prefixStore, additions);
+        current.set(new Version(prefixStore, diff.getNewVersionToken()));
+        log.info(
+                "Updated threat list to version {} with {} prefixes{}",
+                diff.getNewVersionToken(),
+                getPrefixStore().size(),
+                describeFilter(getPrefixStore().getFilter()));
+    }
+
+    /**
+     * Reads the version token of the store, unless the version file is
+     * missing or was written for another version of the store.
+     */
+    private String readVersionToken(PrefixStore prefixStore) throws IOException {
+        if (!Files.exists(versionPath)) {
+            return null;
+        }
+
+        String[] lines = Files.readString(versionPath, StandardCharsets.UTF_8).trim().split("\n");
+        byte[] checksum = checksum(prefixStore);
+
+        if (lines.length != 2
+                || !lines[1].trim().equalsIgnoreCase(HexUtils.encode(checksum, checksum.length))) {
+            log.warn("Dropping threat list version token, which does not match the store");
+            Files.delete(versionPath);
+            return null;
+        }
+        return lines[0].trim();
+    }
+
+    /**
+     * Forgets the token of the current version, which an update could not be
+     * applied to, while keeping serving its prefixes.
+     */
+    private void dropVersionToken() throws IOException {
+        Files.deleteIfExists(versionPath);
+        current.set(new Version(current.get().prefixStore, null));
+    }
+
+    private byte[] checksum(PrefixStore prefixStore) {
+        byte[] checksum = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+        hashComputationService.computeSha256Hash(prefixStore.sortedPrefixes(), checksum);
+        return checksum;
+    }
+
+    /**
+     * Filters the store with the filter file when it is up to date, or with
+     * a new filter, which is written to the filter file.
+     */
+    private PrefixStore withFilter(PrefixStore prefixStore, boolean isUpdated)
+            throws IOException {
+        if (filterBitsPerPrefix <= 0) {
+            return prefixStore;
+        }
+
+        if (!isUpdated
+                && Files.exists(filterPath)
+                && Files.getLastModifiedTime(filterPath)
+                                .compareTo(Files.getLastModifiedTime(path))
+                        >= 0) {
+            try {
+                PrefixFilter filter = PrefixFilter.read(filterPath);
+                if (filter.size() >= prefixStore.size()) {
+                    return prefixStore.withFilter(filter);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Rebuilding threat list filter: {}", e.getMessage());
+            }
+        }
+
+        PrefixFilter filter = PrefixFilter.of(prefixStore, filterBitsPerPrefix);
+        filter.writeTo(filterPath);
+        return prefixStore.withFilter(filter);
+    }
+
+    /**
+     * Filters a new version of the store with the filter of the current version
+     * and the prefixes the update adds, unless the filter would then hold more
+     * keys than {@link #MAX_FILTER_LOAD_PERCENT} of its capacity, in which case
+     * it is rebuilt.
+     */
+    private PrefixStore withFilter(PrefixStore prefixStore, PrefixStore additions)
+            throws IOException {
+        PrefixFilter filter = getPrefixStore().getFilter();
+
+        if (filter == null
+                || filterBitsPerPrefix <= 0
+                || (filter.size() + (long) additions.size()) * 100
+                        > filter.capacity(filterBitsPerPrefix) * MAX_FILTER_LOAD_PERCENT) {
+            return withFilter(prefixStore, true);
+        }
+
+        PrefixFilter updated = filter.withKeysOf(additions);
+        updated.writeTo(filterPath);
+        return prefixStore.withFilter(updated);
+    }
+
+    private static String describeFilter(PrefixFilter filter) {
+        return filter != null
+                ? String.format(
+                        ", filter false positive rate %.4f%%", filter.falsePositiveRate() * 100)
+                : "";
+    }
+
+    private static Map<Integer, byte[]> rawHashes(ThreatListDiff diff) {
+        Map<Integer, byte[]> rawHashes = new TreeMap<>();
+
+        if (diff.getAdditions() != null && diff.getAdditions().getRawHashes() != null) {
+            for (ThreatListDiff.RawHashes additions : diff.getAdditions().getRawHashes()) {
+                rawHashes.merge(
+                        additions.getPrefixSize(),
+                        additions.getRawHashes(),
+                        (first, second) -> {
+                            byte[] merged = Arrays.copyOf(first, first.length + second.length);
+                            System.arraycopy(second, 0, merged, first.length, second.length);
+                            return merged;
+                        });
+            }
+        }
+        return rawHashes;
+    }
+
+    private static int[] removalIndices(ThreatListDiff diff) {
+        return diff.getRemovals() != null
+                        && diff.getRemovals().getRawIndices() != null
+                        && diff.getRemovals().getRawIndices().getIndices() != null
+                ? diff.getRemovals().getRawIndices().getIndices()
+                : new int[0];
+    }
+
+    private static final class Version {
+
+        private final PrefixStore prefixStore;
+
+        private final String token;
+
+        private Version(PrefixStore prefixStore, String token) {
+            this.prefixStore = prefixStore;
+            this.token = token;
+        }
+    }
+}
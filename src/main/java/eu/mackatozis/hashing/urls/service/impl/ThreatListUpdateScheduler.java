@@ -0,0 +1,53 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.mackatozis.hashing.urls.config.PrefixStoreProperties;
+import eu.mackatozis.hashing.urls.model.ThreatListDiff;
+import eu.mackatozis.hashing.urls.service.ThreatListService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Polls the update file of the local threat list, which stands in for the
+ * Web Risk {@code computeDiff} API, and applies every update it has not
+ * applied yet.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(
+        name = {"hashing-urls.prefix-store.path", "hashing-urls.prefix-store.diff-path"})
+public class ThreatListUpdateScheduler {
+
+    private final ThreatListService threatListService;
+
+    private final PrefixStoreProperties prefixStoreProperties;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Applies the update file, unless its version has already been applied.
+     * A failed update leaves the current version in place and is retried on
+     * the next check.
+     */
+    @Scheduled(fixedDelayString = "${hashing-urls.prefix-store.update-interval:PT5M}")
+    public void update() {
+        try {
+            ThreatListDiff diff =
+                    objectMapper.readValue(
+                            prefixStoreProperties.getDiffPath().toFile(), ThreatListDiff.class);
+
+            if (!Objects.equals(diff.getNewVersionToken(), threatListService.getVersionToken())) {
+                threatListService.applyDiff(diff);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not update threat list: {}", e.getMessage());
+        }
+    }
+}
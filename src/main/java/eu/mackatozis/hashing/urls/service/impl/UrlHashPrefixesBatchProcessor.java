@@ -0,0 +1,294 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+import eu.mackatozis.hashing.urls.config.BatchProperties;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Runs batches of URLs through the single-URL method of a
+ * {@code UrlHashPrefixesService}, so that every implementation of the
+ * service shares the same batching behaviour.
+ *
+ * <p>Batches of URLs are split into contiguous chunks which are processed
+ * on the batch executor. Each chunk runs through canonicalization, expression
+ * extraction and hashing on a single worker, which keeps the per-thread buffers
+ * of those stages warm, while the work-stealing executor balances the chunks
+ * across workers. Results are always returned in the order of the input.
+ *
+ * <p>Batches can also be processed into a {@link UrlHashPrefixesArena}: every
+ * chunk fills an arena of its own, and the arenas of the chunks are
+ * concatenated in order, without copying their records.
+ *
+ * <p>When a chunk fails, or the calling thread is interrupted, the remaining
+ * chunks of the batch are cancelled cooperatively: they check a flag of the
+ * batch between URLs, since {@code Future.cancel(true)} does not interrupt a
+ * running task of a {@code ForkJoinPool}. A running chunk therefore stops
+ * after at most one more URL, and the URL it is on is never interrupted
+ * halfway.
+ */
+@Component
+@RequiredArgsConstructor
+public class UrlHashPrefixesBatchProcessor {
+
+    private final ExecutorService urlHashPrefixesExecutor;
+
+    private final BatchProperties batchProperties;
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} in parallel.
+     * A URL that could not be processed results in a {@code UrlHashPrefixes}
+     * holding the URL and an error message, instead of failing the batch.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @param service service to find the hash prefixes of a single URL with
+     * @return URL hash prefixes, in the order of the input
+     */
+    public List<UrlHashPrefixes> findUrlHashPrefixes(
+            Collection<String> urls,
+            PrefixLengths prefixLengths,
+            UrlHashPrefixesService service) {
+        List<String> input = urls instanceof List ? (List<String>) urls : new ArrayList<>(urls);
+        int size = input.size();
+        int chunkSize = chunkSize(size);
+
+        if (size <= chunkSize) {
+            return findUrlHashPrefixesChunk(input, prefixLengths, service);
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Future<List<UrlHashPrefixes>>> chunks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            List<String> chunk = input.subList(from, Math.min(size, from + chunkSize));
+            chunks.add(
+                    urlHashPrefixesExecutor.submit(
+                            () -> findUrlHashPrefixesChunk(
+                                    chunk, prefixLengths, service, cancelled)));
+        }
+
+        List<UrlHashPrefixes> results = new ArrayList<>(size);
+        try {
+            for (Future<List<UrlHashPrefixes>> chunk : chunks) {
+                results.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll(chunks, cancelled);
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            cancelAll(chunks, cancelled);
+            throw new CompletionException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} in parallel,
+     * into an arena. A URL that could not be processed results in an error
+     * record, instead of failing the batch.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @param service service to add the record of a single URL with
+     * @return arena holding a record per URL, in the order of the input,
+     *     indexed by the position of the URL in the input; to be closed by the caller
+     */
+    public UrlHashPrefixesArena findUrlHashPrefixesArena(
+            Collection<String> urls, UrlHashPrefixesService service) {
+        List<String> input = urls instanceof List ? (List<String>) urls : new ArrayList<>(urls);
+        int size = input.size();
+        int chunkSize = chunkSize(size);
+
+        if (size <= chunkSize) {
+            return findUrlHashPrefixesArenaChunk(input, 0, service, new AtomicBoolean());
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Future<UrlHashPrefixesArena>> chunks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            int start = from;
+            List<String> chunk = input.subList(from, Math.min(size, from + chunkSize));
+            chunks.add(
+                    urlHashPrefixesExecutor.submit(
+                            () -> findUrlHashPrefixesArenaChunk(chunk, start, service, cancelled)));
+        }
+
+        UrlHashPrefixesArena results = new UrlHashPrefixesArena();
+        int next = 0;
+        try {
+            for (; next < chunks.size(); next++) {
+                try (UrlHashPrefixesArena chunk = chunks.get(next).get()) {
+                    results.addAll(chunk);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeAll(results, chunks, next, cancelled);
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            closeAll(results, chunks, next, cancelled);
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} lazily. The input
+     * is consumed in windows of {@code hashing-urls.batch.window-size} URLs, each
+     * of which is processed in parallel, so that memory stays bounded however long
+     * the stream is.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @param service service to find the hash prefixes of a single URL with
+     * @return URL hash prefixes, in the order of the input
+     */
+    public Stream<UrlHashPrefixes> findUrlHashPrefixes(
+            Stream<String> urls, PrefixLengths prefixLengths, UrlHashPrefixesService service) {
+        return Streams.stream(Iterators.partition(urls.iterator(), batchProperties.getWindowSize()))
+                .flatMap(window -> findUrlHashPrefixes(window, prefixLengths, service).stream())
+                .onClose(urls::close);
+    }
+
+    /**
+     * Splits the batch into a few chunks per worker, so that workers which
+     * finish early can steal from the others, but never into chunks larger
+     * than {@code hashing-urls.batch.max-chunk-size}.
+     */
+    private int chunkSize(int size) {
+        int chunks = batchProperties.getEffectiveParallelism() * 4;
+        int chunkSize = (size + chunks - 1) / chunks;
+
+        return Math.max(1, Math.min(chunkSize, batchProperties.getMaxChunkSize()));
+    }
+
+    /**
+     * Fills the arena of a chunk, unless the batch is cancelled first. The
+     * flag is checked between URLs, and raised by a chunk which fails, so that
+     * the others stop without waiting for the failure to be taken in order.
+     * A chunk which does not complete releases its own arena, since nobody
+     * takes the arena of a cancelled chunk.
+     */
+    private static UrlHashPrefixesArena findUrlHashPrefixesArenaChunk(
+            List<String> urls, int from, UrlHashPrefixesService service, AtomicBoolean cancelled) {
+        UrlHashPrefixesArena arena = new UrlHashPrefixesArena();
+        boolean isFilled = false;
+
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                if (cancelled.get()) {
+                    throw new CancellationException("Batch was cancelled");
+                }
+                service.findUrlHashPrefixes(urls.get(i), from + i, arena);
+            }
+            isFilled = true;
+            return arena;
+        } catch (RuntimeException | Error e) {
+            cancelled.set(true);
+            throw e;
+        } finally {
+            if (!isFilled) {
+                arena.close();
+            }
+        }
+    }
+
+    /**
+     * Stops the chunks which were not taken yet. Chunks which did not start
+     * are cancelled, and running ones stop at their next URL.
+     */
+    private static <T> void cancelAll(List<Future<T>> chunks, AtomicBoolean cancelled) {
+        cancelled.set(true);
+        chunks.forEach(chunk -> chunk.cancel(false));
+    }
+
+    /**
+     * Stops the chunks which were not taken yet and releases their arenas,
+     * so that a failed batch does not hold on to their memory.
+     *
+     * <p>{@code Future.cancel} is no use here: it does not interrupt a task
+     * of a {@code ForkJoinPool} which is already running, and the arena of a
+     * task which completes after being cancelled can no longer be taken. The
+     * chunks are told to stop through the flag instead, and are then joined,
+     * which takes at most the time of one URL per running chunk.
+     */
+    private static void closeAll(
+            UrlHashPrefixesArena results,
+            List<Future<UrlHashPrefixesArena>> chunks,
+            int next,
+            AtomicBoolean cancelled) {
+        cancelled.set(true);
+        results.close();
+
+        boolean isInterrupted = Thread.interrupted();
+        for (int i = next; i < chunks.size(); i++) {
+            while (true) {
+                try {
+                    chunks.get(i).get().close();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    // the chunk failed or stopped, and released its arena itself
+                    break;
+                }
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} on the calling
+     * thread, which is what every chunk of a batch runs, whichever executor or
+     * scheduler it runs on. A URL that could not be processed results in a
+     * {@code UrlHashPrefixes} holding the URL and an error message.
+     *
+     * @param urls URL {@code String}s of the chunk
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @param service service to find the hash prefixes of a single URL with
+     * @return URL hash prefixes, in the order of the input
+     */
+    public static List<UrlHashPrefixes> findUrlHashPrefixesChunk(
+            List<String> urls, PrefixLengths prefixLengths, UrlHashPrefixesService service) {
+        return findUrlHashPrefixesChunk(urls, prefixLengths, service, new AtomicBoolean());
+    }
+
+    private static List<UrlHashPrefixes> findUrlHashPrefixesChunk(
+            List<String> urls,
+            PrefixLengths prefixLengths,
+            UrlHashPrefixesService service,
+            AtomicBoolean cancelled) {
+        List<UrlHashPrefixes> results = new ArrayList<>(urls.size());
+
+        for (String url : urls) {
+            if (cancelled.get()) {
+                throw new CancellationException("Batch was cancelled");
+            }
+            try {
+                results.add(service.findUrlHashPrefixes(url, prefixLengths));
+            } catch (MalformedURLException | RuntimeException e) {
+                results.add(UrlHashPrefixes.error(url, e));
+            }
+        }
+        return results;
+    }
+}
@@ -1,45 +1,81 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
+import eu.mackatozis.hashing.urls.config.UrlLimitsProperties;
 import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
 import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.HashPrefixList;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
 import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
 import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
 import eu.mackatozis.hashing.urls.service.CanonicalizationService;
 import eu.mackatozis.hashing.urls.service.ExpressionExtractionService;
+import eu.mackatozis.hashing.urls.service.ExpressionVisitor;
 import eu.mackatozis.hashing.urls.service.HashComputationService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException.Limit;
+import eu.mackatozis.hashing.urls.util.ExpressionExtractionEvent;
+import eu.mackatozis.hashing.urls.util.HashComputationEvent;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics.Stage;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
 import java.net.MalformedURLException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * This class deals with finding all the possible hash prefixes for all the
  * possible host-suffix and path-prefix expressions of a URL {@code String}.
+ *
+ * <p>Batches of URLs are run through {@link UrlHashPrefixesBatchProcessor},
+ * either into {@code UrlHashPrefixes}, or into the flat records of a
+ * {@link UrlHashPrefixesArena}, which are written straight from the buffers
+ * the expressions were hashed in.
+ *
+ * <p>Every stage of a sample of the URLs is timed by {@link PipelineMetrics},
+ * and every stage that takes longer than a threshold is recorded as a JFR event.
  */
 @Service
 @RequiredArgsConstructor
 public class UrlHashPrefixesServiceImpl implements UrlHashPrefixesService {
 
+    private static final ThreadLocal<ParsedUrl> PARSED_URL = ThreadLocal.withInitial(ParsedUrl::new);
+
+    private static final ThreadLocal<ExpressionBatch> EXPRESSION_BATCH =
+            ThreadLocal.withInitial(ExpressionBatch::new);
+
     private final CanonicalizationService canonicalizationService;
 
     private final ExpressionExtractionService expressionExtractionService;
 
     private final HashComputationService hashComputationService;
 
+    private final UrlHashPrefixesBatchProcessor urlHashPrefixesBatchProcessor;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    private final UrlLimitsProperties urlLimitsProperties;
+
     /**
      * Finds all hash prefixes of the input URL {@code String} by:
      *
      * <ul>
-     *   <li>Canonicalizing the URL
+     *   <li>Canonicalizing the URL into a reusable {@code ParsedUrl}
      *   <li>Creating all the possible host-suffix and path-prefix for the URL
      *   <li>Computing the full-length hash for all possible host-suffix
      *       and path-prefix
-     *   <li>Computing the hash prefix for each full-length hash
+     *   <li>Exposing the hash prefixes of each full-length hash as views on
+     *       its digest, which are only hex-encoded when serialized
      * </ul>
      *
      * @param url URL {@code String} to find hash prefixes
@@ -49,34 +85,369 @@ public class UrlHashPrefixesServiceImpl implements UrlHashPrefixesService {
      */
     @Override
     public UrlHashPrefixes findUrlHashPrefixes(String url) throws MalformedURLException {
+        return findUrlHashPrefixes(url, PrefixLengths.ALL);
+    }
+
+    /**
+     * Finds a selection of the hash prefixes of the input URL {@code String}.
+     * Only the selected prefixes are exposed and serialized; the full-length
+     * hash of every expression is always there.
+     *
+     * @param url URL {@code String} to find hash prefixes
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @return URL hash prefixes
+     * @throws MalformedURLException when supplied URL {@code String} is
+     *         a malformed URL
+     * @throws UrlLimitExceededException when supplied URL {@code String}
+     *         exceeds a limit of {@code hashing-urls.limits}
+     */
+    @Override
+    public UrlHashPrefixes findUrlHashPrefixes(String url, PrefixLengths prefixLengths)
+            throws MalformedURLException {
         if (StringUtils.isNotBlank(url)) {
+            ParsedUrl parsedUrl = PARSED_URL.get();
+            try {
+                long started = pipelineMetrics.startSample();
+                canonicalizationService.canonicalizeUrl(url, parsedUrl);
+                long canonicalized = pipelineMetrics.recordStage(Stage.CANONICALIZATION, started);
 
-            Set<ExpressionHashes> expressionHashes = new HashSet<>();
-            List<String> hashPrefixes = new ArrayList<>();
-            String fullHash;
+                return UrlHashPrefixes.builder()
+                        .url(url)
+                        .expressionHashes(
+                                findExpressionHashes(parsedUrl, prefixLengths, canonicalized))
+                        .build();
+            } catch (MalformedURLException e) {
+                pipelineMetrics.recordMalformedUrl();
+                throw e;
+            } finally {
+                parsedUrl.release();
+            }
+        } else {
+            pipelineMetrics.recordMalformedUrl();
+            throw new MalformedURLException("The url should not be empty");
+        }
+    }
 
-            String canonicalUrl = canonicalizationService.canonicalizeUrl(url);
-            Set<String> expressions = expressionExtractionService.extractExpressions(canonicalUrl);
+    /**
+     * Finds the full-length hash and the hash prefixes of every host-suffix and
+     * path-prefix expression of an already canonicalized URL {@code String}.
+     *
+     * @param canonicalUrl canonical URL {@code String}
+     * @return expression hashes of the canonical URL
+     */
+    public Set<ExpressionHashes> findExpressionHashes(String canonicalUrl) {
+        if (StringUtils.isBlank(canonicalUrl)) {
+            return Collections.emptySet();
+        }
 
-            for (String expression : expressions) {
-                fullHash = hashComputationService.computeSha256Hash(expression);
+        ParsedUrl parsedUrl = PARSED_URL.get();
+        try {
+            return parsedUrl.parse(canonicalUrl)
+                    ? findExpressionHashes(
+                            parsedUrl, PrefixLengths.ALL, pipelineMetrics.startSample())
+                    : Collections.emptySet();
+        } finally {
+            parsedUrl.release();
+        }
+    }
 
-                for (int i = HashPrefixLength.MIN_HASH_PREFIX_LENGTH;
-                     i < HashPrefixLength.MAX_HASH_PREFIX_LENGTH;
-                     i++) {
-                    hashPrefixes.add(hashComputationService.computeSha256HashPrefix(fullHash, i));
-                }
+    /**
+     * Collects the expressions into a per-thread batch, which is hashed at
+     * once, so that the SHA256 backend can hash several expressions in
+     * lockstep. Expressions visited along with their digest, by the host
+     * cache, are left out of the batch. The only {@code String} created per
+     * expression is the one exposed in the response.
+     */
+    private Set<ExpressionHashes> findExpressionHashes(
+            ParsedUrl parsedUrl, PrefixLengths prefixLengths, long started) {
+        ExpressionBatch batch = EXPRESSION_BATCH.get();
+        try {
+            long extracted = extractExpressions(parsedUrl, batch, started);
+            byte[][] digests = new byte[batch.count][HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+            computeDigests(batch, digests, started, extracted);
+
+            Set<ExpressionHashes> expressionHashes = new HashSet<>();
+            for (int i = 0; i < batch.count; i++) {
                 expressionHashes.add(
                         ExpressionHashes.builder()
-                                .expression(expression)
-                                .fullHash(fullHash)
-                                .hashPrefixes(new ArrayList<>(hashPrefixes))
+                                .expression(
+                                        new String(
+                                                batch.data,
+                                                batch.offsets[i],
+                                                batch.lengths[i],
+                                                StandardCharsets.UTF_8))
+                                .digest(digests[i])
+                                .hashPrefixes(new HashPrefixList(digests[i], prefixLengths))
                                 .build());
-                hashPrefixes.clear();
             }
-            return UrlHashPrefixes.builder().url(url).expressionHashes(expressionHashes).build();
+            return expressionHashes;
+        } finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Adds the record of the input URL {@code String} to an arena, straight
+     * from the per-thread batch its expressions were hashed in, so that no
+     * object is created per expression. A malformed URL, or one exceeding a
+     * limit of {@code hashing-urls.limits}, is added as an error record; any
+     * other failure is a bug, and fails the batch.
+     *
+     * @param url URL {@code String} to find hash prefixes
+     * @param urlIndex index of the URL in its batch
+     * @param arena arena to add the record to
+     */
+    @Override
+    public void findUrlHashPrefixes(String url, int urlIndex, UrlHashPrefixesArena arena) {
+        if (StringUtils.isBlank(url)) {
+            pipelineMetrics.recordMalformedUrl();
+            arena.addError(urlIndex, url != null ? url : "", "The url should not be empty");
+            return;
+        }
+
+        ParsedUrl parsedUrl = PARSED_URL.get();
+        ExpressionBatch batch = EXPRESSION_BATCH.get();
+        try {
+            long started = pipelineMetrics.startSample();
+            canonicalizationService.canonicalizeUrl(url, parsedUrl);
+            long canonicalized = pipelineMetrics.recordStage(Stage.CANONICALIZATION, started);
+
+            long extracted = extractExpressions(parsedUrl, batch, canonicalized);
+            byte[][] digests = batch.digestBuffers();
+            computeDigests(batch, digests, canonicalized, extracted);
+
+            arena.add(
+                    urlIndex,
+                    url,
+                    batch.data,
+                    batch.offsets,
+                    batch.lengths,
+                    batch.count,
+                    digests);
+        } catch (MalformedURLException e) {
+            pipelineMetrics.recordMalformedUrl();
+            arena.addError(urlIndex, url, UrlHashPrefixes.errorMessage(e));
+        } catch (UrlLimitExceededException e) {
+            arena.addError(urlIndex, url, UrlHashPrefixes.errorMessage(e));
+        } finally {
+            batch.release();
+            parsedUrl.release();
+        }
+    }
+
+    /**
+     * Collects the expressions of a URL into the batch. The extraction stops
+     * at the first expression past {@code hashing-urls.limits.max-expressions}.
+     *
+     * @return start time of the hash computation stage
+     */
+    private long extractExpressions(ParsedUrl parsedUrl, ExpressionBatch batch, long started) {
+        ExpressionExtractionEvent extractionEvent = new ExpressionExtractionEvent();
+        extractionEvent.begin();
+        batch.maxExpressions = urlLimitsProperties.getEffectiveMaxExpressions();
+        try {
+            expressionExtractionService.forEachExpression(parsedUrl, batch);
+        } finally {
+            extractionEvent.complete(parsedUrl, batch.count);
+        }
+        return pipelineMetrics.recordStage(Stage.EXPRESSION_EXTRACTION, started);
+    }
+
+    /**
+     * Computes the digests of the expressions of the batch into the supplied
+     * arrays, one per expression.
+     */
+    private void computeDigests(
+            ExpressionBatch batch, byte[][] digests, long started, long extracted) {
+        HashComputationEvent hashComputationEvent = new HashComputationEvent();
+        hashComputationEvent.begin();
+        if (batch.knownCount == 0) {
+            hashComputationService.computeSha256Hashes(
+                    batch.data, batch.offsets, batch.lengths, batch.count, digests);
         } else {
-            throw new MalformedURLException("The url should not be empty");
+            int pending = batch.copyKnownDigests(digests);
+            hashComputationService.computeSha256Hashes(
+                    batch.data,
+                    batch.pendingOffsets,
+                    batch.pendingLengths,
+                    pending,
+                    batch.pendingDigests);
+        }
+        hashComputationEvent.complete(batch.count, batch.size);
+        pipelineMetrics.recordStage(Stage.HASH_COMPUTATION, extracted);
+        pipelineMetrics.recordHashedUrl(batch.count, started);
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} in parallel,
+     * into an arena. A URL that could not be processed results in an error
+     * record, instead of failing the batch.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @return arena holding a record per URL, in the order of the input; to
+     *     be closed by the caller
+     */
+    @Override
+    public UrlHashPrefixesArena findUrlHashPrefixesArena(Collection<String> urls) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixesArena(urls, this);
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} in parallel.
+     * A URL that could not be processed results in a {@code UrlHashPrefixes}
+     * holding the URL and an error message, instead of failing the batch.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @return URL hash prefixes, in the order of the input
+     */
+    @Override
+    public List<UrlHashPrefixes> findUrlHashPrefixes(Collection<String> urls) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixes(urls, PrefixLengths.ALL, this);
+    }
+
+    /**
+     * Finds all hash prefixes of each input URL {@code String} lazily, in
+     * windows of {@code hashing-urls.batch.window-size} URLs.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @return URL hash prefixes, in the order of the input
+     */
+    @Override
+    public Stream<UrlHashPrefixes> findUrlHashPrefixes(Stream<String> urls) {
+        return findUrlHashPrefixes(urls, PrefixLengths.ALL);
+    }
+
+    /**
+     * Finds a selection of the hash prefixes of each input URL {@code String}
+     * lazily, in windows of {@code hashing-urls.batch.window-size} URLs.
+     *
+     * @param urls URL {@code String}s to find hash prefixes for
+     * @param prefixLengths lengths of the hash prefixes to find
+     * @return URL hash prefixes, in the order of the input
+     */
+    @Override
+    public Stream<UrlHashPrefixes> findUrlHashPrefixes(
+            Stream<String> urls, PrefixLengths prefixLengths) {
+        return urlHashPrefixesBatchProcessor.findUrlHashPrefixes(urls, prefixLengths, this);
+    }
+
+    /**
+     * Per-thread buffer the expressions of a URL are packed into, one after
+     * the other, to be hashed as a batch, along with the digests of the
+     * expressions which were visited with one. A URL with more expressions
+     * than the limit is rejected as soon as it is visited one too many.
+     */
+    private static final class ExpressionBatch implements ExpressionVisitor {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+        private static final int MAX_EXPRESSIONS = 64;
+
+        private byte[] data = new byte[INITIAL_CAPACITY];
+
+        private int[] offsets = new int[MAX_EXPRESSIONS];
+
+        private int[] lengths = new int[MAX_EXPRESSIONS];
+
+        private byte[][] knownDigests = new byte[MAX_EXPRESSIONS][];
+
+        private int[] pendingOffsets = new int[MAX_EXPRESSIONS];
+
+        private int[] pendingLengths = new int[MAX_EXPRESSIONS];
+
+        private byte[][] pendingDigests = new byte[MAX_EXPRESSIONS][];
+
+        private byte[][] digestBuffers = new byte[0][];
+
+        private int maxExpressions = Integer.MAX_VALUE;
+
+        private int count;
+
+        private int knownCount;
+
+        private int size;
+
+        @Override
+        public void visit(byte[] expression, int hostLength, int length) {
+            if (count == maxExpressions) {
+                throw new UrlLimitExceededException(Limit.EXPRESSIONS, maxExpressions);
+            }
+            if (data.length < size + length) {
+                data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+            }
+            if (offsets.length == count) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                knownDigests = Arrays.copyOf(knownDigests, count * 2);
+                pendingOffsets = new int[count * 2];
+                pendingLengths = new int[count * 2];
+                pendingDigests = new byte[count * 2][];
+            }
+
+            System.arraycopy(expression, 0, data, size, length);
+            offsets[count] = size;
+            lengths[count++] = length;
+            size += length;
+        }
+
+        @Override
+        public void visit(byte[] expression, int hostLength, int length, byte[] digest) {
+            visit(expression, hostLength, length);
+            knownDigests[count - 1] = digest;
+            knownCount++;
+        }
+
+        /**
+         * Copies the known digests into the digests of their expressions,
+         * and packs the remaining expressions and their digest arrays into
+         * the pending arrays.
+         *
+         * @return number of pending expressions
+         */
+        int copyKnownDigests(byte[][] digests) {
+            int pending = 0;
+
+            for (int i = 0; i < count; i++) {
+                if (knownDigests[i] != null) {
+                    System.arraycopy(knownDigests[i], 0, digests[i], 0, digests[i].length);
+                } else {
+                    pendingOffsets[pending] = offsets[i];
+                    pendingLengths[pending] = lengths[i];
+                    pendingDigests[pending++] = digests[i];
+                }
+            }
+            return pending;
+        }
+
+        /**
+         * Returns reused digest arrays, at least one per expression, for
+         * digests which are copied elsewhere before the next URL.
+         */
+        byte[][] digestBuffers() {
+            if (digestBuffers.length < count) {
+                int length = digestBuffers.length;
+                digestBuffers = Arrays.copyOf(digestBuffers, Math.max(count, MAX_EXPRESSIONS));
+
+                for (int i = length; i < digestBuffers.length; i++) {
+                    digestBuffers[i] = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+                }
+            }
+            return digestBuffers;
+        }
+
+        void release() {
+            if (data.length > MAX_RETAINED_CAPACITY) {
+                data = new byte[INITIAL_CAPACITY];
+            }
+            if (knownCount > 0) {
+                Arrays.fill(knownDigests, 0, count, null);
+                Arrays.fill(pendingDigests, 0, count, null);
+            }
+            count = 0;
+            knownCount = 0;
+            size = 0;
         }
     }
 }
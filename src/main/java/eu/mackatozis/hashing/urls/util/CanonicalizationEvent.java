@@ -0,0 +1,102 @@
+package eu.mackatozis.hashing.urls.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * <pre>
+ * JFR event of the canonicalization of a URL that took longer than the
+ * threshold of the recording, {@value #DEFAULT_THRESHOLD} unless overridden.
+ *
+ * The event is created and timed for every URL, which costs next to nothing
+ * when no recording is running; the URL itself is only copied into the event
+ * when it is committed.
+ * </pre>
+ */
+@Name("eu.mackatozis.hashing.urls.Canonicalization")
+@Label("URL Canonicalization")
+@Description("Canonicalization of a URL that took longer than the threshold")
+@Category("Hashing URLs")
+@Threshold(CanonicalizationEvent.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class CanonicalizationEvent extends Event {
+
+    public static final String DEFAULT_THRESHOLD = "1 ms";
+
+    /**
+     * Longest prefix of a URL that is recorded.
+     */
+    public static final int MAX_URL_LENGTH = 2048;
+
+    @Label("Engine")
+    private String engine;
+
+    @Label("URL")
+    @Description("Input URL, truncated to its first 2048 characters")
+    private String url;
+
+    @Label("URL Length")
+    @Description("Length of the input URL, in characters")
+    private int urlLength;
+
+    @Label("Canonical URL Length")
+    @Description("Length of the canonical URL, in characters")
+    private int canonicalUrlLength;
+
+    @Label("Percent-Decode Passes")
+    @Description("Passes over the URL until no percent-escape was left; regex engine only")
+    private int percentDecodePasses;
+
+    @Label("Percent-Escapes Decoded")
+    private int percentDecodes;
+
+    @Label("Malformed")
+    private boolean malformed;
+
+    @Label("Limit Exceeded")
+    @Description("Limit of hashing-urls.limits the URL was rejected for, if any")
+    private String limitExceeded;
+
+    public void setPercentDecodePasses(int percentDecodePasses) {
+        this.percentDecodePasses = percentDecodePasses;
+    }
+
+    public void setPercentDecodes(int percentDecodes) {
+        this.percentDecodes = percentDecodes;
+    }
+
+    public void setLimitExceeded(String limitExceeded) {
+        this.limitExceeded = limitExceeded;
+    }
+
+    /**
+     * Ends the event and commits it when it is enabled and took longer than
+     * its threshold.
+     *
+     * @param engine canonicalization engine
+     * @param url input URL
+     * @param canonicalUrl canonical URL; {@code null} when the URL is malformed
+     *     or exceeds a limit
+     */
+    public void complete(String engine, String url, CharSequence canonicalUrl) {
+        end();
+
+        if (shouldCommit()) {
+            this.engine = engine;
+            this.url = truncate(url);
+            this.urlLength = url.length();
+            this.canonicalUrlLength = canonicalUrl != null ? canonicalUrl.length() : 0;
+            this.malformed = canonicalUrl == null && limitExceeded == null;
+            commit();
+        }
+    }
+
+    static String truncate(String url) {
+        return url.length() > MAX_URL_LENGTH ? url.substring(0, MAX_URL_LENGTH) : url;
+    }
+}
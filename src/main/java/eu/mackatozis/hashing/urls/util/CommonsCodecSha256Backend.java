@@ -0,0 +1,29 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * {@link Sha256Backend} on top of the {@code MessageDigest} handed out by
+ * commons-codec {@code DigestUtils}, which hashes every input from scratch.
+ * It is the reference the other backends are validated against.
+ */
+public final class CommonsCodecSha256Backend implements Sha256Backend {
+
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST =
+            ThreadLocal.withInitial(DigestUtils::getSha256Digest);
+
+    @Override
+    public void digest(byte[] data, int offset, int length, byte[] digest) {
+        MessageDigest messageDigest = SHA256_DIGEST.get();
+        messageDigest.update(data, offset, length);
+        try {
+            messageDigest.digest(digest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            messageDigest.reset();
+            throw new IllegalStateException("Could not compute SHA256 digest", e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package eu.mackatozis.hashing.urls.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <pre>
+ * Bounded, concurrent map of {@code String}s to their 32-byte SHA256 digests.
+ *
+ * Entries live in the fixed slots of a {@link SetAssociativeCache}:
+ *
+ * - keys and their hash codes in parallel arrays
+ * - digests packed four {@code long}s per slot in a single array
+ *
+ * Entries may be given a head start against eviction, so that entries known
+ * to be popular survive a burst of one-off keys.
+ *
+ * Lookups are optimistic and only take a read lock when they raced with a
+ * write to the same stripe.
+ * </pre>
+ */
+public final class DigestCache extends SetAssociativeCache<String> {
+
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final int LONGS_PER_DIGEST = DIGEST_LENGTH / Long.BYTES;
+
+    /**
+     * Largest capacity whose digests still fit in a single {@code long} array.
+     */
+    static final int MAX_CAPACITY = (1 << 30) / LONGS_PER_DIGEST;
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final String[] keys;
+
+    private final int[] hashes;
+
+    private final long[] digests;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity maximum number of entries; rounded up to a power of two,
+     *     of at most {@value #MAX_CAPACITY}
+     * @param concurrencyLevel expected number of concurrently writing threads
+     */
+    public DigestCache(int capacity, int concurrencyLevel) {
+        super(Math.min(capacity, MAX_CAPACITY), concurrencyLevel);
+
+        this.keys = new String[capacity()];
+        this.hashes = new int[capacity()];
+        this.digests = new long[capacity() * LONGS_PER_DIGEST];
+    }
+
+    /**
+     * Copies the digest of the key, if present, into the supplied array.
+     *
+     * @param key key to look up
+     * @param digest array of at least {@value #DIGEST_LENGTH} bytes that receives the digest
+     * @return {@code true} if the key was present
+     */
+    public boolean get(String key, byte[] digest) {
+        int hash = spread(key.hashCode());
+        int set = set(hash);
+        StampedLock lock = lock(set);
+
+        long stamp = lock.tryOptimisticRead();
+        int slot = read(set, key, hash, digest);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slot = read(set, key, hash, digest);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (slot < 0) {
+            recordMiss();
+            return false;
+        }
+        recordHit(slot);
+        return true;
+    }
+
+    /**
+     * Associates the digest with the key, evicting the least frequently used
+     * entry of its set when the set is full.
+     *
+     * @param key key to associate the digest with
+     * @param digest array whose first {@value #DIGEST_LENGTH} bytes are the digest
+     * @param initialFrequency head start of the entry against eviction, between
+     *     1 and {@value SetAssociativeCache#MAX_FREQUENCY}
+     */
+    public void put(String key, byte[] digest, int initialFrequency) {
+        int hash = spread(key.hashCode());
+        int set = set(hash);
+        StampedLock lock = lock(set);
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = claimSlot(set, key, hash, initialFrequency);
+
+            keys[slot] = key;
+            hashes[slot] = hash;
+
+            for (int i = 0; i < LONGS_PER_DIGEST; i++) {
+                digests[slot * LONGS_PER_DIGEST + i] = (long) LONG_VIEW.get(digest, i * Long.BYTES);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    boolean isFree(int slot) {
+        return keys[slot] == null;
+    }
+
+    @Override
+    boolean holds(int slot, String key, int hash) {
+        return hashes[slot] == hash && key.equals(keys[slot]);
+    }
+
+    private int read(int set, String key, int hash, byte[] digest) {
+        int base = set * WAYS;
+
+        for (int i = base; i < base + WAYS; i++) {
+            if (holds(i, key, hash)) {
+                for (int j = 0; j < LONGS_PER_DIGEST; j++) {
+                    LONG_VIEW.set(digest, j * Long.BYTES, digests[i * LONGS_PER_DIGEST + j]);
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+}
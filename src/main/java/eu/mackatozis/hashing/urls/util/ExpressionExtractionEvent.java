@@ -0,0 +1,62 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of the extraction of the host-suffix and path-prefix expressions
+ * of a canonical URL that took longer than the threshold of the recording.
+ */
+@Name("eu.mackatozis.hashing.urls.ExpressionExtraction")
+@Label("Expression Extraction")
+@Description("Extraction of the expressions of a URL that took longer than the threshold")
+@Category("Hashing URLs")
+@Threshold(CanonicalizationEvent.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class ExpressionExtractionEvent extends Event {
+
+    @Label("Canonical URL")
+    @Description("Canonical URL, truncated to its first 2048 characters")
+    private String canonicalUrl;
+
+    @Label("Canonical URL Length")
+    @Description("Length of the canonical URL, in characters")
+    private int canonicalUrlLength;
+
+    @Label("Host Length")
+    @Description("Length of the host of the canonical URL, in characters")
+    private int hostLength;
+
+    @Label("Path Length")
+    @Description("Length of the path of the canonical URL, in characters")
+    private int pathLength;
+
+    @Label("Expressions")
+    private int expressionCount;
+
+    /**
+     * Ends the event and commits it when it is enabled and took longer than
+     * its threshold.
+     *
+     * @param parsedUrl canonical URL the expressions were extracted from
+     * @param expressionCount number of expressions
+     */
+    public void complete(ParsedUrl parsedUrl, int expressionCount) {
+        end();
+
+        if (shouldCommit()) {
+            this.canonicalUrl = CanonicalizationEvent.truncate(parsedUrl.toString());
+            this.canonicalUrlLength = parsedUrl.getLength();
+            this.hostLength = parsedUrl.getHostEnd() - parsedUrl.getHostStart();
+            this.pathLength = parsedUrl.getPathEnd() - parsedUrl.getPathStart();
+            this.expressionCount = expressionCount;
+            commit();
+        }
+    }
+}
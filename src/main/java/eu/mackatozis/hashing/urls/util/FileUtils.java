@@ -0,0 +1,47 @@
+package eu.mackatozis.hashing.urls.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FileUtils {
+
+    /**
+     * Writes the remaining bytes of the buffer to a temporary file next to the
+     * target, which then replaces the target atomically, so that readers of the
+     * target never see a partially written file.
+     *
+     * @param path file to write
+     * @param content bytes to write; the position of the buffer is not changed
+     * @throws IOException when the file could not be written
+     */
+    public static void writeAtomically(Path path, ByteBuffer content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer remaining = content.duplicate();
+            while (remaining.hasRemaining()) {
+                channel.write(remaining);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(
+                temporary,
+                path,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
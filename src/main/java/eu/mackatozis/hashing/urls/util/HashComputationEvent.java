@@ -0,0 +1,48 @@
+package eu.mackatozis.hashing.urls.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of the hashing of the expressions of a URL that took longer than
+ * the threshold of the recording.
+ */
+@Name("eu.mackatozis.hashing.urls.HashComputation")
+@Label("Hash Computation")
+@Description("Hashing of the expressions of a URL that took longer than the threshold")
+@Category("Hashing URLs")
+@Threshold(CanonicalizationEvent.DEFAULT_THRESHOLD)
+@StackTrace(false)
+public class HashComputationEvent extends Event {
+
+    @Label("Expressions")
+    private int expressionCount;
+
+    @Label("Expression Bytes")
+    @Description("Number of bytes hashed, over all expressions")
+    @DataAmount(DataAmount.BYTES)
+    private int expressionBytes;
+
+    /**
+     * Ends the event and commits it when it is enabled and took longer than
+     * its threshold.
+     *
+     * @param expressionCount number of expressions hashed
+     * @param expressionBytes total number of bytes hashed
+     */
+    public void complete(int expressionCount, int expressionBytes) {
+        end();
+
+        if (shouldCommit()) {
+            this.expressionCount = expressionCount;
+            this.expressionBytes = expressionBytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ * Writes {@code UrlHashPrefixes} in a compact binary format. Every hash prefix
+ * of an expression is a truncation of its digest, so instead of the full hash
+ * and every prefix in hexadecimal, only the raw leading bytes of the digest are
+ * written, as many as the longest prefix the client needs.
+ *
+ * A stream starts with a header, followed by one record per URL:
+ *
+ * int     magic            0x48555052
+ * byte    version          1
+ * byte    prefix length    4 to 32
+ *
+ * varint  URL length, followed by the UTF-8 encoded URL
+ * byte    0 when hash prefixes follow, 1 when an error message follows
+ * varint  error length, followed by the UTF-8 encoded error, or
+ * varint  expression count, followed by for each expression:
+ *   varint  expression length, followed by the UTF-8 encoded expression
+ *   byte    prefix length bytes of the digest
+ *
+ * Integers are big-endian; varints are unsigned LEB128, so that the lengths
+ * of typical URLs and expressions take a single byte. A missing URL is
+ * written as an empty one.
+ *
+ * Records written by {@link #withoutHeader} can be appended to a stream
+ * whose header was written before, so that parts of a stream can be written
+ * in parallel and concatenated in order.
+ * </pre>
+ */
+public final class HashPrefixesWriter implements Closeable {
+
+    public static final int MAGIC = 0x48555052;
+
+    public static final int VERSION = 1;
+
+    /**
+     * Number of bytes written by {@link #writeHeader}: the magic number, the
+     * version and the prefix length.
+     */
+    public static final int HEADER_LENGTH = Integer.BYTES + 2;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int HASH_PREFIXES = 0;
+
+    private static final int ERROR = 1;
+
+    private final OutputStream outputStream;
+
+    private final int prefixLength;
+
+    private final byte[] digest = new byte[HashPrefixLength.MAX_HASH_PREFIX_LENGTH];
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Creates a writer and writes the header of the stream.
+     *
+     * @param outputStream stream to write to; closed along with the writer
+     * @param prefixLength number of leading digest bytes written per expression
+     * @throws IOException when writing the header fails
+     * @throws IllegalArgumentException when the prefix length is out of range
+     */
+    public HashPrefixesWriter(OutputStream outputStream, int prefixLength) throws IOException {
+        this(outputStream, prefixLength, true);
+    }
+
+    private HashPrefixesWriter(OutputStream outputStream, int prefixLength, boolean hasHeader)
+            throws IOException {
+        validatePrefixLength(prefixLength);
+
+        this.outputStream = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        this.prefixLength = prefixLength;
+
+        if (hasHeader) {
+            writeHeader(this.outputStream, prefixLength);
+        }
+    }
+
+    /**
+     * Creates a writer of records only, for a stream whose header is written
+     * separately.
+     *
+     * @param outputStream stream to write to; closed along with the writer
+     * @param prefixLength number of leading digest bytes written per expression
+     * @return {@code HashPrefixesWriter} that writes no header
+     * @throws IllegalArgumentException when the prefix length is out of range
+     */
+    public static HashPrefixesWriter withoutHeader(OutputStream outputStream, int prefixLength) {
+        try {
+            return new HashPrefixesWriter(outputStream, prefixLength, false);
+        } catch (IOException e) {
+            throw new IllegalStateException("No header should have been written", e);
+        }
+    }
+
+    /**
+     * Writes the header of a stream.
+     *
+     * @param outputStream stream to write to
+     * @param prefixLength number of leading digest bytes written per expression
+     * @throws IOException when writing the header fails
+     * @throws IllegalArgumentException when the prefix length is out of range
+     */
+    public static void writeHeader(OutputStream outputStream, int prefixLength)
+            throws IOException {
+        validatePrefixLength(prefixLength);
+
+        outputStream.write(MAGIC >>> 24);
+        outputStream.write(MAGIC >>> 16);
+        outputStream.write(MAGIC >>> 8);
+        outputStream.write(MAGIC);
+        outputStream.write(VERSION);
+        outputStream.write(prefixLength);
+    }
+
+    /**
+     * Writes the record of a URL.
+     *
+     * @param urlHashPrefixes hash prefixes of the URL, or the reason they could not be found
+     * @throws IOException when writing fails
+     */
+    public void write(UrlHashPrefixes urlHashPrefixes) throws IOException {
+        writeString(urlHashPrefixes.getUrl() != null ? urlHashPrefixes.getUrl() : "");
+
+        if (urlHashPrefixes.getError() != null) {
+            outputStream.write(ERROR);
+            writeString(urlHashPrefixes.getError());
+            return;
+        }
+
+        outputStream.write(HASH_PREFIXES);
+
+        if (urlHashPrefixes.getExpressionHashes() == null) {
+            writeVarint(0);
+            return;
+        }
+
+        writeVarint(urlHashPrefixes.getExpressionHashes().size());
+        for (ExpressionHashes expressionHashes : urlHashPrefixes.getExpressionHashes()) {
+            writeString(expressionHashes.getExpression());
+            expressionHashes.getDigest(digest);
+            outputStream.write(digest, 0, prefixLength);
+        }
+    }
+
+    /**
+     * Writes the record of a URL from the record of an arena the cursor is
+     * positioned on, without creating any object per expression.
+     *
+     * @param cursor cursor positioned on the record of the URL
+     * @throws IOException when writing fails
+     */
+    public void write(UrlHashPrefixesArena.Cursor cursor) throws IOException {
+        int urlLength = cursor.getUrlLength();
+        writeVarint(urlLength);
+        cursor.getUrl(scratch(urlLength));
+        outputStream.write(scratch, 0, urlLength);
+
+        if (cursor.isError()) {
+            outputStream.write(ERROR);
+            writeString(cursor.getError());
+            return;
+        }
+
+        outputStream.write(HASH_PREFIXES);
+
+        int count = cursor.getExpressionCount();
+        writeVarint(count);
+        for (int i = 0; i < count; i++) {
+            int length = cursor.getExpressionLength(i);
+            writeVarint(length);
+            cursor.getExpression(i, scratch(length));
+            outputStream.write(scratch, 0, length);
+
+            cursor.getDigest(i, digest);
+            outputStream.write(digest, 0, prefixLength);
+        }
+    }
+
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            outputStream.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        outputStream.write(value);
+    }
+
+    private static void validatePrefixLength(int prefixLength) {
+        if (prefixLength < HashPrefixLength.MIN_HASH_PREFIX_LENGTH
+                || prefixLength > HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Prefix size of a hash prefix should be between 4 and 32 bytes");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package eu.mackatozis.hashing.urls.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HexUtils {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Encodes the first {@code length} bytes of the input array into
+     * a lowercase hexadecimal {@code String}.
+     *
+     * @param data bytes to encode
+     * @param length number of leading bytes to encode
+     * @return lowercase hexadecimal {@code String} of {@code 2 * length} characters
+     */
+    public static String encode(byte[] data, int length) {
+        char[] chars = new char[length * 2];
+
+        for (int i = 0; i < length; i++) {
+            chars[i * 2] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[data[i] & 0xf];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Encodes the first {@code length} bytes of the input array into
+     * lowercase hexadecimal ASCII bytes of the target array.
+     *
+     * @param data bytes to encode
+     * @param length number of leading bytes to encode
+     * @param target array that receives {@code 2 * length} bytes
+     * @param offset index of the target array to start at
+     */
+    public static void encode(byte[] data, int length, byte[] target, int offset) {
+        for (int i = 0; i < length; i++) {
+            target[offset + i * 2] = (byte) HEX_DIGITS[(data[i] >> 4) & 0xf];
+            target[offset + i * 2 + 1] = (byte) HEX_DIGITS[data[i] & 0xf];
+        }
+    }
+}
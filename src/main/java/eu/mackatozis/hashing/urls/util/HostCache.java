@@ -0,0 +1,207 @@
+package eu.mackatozis.hashing.urls.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <pre>
+ * Bounded, concurrent map of canonical hosts to what every URL of the host
+ * has in common, which is computed once per host:
+ *
+ * - the UTF-8 encoded host
+ * - where each of its host suffixes starts, which already accounts for
+ *   whether the host is an IP address
+ * - the SHA256 digest of each host-suffix expression without a path, such
+ *   as {@code b.c/}, which is one of the expressions of every URL of the host
+ *
+ * Hosts are looked up by a range of chars, so that a hit does not create a
+ * {@code String}. Entries are immutable and live in the fixed slots of a
+ * {@link SetAssociativeCache}, like in {@link DigestCache}.
+ *
+ * Lookups take no lock; an entry is published by a single write of its
+ * reference, and all its fields are final. Writes to a set are serialized by
+ * striped locks.
+ * </pre>
+ */
+public final class HostCache extends SetAssociativeCache<HostCache.Entry> {
+
+    public static final int DIGEST_LENGTH = 32;
+
+    private final Entry[] entries;
+
+    private final Sha256Backend sha256Backend;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity maximum number of hosts; rounded up to a power of two,
+     *     of at most 2^30
+     * @param concurrencyLevel expected number of concurrently writing threads
+     * @param sha256Backend {@code Sha256Backend} to compute the digests of
+     *     host-suffix expressions with
+     */
+    public HostCache(int capacity, int concurrencyLevel, Sha256Backend sha256Backend) {
+        super(capacity, concurrencyLevel);
+
+        this.entries = new Entry[capacity()];
+        this.sha256Backend = sha256Backend;
+    }
+
+    /**
+     * Looks up a canonical host.
+     *
+     * @param chars array holding the canonical host
+     * @param start index of the first char of the host
+     * @param end index after the last char of the host
+     * @return {@code Entry} of the host; {@code null} if it is not cached
+     */
+    public Entry get(char[] chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        int base = set(hash) * WAYS;
+
+        for (int i = base; i < base + WAYS; i++) {
+            Entry entry = entries[i];
+
+            if (entry != null && entry.matches(hash, chars, start, end)) {
+                recordHit(i);
+                return entry;
+            }
+        }
+
+        recordMiss();
+        return null;
+    }
+
+    /**
+     * Caches a canonical host along with its host suffixes, and computes the
+     * digests of its host-suffix expressions. The least frequently used host
+     * of its set is evicted when the set is full.
+     *
+     * @param chars array holding the canonical host
+     * @param start index of the first char of the host
+     * @param end index after the last char of the host
+     * @param host array holding the UTF-8 encoded host in its first {@code hostLength} bytes
+     * @param hostLength number of bytes of the encoded host
+     * @param suffixStarts index into the encoded host of the first byte of each host suffix
+     * @param suffixCount number of host suffixes
+     * @return {@code Entry} of the host
+     */
+    public Entry put(
+            char[] chars,
+            int start,
+            int end,
+            byte[] host,
+            int hostLength,
+            int[] suffixStarts,
+            int suffixCount) {
+        int hash = hash(chars, start, end);
+        Entry entry =
+                new Entry(
+                        hash,
+                        Arrays.copyOfRange(chars, start, end),
+                        Arrays.copyOf(host, hostLength),
+                        Arrays.copyOf(suffixStarts, suffixCount),
+                        digests(host, hostLength, suffixStarts, suffixCount));
+
+        int set = set(hash);
+        StampedLock lock = lock(set);
+
+        long stamp = lock.writeLock();
+        try {
+            entries[claimSlot(set, entry, hash, 1)] = entry;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return entry;
+    }
+
+    @Override
+    boolean isFree(int slot) {
+        return entries[slot] == null;
+    }
+
+    @Override
+    boolean holds(int slot, Entry entry, int hash) {
+        return entries[slot].matches(hash, entry.key, 0, entry.key.length);
+    }
+
+    private byte[][] digests(byte[] host, int hostLength, int[] suffixStarts, int suffixCount) {
+        byte[][] digests = new byte[suffixCount][DIGEST_LENGTH];
+        byte[] expression = Arrays.copyOf(host, hostLength + 1);
+        expression[hostLength] = '/';
+
+        for (int i = 0; i < suffixCount; i++) {
+            sha256Backend.digest(
+                    expression, suffixStarts[i], hostLength + 1 - suffixStarts[i], digests[i]);
+        }
+        return digests;
+    }
+
+    /**
+     * Hashes like {@link String#hashCode()}, and spreads the hash code.
+     */
+    private static int hash(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return spread(hash);
+    }
+
+    /**
+     * Immutable precomputation of a canonical host. Its arrays are shared by
+     * all threads and should not be modified.
+     */
+    public static final class Entry {
+
+        private final int hash;
+
+        private final char[] key;
+
+        private final byte[] host;
+
+        private final int[] suffixStarts;
+
+        private final byte[][] digests;
+
+        private Entry(int hash, char[] key, byte[] host, int[] suffixStarts, byte[][] digests) {
+            this.hash = hash;
+            this.key = key;
+            this.host = host;
+            this.suffixStarts = suffixStarts;
+            this.digests = digests;
+        }
+
+        /**
+         * Returns the UTF-8 encoded host.
+         *
+         * @return array holding exactly the encoded host
+         */
+        public byte[] getHost() {
+            return host;
+        }
+
+        public int getSuffixCount() {
+            return suffixStarts.length;
+        }
+
+        public int getSuffixStart(int suffix) {
+            return suffixStarts[suffix];
+        }
+
+        /**
+         * Returns the digest of the expression made of a host suffix followed
+         * by {@code /}.
+         *
+         * @param suffix index of the host suffix
+         * @return array holding the {@value #DIGEST_LENGTH}-byte digest
+         */
+        public byte[] getDigest(int suffix) {
+            return digests[suffix];
+        }
+
+        private boolean matches(int hash, char[] chars, int start, int end) {
+            return this.hash == hash && Arrays.equals(key, 0, key.length, chars, start, end);
+        }
+    }
+}
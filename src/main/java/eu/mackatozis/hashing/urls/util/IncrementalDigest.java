@@ -0,0 +1,130 @@
+package eu.mackatozis.hashing.urls.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * <pre>
+ * Computes the digests of a sequence of inputs that share leading bytes,
+ * such as the expressions of a URL, without hashing the shared bytes over
+ * and over.
+ *
+ * The state of the digest is checkpointed, as a clone of the
+ * {@code MessageDigest}, only once an input shares at least one full block
+ * with the input before it, at the last block boundary of the shared bytes.
+ * The inputs after it pick up from the checkpoint as long as they share the
+ * bytes up to it, and only hash the rest:
+ *
+ * a.b.c/1/2/3/4/5/...64 bytes...|/6.html?q=1   hashed from scratch
+ * a.b.c/1/2/3/4/5/...64 bytes...|/6.html       checkpoint after block 1
+ * a.b.c/1/2/3/4/5/...64 bytes...|/             resumes from block 1
+ * a.b.c/                                        hashed from scratch
+ *
+ * Cloning a digest costs about as much as hashing a block, so inputs which
+ * share less than a block are hashed from scratch without any clone. An
+ * input which is a prefix of the one before it, such as a.b.c/ above, keeps
+ * the checkpoint for the inputs after it.
+ *
+ * The digests are bit-identical to hashing every input from scratch. When
+ * the {@code MessageDigest} cannot be cloned, every input is.
+ *
+ * Instances are not thread-safe and are meant to be held per thread.
+ * </pre>
+ */
+public final class IncrementalDigest {
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private static final int MAX_PREFIX_LENGTH = 64 * BLOCK_LENGTH;
+
+    private final MessageDigest messageDigest;
+
+    private final boolean isCloneable;
+
+    private MessageDigest checkpoint;
+
+    private int checkpointLength;
+
+    private final byte[] previous = new byte[MAX_PREFIX_LENGTH];
+
+    private int previousLength;
+
+    /**
+     * Creates an incremental digest on top of a {@code MessageDigest}, which
+     * is owned by it from then on.
+     *
+     * @param messageDigest {@code MessageDigest} to compute the digests with
+     */
+    public IncrementalDigest(MessageDigest messageDigest) {
+        this.messageDigest = messageDigest;
+        this.isCloneable = clone(messageDigest) != null;
+    }
+
+    /**
+     * Computes the digest of a range of bytes into the supplied array.
+     *
+     * @param data array holding the input
+     * @param offset index of the first byte of the input
+     * @param length number of bytes of the input
+     * @param digest array that receives the digest at index 0
+     * @throws DigestException when the digest array is too short
+     */
+    public void digest(byte[] data, int offset, int length, byte[] digest)
+            throws DigestException {
+        int commonLength = commonPrefixLength(data, offset, length);
+        int sharedLength = commonLength / BLOCK_LENGTH * BLOCK_LENGTH;
+
+        MessageDigest current;
+        int position;
+        if (checkpoint != null && checkpointLength <= commonLength) {
+            current = clone(checkpoint);
+            position = checkpointLength;
+        } else {
+            if (commonLength < length) {
+                checkpoint = null;
+            }
+            current = messageDigest;
+            current.reset();
+            position = 0;
+        }
+
+        if (isCloneable && sharedLength > position) {
+            current.update(data, offset + position, sharedLength - position);
+            position = sharedLength;
+            checkpoint = clone(current);
+            checkpointLength = sharedLength;
+        }
+
+        current.update(data, offset + position, length - position);
+        current.digest(digest, 0, digest.length);
+
+        if (commonLength < length) {
+            previousLength = Math.min(length, MAX_PREFIX_LENGTH);
+            System.arraycopy(
+                    data, offset + commonLength, previous, commonLength,
+                    previousLength - commonLength);
+        }
+    }
+
+    /**
+     * Drops the checkpoint, so that the next input is hashed from scratch.
+     */
+    public void reset() {
+        checkpoint = null;
+        previousLength = 0;
+    }
+
+    private int commonPrefixLength(byte[] data, int offset, int length) {
+        int mismatch = Arrays.mismatch(previous, 0, previousLength, data, offset, offset + length);
+        return mismatch < 0 ? length : mismatch;
+    }
+
+    private static MessageDigest clone(MessageDigest messageDigest) {
+        try {
+            return (MessageDigest) messageDigest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+}
@@ -3,51 +3,129 @@ package eu.mackatozis.hashing.urls.util;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
-import java.util.StringJoiner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+/**
+ * <pre>
+ * Parses every legal encoding of an IPv4 address, the way {@code inet_aton}
+ * does:
+ *
+ * - one to four dot-separated components, the last of which fills the
+ *   remaining bytes of the address, e.g. {@code 1.2.3} is {@code 1.2.0.3}
+ *   and {@code 3279880203} is {@code 195.127.0.11}
+ * - each component in decimal, in octal when it has a leading {@code 0},
+ *   or in hex when it has a leading {@code 0x}, in any mix
+ *
+ * Hosts are parsed in a single scan straight into the numeric address,
+ * without regular expressions, exceptions or intermediate {@code String}s,
+ * so that the common case of a host name which is not an IP address at all
+ * is rejected after a character or two.
+ * </pre>
+ */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class IpUtils {
 
-    private static final Pattern DECIMAL_PATTERN =
-            Pattern.compile(
-                    "(([0-1]?[0-9]{1,2}\\.)|(2[0-4][0-9]\\.)|(25[0-5]\\.)){3}(([0-1]?[0-9]{1,2})|(2[0-4][0-9])|(25[0-5]))");
+    /**
+     * Returned by {@link #parseIpv4Address(String)} for a host which is not an IPv4 address.
+     */
+    public static final long NOT_AN_IP_ADDRESS = -1L;
+
+    private static final long ADDRESS_MASK = 0xFFFFFFFFL;
+
+    private static final int COMPONENTS_SHIFT = 32;
+
+    private static final int RADIXES_SHIFT = 35;
+
+    private static final int DECIMAL = 1;
 
-    private static final Pattern OCTAL_PATTERN =
-            Pattern.compile("([0-7]{1,4})\\.([0-7]{1,4})\\.([0-7]{1,4})\\.([0-7]{1,4})");
+    private static final int OCTAL = 2;
 
-    private static final Pattern HEX_PATTERN =
-            Pattern.compile(
-                    "0x([0-9a-f]{1,2})\\.0x([0-9a-f]{1,2})\\.0x([0-9a-f]{1,2})\\.0x([0-9a-f]{1,2})",
-                    Pattern.CASE_INSENSITIVE);
+    private static final int HEX = 4;
+
+    private static final int MAX_DECIMAL_LENGTH = 15;
 
     public static boolean isIpAddress(String ip) {
-        return isDecimalIpAddress(ip)
-                || isOctalEncodedIpAddress(ip)
-                || isHexEncodedIpAddress(ip)
-                || isIntegerIpAddress(ip);
+        return scan(ip, null, 0, ip.length()) != NOT_AN_IP_ADDRESS;
     }
 
     public static boolean isDecimalIpAddress(String ip) {
-        return DECIMAL_PATTERN.matcher(ip).matches();
+        return isDecimal(scan(ip, null, 0, ip.length()));
     }
 
     public static boolean isOctalEncodedIpAddress(String ip) {
-        return OCTAL_PATTERN.matcher(ip).matches();
+        long scan = scan(ip, null, 0, ip.length());
+        return components(scan) == 4 && radixes(scan) == OCTAL;
     }
 
     public static boolean isHexEncodedIpAddress(String ip) {
-        return HEX_PATTERN.matcher(ip).matches();
+        long scan = scan(ip, null, 0, ip.length());
+        return components(scan) == 4 && radixes(scan) == HEX;
     }
 
     public static boolean isIntegerIpAddress(String ip) {
-        try {
-            Integer.parseUnsignedInt(ip);
-            return true;
-        } catch (NumberFormatException ex) {
-            return false;
+        long scan = scan(ip, null, 0, ip.length());
+        return components(scan) == 1 && (radixes(scan) & ~DECIMAL) == 0;
+    }
+
+    /**
+     * Parses an IPv4 address in any of its legal encodings.
+     *
+     * @param ipAddress {@code String} to parse
+     * @return the address as an unsigned 32-bit value;
+     *         {@link #NOT_AN_IP_ADDRESS} otherwise
+     */
+    public static long parseIpv4Address(String ipAddress) {
+        return address(scan(ipAddress, null, 0, ipAddress.length()));
+    }
+
+    /**
+     * Parses an IPv4 address in any of its legal encodings from a range of
+     * a {@code char} array.
+     *
+     * @param chars array holding the address
+     * @param start index of the first character of the address
+     * @param end index after the last character of the address
+     * @return the address as an unsigned 32-bit value;
+     *         {@link #NOT_AN_IP_ADDRESS} otherwise
+     */
+    public static long parseIpv4Address(char[] chars, int start, int end) {
+        return address(scan(null, chars, start, end));
+    }
+
+    /**
+     * Formats an address as four dot-separated decimals.
+     *
+     * @param ipAddress unsigned 32-bit address, as returned by {@link #parseIpv4Address(String)}
+     * @return four-dot separated decimals {@code String}
+     */
+    public static String formatIpv4Address(long ipAddress) {
+        char[] chars = new char[MAX_DECIMAL_LENGTH];
+        return new String(chars, 0, formatIpv4Address(ipAddress, chars, 0));
+    }
+
+    /**
+     * Writes an address as four dot-separated decimals into a {@code char} array.
+     *
+     * @param ipAddress unsigned 32-bit address, as returned by {@link #parseIpv4Address(String)}
+     * @param chars array with room for at least 15 characters after {@code offset}
+     * @param offset index to write the first character to
+     * @return index after the last character written
+     */
+    public static int formatIpv4Address(long ipAddress, char[] chars, int offset) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int octet = (int) (ipAddress >>> shift) & 0xff;
+
+            if (octet >= 100) {
+                chars[offset++] = (char) ('0' + octet / 100);
+            }
+            if (octet >= 10) {
+                chars[offset++] = (char) ('0' + octet / 10 % 10);
+            }
+            chars[offset++] = (char) ('0' + octet % 10);
+
+            if (shift > 0) {
+                chars[offset++] = '.';
+            }
         }
+        return offset;
     }
 
     /**
@@ -60,39 +138,121 @@ public final class IpUtils {
      *         {@code null} otherwise
      */
     public static String resolveDecimalIpAddress(String ipAddress) {
-        if (isDecimalIpAddress(ipAddress)) {
+        long scan = scan(ipAddress, null, 0, ipAddress.length());
+
+        if (scan == NOT_AN_IP_ADDRESS) {
+            return null;
+        } else if (isDecimal(scan)) {
             return ipAddress;
         }
+        return formatIpv4Address(address(scan));
+    }
 
-        Matcher matcherOct = OCTAL_PATTERN.matcher(ipAddress);
-        if (matcherOct.matches()) {
-            return convertToDecimal(matcherOct, 8);
-        }
+    /**
+     * Scans an address, from either a {@code CharSequence} or a {@code char} array, into
+     * its value in the low 32 bits, its number of components in the next 3 bits and the
+     * radixes of its components in the 3 bits after those. A component's radix is the one
+     * of its prefix, whatever its value, so {@code 0x0} is hex and {@code 00} is octal; only
+     * a bare {@code 0}, which reads the same in every radix, does not count.
+     */
+    private static long scan(CharSequence sequence, char[] chars, int start, int end) {
+        long address = 0;
+        int components = 0;
+        int radixes = 0;
+        int i = start;
 
-        Matcher matcherHex = HEX_PATTERN.matcher(ipAddress);
-        if (matcherHex.matches()) {
-            return convertToDecimal(matcherHex, 16);
-        }
+        while (true) {
+            int radix = 10;
+
+            if (i + 1 < end && charAt(sequence, chars, i) == '0') {
+                char next = charAt(sequence, chars, i + 1);
+
+                if (next == 'x' || next == 'X') {
+                    radix = 16;
+                    i += 2;
+                } else if (next != '.') {
+                    radix = 8;
+                    i++;
+                }
+            }
+
+            int digitsStart = i;
+            long value = 0;
+
+            for (char ch; i < end && (ch = charAt(sequence, chars, i)) != '.'; i++) {
+                int digit = digit(ch, radix);
+
+                if (digit < 0) {
+                    return NOT_AN_IP_ADDRESS;
+                }
+                value = value * radix + digit;
 
-        if (isIntegerIpAddress(ipAddress)) {
-            int ip = Integer.parseUnsignedInt(ipAddress);
+                if (value > ADDRESS_MASK) {
+                    return NOT_AN_IP_ADDRESS;
+                }
+            }
 
-            return String.format(
-                    "%d.%d.%d.%d",
-                    (ip >> 24 & 0xff), (ip >> 16 & 0xff), (ip >> 8 & 0xff), (ip & 0xff));
+            if (i == digitsStart && radix == 10) {
+                return NOT_AN_IP_ADDRESS;
+            }
+
+            components++;
+            if (radix != 10 || value != 0) {
+                radixes |= radix == 16 ? HEX : radix == 8 ? OCTAL : DECIMAL;
+            }
+
+            if (i == end) {
+                int remainingBits = 8 * (5 - components);
+
+                if (value >>> remainingBits != 0) {
+                    return NOT_AN_IP_ADDRESS;
+                }
+
+                address = address << remainingBits | value;
+                return address & ADDRESS_MASK
+                        | (long) components << COMPONENTS_SHIFT
+                        | (long) radixes << RADIXES_SHIFT;
+            } else if (components == 4 || value > 0xff) {
+                return NOT_AN_IP_ADDRESS;
+            }
+
+            address = address << 8 | value;
+            i++;
         }
+    }
 
-        return null;
+    private static char charAt(CharSequence sequence, char[] chars, int index) {
+        return chars != null ? chars[index] : sequence.charAt(index);
     }
 
-    private static String convertToDecimal(Matcher matcher, int radix) {
-        StringJoiner joiner = new StringJoiner(".");
+    private static int digit(char ch, int radix) {
+        int digit;
 
-        for (int i = 1; i <= 4; i++) {
-            int decimal = Integer.parseInt(matcher.group(i), radix);
-            joiner.add(String.valueOf(decimal));
+        if (ch >= '0' && ch <= '9') {
+            digit = ch - '0';
+        } else if (ch >= 'a' && ch <= 'f') {
+            digit = ch - 'a' + 10;
+        } else if (ch >= 'A' && ch <= 'F') {
+            digit = ch - 'A' + 10;
+        } else {
+            return -1;
         }
+        return digit < radix ? digit : -1;
+    }
+
+    private static long address(long scan) {
+        return scan == NOT_AN_IP_ADDRESS ? NOT_AN_IP_ADDRESS : scan & ADDRESS_MASK;
+    }
+
+    private static int components(long scan) {
+        return scan == NOT_AN_IP_ADDRESS ? 0 : (int) (scan >>> COMPONENTS_SHIFT) & 0x7;
+    }
+
+    private static int radixes(long scan) {
+        return scan == NOT_AN_IP_ADDRESS ? 0 : (int) (scan >>> RADIXES_SHIFT) & 0x7;
+    }
 
-        return joiner.toString();
+    private static boolean isDecimal(long scan) {
+        return components(scan) == 4 && (radixes(scan) & ~DECIMAL) == 0;
     }
 }
@@ -0,0 +1,42 @@
+package eu.mackatozis.hashing.urls.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <pre>
+ * {@link Sha256Backend} on top of the {@code MessageDigest} of the JDK, which
+ * the JIT replaces with the SHA extensions of the CPU where it has them.
+ *
+ * Inputs are hashed with a per-thread {@link IncrementalDigest}, so that
+ * consecutive inputs sharing whole blocks of leading bytes, like the
+ * expressions of a URL, do not hash those again.
+ * </pre>
+ */
+public final class JdkSha256Backend implements Sha256Backend {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final ThreadLocal<IncrementalDigest> INCREMENTAL_DIGEST =
+            ThreadLocal.withInitial(() -> new IncrementalDigest(newMessageDigest()));
+
+    @Override
+    public void digest(byte[] data, int offset, int length, byte[] digest) {
+        IncrementalDigest incrementalDigest = INCREMENTAL_DIGEST.get();
+        try {
+            incrementalDigest.digest(data, offset, length, digest);
+        } catch (DigestException e) {
+            incrementalDigest.reset();
+            throw new IllegalStateException("Could not compute SHA256 digest", e);
+        }
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA256 is not supported by the JDK", e);
+        }
+    }
+}
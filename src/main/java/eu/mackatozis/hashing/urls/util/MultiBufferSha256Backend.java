@@ -0,0 +1,215 @@
+package eu.mackatozis.hashing.urls.util;
+
+/**
+ * <pre>
+ * Pure-Java {@link Sha256Backend} that hashes up to {@value #LANES} short
+ * inputs in lockstep.
+ *
+ * An input of at most 55 bytes fits, once padded, in a single 64-byte block.
+ * The blocks of several such inputs are laid out lane by lane, so that every
+ * step of the compression function is a loop over the lanes doing the same
+ * arithmetic on adjacent {@code int}s, which the JIT may turn into vector
+ * instructions:
+ *
+ * w[t * LANES + lane]   word t of the message schedule of each lane
+ * a[lane] .. h[lane]    working variables of each lane
+ *
+ * Almost all expressions of a URL are that short. Longer inputs are handed
+ * to the {@code MessageDigest} of the JDK instead.
+ * </pre>
+ */
+public final class MultiBufferSha256Backend implements Sha256Backend {
+
+    public static final int LANES = 8;
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private static final int MAX_SINGLE_BLOCK_LENGTH = BLOCK_LENGTH - 1 - Long.BYTES;
+
+    private static final int ROUNDS = 64;
+
+    private static final int[] INITIAL_HASH = {
+        0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+        0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] ROUND_CONSTANTS = {
+        0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5,
+        0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+        0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+        0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+        0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+        0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+        0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+        0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+        0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+        0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+        0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5,
+        0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+        0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private static final ThreadLocal<Lanes> WORKSPACE = ThreadLocal.withInitial(Lanes::new);
+
+    private final Sha256Backend fallback = new JdkSha256Backend();
+
+    @Override
+    public void digest(byte[] data, int offset, int length, byte[] digest) {
+        if (length > MAX_SINGLE_BLOCK_LENGTH) {
+            fallback.digest(data, offset, length, digest);
+            return;
+        }
+
+        Lanes lanes = WORKSPACE.get();
+        lanes.load(data, offset, length, digest);
+        lanes.compress();
+    }
+
+    @Override
+    public void digest(byte[] data, int[] offsets, int[] lengths, int count, byte[][] digests) {
+        Lanes lanes = WORKSPACE.get();
+
+        for (int i = 0; i < count; i++) {
+            if (lengths[i] > MAX_SINGLE_BLOCK_LENGTH) {
+                fallback.digest(data, offsets[i], lengths[i], digests[i]);
+            } else if (lanes.load(data, offsets[i], lengths[i], digests[i]) == LANES) {
+                lanes.compress();
+            }
+        }
+
+        if (lanes.count > 0) {
+            lanes.compress();
+        }
+    }
+
+    /**
+     * Per-thread message schedules, working variables and target digests of
+     * the lanes.
+     */
+    private static final class Lanes {
+
+        private final int[] w = new int[ROUNDS * LANES];
+
+        private final int[] a = new int[LANES];
+        private final int[] b = new int[LANES];
+        private final int[] c = new int[LANES];
+        private final int[] d = new int[LANES];
+        private final int[] e = new int[LANES];
+        private final int[] f = new int[LANES];
+        private final int[] g = new int[LANES];
+        private final int[] h = new int[LANES];
+
+        private final byte[][] digests = new byte[LANES][];
+
+        private int count;
+
+        /**
+         * Pads a single-block input into the next free lane.
+         *
+         * @return number of lanes in use
+         */
+        int load(byte[] data, int offset, int length, byte[] digest) {
+            int lane = count;
+
+            for (int t = 0; t < 14; t++) {
+                int word = 0;
+                for (int i = t * 4; i < t * 4 + 4; i++) {
+                    int value = i < length ? data[offset + i] & 0xff : i == length ? 0x80 : 0;
+                    word = word << 8 | value;
+                }
+                w[t * LANES + lane] = word;
+            }
+            w[14 * LANES + lane] = 0;
+            w[15 * LANES + lane] = length << 3;
+
+            digests[lane] = digest;
+            return ++count;
+        }
+
+        /**
+         * Compresses the blocks of the lanes in use, writes their digests and
+         * frees the lanes.
+         */
+        void compress() {
+            int lanes = count;
+
+            for (int t = 16; t < ROUNDS; t++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int w15 = w[(t - 15) * LANES + lane];
+                    int w2 = w[(t - 2) * LANES + lane];
+                    int s0 =
+                            Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+                    int s1 =
+                            Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+                    w[t * LANES + lane] =
+                            w[(t - 16) * LANES + lane] + s0 + w[(t - 7) * LANES + lane] + s1;
+                }
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                a[lane] = INITIAL_HASH[0];
+                b[lane] = INITIAL_HASH[1];
+                c[lane] = INITIAL_HASH[2];
+                d[lane] = INITIAL_HASH[3];
+                e[lane] = INITIAL_HASH[4];
+                f[lane] = INITIAL_HASH[5];
+                g[lane] = INITIAL_HASH[6];
+                h[lane] = INITIAL_HASH[7];
+            }
+
+            for (int t = 0; t < ROUNDS; t++) {
+                int k = ROUND_CONSTANTS[t];
+                int base = t * LANES;
+
+                for (int lane = 0; lane < lanes; lane++) {
+                    int ea = e[lane];
+                    int aa = a[lane];
+                    int s1 =
+                            Integer.rotateRight(ea, 6)
+                                    ^ Integer.rotateRight(ea, 11)
+                                    ^ Integer.rotateRight(ea, 25);
+                    int ch = (ea & f[lane]) ^ (~ea & g[lane]);
+                    int t1 = h[lane] + s1 + ch + k + w[base + lane];
+                    int s0 =
+                            Integer.rotateRight(aa, 2)
+                                    ^ Integer.rotateRight(aa, 13)
+                                    ^ Integer.rotateRight(aa, 22);
+                    int maj = (aa & b[lane]) ^ (aa & c[lane]) ^ (b[lane] & c[lane]);
+
+                    h[lane] = g[lane];
+                    g[lane] = f[lane];
+                    f[lane] = ea;
+                    e[lane] = d[lane] + t1;
+                    d[lane] = c[lane];
+                    c[lane] = b[lane];
+                    b[lane] = aa;
+                    a[lane] = t1 + s0 + maj;
+                }
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                byte[] digest = digests[lane];
+                store(digest, 0, INITIAL_HASH[0] + a[lane]);
+                store(digest, 4, INITIAL_HASH[1] + b[lane]);
+                store(digest, 8, INITIAL_HASH[2] + c[lane]);
+                store(digest, 12, INITIAL_HASH[3] + d[lane]);
+                store(digest, 16, INITIAL_HASH[4] + e[lane]);
+                store(digest, 20, INITIAL_HASH[5] + f[lane]);
+                store(digest, 24, INITIAL_HASH[6] + g[lane]);
+                store(digest, 28, INITIAL_HASH[7] + h[lane]);
+                digests[lane] = null;
+            }
+            count = 0;
+        }
+
+        private static void store(byte[] digest, int offset, int value) {
+            digest[offset] = (byte) (value >>> 24);
+            digest[offset + 1] = (byte) (value >>> 16);
+            digest[offset + 2] = (byte) (value >>> 8);
+            digest[offset + 3] = (byte) value;
+        }
+    }
+}
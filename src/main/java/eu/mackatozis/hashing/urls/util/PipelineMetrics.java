@@ -0,0 +1,204 @@
+package eu.mackatozis.hashing.urls.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * Measures the stages of the hashing pipeline with as little overhead as
+ * possible on the hot path:
+ *
+ * - events are counted in {@code LongAdder}s, which threads update without
+ *   contending, and which are only summed when the metrics are read
+ * - stages are timed for a random sample of one in {@code sampleRate} URLs,
+ *   so that most URLs do not read the clock at all
+ *
+ * The meters are named:
+ *
+ * hashing.urls.stage                              timer per stage, sampled
+ * hashing.urls.expressions.per.url                summary, sampled
+ * hashing.urls.hashed                             URLs hashed
+ * hashing.urls.expressions                        expressions hashed
+ * hashing.urls.malformed                          malformed URLs
+ * hashing.urls.canonicalization.idn.conversions   hosts converted to Punycode
+ * hashing.urls.canonicalization.ip.literals       hosts canonicalized as IPv4 addresses
+ * hashing.urls.canonicalization.percent.decodes   percent-escapes decoded, repeats included
+ * </pre>
+ */
+public final class PipelineMetrics {
+
+    public static final PipelineMetrics DISABLED = new PipelineMetrics();
+
+    /**
+     * Start time of a URL that is not sampled.
+     */
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    public enum Stage {
+        CANONICALIZATION,
+        EXPRESSION_EXTRACTION,
+        HASH_COMPUTATION
+    }
+
+    private final boolean enabled;
+
+    private final int sampleRate;
+
+    private final Timer[] stageTimers;
+
+    private final DistributionSummary expressionsPerUrl;
+
+    private final LongAdder hashedUrls = new LongAdder();
+
+    private final LongAdder expressions = new LongAdder();
+
+    private final LongAdder malformedUrls = new LongAdder();
+
+    private final LongAdder idnConversions = new LongAdder();
+
+    private final LongAdder ipLiterals = new LongAdder();
+
+    private final LongAdder percentDecodes = new LongAdder();
+
+    private PipelineMetrics() {
+        this.enabled = false;
+        this.sampleRate = 0;
+        this.stageTimers = null;
+        this.expressionsPerUrl = null;
+    }
+
+    /**
+     * Creates the metrics and registers their meters.
+     *
+     * @param registry registry to register the meters with
+     * @param sampleRate one in how many URLs has its stages timed
+     * @throws IllegalArgumentException when the sample rate is not positive
+     */
+    public PipelineMetrics(MeterRegistry registry, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate should be positive");
+        }
+
+        this.enabled = true;
+        this.sampleRate = sampleRate;
+        this.stageTimers = new Timer[Stage.values().length];
+
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] =
+                    Timer.builder("hashing.urls.stage")
+                            .description("Time spent per URL in a stage of the hashing pipeline")
+                            .tag("stage", stage.name().toLowerCase().replace('_', '-'))
+                            .publishPercentileHistogram()
+                            .register(registry);
+        }
+
+        this.expressionsPerUrl =
+                DistributionSummary.builder("hashing.urls.expressions.per.url")
+                        .description("Number of host-suffix and path-prefix expressions of a URL")
+                        .publishPercentileHistogram()
+                        .register(registry);
+
+        register(registry, "hashing.urls.hashed", "URLs hashed", hashedUrls);
+        register(registry, "hashing.urls.expressions", "Expressions hashed", expressions);
+        register(registry, "hashing.urls.malformed", "Malformed URLs", malformedUrls);
+        register(
+                registry,
+                "hashing.urls.canonicalization.idn.conversions",
+                "Hosts converted from Unicode to Punycode",
+                idnConversions);
+        register(
+                registry,
+                "hashing.urls.canonicalization.ip.literals",
+                "Hosts canonicalized as IPv4 addresses",
+                ipLiterals);
+        register(
+                registry,
+                "hashing.urls.canonicalization.percent.decodes",
+                "Percent-escapes decoded, including escapes decoded more than once",
+                percentDecodes);
+    }
+
+    /**
+     * Decides whether the stages of a URL are timed.
+     *
+     * @return start time of the URL when sampled; {@link #NOT_SAMPLED} otherwise
+     */
+    public long startSample() {
+        if (!enabled || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time of a stage of a sampled URL.
+     *
+     * @param stage stage that ended
+     * @param started start time of the stage, as returned by {@link #startSample}
+     *     or by a previous call
+     * @return start time of the next stage; {@link #NOT_SAMPLED} when not sampled
+     */
+    public long recordStage(Stage stage, long started) {
+        if (started == NOT_SAMPLED) {
+            return NOT_SAMPLED;
+        }
+
+        long ended = System.nanoTime();
+        stageTimers[stage.ordinal()].record(ended - started, TimeUnit.NANOSECONDS);
+        return ended;
+    }
+
+    /**
+     * Records a hashed URL.
+     *
+     * @param expressionCount number of expressions of the URL
+     * @param started start time of the URL; {@link #NOT_SAMPLED} when not sampled
+     */
+    public void recordHashedUrl(int expressionCount, long started) {
+        if (enabled) {
+            hashedUrls.increment();
+            expressions.add(expressionCount);
+
+            if (started != NOT_SAMPLED) {
+                expressionsPerUrl.record(expressionCount);
+            }
+        }
+    }
+
+    public void recordMalformedUrl() {
+        if (enabled) {
+            malformedUrls.increment();
+        }
+    }
+
+    public void recordIdnConversion() {
+        if (enabled) {
+            idnConversions.increment();
+        }
+    }
+
+    public void recordIpLiteral() {
+        if (enabled) {
+            ipLiterals.increment();
+        }
+    }
+
+    public void recordPercentDecodes(int count) {
+        if (enabled && count > 0) {
+            percentDecodes.add(count);
+        }
+    }
+
+    private static void register(
+            MeterRegistry registry, String name, String description, LongAdder adder) {
+        FunctionCounter.builder(name, adder, LongAdder::sum)
+                .description(description)
+                .register(registry);
+    }
+}
@@ -0,0 +1,240 @@
+package eu.mackatozis.hashing.urls.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <pre>
+ * Blocked Bloom filter over the leading 4 bytes of the hash prefixes of a
+ * threat list. A digest whose leading 4 bytes are not in the filter cannot
+ * start with any prefix of the list, whatever the length of the prefix.
+ *
+ * Each key sets and probes bits of a single 512-bit block, that is a single
+ * cache line, so a lookup costs one memory access however many bits it probes,
+ * at the price of a slightly higher false positive rate than a classic Bloom
+ * filter of the same size.
+ *
+ * A filter is serialized in the following big-endian layout, so that it can be
+ * read back instead of being rebuilt on startup:
+ *
+ * int   magic          0x48555046
+ * int   version        1
+ * int   block count
+ * int   hash count
+ * int   key count
+ * long  block count * 8 words of bits
+ * </pre>
+ */
+public final class PrefixFilter {
+
+    private static final int MAGIC = 0x48555046;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 5 * Integer.BYTES;
+
+    private static final int BLOCK_BITS = 512;
+
+    private static final int WORDS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+
+    private static final int MAX_HASHES = 16;
+
+    private final long[] words;
+
+    private final int blocks;
+
+    private final int hashes;
+
+    private final int size;
+
+    private PrefixFilter(long[] words, int blocks, int hashes, int size) {
+        this.words = words;
+        this.blocks = blocks;
+        this.hashes = hashes;
+        this.size = size;
+    }
+
+    /**
+     * Builds a filter over the leading 4 bytes of every prefix of a store.
+     *
+     * @param prefixStore store to build the filter for
+     * @param bitsPerPrefix bits of the filter per prefix; 10 bits give a false
+     *     positive rate of about 1%
+     * @return {@code PrefixFilter} of the store
+     */
+    public static PrefixFilter of(PrefixStore prefixStore, int bitsPerPrefix) {
+        if (bitsPerPrefix <= 0) {
+            throw new IllegalArgumentException("Bits per prefix should be positive");
+        }
+
+        long bits = Math.max(BLOCK_BITS, (long) prefixStore.size() * bitsPerPrefix);
+        int blocks = (int) Math.min((bits + BLOCK_BITS - 1) / BLOCK_BITS, Integer.MAX_VALUE / 8);
+        int hashes =
+                (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerPrefix * Math.log(2))));
+
+        PrefixFilter filter =
+                new PrefixFilter(
+                        new long[blocks * WORDS_PER_BLOCK], blocks, hashes, prefixStore.size());
+        prefixStore.forEachLeadingInt(filter::add);
+        return filter;
+    }
+
+    /**
+     * Creates a copy of the filter with the leading 4 bytes of the prefixes of
+     * another store added, for a new version of the store the filter was built
+     * for. Keys cannot be removed from a Bloom filter, so the keys of the
+     * prefixes the new version no longer holds stay in as false positives.
+     *
+     * @param additions store of the prefixes added by the new version
+     * @return {@code PrefixFilter} of the new version
+     */
+    public PrefixFilter withKeysOf(PrefixStore additions) {
+        PrefixFilter filter =
+                new PrefixFilter(words.clone(), blocks, hashes, size + additions.size());
+        additions.forEachLeadingInt(filter::add);
+        return filter;
+    }
+
+    /**
+     * Reads a filter that was written with {@link #writeTo(Path)}.
+     *
+     * @param path filter file
+     * @return the {@code PrefixFilter}
+     * @throws IOException when the file could not be read
+     * @throws IllegalArgumentException when the file is not a valid filter
+     */
+    public static PrefixFilter read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        if (buffer.remaining() < HEADER_LENGTH
+                || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a hash prefix filter");
+        }
+
+        int blocks = buffer.getInt();
+        int hashes = buffer.getInt();
+        int size = buffer.getInt();
+
+        if (blocks <= 0
+                || hashes <= 0
+                || hashes > MAX_HASHES
+                || size < 0
+                || buffer.remaining() != (long) blocks * WORDS_PER_BLOCK * Long.BYTES) {
+            throw new IllegalArgumentException("Corrupt hash prefix filter");
+        }
+
+        long[] words = new long[blocks * WORDS_PER_BLOCK];
+        buffer.asLongBuffer().get(words);
+        return new PrefixFilter(words, blocks, hashes, size);
+    }
+
+    /**
+     * Writes the filter to a file, which is replaced atomically when it exists.
+     *
+     * @param path filter file
+     * @throws IOException when the file could not be written
+     */
+    public void writeTo(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + words.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(blocks).putInt(hashes).putInt(size);
+        buffer.asLongBuffer().put(words);
+
+        FileUtils.writeAtomically(path, buffer.position(0));
+    }
+
+    /**
+     * Tells whether a key may have been added to the filter.
+     *
+     * @param key leading 4 bytes of a digest, as a big-endian {@code int}
+     * @return {@code false} if the key was definitely not added
+     */
+    public boolean mightContain(int key) {
+        long hash = mix(key);
+        int base = block(hash) * WORDS_PER_BLOCK;
+        long bits = mix(hash);
+        int first = (int) bits;
+        int second = (int) (bits >>> 32) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = (first + i * second) >>> 23;
+            if ((words[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of keys added to the filter, including the keys of
+     * prefixes removed from the store since the filter was built.
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of keys the filter is sized for at a number of bits
+     * per prefix.
+     *
+     * @param bitsPerPrefix bits of the filter per prefix
+     * @return number of keys
+     */
+    public long capacity(int bitsPerPrefix) {
+        return (long) blocks * BLOCK_BITS / bitsPerPrefix;
+    }
+
+    /**
+     * Estimates the probability that {@link #mightContain(int)} returns
+     * {@code true} for a key that was not added, from the share of set bits
+     * in each block.
+     *
+     * @return false positive rate, between 0 and 1
+     */
+    public double falsePositiveRate() {
+        double rate = 0;
+
+        for (int block = 0; block < blocks; block++) {
+            int setBits = 0;
+            for (int i = block * WORDS_PER_BLOCK; i < (block + 1) * WORDS_PER_BLOCK; i++) {
+                setBits += Long.bitCount(words[i]);
+            }
+            rate += Math.pow((double) setBits / BLOCK_BITS, hashes);
+        }
+        return rate / blocks;
+    }
+
+    private void add(int key) {
+        long hash = mix(key);
+        int base = block(hash) * WORDS_PER_BLOCK;
+        long bits = mix(hash);
+        int first = (int) bits;
+        int second = (int) (bits >>> 32) | 1;
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = (first + i * second) >>> 23;
+            words[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, which spreads every input bit over
+     * the whole output.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,706 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.constants.HashPrefixLength;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+/**
+ * <pre>
+ * Read-only, sorted set of raw hash prefixes of a threat list, which answers
+ * whether a SHA256 digest starts with any of them.
+ *
+ * Prefixes are grouped by length, and each group is kept sorted as unsigned
+ * bytes in one contiguous block, in the following big-endian layout:
+ *
+ * int  magic           0x48555058
+ * int  version         1
+ * int  group count
+ * per group, ordered by prefix length:
+ *   int  prefix length  [4-32]
+ *   int  prefix count
+ * per group, in the same order:
+ *   prefix count * prefix length bytes
+ *
+ * A store file is memory-mapped as it is, so opening it takes the same time
+ * however many prefixes it holds and none of them is copied onto the heap.
+ * Groups of 4-byte prefixes, which are the vast majority of a threat list,
+ * are searched by interpolation, since SHA256 prefixes are uniformly
+ * distributed; longer prefixes are binary searched.
+ *
+ * Stores are immutable; a threat list update creates a new version of the
+ * store with {@link #applyDiff(int[], PrefixStore)}.
+ * </pre>
+ */
+public final class PrefixStore {
+
+    private static final int MAGIC = 0x48555058;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 3 * Integer.BYTES;
+
+    private static final int GROUP_HEADER_LENGTH = 2 * Integer.BYTES;
+
+    private static final int MAX_INTERPOLATION_STEPS = 8;
+
+    private static final Comparator<byte[]> UNSIGNED_ORDER = Arrays::compareUnsigned;
+
+    private final ByteBuffer buffer;
+
+    private final int[] prefixLengths;
+
+    private final int[] counts;
+
+    private final int[] offsets;
+
+    private final int size;
+
+    private final PrefixFilter filter;
+
+    private PrefixStore(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_LENGTH
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IllegalArgumentException("Not a hash prefix store");
+        }
+
+        int groups = buffer.getInt(2 * Integer.BYTES);
+        if (groups < 0
+                || groups > HashPrefixLength.MAX_HASH_PREFIX_LENGTH
+                || buffer.remaining() < HEADER_LENGTH + groups * GROUP_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Corrupt hash prefix store header");
+        }
+
+        this.buffer = buffer;
+        this.prefixLengths = new int[groups];
+        this.counts = new int[groups];
+        this.offsets = new int[groups];
+
+        long offset = HEADER_LENGTH + (long) groups * GROUP_HEADER_LENGTH;
+        long total = 0;
+        int previousLength = 0;
+
+        for (int i = 0; i < groups; i++) {
+            int position = HEADER_LENGTH + i * GROUP_HEADER_LENGTH;
+            prefixLengths[i] = buffer.getInt(position);
+            counts[i] = buffer.getInt(position + Integer.BYTES);
+            offsets[i] = (int) Math.min(offset, Integer.MAX_VALUE);
+
+            if (prefixLengths[i] < HashPrefixLength.MIN_HASH_PREFIX_LENGTH
+                    || prefixLengths[i] > HashPrefixLength.MAX_HASH_PREFIX_LENGTH
+                    || prefixLengths[i] <= previousLength
+                    || counts[i] < 0) {
+                throw new IllegalArgumentException("Corrupt hash prefix store group " + i);
+            }
+
+            previousLength = prefixLengths[i];
+            offset += (long) prefixLengths[i] * counts[i];
+            total += counts[i];
+        }
+
+        if (offset != buffer.remaining()) {
+            throw new IllegalArgumentException(
+                    "Hash prefix store should be " + offset + " bytes long but is "
+                            + buffer.remaining());
+        }
+
+        this.size = (int) Math.min(total, Integer.MAX_VALUE);
+        this.filter = null;
+    }
+
+    private PrefixStore(PrefixStore prefixStore, PrefixFilter filter) {
+        this.buffer = prefixStore.buffer;
+        this.prefixLengths = prefixStore.prefixLengths;
+        this.counts = prefixStore.counts;
+        this.offsets = prefixStore.offsets;
+        this.size = prefixStore.size;
+        this.filter = filter;
+    }
+
+    /**
+     * Memory-maps a store file.
+     *
+     * @param path store file
+     * @return {@code PrefixStore} backed by the file
+     * @throws IOException when the file could not be mapped
+     * @throws IllegalArgumentException when the file is not a valid store
+     */
+    public static PrefixStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Hash prefix store should be smaller than 2GB");
+            }
+            return new PrefixStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Creates a store on the heap from prefixes of any supported length,
+     * in any order and with duplicates.
+     *
+     * @param prefixes raw hash prefixes of [4-32] bytes
+     * @return {@code PrefixStore} of the distinct prefixes
+     */
+    public static PrefixStore of(Collection<byte[]> prefixes) {
+        TreeMap<Integer, List<byte[]>> groups = new TreeMap<>();
+
+        for (byte[] prefix : prefixes) {
+            checkPrefixLength(prefix.length);
+            groups.computeIfAbsent(prefix.length, length -> new ArrayList<>()).add(prefix);
+        }
+
+        TreeMap<Integer, byte[]> rawHashes = new TreeMap<>();
+        for (Map.Entry<Integer, List<byte[]>> group : groups.entrySet()) {
+            int prefixLength = group.getKey();
+            byte[] block = new byte[prefixLength * group.getValue().size()];
+
+            for (int i = 0; i < group.getValue().size(); i++) {
+                System.arraycopy(group.getValue().get(i), 0, block, i * prefixLength, prefixLength);
+            }
+            rawHashes.put(prefixLength, block);
+        }
+        return ofRawHashes(rawHashes);
+    }
+
+    /**
+     * Creates a store on the heap from Web Risk-style raw hashes, that is
+     * prefixes of the same length concatenated into a single array.
+     *
+     * @param prefixLength length of every prefix, [4-32] bytes
+     * @param rawHashes concatenated prefixes
+     * @return {@code PrefixStore} of the distinct prefixes
+     */
+    public static PrefixStore ofRawHashes(int prefixLength, byte[] rawHashes) {
+        return ofRawHashes(Collections.singletonMap(prefixLength, rawHashes));
+    }
+
+    /**
+     * Creates a store on the heap from Web Risk-style raw hashes of several
+     * prefix lengths. The prefixes are sorted in place, without creating an
+     * object per prefix.
+     *
+     * @param rawHashes concatenated prefixes by prefix length, [4-32] bytes
+     * @return {@code PrefixStore} of the distinct prefixes
+     */
+    public static PrefixStore ofRawHashes(Map<Integer, byte[]> rawHashes) {
+        TreeMap<Integer, byte[]> groups = new TreeMap<>(rawHashes);
+        int[] lengths = new int[groups.size()];
+        int[] counts = new int[groups.size()];
+        byte[][] blocks = new byte[groups.size()][];
+        int group = 0;
+
+        for (Map.Entry<Integer, byte[]> entry : groups.entrySet()) {
+            int prefixLength = entry.getKey();
+            checkPrefixLength(prefixLength);
+            if (entry.getValue().length % prefixLength != 0) {
+                throw new IllegalArgumentException(
+                        "Raw hashes should be a multiple of " + prefixLength + " bytes long");
+            }
+
+            lengths[group] = prefixLength;
+            blocks[group] = entry.getValue().clone();
+            counts[group] = sortDistinct(blocks[group], prefixLength);
+            group++;
+        }
+        return assemble(lengths, blocks, counts);
+    }
+
+    /**
+     * Writes the store to a file, which is replaced atomically when it exists.
+     *
+     * @param path store file
+     * @throws IOException when the file could not be written
+     */
+    public void writeTo(Path path) throws IOException {
+        FileUtils.writeAtomically(path, buffer);
+    }
+
+    /**
+     * Returns the number of prefixes in the store.
+     *
+     * @return number of prefixes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns all prefixes concatenated in lexicographic order, where a prefix
+     * comes before the longer prefixes it starts. This is the order that threat
+     * list removal indices and checksums refer to.
+     *
+     * @return read-only buffer of the concatenated prefixes
+     */
+    public ByteBuffer sortedPrefixes() {
+        if (prefixLengths.length == 1) {
+            ByteBuffer prefixes = buffer.asReadOnlyBuffer();
+            prefixes.position(offsets[0]).limit(offsets[0] + counts[0] * prefixLengths[0]);
+            return prefixes.slice();
+        }
+
+        ByteBuffer prefixes = ByteBuffer.allocate(buffer.remaining() - dataOffset());
+        ByteBuffer source = buffer.duplicate();
+        OrderedCursor cursor = new OrderedCursor();
+
+        while (cursor.next()) {
+            int prefixLength = prefixLengths[cursor.group];
+            int position = offsets[cursor.group] + cursor.index * prefixLength;
+
+            source.limit(position + prefixLength).position(position);
+            prefixes.put(source);
+        }
+
+        prefixes.flip();
+        return prefixes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates a new version of the store on the heap, by removing the prefixes
+     * at the given indices of {@link #sortedPrefixes()} and adding the prefixes
+     * of another store. The prefixes that are kept are copied block by block
+     * and the additions are merged in, so the store is never sorted again.
+     *
+     * @param removalIndices indices of the prefixes to remove, in any order
+     * @param additions prefixes to add
+     * @return the new version of the store
+     * @throws IllegalArgumentException when a removal index is out of range
+     *         or repeated
+     */
+    public PrefixStore applyDiff(int[] removalIndices, PrefixStore additions) {
+        BitSet[] removed = removedEntries(removalIndices);
+
+        TreeSet<Integer> lengths = new TreeSet<>();
+        Arrays.stream(prefixLengths).forEach(lengths::add);
+        Arrays.stream(additions.prefixLengths).forEach(lengths::add);
+
+        int[] newLengths = new int[lengths.size()];
+        int[] newCounts = new int[lengths.size()];
+        byte[][] newBlocks = new byte[lengths.size()][];
+        int newGroup = 0;
+
+        for (int prefixLength : lengths) {
+            int group = Arrays.binarySearch(prefixLengths, prefixLength);
+            int additionsGroup = Arrays.binarySearch(additions.prefixLengths, prefixLength);
+
+            newLengths[newGroup] = prefixLength;
+            newBlocks[newGroup] =
+                    new byte[prefixLength
+                            * ((group >= 0 ? counts[group] - removed[group].cardinality() : 0)
+                                    + (additionsGroup >= 0
+                                            ? additions.counts[additionsGroup]
+                                            : 0))];
+            newCounts[newGroup] =
+                    merge(
+                            group >= 0 ? group : -1,
+                            group >= 0 ? removed[group] : null,
+                            additions,
+                            additionsGroup >= 0 ? additionsGroup : -1,
+                            prefixLength,
+                            newBlocks[newGroup]);
+            newGroup++;
+        }
+        return assemble(newLengths, newBlocks, newCounts);
+    }
+
+    /**
+     * Returns a view of the store that consults the filter before searching,
+     * so that most digests that match no prefix are rejected after a few probes
+     * of the filter.
+     *
+     * @param filter filter over the leading 4 bytes of the prefixes of this store
+     * @return the filtered store, which shares the prefixes of this store
+     */
+    public PrefixStore withFilter(PrefixFilter filter) {
+        return new PrefixStore(this, filter);
+    }
+
+    /**
+     * Returns the filter that is consulted before searching.
+     *
+     * @return the filter; {@code null} if the store is not filtered
+     */
+    public PrefixFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Passes the leading 4 bytes of every prefix, as a big-endian {@code int},
+     * to the consumer, group by group.
+     *
+     * @param consumer consumer of the leading bytes
+     */
+    public void forEachLeadingInt(IntConsumer consumer) {
+        for (int group = 0; group < prefixLengths.length; group++) {
+            for (int index = 0; index < counts[group]; index++) {
+                consumer.accept(buffer.getInt(offsets[group] + index * prefixLengths[group]));
+            }
+        }
+    }
+
+    /**
+     * Finds the shortest prefix in the store that the digest starts with.
+     *
+     * @param digest full-length SHA256 digest
+     * @return length of the matching prefix; {@code 0} if none matches
+     */
+    public int match(byte[] digest) {
+        if (filter != null && !filter.mightContain((int) readInt(digest))) {
+            return 0;
+        }
+
+        for (int group = 0; group < prefixLengths.length; group++) {
+            boolean isMatch =
+                    prefixLengths[group] == Integer.BYTES
+                            ? containsInt(group, readInt(digest))
+                            : contains(group, digest);
+
+            if (isMatch) {
+                return prefixLengths[group];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Searches a group of 4-byte prefixes by interpolation, falling back to
+     * bisection when the prefixes turn out not to be uniformly distributed.
+     */
+    private boolean containsInt(int group, long key) {
+        int offset = offsets[group];
+        long low = 0;
+        long high = counts[group] - 1L;
+        int steps = 0;
+
+        while (low <= high) {
+            long lowValue = Integer.toUnsignedLong(buffer.getInt(offset + (int) low * 4));
+            long highValue = Integer.toUnsignedLong(buffer.getInt(offset + (int) high * 4));
+
+            if (key < lowValue || key > highValue) {
+                return false;
+            }
+
+            long middle =
+                    steps++ < MAX_INTERPOLATION_STEPS && highValue > lowValue
+                            ? low + (key - lowValue) * (high - low) / (highValue - lowValue)
+                            : (low + high) >>> 1;
+            long value = Integer.toUnsignedLong(buffer.getInt(offset + (int) middle * 4));
+
+            if (value == key) {
+                return true;
+            } else if (value < key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(int group, byte[] digest) {
+        int offset = offsets[group];
+        int prefixLength = prefixLengths[group];
+        int low = 0;
+        int high = counts[group] - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(offset + middle * prefixLength, digest, prefixLength);
+
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return false;
+    }
+
+    private int compare(int position, byte[] digest, int length) {
+        int i = 0;
+
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            int comparison =
+                    Long.compareUnsigned(buffer.getLong(position + i), readLong(digest, i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        for (; i < length; i++) {
+            int comparison = Byte.toUnsignedInt(buffer.get(position + i)) - (digest[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Maps sorted indices to the entries of the groups they point at.
+     */
+    private BitSet[] removedEntries(int[] removalIndices) {
+        int[] indices = removalIndices.clone();
+        Arrays.sort(indices);
+
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] < 0 || indices[i] >= size || (i > 0 && indices[i] == indices[i - 1])) {
+                throw new IllegalArgumentException("Invalid removal index " + indices[i]);
+            }
+        }
+
+        BitSet[] removed = new BitSet[prefixLengths.length];
+        for (int group = 0; group < prefixLengths.length; group++) {
+            removed[group] = new BitSet(counts[group]);
+        }
+
+        if (prefixLengths.length == 1) {
+            Arrays.stream(indices).forEach(removed[0]::set);
+        } else if (indices.length > 0) {
+            OrderedCursor cursor = new OrderedCursor();
+            int next = 0;
+
+            for (int index = 0; cursor.next() && next < indices.length; index++) {
+                if (indices[next] == index) {
+                    removed[cursor.group].set(cursor.index);
+                    next++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Merges the entries of a group that are not removed with the entries of
+     * a group of the additions, into a block of distinct sorted entries.
+     *
+     * @return number of entries written to the block
+     */
+    private int merge(
+            int group,
+            BitSet removed,
+            PrefixStore additions,
+            int additionsGroup,
+            int prefixLength,
+            byte[] block) {
+        ByteBuffer source = buffer.duplicate();
+        ByteBuffer additionsSource = additions.buffer.duplicate();
+        int count = group >= 0 ? counts[group] : 0;
+        int additionsCount = additionsGroup >= 0 ? additions.counts[additionsGroup] : 0;
+        int index = group >= 0 ? removed.nextClearBit(0) : 0;
+        int additionsIndex = 0;
+        int written = 0;
+
+        while (index < count || additionsIndex < additionsCount) {
+            int position = index < count ? offsets[group] + index * prefixLength : -1;
+            int additionsPosition =
+                    additionsIndex < additionsCount
+                            ? additions.offsets[additionsGroup] + additionsIndex * prefixLength
+                            : -1;
+            int comparison =
+                    position < 0
+                            ? 1
+                            : additionsPosition < 0
+                                    ? -1
+                                    : compare(
+                                            buffer,
+                                            position,
+                                            additions.buffer,
+                                            additionsPosition,
+                                            prefixLength);
+
+            if (comparison <= 0) {
+                source.limit(position + prefixLength).position(position);
+                source.get(block, written * prefixLength, prefixLength);
+                index = removed.nextClearBit(index + 1);
+                additionsIndex += comparison == 0 ? 1 : 0;
+            } else {
+                additionsSource.limit(additionsPosition + prefixLength).position(additionsPosition);
+                additionsSource.get(block, written * prefixLength, prefixLength);
+                additionsIndex++;
+            }
+            written++;
+        }
+        return written;
+    }
+
+    private int dataOffset() {
+        return HEADER_LENGTH + prefixLengths.length * GROUP_HEADER_LENGTH;
+    }
+
+    /**
+     * Walks the entries of all groups in lexicographic order, by merging the
+     * groups, which are each sorted.
+     */
+    private final class OrderedCursor {
+
+        private final int[] positions = new int[prefixLengths.length];
+
+        private int group = -1;
+
+        private int index = -1;
+
+        private boolean next() {
+            group = -1;
+
+            for (int candidate = 0; candidate < prefixLengths.length; candidate++) {
+                if (positions[candidate] < counts[candidate]
+                        && (group < 0 || compareEntries(candidate, group) < 0)) {
+                    group = candidate;
+                }
+            }
+
+            if (group < 0) {
+                return false;
+            }
+            index = positions[group]++;
+            return true;
+        }
+
+        private int compareEntries(int groupA, int groupB) {
+            int lengthA = prefixLengths[groupA];
+            int lengthB = prefixLengths[groupB];
+            int comparison =
+                    compare(
+                            buffer,
+                            offsets[groupA] + positions[groupA] * lengthA,
+                            buffer,
+                            offsets[groupB] + positions[groupB] * lengthB,
+                            Math.min(lengthA, lengthB));
+
+            return comparison != 0 ? comparison : lengthA - lengthB;
+        }
+    }
+
+    private static int compare(
+            ByteBuffer a, int positionA, ByteBuffer b, int positionB, int length) {
+        int i = 0;
+
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            int comparison =
+                    Long.compareUnsigned(a.getLong(positionA + i), b.getLong(positionB + i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        for (; i < length; i++) {
+            int comparison =
+                    Byte.toUnsignedInt(a.get(positionA + i))
+                            - Byte.toUnsignedInt(b.get(positionB + i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private static PrefixStore assemble(int[] lengths, byte[][] blocks, int[] counts) {
+        int groups = 0;
+        long length = HEADER_LENGTH;
+
+        for (int i = 0; i < lengths.length; i++) {
+            if (counts[i] > 0) {
+                groups++;
+                length += GROUP_HEADER_LENGTH + (long) lengths[i] * counts[i];
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Hash prefix store should be smaller than 2GB");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(groups);
+
+        for (int i = 0; i < lengths.length; i++) {
+            if (counts[i] > 0) {
+                buffer.putInt(lengths[i]).putInt(counts[i]);
+            }
+        }
+        for (int i = 0; i < lengths.length; i++) {
+            buffer.put(blocks[i], 0, lengths[i] * counts[i]);
+        }
+
+        buffer.flip();
+        return new PrefixStore(buffer);
+    }
+
+    /**
+     * Sorts the concatenated prefixes of a block as unsigned bytes and moves
+     * the distinct ones to its front. Blocks of 4-byte prefixes are sorted as
+     * {@code int}s, shifted so that signed order matches unsigned order.
+     *
+     * @return number of distinct prefixes
+     */
+    private static int sortDistinct(byte[] block, int prefixLength) {
+        int count = block.length / prefixLength;
+        ByteBuffer view = ByteBuffer.wrap(block);
+
+        if (prefixLength == Integer.BYTES) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = view.getInt(i * Integer.BYTES) ^ Integer.MIN_VALUE;
+            }
+            Arrays.sort(values);
+
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || values[i] != values[i - 1]) {
+                    view.putInt(distinct++ * Integer.BYTES, values[i] ^ Integer.MIN_VALUE);
+                }
+            }
+            return distinct;
+        }
+
+        byte[][] prefixes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            prefixes[i] = Arrays.copyOfRange(block, i * prefixLength, (i + 1) * prefixLength);
+        }
+        Arrays.sort(prefixes, UNSIGNED_ORDER);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || !Arrays.equals(prefixes[i], prefixes[i - 1])) {
+                System.arraycopy(prefixes[i], 0, block, distinct++ * prefixLength, prefixLength);
+            }
+        }
+        return distinct;
+    }
+
+    private static long readInt(byte[] digest) {
+        return ((digest[0] & 0xffL) << 24)
+                | ((digest[1] & 0xffL) << 16)
+                | ((digest[2] & 0xffL) << 8)
+                | (digest[3] & 0xffL);
+    }
+
+    private static long readLong(byte[] digest, int from) {
+        long value = 0;
+        for (int i = from; i < from + Long.BYTES; i++) {
+            value = (value << 8) | (digest[i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static void checkPrefixLength(int prefixLength) {
+        if (prefixLength < HashPrefixLength.MIN_HASH_PREFIX_LENGTH
+                || prefixLength > HashPrefixLength.MAX_HASH_PREFIX_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Prefix size of a hash prefix should be between 4 and 32 bytes");
+        }
+    }
+}
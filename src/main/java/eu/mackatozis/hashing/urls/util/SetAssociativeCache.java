@@ -0,0 +1,199 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <pre>
+ * Slot bookkeeping shared by the bounded, concurrent caches of this package,
+ * which keep their entries in parallel arrays of their own.
+ *
+ * The slots are allocated once and grouped into sets of {@value #WAYS}; a key
+ * can only be held in the set its hash code selects. A miss on a full set
+ * evicts its least frequently used entry and ages the remaining ones, so
+ * entries that keep being hit stay, while entries that were only seen once
+ * make room for newer ones.
+ *
+ * Sets are guarded by striped locks, which subclasses take around their
+ * writes, and around their reads when those are not lock-free.
+ * </pre>
+ *
+ * @param <K> key, as passed to {@link #claimSlot}
+ */
+abstract class SetAssociativeCache<K> {
+
+    static final int WAYS = 8;
+
+    static final int MAX_FREQUENCY = 15;
+
+    private static final int MAX_POWER_OF_TWO = 1 << 30;
+
+    private final int capacity;
+
+    private final int setMask;
+
+    private final int lockMask;
+
+    private final byte[] frequencies;
+
+    private final StampedLock[] locks;
+
+    private final LongAdder size = new LongAdder();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Allocates the slots of an empty cache.
+     *
+     * @param capacity maximum number of entries; rounded up to a power of two,
+     *     of at most {@value #MAX_POWER_OF_TWO}
+     * @param concurrencyLevel expected number of concurrently writing threads
+     */
+    SetAssociativeCache(int capacity, int concurrencyLevel) {
+        if (capacity <= 0 || concurrencyLevel <= 0) {
+            throw new IllegalArgumentException(
+                    "Capacity and concurrency level should be positive");
+        }
+
+        int sets = Math.max(1, ceilingPowerOfTwo(capacity) / WAYS);
+        int stripes = Math.min(sets, ceilingPowerOfTwo(concurrencyLevel * 4));
+
+        this.capacity = sets * WAYS;
+        this.setMask = sets - 1;
+        this.lockMask = stripes - 1;
+        this.frequencies = new byte[this.capacity];
+        this.locks = new StampedLock[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Returns whether a slot holds no entry.
+     */
+    abstract boolean isFree(int slot);
+
+    /**
+     * Returns whether a slot holds the entry of a key.
+     */
+    abstract boolean holds(int slot, K key, int hash);
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return capacity of the cache
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the cache.
+     *
+     * @return statistics of the cache
+     */
+    public CacheStatistics getStatistics() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+
+        return CacheStatistics.builder()
+                .size(size.sum())
+                .capacity(capacity)
+                .hitCount(hits)
+                .missCount(requests - hits)
+                .hitRate(requests == 0 ? 1.0 : (double) hits / requests)
+                .evictionCount(evictionCount.sum())
+                .build();
+    }
+
+    final int set(int hash) {
+        return hash & setMask;
+    }
+
+    final StampedLock lock(int set) {
+        return locks[set & lockMask];
+    }
+
+    final void recordHit(int slot) {
+        // Racy on purpose: frequencies only steer eviction, so a lost update is harmless.
+        if (frequencies[slot] < MAX_FREQUENCY) {
+            frequencies[slot]++;
+        }
+        hitCount.increment();
+    }
+
+    final void recordMiss() {
+        missCount.increment();
+    }
+
+    /**
+     * Picks the slot to write the entry of a key to: the slot already holding
+     * it, a free slot of its set, or else the least frequently used slot of its
+     * set, whose entry is evicted. To be called under the write lock of the set.
+     *
+     * @param set set selected by the hash code of the key
+     * @param key key of the entry
+     * @param hash hash code of the key
+     * @param initialFrequency head start of the entry against eviction, between
+     *     1 and {@value #MAX_FREQUENCY}
+     * @return slot to write the entry to
+     */
+    final int claimSlot(int set, K key, int hash, int initialFrequency) {
+        int base = set * WAYS;
+        int slot = -1;
+        int victim = base;
+
+        for (int i = base; i < base + WAYS; i++) {
+            if (isFree(i)) {
+                slot = i;
+                size.increment();
+                break;
+            } else if (holds(i, key, hash)) {
+                slot = i;
+                break;
+            } else if (frequencies[i] < frequencies[victim]) {
+                victim = i;
+            }
+        }
+
+        if (slot < 0) {
+            slot = victim;
+            evictionCount.increment();
+
+            for (int i = base; i < base + WAYS; i++) {
+                if (frequencies[i] > 0) {
+                    frequencies[i]--;
+                }
+            }
+        }
+
+        frequencies[slot] = (byte) Math.max(1, Math.min(MAX_FREQUENCY, initialFrequency));
+        return slot;
+    }
+
+    /**
+     * Mixes the high bits of a hash code into the low bits, which select the set.
+     */
+    static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Rounds up to a power of two, but to no more than {@value #MAX_POWER_OF_TWO},
+     * past which the next power of two overflows.
+     */
+    static int ceilingPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return value >= MAX_POWER_OF_TWO ? MAX_POWER_OF_TWO : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,46 @@
+package eu.mackatozis.hashing.urls.util;
+
+/**
+ * <pre>
+ * Computes SHA256 digests of ranges of bytes. Implementations are
+ * interchangeable, produce bit-identical digests and are selected by
+ * {@code hashing-urls.hashing.backend}:
+ *
+ * - {@code jdk}: {@link JdkSha256Backend}
+ * - {@code commons-codec}: {@link CommonsCodecSha256Backend}
+ * - {@code multi-buffer}: {@link MultiBufferSha256Backend}
+ *
+ * Implementations are thread-safe.
+ * </pre>
+ */
+public interface Sha256Backend {
+
+    int DIGEST_LENGTH = 32;
+
+    /**
+     * Computes the digest of a range of bytes into the supplied array.
+     *
+     * @param data array holding the input
+     * @param offset index of the first byte of the input
+     * @param length number of bytes of the input
+     * @param digest array of at least {@value #DIGEST_LENGTH} bytes that
+     *     receives the digest at index 0
+     */
+    void digest(byte[] data, int offset, int length, byte[] digest);
+
+    /**
+     * Computes the digests of several ranges of the same array. Inputs are
+     * hashed in order, one after the other, unless the backend can do better.
+     *
+     * @param data array holding the inputs
+     * @param offsets index of the first byte of each input
+     * @param lengths number of bytes of each input
+     * @param count number of inputs
+     * @param digests arrays that receive the digest of each input
+     */
+    default void digest(byte[] data, int[] offsets, int[] lengths, int count, byte[][] digests) {
+        for (int i = 0; i < count; i++) {
+            digest(data, offsets[i], lengths[i], digests[i]);
+        }
+    }
+}
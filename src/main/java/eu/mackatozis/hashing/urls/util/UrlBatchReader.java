@@ -0,0 +1,141 @@
+package eu.mackatozis.hashing.urls.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <pre>
+ * Reads URL {@code String}s one at a time from a stream, so that a batch of
+ * URLs never has to be held in memory as a whole. Two formats are supported:
+ *
+ * - newline-delimited URLs, where blank lines are skipped
+ * - a JSON array of URL {@code String}s
+ *
+ * An I/O or parsing error ends the iteration; it can be retrieved
+ * afterwards with {@link #getError()}.
+ * </pre>
+ */
+public abstract class UrlBatchReader implements Iterator<String>, Closeable {
+
+    private String next;
+
+    private IOException error;
+
+    /**
+     * Creates a reader of newline-delimited URLs.
+     *
+     * @param inputStream UTF-8 encoded stream to read from
+     * @return {@code UrlBatchReader} over the lines of the stream
+     */
+    public static UrlBatchReader ofLines(InputStream inputStream) {
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+        return new UrlBatchReader() {
+            @Override
+            protected String readNext() throws IOException {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (StringUtils.isNotBlank(line)) {
+                        return line.trim();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a reader of a JSON array of URLs. The array is parsed token by
+     * token, so only the current URL is held in memory.
+     *
+     * @param inputStream stream to read from
+     * @param jsonFactory factory to create the streaming parser with
+     * @return {@code UrlBatchReader} over the elements of the array
+     * @throws IOException when the parser could not be created
+     */
+    public static UrlBatchReader ofJsonArray(InputStream inputStream, JsonFactory jsonFactory)
+            throws IOException {
+        JsonParser parser = jsonFactory.createParser(inputStream);
+
+        return new UrlBatchReader() {
+            @Override
+            protected String readNext() throws IOException {
+                if (!parser.hasCurrentToken() && parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Expected a JSON array of urls");
+                }
+
+                JsonToken token = parser.nextToken();
+
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    return null;
+                } else if (token != JsonToken.VALUE_STRING) {
+                    throw new IOException(
+                            "Expected a url string but found " + token + " at "
+                                    + parser.getCurrentLocation());
+                }
+                return parser.getText();
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    /**
+     * Reads the next URL.
+     *
+     * @return the next URL {@code String}; {@code null} at the end of the stream
+     * @throws IOException when reading from or parsing the stream fails
+     */
+    protected abstract String readNext() throws IOException;
+
+    /**
+     * Returns the error that ended the iteration early.
+     *
+     * @return the error; {@code null} if the stream was read to its end
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && error == null) {
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String url = next;
+        next = null;
+        return url;
+    }
+}
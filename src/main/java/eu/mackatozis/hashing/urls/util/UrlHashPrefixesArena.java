@@ -0,0 +1,534 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.HashPrefixList;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * Results of a batch of URLs, packed into flat records in pages of off-heap
+ * memory instead of a {@code UrlHashPrefixes} graph per URL. A record is:
+ *
+ * int     record length, in bytes
+ * int     URL index, as given by the caller
+ * int     expression count, or -1 when an error message follows
+ * int     URL length, followed by the UTF-8 encoded URL
+ * int     error length, followed by the UTF-8 encoded error, or
+ * int     offset of each expression entry from the start of the record,
+ *         followed by for each expression:
+ *   byte    32-byte SHA256 digest
+ *   int     expression length, followed by the UTF-8 encoded expression
+ *
+ * Records never span pages; a record larger than a page gets a page of its
+ * own. The only objects per record are an entry in the array of record
+ * positions, and, for a non-ASCII URL, its encoded bytes while it is added.
+ *
+ * Records are read back in order with a {@link Cursor}, which decodes
+ * only what is asked for. Hash prefixes are not stored, since every one of
+ * them is a truncation of the digest.
+ *
+ * Pages are direct buffers of {@value #PAGE_SIZE} bytes, drawn from a
+ * bounded pool which {@link #close()} returns them to, so that consecutive
+ * batches do not wait for the garbage collector to free their memory. An
+ * arena is not thread-safe: it is filled by one thread at a time, and
+ * {@link #addAll} concatenates arenas filled in parallel.
+ * </pre>
+ */
+public final class UrlHashPrefixesArena implements AutoCloseable {
+
+    public static final int PAGE_SIZE = 1 << 20;
+
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final int MAX_POOLED_PAGES = 64;
+
+    private static final int ERROR = -1;
+
+    private static final int HEADER_LENGTH = 4 * Integer.BYTES;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> PAGE_POOL =
+            new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED_PAGES = new AtomicInteger();
+
+    private static final AtomicInteger PAGES_IN_USE = new AtomicInteger();
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+
+    private ByteBuffer page;
+
+    private long[] positions = new long[256];
+
+    private int size;
+
+    private long memoryUsage;
+
+    private boolean isClosed;
+
+    /**
+     * Adds the record of a URL from the expressions of a batch, as packed by
+     * {@code UrlHashPrefixesServiceImpl}.
+     *
+     * @param urlIndex index of the URL
+     * @param url URL {@code String}
+     * @param expressions array holding the UTF-8 encoded expressions
+     * @param offsets index of the first byte of each expression
+     * @param lengths number of bytes of each expression
+     * @param count number of expressions
+     * @param digests digest of each expression
+     */
+    public void add(
+            int urlIndex,
+            String url,
+            byte[] expressions,
+            int[] offsets,
+            int[] lengths,
+            int count,
+            byte[][] digests) {
+        byte[] urlBytes = isAscii(url) ? null : url.getBytes(StandardCharsets.UTF_8);
+        int urlLength = urlBytes != null ? urlBytes.length : url.length();
+
+        int recordLength = HEADER_LENGTH + urlLength + count * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            recordLength += DIGEST_LENGTH + Integer.BYTES + lengths[i];
+        }
+
+        allocate(recordLength);
+        putHeader(recordLength, urlIndex, count, url, urlBytes, urlLength);
+
+        int entry = HEADER_LENGTH + urlLength + count * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            page.putInt(entry);
+            entry += DIGEST_LENGTH + Integer.BYTES + lengths[i];
+        }
+        for (int i = 0; i < count; i++) {
+            page.put(digests[i], 0, DIGEST_LENGTH);
+            page.putInt(lengths[i]);
+            page.put(expressions, offsets[i], lengths[i]);
+        }
+    }
+
+    /**
+     * Adds the record of a URL from its {@code UrlHashPrefixes}, for services
+     * which only produce those.
+     *
+     * @param urlIndex index of the URL
+     * @param urlHashPrefixes hash prefixes of the URL, or the reason they could not be found
+     */
+    public void add(int urlIndex, UrlHashPrefixes urlHashPrefixes) {
+        String url = urlHashPrefixes.getUrl() != null ? urlHashPrefixes.getUrl() : "";
+
+        if (urlHashPrefixes.getError() != null) {
+            addError(urlIndex, url, urlHashPrefixes.getError());
+            return;
+        }
+
+        Set<ExpressionHashes> expressionHashes = urlHashPrefixes.getExpressionHashes();
+        int count = expressionHashes != null ? expressionHashes.size() : 0;
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        byte[][] digests = new byte[count][];
+        byte[][] expressions = new byte[count][];
+        int length = 0;
+        int i = 0;
+
+        if (expressionHashes != null) {
+            for (ExpressionHashes hashes : expressionHashes) {
+                expressions[i] = hashes.getExpression().getBytes(StandardCharsets.UTF_8);
+                digests[i] = new byte[DIGEST_LENGTH];
+                hashes.getDigest(digests[i]);
+                offsets[i] = length;
+                lengths[i] = expressions[i].length;
+                length += lengths[i++];
+            }
+        }
+
+        byte[] packed = new byte[length];
+        for (i = 0; i < count; i++) {
+            System.arraycopy(expressions[i], 0, packed, offsets[i], lengths[i]);
+        }
+        add(urlIndex, url, packed, offsets, lengths, count, digests);
+    }
+
+    /**
+     * Adds the record of a URL whose hash prefixes could not be found.
+     *
+     * @param urlIndex index of the URL
+     * @param url URL {@code String}
+     * @param error reason the hash prefixes could not be found
+     */
+    public void addError(int urlIndex, String url, String error) {
+        byte[] urlBytes = isAscii(url) ? null : url.getBytes(StandardCharsets.UTF_8);
+        int urlLength = urlBytes != null ? urlBytes.length : url.length();
+        byte[] errorBytes = error.getBytes(StandardCharsets.UTF_8);
+        int recordLength = HEADER_LENGTH + urlLength + Integer.BYTES + errorBytes.length;
+
+        allocate(recordLength);
+        putHeader(recordLength, urlIndex, ERROR, url, urlBytes, urlLength);
+
+        page.putInt(errorBytes.length);
+        page.put(errorBytes);
+    }
+
+    /**
+     * Moves the records of another arena after the records of this one. The
+     * pages are handed over, not copied, and the other arena is left empty.
+     *
+     * @param other arena to take the records of
+     */
+    public void addAll(UrlHashPrefixesArena other) {
+        ensureOpen();
+        other.ensureOpen();
+
+        if (other.size == 0) {
+            return;
+        }
+
+        int pageOffset = pages.size();
+        ensurePositionCapacity(size + other.size);
+
+        for (int i = 0; i < other.size; i++) {
+            positions[size++] = other.positions[i] + ((long) pageOffset << 32);
+        }
+        pages.addAll(other.pages);
+        memoryUsage += other.memoryUsage;
+
+        // Later records must not be written into the remainder of a page that moved
+        // in front of the pages of the other arena.
+        page = other.page;
+
+        other.pages.clear();
+        other.page = null;
+        other.size = 0;
+        other.memoryUsage = 0;
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return number of URLs added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the off-heap memory held by the arena.
+     *
+     * @return number of bytes of the pages of the arena
+     */
+    public long memoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * Returns the number of pages held by arenas which are not closed yet,
+     * across all arenas, so that pages which are never released show up.
+     *
+     * @return number of pages in use
+     */
+    public static int pagesInUse() {
+        return PAGES_IN_USE.get();
+    }
+
+    /**
+     * Creates a cursor positioned before the first record.
+     *
+     * @return {@code Cursor} over the records, in the order they were added
+     */
+    public Cursor cursor() {
+        ensureOpen();
+        return new Cursor();
+    }
+
+    /**
+     * Releases the pages of the arena. Records can neither be added nor read
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        PAGES_IN_USE.addAndGet(-pages.size());
+
+        for (ByteBuffer released : pages) {
+            if (released.capacity() == PAGE_SIZE
+                    && POOLED_PAGES.incrementAndGet() <= MAX_POOLED_PAGES) {
+                PAGE_POOL.offer(released.clear());
+            } else if (released.capacity() == PAGE_SIZE) {
+                POOLED_PAGES.decrementAndGet();
+            }
+        }
+        pages.clear();
+        page = null;
+        positions = null;
+        size = 0;
+        memoryUsage = 0;
+    }
+
+    /**
+     * Reserves the bytes of a record and records its position. The record is
+     * then written at the position of the current page.
+     */
+    private void allocate(int recordLength) {
+        ensureOpen();
+
+        if (page == null || page.remaining() < recordLength) {
+            page = recordLength <= PAGE_SIZE ? newPage() : ByteBuffer.allocateDirect(recordLength);
+            pages.add(page);
+            PAGES_IN_USE.incrementAndGet();
+            memoryUsage += page.capacity();
+        }
+
+        ensurePositionCapacity(size + 1);
+        positions[size++] = ((long) (pages.size() - 1) << 32) | page.position();
+    }
+
+    private void putHeader(
+            int recordLength, int urlIndex, int count, String url, byte[] urlBytes, int urlLength) {
+        page.putInt(recordLength);
+        page.putInt(urlIndex);
+        page.putInt(count);
+        page.putInt(urlLength);
+
+        if (urlBytes != null) {
+            page.put(urlBytes);
+        } else {
+            for (int i = 0; i < urlLength; i++) {
+                page.put((byte) url.charAt(i));
+            }
+        }
+    }
+
+    private void ensurePositionCapacity(int capacity) {
+        if (positions.length < capacity) {
+            positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+        }
+    }
+
+    private void ensureOpen() {
+        if (isClosed) {
+            throw new IllegalStateException("Arena is closed");
+        }
+    }
+
+    private static ByteBuffer newPage() {
+        ByteBuffer pooled = PAGE_POOL.poll();
+        if (pooled != null) {
+            POOLED_PAGES.decrementAndGet();
+            return pooled;
+        }
+        return ByteBuffer.allocateDirect(PAGE_SIZE);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the records of the arena in order. A cursor is positioned on a
+     * record by {@link #next()}, and its accessors read that record straight
+     * from off-heap memory.
+     */
+    public final class Cursor {
+
+        private int index = -1;
+
+        private int pageIndex = -1;
+
+        private ByteBuffer record;
+
+        private int start;
+
+        /**
+         * Moves to the next record.
+         *
+         * @return {@code true} if there is one; {@code false} past the last record
+         */
+        public boolean next() {
+            ensureOpen();
+
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+
+            long position = positions[++index];
+            if (pageIndex != (int) (position >>> 32)) {
+                pageIndex = (int) (position >>> 32);
+                record = pages.get(pageIndex).duplicate();
+            }
+            start = (int) position;
+            return true;
+        }
+
+        public int getUrlIndex() {
+            return record.getInt(start + Integer.BYTES);
+        }
+
+        public boolean isError() {
+            return record.getInt(start + 2 * Integer.BYTES) == ERROR;
+        }
+
+        /**
+         * Returns the number of expressions of the URL.
+         *
+         * @return number of expressions; 0 for an error record
+         */
+        public int getExpressionCount() {
+            return Math.max(0, record.getInt(start + 2 * Integer.BYTES));
+        }
+
+        /**
+         * Returns the number of bytes of the UTF-8 encoded URL.
+         *
+         * @return length of the URL, in bytes
+         */
+        public int getUrlLength() {
+            return record.getInt(start + 3 * Integer.BYTES);
+        }
+
+        public String getUrl() {
+            return decode(start + HEADER_LENGTH, getUrlLength());
+        }
+
+        /**
+         * Copies the UTF-8 encoded URL into the supplied array.
+         *
+         * @param target array of at least {@link #getUrlLength()} bytes that receives the URL
+         */
+        public void getUrl(byte[] target) {
+            read(start + HEADER_LENGTH, target, getUrlLength());
+        }
+
+        /**
+         * Returns the reason the hash prefixes of the URL could not be found.
+         *
+         * @return error message; {@code null} when the record is not an error
+         */
+        public String getError() {
+            if (!isError()) {
+                return null;
+            }
+
+            int position = start + HEADER_LENGTH + getUrlLength();
+            return decode(position + Integer.BYTES, record.getInt(position));
+        }
+
+        /**
+         * Returns the number of bytes of the UTF-8 encoded expression.
+         *
+         * @param expression index of the expression
+         * @return length of the expression, in bytes
+         */
+        public int getExpressionLength(int expression) {
+            return record.getInt(entry(expression) + DIGEST_LENGTH);
+        }
+
+        public String getExpression(int expression) {
+            int entry = entry(expression);
+            return decode(entry + DIGEST_LENGTH + Integer.BYTES, record.getInt(entry + DIGEST_LENGTH));
+        }
+
+        /**
+         * Copies the UTF-8 encoded expression into the supplied array.
+         *
+         * @param expression index of the expression
+         * @param target array of at least {@link #getExpressionLength(int)} bytes
+         *     that receives the expression
+         */
+        public void getExpression(int expression, byte[] target) {
+            getExpression(expression, target, 0);
+        }
+
+        /**
+         * Copies the UTF-8 encoded expression into the supplied array.
+         *
+         * @param expression index of the expression
+         * @param target array that receives the expression
+         * @param offset index of the target array to start at
+         */
+        public void getExpression(int expression, byte[] target, int offset) {
+            int entry = entry(expression);
+            record.position(entry + DIGEST_LENGTH + Integer.BYTES);
+            record.get(target, offset, record.getInt(entry + DIGEST_LENGTH));
+        }
+
+        /**
+         * Copies the SHA256 digest of the expression into the supplied array.
+         *
+         * @param expression index of the expression
+         * @param digest array of at least {@value #DIGEST_LENGTH} bytes that receives the digest
+         */
+        public void getDigest(int expression, byte[] digest) {
+            read(entry(expression), digest, DIGEST_LENGTH);
+        }
+
+        /**
+         * Creates the {@code UrlHashPrefixes} of the record, for callers which
+         * need the object graph after all, such as the REST layer.
+         *
+         * @param prefixLengths lengths of the hash prefixes to expose
+         * @return {@code UrlHashPrefixes} of the record
+         */
+        public UrlHashPrefixes toUrlHashPrefixes(PrefixLengths prefixLengths) {
+            if (isError()) {
+                return UrlHashPrefixes.builder().url(getUrl()).error(getError()).build();
+            }
+
+            int count = getExpressionCount();
+            Set<ExpressionHashes> expressionHashes = new LinkedHashSet<>();
+
+            for (int i = 0; i < count; i++) {
+                byte[] digest = new byte[DIGEST_LENGTH];
+                getDigest(i, digest);
+
+                expressionHashes.add(
+                        ExpressionHashes.builder()
+                                .expression(getExpression(i))
+                                .digest(digest)
+                                .hashPrefixes(new HashPrefixList(digest, prefixLengths))
+                                .build());
+            }
+            return UrlHashPrefixes.builder().url(getUrl()).expressionHashes(expressionHashes).build();
+        }
+
+        private int entry(int expression) {
+            if (expression < 0 || expression >= getExpressionCount()) {
+                throw new IndexOutOfBoundsException(
+                        "Expression " + expression + " of " + getExpressionCount());
+            }
+            return start + record.getInt(start + HEADER_LENGTH + getUrlLength()
+                    + expression * Integer.BYTES);
+        }
+
+        private String decode(int position, int length) {
+            byte[] bytes = new byte[length];
+            read(position, bytes, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void read(int position, byte[] target, int length) {
+            record.position(position);
+            record.get(target, 0, length);
+        }
+    }
+}
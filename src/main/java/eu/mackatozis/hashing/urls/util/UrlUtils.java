@@ -7,6 +7,10 @@ import lombok.SneakyThrows;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.UnsupportedEncodingException;
+import java.net.IDN;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -42,6 +46,25 @@ public final class UrlUtils {
         return null;
     }
 
+    /**
+     * Converts the authority part of the input URL {@code String} to its
+     * ASCII Punycode representation.
+     *
+     * @param url URL {@code String} to process
+     * @return URL {@code String} with an ASCII authority part
+     * @throws MalformedURLException when the authority part could not be converted
+     */
+    public static String convertAuthorityToAscii(String url) throws MalformedURLException {
+        try {
+            URI tmp = new URI(url);
+            String authorityPunyCode = IDN.toASCII(tmp.getAuthority());
+            return url.replace(tmp.getAuthority(), authorityPunyCode);
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(
+                    "Could not convert host part to ASCII Punycode representation of url " + url);
+        }
+    }
+
     @SneakyThrows(UnsupportedEncodingException.class)
     public static String encode(String url) {
         String urlEncoded = URLEncoder.encode(url, StandardCharsets.UTF_8.name());
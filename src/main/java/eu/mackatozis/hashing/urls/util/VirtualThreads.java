@@ -0,0 +1,70 @@
+package eu.mackatozis.hashing.urls.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <pre>
+ * Creates executors that run every task on a new virtual thread, on Java
+ * versions that have them. The application is built for Java 11, so the
+ * factory method of Java 21 is looked up at runtime rather than called
+ * directly.
+ * </pre>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class VirtualThreads {
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+            findVirtualThreadPerTaskExecutor();
+
+    /**
+     * Tells whether the running Java version has virtual threads.
+     *
+     * @return {@code true} when virtual thread executors can be created
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @return {@code ExecutorService} on virtual threads
+     * @throws IllegalStateException when the running Java version has no
+     *     virtual threads, or has them only as a preview feature that is not
+     *     enabled
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new IllegalStateException(
+                    "Virtual threads are not supported by Java " + Runtime.version());
+        }
+
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                    "Virtual threads are not enabled on Java " + Runtime.version(), e);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    private static MethodHandle findVirtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup()
+                    .findStatic(
+                            Executors.class,
+                            "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
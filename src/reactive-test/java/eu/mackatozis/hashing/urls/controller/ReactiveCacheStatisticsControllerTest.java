@@ -0,0 +1,41 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.config.ReactiveConfig;
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.service.impl.CachingUrlHashPrefixesServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest
+@Import(ReactiveConfig.class)
+public class ReactiveCacheStatisticsControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private CachingUrlHashPrefixesServiceImpl cachingUrlHashPrefixesService;
+
+    @Test
+    public void findCacheStatistics_shouldBeOk() {
+        given(cachingUrlHashPrefixesService.getUrlCacheStatistics())
+                .willReturn(CacheStatistics.builder().size(1).capacity(10).hitCount(2).build());
+        given(cachingUrlHashPrefixesService.getCanonicalUrlCacheStatistics())
+                .willReturn(CacheStatistics.builder().size(3).capacity(30).build());
+
+        webTestClient.get()
+                .uri("/hash-prefixes/cache/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.urls.hitCount").isEqualTo(2)
+                .jsonPath("$.canonicalUrls.capacity").isEqualTo(30)
+                .jsonPath("$.digests").doesNotExist();
+    }
+}
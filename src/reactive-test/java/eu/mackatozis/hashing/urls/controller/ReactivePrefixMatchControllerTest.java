@@ -0,0 +1,78 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.config.ReactiveConfig;
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import eu.mackatozis.hashing.urls.service.PrefixMatchService;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest(properties = "hashing-urls.prefix-store.path=threat-list.prefixes")
+@Import(ReactiveConfig.class)
+public class ReactivePrefixMatchControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @MockBean
+    private PrefixMatchService prefixMatchService;
+
+    @Test
+    public void findUrlPrefixMatches_shouldMatchOffTheEventLoop() throws Exception {
+        AtomicReference<String> thread = new AtomicReference<>();
+        given(prefixMatchService.findUrlPrefixMatches(anyString()))
+                .willAnswer(
+                        invocation -> {
+                            thread.set(Thread.currentThread().getName());
+                            return UrlPrefixMatches.builder()
+                                    .url(invocation.getArgument(0))
+                                    .matches(Collections.emptyList())
+                                    .build();
+                        });
+
+        webTestClient.get()
+                .uri("/hash-prefixes/match?url={url}", "http://www.example.com/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.match").isEqualTo(false);
+
+        assertTrue(thread.get().startsWith("url-hash-prefixes"), thread.get());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_serviceThrowsExceptions_shouldMapStatuses()
+            throws Exception {
+        given(prefixMatchService.findUrlPrefixMatches("http://example.com:-80/"))
+                .willThrow(MalformedURLException.class);
+        given(prefixMatchService.findUrlPrefixMatches("http://a.com/"))
+                .willThrow(
+                        new UrlLimitExceededException(
+                                UrlLimitExceededException.Limit.URL_LENGTH, 1));
+
+        webTestClient.get()
+                .uri("/hash-prefixes/match?url={url}", "http://example.com:-80/")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get()
+                .uri("/hash-prefixes/match?url={url}", "http://a.com/")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+}
@@ -0,0 +1,176 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.config.ReactiveConfig;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@WebFluxTest
+@Import(ReactiveConfig.class)
+public class ReactiveUrlHashPrefixesControllerTest {
+
+    @Autowired
+    private ReactiveUrlHashPrefixesController reactiveUrlHashPrefixesController;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @Test
+    public void findUrlHashPrefixes_shouldBeOk() throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> urlHashPrefixes(invocation.getArgument(0)));
+
+        webTestClient.get()
+                .uri("/hashing-urls/hash-prefixes?url={url}&prefixLengths=4", "http://a.com/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("{\"url\":\"http://a.com/\",\"expressionHashes\":[]}");
+
+        verify(urlHashPrefixesService, times(1))
+                .findUrlHashPrefixes(anyString(), eq(PrefixLengths.of(4)));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_serviceThrowsMalformedURLException_shouldReturnBadRequest()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willThrow(MalformedURLException.class);
+
+        webTestClient.get()
+                .uri("/hash-prefixes?url={url}", "http://example.com:-80/")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withNewlineDelimitedUrls_shouldKeepInputOrder()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> invocation.getArgument(0).equals("http://b.com/")
+                        ? UrlHashPrefixes.builder().url("http://b.com/").error("Bad").build()
+                        : urlHashPrefixes(invocation.getArgument(0)));
+
+        webTestClient.post()
+                .uri("/hash-prefixes/batch")
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue("http://a.com/\n\n  http://b.com/\nhttp://c.com/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(
+                        UrlHashPrefixesController.APPLICATION_NDJSON_VALUE)
+                .expectBody(String.class).isEqualTo(
+                        "{\"url\":\"http://a.com/\",\"expressionHashes\":[]}\n"
+                                + "{\"url\":\"http://b.com/\",\"error\":\"Bad\"}\n"
+                                + "{\"url\":\"http://c.com/\",\"expressionHashes\":[]}\n");
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withJsonArray_shouldBeOk() throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> urlHashPrefixes(invocation.getArgument(0)));
+
+        webTestClient.post()
+                .uri("/hash-prefixes/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[\"http://a.com/\", \"http://b.com/\"]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(
+                        "{\"url\":\"http://a.com/\",\"expressionHashes\":[]}\n"
+                                + "{\"url\":\"http://b.com/\",\"expressionHashes\":[]}\n");
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_acceptingHashPrefixes_shouldReturnBinaryRecords()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> urlHashPrefixes(invocation.getArgument(0)));
+
+        byte[] body = webTestClient.post()
+                .uri("/hash-prefixes/batch?prefixLengths=4")
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES)
+                .bodyValue("http://a.com/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseBody();
+
+        byte[] url = "http://a.com/".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = new byte[6 + 1 + url.length + 2];
+        System.arraycopy(new byte[] {0x48, 0x55, 0x50, 0x52, 1, 4}, 0, expected, 0, 6);
+        expected[6] = (byte) url.length;
+        System.arraycopy(url, 0, expected, 7, url.length);
+
+        assertArrayEquals(expected, body);
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_refusingHashPrefixes_shouldReturnNdjson() throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> urlHashPrefixes(invocation.getArgument(0)));
+
+        webTestClient.post()
+                .uri("/hash-prefixes/batch")
+                .contentType(MediaType.TEXT_PLAIN)
+                .header(
+                        HttpHeaders.ACCEPT,
+                        UrlHashPrefixesController.APPLICATION_HASH_PREFIXES_VALUE
+                                + ";q=0, application/x-ndjson")
+                .bodyValue("http://a.com/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo(
+                        "{\"url\":\"http://a.com/\",\"expressionHashes\":[]}\n");
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withMalformedAccept_shouldReturnNotAcceptable()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willAnswer(invocation -> urlHashPrefixes(invocation.getArgument(0)));
+
+        webTestClient.get()
+                .uri("/hash-prefixes?url=http://a.com/")
+                .header(HttpHeaders.ACCEPT, "application/x-hash-prefixes;q=x")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withInvalidPrefixLengths_shouldReturnBadRequest() {
+        webTestClient.post()
+                .uri("/hash-prefixes/batch?prefixLengths=four")
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue("http://a.com/")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private UrlHashPrefixes urlHashPrefixes(String url) {
+        return UrlHashPrefixes.builder().url(url).expressionHashes(Collections.emptySet()).build();
+    }
+}
@@ -0,0 +1,79 @@
+package eu.mackatozis.hashing.urls.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.WebFilter;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * <pre>
+ * Provides the reactive variant of the application, which is served instead
+ * of the servlet one with {@code spring.main.web-application-type=reactive}:
+ *
+ * - Netty as the web server, even though Tomcat is on the classpath too
+ * - the bounded scheduler that keeps hashing off the event loop
+ * - the {@code server.servlet.context-path}, so that both variants serve
+ *   the same paths
+ * </pre>
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableConfigurationProperties(BatchProperties.class)
+public class ReactiveConfig {
+
+    /**
+     * Netty server, which is otherwise only picked when Tomcat is missing.
+     *
+     * @return {@code NettyReactiveWebServerFactory} of the reactive variant
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Parallel scheduler with one worker per {@code hashing-urls.batch.parallelism},
+     * which bounds the number of URLs hashed at once however many requests
+     * are in flight.
+     *
+     * @param batchProperties batch settings
+     * @return {@code Scheduler} for canonicalization, expression extraction
+     *     and hashing
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler urlHashPrefixesScheduler(BatchProperties batchProperties) {
+        return Schedulers.newParallel(
+                "url-hash-prefixes", batchProperties.getEffectiveParallelism());
+    }
+
+    /**
+     * Strips the context path off incoming requests, since WebFlux does not
+     * apply {@code server.servlet.context-path} by itself.
+     *
+     * @param contextPath context path of the servlet variant
+     * @return {@code WebFilter} setting the context path of matching requests
+     */
+    @Bean
+    public WebFilter contextPathWebFilter(
+            @Value("${server.servlet.context-path:}") String contextPath) {
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String path = request.getURI().getRawPath();
+
+            if (contextPath.isEmpty()
+                    || !(path.equals(contextPath) || path.startsWith(contextPath + "/"))) {
+                return chain.filter(exchange);
+            }
+            return chain.filter(
+                    exchange.mutate()
+                            .request(request.mutate().contextPath(contextPath).build())
+                            .build());
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.service.impl.CachingUrlHashPrefixesServiceImpl;
+import eu.mackatozis.hashing.urls.util.DigestCache;
+import eu.mackatozis.hashing.urls.util.HostCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Map;
+
+/**
+ * <pre>
+ * Reactive Rest Controller that serves the endpoint of
+ * {@link CacheStatisticsController}, with the same response, when the
+ * application runs on WebFlux and Netty:
+ *
+ * {@code GET /hash-prefixes/cache/stats}
+ *
+ * The counters are summed on the bounded scheduler of {@code ReactiveConfig},
+ * like all other work of the reactive variant.
+ * </pre>
+ */
+@RestController
+@RequestMapping("hash-prefixes/cache")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCacheStatisticsController {
+
+    private final ObjectProvider<CachingUrlHashPrefixesServiceImpl> cachingUrlHashPrefixesService;
+
+    private final ObjectProvider<DigestCache> expressionDigestCache;
+
+    private final ObjectProvider<HostCache> hostCache;
+
+    private final Scheduler urlHashPrefixesScheduler;
+
+    /**
+     * Finds the counters of the enabled caches.
+     *
+     * @return counters of each enabled cache, keyed like the ones of
+     * {@link CacheStatisticsController#findCacheStatistics()}
+     */
+    @GetMapping("stats")
+    public Mono<Map<String, CacheStatistics>> findCacheStatistics() {
+        return Mono.fromCallable(
+                        () ->
+                                CacheStatisticsController.findCacheStatistics(
+                                        cachingUrlHashPrefixesService,
+                                        expressionDigestCache,
+                                        hostCache))
+                .subscribeOn(urlHashPrefixesScheduler);
+    }
+}
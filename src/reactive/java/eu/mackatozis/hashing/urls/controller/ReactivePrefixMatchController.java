@@ -0,0 +1,65 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import eu.mackatozis.hashing.urls.service.PrefixMatchService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.MalformedURLException;
+
+/**
+ * <pre>
+ * Reactive Rest Controller that serves the endpoint of
+ * {@link PrefixMatchController}, with the same parameters and responses,
+ * when the application runs on WebFlux and Netty:
+ *
+ * {@code GET /hash-prefixes/match}
+ *
+ * Canonicalization, hashing and matching run on the bounded scheduler of
+ * {@code ReactiveConfig}, never on the event loop.
+ * </pre>
+ */
+@RestController
+@RequestMapping("hash-prefixes")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "hashing-urls.prefix-store.path")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactivePrefixMatchController {
+
+    private final PrefixMatchService prefixMatchService;
+
+    private final Scheduler urlHashPrefixesScheduler;
+
+    /**
+     * Matches the input URL {@code String} against the local threat list.
+     *
+     * @param url required URL {@code String} to match
+     * @return {@code HttpStatus.OK} with the matching expressions of the input
+     * URL {@code String}; {@code HttpStatus.BAD_REQUEST} if the
+     * URL {@code String} is a Malformed URL or the {@code "url"}
+     * request param is missing; {@code HttpStatus.UNPROCESSABLE_ENTITY}
+     * if the URL {@code String} exceeds a limit of {@code hashing-urls.limits}.
+     */
+    @GetMapping("match")
+    public Mono<ResponseEntity<UrlPrefixMatches>> findUrlPrefixMatches(
+            @RequestParam(value = "url") String url) {
+        return Mono.fromCallable(() -> prefixMatchService.findUrlPrefixMatches(url))
+                .subscribeOn(urlHashPrefixesScheduler)
+                .map(ResponseEntity::ok)
+                .onErrorResume(
+                        UrlLimitExceededException.class,
+                        e -> Mono.just(ResponseEntity.unprocessableEntity().build()))
+                .onErrorResume(
+                        MalformedURLException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+}
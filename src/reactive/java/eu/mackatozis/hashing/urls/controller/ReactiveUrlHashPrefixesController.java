@@ -0,0 +1,315 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.mackatozis.hashing.urls.config.BatchProperties;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.service.impl.UrlHashPrefixesBatchProcessor;
+import eu.mackatozis.hashing.urls.util.HashPrefixesWriter;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <pre>
+ * Reactive Rest Controller that serves the endpoints of
+ * {@link UrlHashPrefixesController}, with the same parameters and responses,
+ * when the application runs on WebFlux and Netty:
+ *
+ * {@code GET /hash-prefixes}
+ * {@code POST /hash-prefixes/batch}
+ *
+ * The event loop only parses requests and writes responses. Canonicalization,
+ * expression extraction and hashing run on the bounded scheduler of
+ * {@code ReactiveConfig}, a chunk of up to {@code hashing-urls.batch.max-chunk-size}
+ * URLs at a time. A batch has at most {@code hashing-urls.batch.parallelism}
+ * chunks in flight and only requests more URLs from the request body as chunks
+ * are written out, so a slow client holds back its own reading, not the server.
+ * </pre>
+ */
+@RestController
+@RequestMapping("hash-prefixes")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUrlHashPrefixesController {
+
+    private static final ResolvableType STRING_TYPE = ResolvableType.forClass(String.class);
+
+    private final UrlHashPrefixesService urlHashPrefixesService;
+
+    private final ObjectMapper objectMapper;
+
+    private final Scheduler urlHashPrefixesScheduler;
+
+    private final BatchProperties batchProperties;
+
+    /**
+     * Finds all hash prefixes of the input URL {@code String}.
+     *
+     * @param url required URL {@code String} to find hash prefixes for
+     * @param prefixLengths lengths of the hash prefixes to find; all of
+     * them when missing
+     * @param accept media types accepted by the client
+     * @return {@code HttpStatus.OK} with the hash prefixes of the input
+     * URL {@code String}, in the binary format when it is accepted;
+     * {@code HttpStatus.BAD_REQUEST} if the URL {@code String} is a
+     * Malformed URL, the {@code "url"} request param is missing or the
+     * prefix lengths are out of range;
+     * {@code HttpStatus.UNPROCESSABLE_ENTITY} if the URL {@code String}
+     * exceeds a limit of {@code hashing-urls.limits}.
+     */
+    @GetMapping
+    public Mono<ResponseEntity<?>> findUrlHashPrefixes(
+            @RequestParam(value = "url") String url,
+            @RequestParam(value = "prefixLengths", required = false) String prefixLengths,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        PrefixLengths selection;
+        try {
+            selection = PrefixLengths.parse(prefixLengths);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        boolean isBinary = UrlHashPrefixesController.acceptsHashPrefixes(accept);
+        int prefixLength = UrlHashPrefixesController.binaryPrefixLength(selection);
+
+        return Mono.fromCallable(() -> urlHashPrefixesService.findUrlHashPrefixes(url, selection))
+                .subscribeOn(urlHashPrefixesScheduler)
+                .<ResponseEntity<?>>map(
+                        urlHashPrefixes ->
+                                isBinary
+                                        ? ResponseEntity.ok()
+                                                .contentType(
+                                                        UrlHashPrefixesController
+                                                                .APPLICATION_HASH_PREFIXES)
+                                                .body(toBinary(urlHashPrefixes, prefixLength))
+                                        : ResponseEntity.ok(urlHashPrefixes))
+                .onErrorResume(
+                        UrlLimitExceededException.class,
+                        e -> Mono.just(ResponseEntity.unprocessableEntity().build()))
+                .onErrorResume(
+                        e -> e instanceof MalformedURLException
+                                || e instanceof IllegalArgumentException,
+                        e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    /**
+     * Finds all hash prefixes of each URL in the request body, which is either
+     * newline-delimited ({@code text/plain}) or a JSON array of URL {@code String}s
+     * ({@code application/json}), and streams one newline-delimited JSON record
+     * per URL back, in the order of the input, or the records of the binary
+     * format when it is accepted.
+     *
+     * @param request request with the URLs in its body
+     * @param prefixLengths lengths of the hash prefixes to find; all of
+     *     them when missing
+     * @param accept media types accepted by the client
+     * @param response response whose buffer factory the records are written with
+     * @return {@code HttpStatus.OK} with the stream of records;
+     *     {@code HttpStatus.BAD_REQUEST} if the prefix lengths are out of range
+     */
+    @PostMapping(
+            path = "batch",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Flux<DataBuffer>> findUrlHashPrefixesBatch(
+            ServerHttpRequest request,
+            @RequestParam(value = "prefixLengths", required = false) String prefixLengths,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            ServerHttpResponse response) {
+        PrefixLengths selection;
+        try {
+            selection = PrefixLengths.parse(prefixLengths);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        boolean isBinary = UrlHashPrefixesController.acceptsHashPrefixes(accept);
+        Flux<List<UrlHashPrefixes>> chunks = findUrlHashPrefixes(readUrls(request), selection);
+        DataBufferFactory bufferFactory = response.bufferFactory();
+
+        if (isBinary) {
+            return ResponseEntity.ok()
+                    .contentType(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES)
+                    .body(
+                            writeHashPrefixes(
+                                    chunks,
+                                    UrlHashPrefixesController.binaryPrefixLength(selection),
+                                    bufferFactory));
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(
+                        UrlHashPrefixesController.APPLICATION_NDJSON_VALUE + ";charset=UTF-8"))
+                .body(chunks.map(chunk -> bufferFactory.wrap(toNdjson(chunk))));
+    }
+
+    /**
+     * Processes the URLs a chunk at a time on the scheduler, keeping the order
+     * of the input. A read error ends the stream of URLs; the URLs read before
+     * it are still processed, and are followed by an error record.
+     */
+    private Flux<List<UrlHashPrefixes>> findUrlHashPrefixes(
+            Flux<String> urls, PrefixLengths prefixLengths) {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        int parallelism = batchProperties.getEffectiveParallelism();
+
+        return urls.onErrorResume(
+                        e -> {
+                            error.set(e);
+                            return Mono.empty();
+                        })
+                .buffer(batchProperties.getMaxChunkSize())
+                .flatMapSequential(
+                        chunk ->
+                                Mono.fromCallable(
+                                                () ->
+                                                        UrlHashPrefixesBatchProcessor
+                                                                .findUrlHashPrefixesChunk(
+                                                                        chunk,
+                                                                        prefixLengths,
+                                                                        urlHashPrefixesService))
+                                        .subscribeOn(urlHashPrefixesScheduler),
+                        parallelism,
+                        1)
+                .concatWith(
+                        Mono.fromSupplier(error::get)
+                                .map(
+                                        e ->
+                                                List.of(
+                                                        UrlHashPrefixes.builder()
+                                                                .error("Could not read urls: "
+                                                                        + e.getMessage())
+                                                                .build())));
+    }
+
+    private Flux<String> readUrls(ServerHttpRequest request) {
+        MediaType contentType = request.getHeaders().getContentType();
+
+        Flux<?> urls =
+                MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                        ? new Jackson2JsonDecoder(objectMapper)
+                                .decode(request.getBody(), STRING_TYPE, contentType, null)
+                        : StringDecoder.textPlainOnly()
+                                .decode(request.getBody(), STRING_TYPE, contentType, null);
+
+        return urls.cast(String.class).filter(StringUtils::isNotBlank).map(String::trim);
+    }
+
+    /**
+     * Writes the chunks in the binary format of {@link HashPrefixesWriter}, with
+     * a single writer per request, so that the header only precedes the first
+     * chunk. The chunks arrive one after the other, in order.
+     */
+    private static Flux<DataBuffer> writeHashPrefixes(
+            Flux<List<UrlHashPrefixes>> chunks, int prefixLength, DataBufferFactory bufferFactory) {
+        return Flux.using(
+                        () -> new BinaryRecords(prefixLength),
+                        records ->
+                                chunks.map(records::write)
+                                        .concatWith(Mono.fromCallable(records::drain)),
+                        BinaryRecords::close)
+                .filter(bytes -> bytes.length > 0)
+                .map(bufferFactory::wrap);
+    }
+
+    private byte[] toNdjson(List<UrlHashPrefixes> chunk) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try {
+            for (UrlHashPrefixes record : chunk) {
+                bytes.write(objectMapper.writeValueAsBytes(record));
+                bytes.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] toBinary(UrlHashPrefixes urlHashPrefixes, int prefixLength) {
+        BinaryRecords records = new BinaryRecords(prefixLength);
+        try {
+            return records.write(List.of(urlHashPrefixes));
+        } finally {
+            records.close();
+        }
+    }
+
+    /**
+     * {@code HashPrefixesWriter} on an in-memory buffer which is drained after
+     * every chunk.
+     */
+    private static final class BinaryRecords {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final HashPrefixesWriter writer;
+
+        BinaryRecords(int prefixLength) {
+            try {
+                writer = new HashPrefixesWriter(bytes, prefixLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] write(List<UrlHashPrefixes> chunk) {
+            try {
+                for (UrlHashPrefixes record : chunk) {
+                    writer.write(record);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return drain();
+        }
+
+        byte[] drain() {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            byte[] drained = bytes.toByteArray();
+            bytes.reset();
+            return drained;
+        }
+
+        void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
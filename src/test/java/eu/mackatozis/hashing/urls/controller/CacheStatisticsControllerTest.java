@@ -0,0 +1,55 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.service.impl.CachingUrlHashPrefixesServiceImpl;
+import eu.mackatozis.hashing.urls.util.DigestCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest
+public class CacheStatisticsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CachingUrlHashPrefixesServiceImpl cachingUrlHashPrefixesService;
+
+    @Autowired
+    private DigestCache expressionDigestCache;
+
+    @TestConfiguration
+    static class DigestCacheTestConfig {
+
+        @Bean
+        public DigestCache expressionDigestCache() {
+            return new DigestCache(64, 1);
+        }
+    }
+
+    @Test
+    public void findCacheStatistics_shouldBeOk() throws Exception {
+        given(cachingUrlHashPrefixesService.getUrlCacheStatistics())
+                .willReturn(CacheStatistics.builder().size(1).capacity(10).hitCount(2).build());
+        given(cachingUrlHashPrefixesService.getCanonicalUrlCacheStatistics())
+                .willReturn(CacheStatistics.builder().size(3).capacity(30).build());
+        expressionDigestCache.get("b.c/", new byte[DigestCache.DIGEST_LENGTH]);
+
+        mockMvc.perform(get("/hash-prefixes/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.urls.hitCount").value(2))
+                .andExpect(jsonPath("$.canonicalUrls.capacity").value(30))
+                .andExpect(jsonPath("$.digests.capacity").value(64))
+                .andExpect(jsonPath("$.digests.missCount").value(1));
+    }
+}
@@ -0,0 +1,71 @@
+package eu.mackatozis.hashing.urls.controller;
+
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import eu.mackatozis.hashing.urls.service.PrefixMatchService;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.net.MalformedURLException;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(properties = "hashing-urls.prefix-store.path=threat-list.prefixes")
+public class PrefixMatchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @MockBean
+    private PrefixMatchService prefixMatchService;
+
+    @Test
+    public void findUrlPrefixMatches_shouldBeOk() throws Exception {
+        given(prefixMatchService.findUrlPrefixMatches(anyString()))
+                .willReturn(
+                        UrlPrefixMatches.builder()
+                                .url("http://www.example.com/")
+                                .matches(Collections.emptyList())
+                                .build());
+
+        mockMvc.perform(get("/hash-prefixes/match")
+                            .queryParam("url", "http://www.example.com/"))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.match").value(false));
+
+        verify(prefixMatchService, times(1)).findUrlPrefixMatches(anyString());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_withEmptyUrl_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/hash-prefixes/match"))
+                .andExpect(status().isBadRequest());
+
+        verify(prefixMatchService, never()).findUrlPrefixMatches(anyString());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_serviceThrowsMalformedURLException_shouldReturnBadRequest()
+            throws Exception {
+        given(prefixMatchService.findUrlPrefixMatches(anyString()))
+                .willThrow(MalformedURLException.class);
+
+        mockMvc.perform(get("/hash-prefixes/match")
+                            .queryParam("url", "http://www.example.com/"))
+                        .andExpect(status().isBadRequest());
+    }
+}
@@ -1,20 +1,37 @@
 package eu.mackatozis.hashing.urls.controller;
 
+import com.google.common.primitives.Bytes;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
 import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest
@@ -35,7 +52,7 @@ public class UrlHashPrefixesControllerTest {
                             .queryParam("url", "http://www.example.com/"))
                         .andExpect(status().isOk());
 
-        verify(urlHashPrefixesService, times(1)).findUrlHashPrefixes(anyString());
+        verify(urlHashPrefixesService, times(1)).findUrlHashPrefixes(anyString(), any());
     }
 
     @Test
@@ -43,18 +60,293 @@ public class UrlHashPrefixesControllerTest {
         mockMvc.perform(get("/hash-prefixes"))
                 .andExpect(status().isBadRequest());
 
-        verify(urlHashPrefixesService, never()).findUrlHashPrefixes(anyString());
+        verify(urlHashPrefixesService, never()).findUrlHashPrefixes(anyString(), any());
     }
 
     @Test
     public void findUrlHashPrefixes_serviceThrowsMalformedURLException_shouldReturnBadRequest() throws Exception {
-        given(urlHashPrefixesService.findUrlHashPrefixes(anyString()))
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
                 .willThrow(MalformedURLException.class);
 
         mockMvc.perform(get("/hash-prefixes")
                             .queryParam("url", "http://www.example.com/"))
                         .andExpect(status().isBadRequest());
 
-        verify(urlHashPrefixesService, times(1)).findUrlHashPrefixes(anyString());
+        verify(urlHashPrefixesService, times(1)).findUrlHashPrefixes(anyString(), any());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_serviceThrowsUrlLimitExceededException_shouldReturnUnprocessableEntity()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willThrow(new UrlLimitExceededException(
+                        UrlLimitExceededException.Limit.URL_LENGTH, 8192));
+
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://www.example.com/"))
+                        .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withoutPrefixLengths_shouldFindAllPrefixLengths()
+            throws Exception {
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://www.example.com/"))
+                        .andExpect(status().isOk());
+
+        verify(urlHashPrefixesService, times(1))
+                .findUrlHashPrefixes(anyString(), eq(PrefixLengths.ALL));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withPrefixLengths_shouldFindSelectedPrefixLengths()
+            throws Exception {
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://www.example.com/")
+                            .queryParam("prefixLengths", "4-6,32"))
+                        .andExpect(status().isOk());
+
+        verify(urlHashPrefixesService, times(1))
+                .findUrlHashPrefixes(anyString(), eq(PrefixLengths.of(4, 5, 6, 32)));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withInvalidPrefixLengths_shouldReturnBadRequest()
+            throws Exception {
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://www.example.com/")
+                            .queryParam("prefixLengths", "2-8"))
+                        .andExpect(status().isBadRequest());
+
+        verify(urlHashPrefixesService, never()).findUrlHashPrefixes(anyString(), any());
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withInvalidPrefixLengths_shouldReturnBadRequest()
+            throws Exception {
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .queryParam("prefixLengths", "four")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("http://a.com/"))
+                        .andExpect(status().isBadRequest());
+
+        verify(urlHashPrefixesService, never()).findUrlHashPrefixes(anyStream(), any());
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withNewlineDelimitedUrls_shouldBeOk() throws Exception {
+        givenBatchAnswers(this::urlHashPrefixes);
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("http://a.com/\n\n  http://b.com/\n"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentType(
+                                UrlHashPrefixesController.APPLICATION_NDJSON_VALUE))
+                        .andExpect(content().string(
+                                "{\"url\":\"http://a.com/\",\"expressionHashes\":[]}\n"
+                                        + "{\"url\":\"http://b.com/\",\"expressionHashes\":[]}\n"));
+
+        verify(urlHashPrefixesService, times(1)).findUrlHashPrefixes(anyStream(), any());
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withJsonArray_shouldBeOk() throws Exception {
+        givenBatchAnswers(this::urlHashPrefixes);
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[\"http://a.com/\", \"http://b.com/\"]"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().string(
+                                "{\"url\":\"http://a.com/\",\"expressionHashes\":[]}\n"
+                                        + "{\"url\":\"http://b.com/\",\"expressionHashes\":[]}\n"));
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_serviceReturnsErrorRecord_shouldReturnErrorRecord()
+            throws Exception {
+        givenBatchAnswers(
+                url -> url.equals("http://a.com/")
+                        ? UrlHashPrefixes.builder().url(url).error("Could not normalize url").build()
+                        : urlHashPrefixes(url));
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("http://a.com/\nhttp://b.com/"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().string(
+                                "{\"url\":\"http://a.com/\",\"error\":\"Could not normalize url\"}\n"
+                                        + "{\"url\":\"http://b.com/\",\"expressionHashes\":[]}\n"));
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withInvalidJson_shouldReturnErrorRecord() throws Exception {
+        givenBatchAnswers(this::urlHashPrefixes);
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"url\": \"http://a.com/\"}"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().string(
+                                "{\"url\":null,\"error\":\"Could not read urls: Expected a JSON array of urls\"}\n"));
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withUnsupportedContentType_shouldReturnUnsupportedMediaType()
+            throws Exception {
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.APPLICATION_XML)
+                            .content("<urls/>"))
+                        .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_acceptingHashPrefixes_shouldReturnBinaryRecord()
+            throws Exception {
+        byte[] digest = new byte[32];
+        digest[0] = 0x12;
+        digest[4] = 0x34;
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willReturn(
+                        UrlHashPrefixes.builder()
+                                .url("http://a.com/")
+                                .expressionHashes(
+                                        Set.of(
+                                                ExpressionHashes.builder()
+                                                        .expression("a.com/")
+                                                        .digest(digest)
+                                                        .build()))
+                                .build());
+
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://a.com/")
+                            .queryParam("prefixLengths", "4-5")
+                            .accept(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentType(
+                                UrlHashPrefixesController.APPLICATION_HASH_PREFIXES_VALUE))
+                        .andExpect(content().bytes(
+                                Bytes.concat(
+                                        new byte[] {0x48, 0x55, 0x50, 0x52, 1, 5},
+                                        record("http://a.com/", "a.com/"),
+                                        new byte[] {0x12, 0, 0, 0, 0x34})));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_acceptingHashPrefixesWithPrefixLengths_33_shouldReturnBadRequest()
+            throws Exception {
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://a.com/")
+                            .queryParam("prefixLengths", "33")
+                            .accept(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES))
+                        .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_acceptingHashPrefixesWithFullHash_shouldWriteWholeDigests()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(
+                        anyString(), eq(PrefixLengths.FULL_HASH_ONLY)))
+                .willReturn(urlHashPrefixes("http://a.com/"));
+
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://a.com/")
+                            .queryParam("prefixLengths", "full")
+                            .accept(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES))
+                        .andExpect(status().isOk())
+                        .andExpect(content().bytes(
+                                Bytes.concat(
+                                        new byte[] {0x48, 0x55, 0x50, 0x52, 1, 32},
+                                        new byte[] {13},
+                                        "http://a.com/".getBytes(StandardCharsets.UTF_8),
+                                        new byte[] {0, 0})));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_refusingHashPrefixes_shouldReturnJson() throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willReturn(urlHashPrefixes("http://a.com/"));
+
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://a.com/")
+                            .header(
+                                    HttpHeaders.ACCEPT,
+                                    UrlHashPrefixesController.APPLICATION_HASH_PREFIXES_VALUE
+                                            + ";q=0, application/json"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withMalformedAccept_shouldReturnNotAcceptable()
+            throws Exception {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyString(), any()))
+                .willReturn(urlHashPrefixes("http://a.com/"));
+
+        mockMvc.perform(get("/hash-prefixes")
+                            .queryParam("url", "http://a.com/")
+                            .header(HttpHeaders.ACCEPT, "application/x-hash-prefixes;q=x"))
+                        .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withMalformedAccept_shouldReturnJson()
+            throws Exception {
+        givenBatchAnswers(this::urlHashPrefixes);
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .header(HttpHeaders.ACCEPT, "application/x-hash-prefixes;q=x")
+                            .content("http://a.com/"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentTypeCompatibleWith(
+                                UrlHashPrefixesController.APPLICATION_NDJSON_VALUE));
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_acceptingHashPrefixes_shouldReturnBinaryRecords()
+            throws Exception {
+        givenBatchAnswers(
+                url -> url.equals("http://a.com/")
+                        ? UrlHashPrefixes.builder().url(url).error("Bad").build()
+                        : urlHashPrefixes(url));
+
+        mockMvc.perform(post("/hash-prefixes/batch")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .accept(UrlHashPrefixesController.APPLICATION_HASH_PREFIXES)
+                            .content("http://a.com/\nhttp://b.com/"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentType(
+                                UrlHashPrefixesController.APPLICATION_HASH_PREFIXES_VALUE))
+                        .andExpect(content().bytes(
+                                Bytes.concat(
+                                        new byte[] {0x48, 0x55, 0x50, 0x52, 1, 32},
+                                        new byte[] {13},
+                                        "http://a.com/".getBytes(StandardCharsets.UTF_8),
+                                        new byte[] {1, 3, 'B', 'a', 'd', 13},
+                                        "http://b.com/".getBytes(StandardCharsets.UTF_8),
+                                        new byte[] {0, 0})));
+    }
+
+    private void givenBatchAnswers(Function<String, UrlHashPrefixes> answer) {
+        given(urlHashPrefixesService.findUrlHashPrefixes(anyStream(), any()))
+                .willAnswer(invocation -> invocation.<Stream<String>>getArgument(0).map(answer));
+    }
+
+    private static Stream<String> anyStream() {
+        return ArgumentMatchers.any();
+    }
+
+    private UrlHashPrefixes urlHashPrefixes(String url) {
+        return UrlHashPrefixes.builder().url(url).expressionHashes(Collections.emptySet()).build();
+    }
+
+    private static byte[] record(String url, String expression) {
+        return Bytes.concat(
+                new byte[] {(byte) url.length()},
+                url.getBytes(StandardCharsets.UTF_8),
+                new byte[] {0, 1, (byte) expression.length()},
+                expression.getBytes(StandardCharsets.UTF_8));
     }
 }
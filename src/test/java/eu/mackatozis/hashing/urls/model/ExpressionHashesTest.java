@@ -0,0 +1,38 @@
+package eu.mackatozis.hashing.urls.model;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ExpressionHashesTest {
+
+    @Test
+    public void getDigest_shouldReturnCopy() {
+        byte[] digest = DigestUtils.sha256("example.com/");
+        ExpressionHashes expressionHashes =
+                ExpressionHashes.builder().expression("example.com/").digest(digest.clone()).build();
+
+        expressionHashes.getDigest()[0]++;
+
+        assertArrayEquals(digest, expressionHashes.getDigest());
+        assertEquals(DigestUtils.sha256Hex("example.com/"), expressionHashes.getFullHash());
+    }
+
+    @Test
+    public void getDigest_withFullHashOnly_shouldDecodeFullHash() {
+        ExpressionHashes expressionHashes =
+                ExpressionHashes.builder()
+                        .expression("example.com/")
+                        .fullHash(DigestUtils.sha256Hex("example.com/"))
+                        .build();
+        byte[] digest = new byte[32];
+
+        expressionHashes.getDigest(digest);
+
+        assertNull(expressionHashes.getDigest());
+        assertArrayEquals(DigestUtils.sha256("example.com/"), digest);
+    }
+}
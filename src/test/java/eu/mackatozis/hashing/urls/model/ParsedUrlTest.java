@@ -0,0 +1,67 @@
+package eu.mackatozis.hashing.urls.model;
+
+import eu.mackatozis.hashing.urls.util.UrlUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class ParsedUrlTest {
+
+    @Test
+    public void parse_shouldBeOk() {
+        ParsedUrl parsedUrl = new ParsedUrl();
+
+        assertTrue(parsedUrl.parse("  http://www.example.com:80/some/path?queryParam=1 "));
+        assertEquals("www.example.com", parsedUrl.getHost());
+        assertEquals("/some/path", parsedUrl.getPath());
+        assertEquals("?queryParam=1", parsedUrl.getQuery());
+        assertEquals("http://www.example.com:80/some/path?queryParam=1", parsedUrl.toString());
+        assertFalse(parsedUrl.isIpAddress());
+    }
+
+    @Test
+    public void parse_withIpAddressAndMissingPath_shouldBeOk() {
+        ParsedUrl parsedUrl = new ParsedUrl();
+
+        assertTrue(parsedUrl.parse(new StringBuilder("https://192.168.0.1?queryParam=1")));
+        assertEquals("192.168.0.1", parsedUrl.getHost());
+        assertFalse(parsedUrl.hasPath());
+        assertNull(parsedUrl.getPath());
+        assertEquals("?queryParam=1", parsedUrl.getQuery());
+        assertTrue(parsedUrl.isIpAddress());
+        assertEquals(0xC0A80001L, parsedUrl.getIpAddress());
+    }
+
+    @Test
+    public void parse_shouldMatchSplit() {
+        String[] urls = {
+            "http://www.example.com",
+            "http://www.example.com/path/1/",
+            "http://www.example.com?queryParam=1",
+            "http://www.example.com:8080/a?b?c",
+            "http://host:/",
+            "http://host:80x/",
+            "http:///path",
+            "ftp://host/",
+            "HTTP://host/",
+            "http://host/?a\nb",
+            "http://host/a\nb?c",
+            ""
+        };
+        ParsedUrl parsedUrl = new ParsedUrl();
+
+        for (String url : urls) {
+            UrlComponents urlComponents = UrlUtils.split(url);
+
+            assertEquals(urlComponents != null, parsedUrl.parse(url), url);
+
+            if (urlComponents != null) {
+                assertEquals(urlComponents.getHost(), parsedUrl.getHost(), url);
+                assertEquals(urlComponents.getPath(), parsedUrl.getPath(), url);
+                assertEquals(urlComponents.getQuery(), parsedUrl.getQuery(), url);
+            }
+        }
+    }
+}
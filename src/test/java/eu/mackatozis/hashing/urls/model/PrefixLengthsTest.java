@@ -0,0 +1,41 @@
+package eu.mackatozis.hashing.urls.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class PrefixLengthsTest {
+
+    @Test
+    public void parse_withListAndRanges_shouldBeOk() {
+        PrefixLengths prefixLengths = PrefixLengths.parse(" 4-6, 16 ,32");
+
+        assertEquals(PrefixLengths.of(4, 5, 6, 16, 32), prefixLengths);
+        assertEquals(5, prefixLengths.size());
+        assertEquals(16, prefixLengths.get(3));
+        assertTrue(prefixLengths.contains(32));
+        assertFalse(prefixLengths.contains(7));
+        assertEquals("4,5,6,16,32", prefixLengths.toString());
+    }
+
+    @Test
+    public void parse_withBlankOrFull_shouldBeOk() {
+        assertSame(PrefixLengths.ALL, PrefixLengths.parse(null));
+        assertSame(PrefixLengths.ALL, PrefixLengths.parse(" "));
+        assertSame(PrefixLengths.FULL_HASH_ONLY, PrefixLengths.parse("full"));
+        assertEquals(28, PrefixLengths.ALL.size());
+        assertTrue(PrefixLengths.FULL_HASH_ONLY.isEmpty());
+    }
+
+    @Test
+    public void parse_withInvalidLengths_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("3"));
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("4-33"));
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("8-4"));
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("4-6-8"));
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("four"));
+        assertThrows(IllegalArgumentException.class, () -> PrefixLengths.parse("4,"));
+    }
+}
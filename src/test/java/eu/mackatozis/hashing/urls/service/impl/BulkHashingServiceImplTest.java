@@ -0,0 +1,210 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.config.BatchProperties;
+import eu.mackatozis.hashing.urls.config.BulkHashingProperties;
+import eu.mackatozis.hashing.urls.model.BulkHashingSummary;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.HashPrefixesWriter;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+public class BulkHashingServiceImplTest {
+
+    private static final List<String> URLS =
+            List.of(
+                    "http://a.b.c/1/2.html?param=1",
+                    "http://www.google.com/",
+                    "http://example.com:-80/",
+                    "https://www.securebrowsing.com/index.html");
+
+    @Autowired
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @Autowired
+    private ExecutorService urlHashPrefixesExecutor;
+
+    @Autowired
+    private BatchProperties batchProperties;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void hashUrls_tsv_shouldKeepInputOrder() throws Exception {
+        BulkHashingProperties properties = new BulkHashingProperties();
+        properties.setPrefixLengths("4");
+        properties.setChunkSize(DataSize.ofBytes(256));
+        Path input = writeInput(1000);
+        Path output = directory.resolve("output.tsv");
+
+        BulkHashingSummary summary = bulkHashingService(properties).hashUrls(input, output);
+
+        StringBuilder expected = new StringBuilder();
+        long expressionCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            String url = URLS.get(i % URLS.size());
+            UrlHashPrefixes urlHashPrefixes = hashInExtractionOrder(url, PrefixLengths.of(4));
+            if (urlHashPrefixes.getError() != null) {
+                expected.append(url).append("\t\t").append(urlHashPrefixes.getError()).append('\n');
+                continue;
+            }
+            for (ExpressionHashes expressionHashes : urlHashPrefixes.getExpressionHashes()) {
+                expected.append(url).append('\t')
+                        .append(expressionHashes.getExpression()).append('\t')
+                        .append(expressionHashes.getFullHash()).append('\t')
+                        .append(expressionHashes.getHashPrefixes().get(0)).append('\n');
+                expressionCount++;
+            }
+        }
+
+        assertEquals(expected.toString(), Files.readString(output));
+        assertEquals(1000, summary.getUrlCount());
+        assertEquals(250, summary.getErrorCount());
+        assertEquals(expressionCount, summary.getExpressionCount());
+        assertEquals(Files.size(input), summary.getInputBytes());
+        assertEquals(Files.size(output), summary.getOutputBytes());
+    }
+
+    @Test
+    public void hashUrls_binary_shouldBeOk() throws Exception {
+        BulkHashingProperties properties = new BulkHashingProperties();
+        properties.setFormat(BulkHashingProperties.Format.BINARY);
+        properties.setPrefixLength(4);
+        properties.setChunkSize(DataSize.ofBytes(256));
+        Path input = writeInput(100);
+        Path output = directory.resolve("output.bin");
+
+        BulkHashingSummary summary = bulkHashingService(properties).hashUrls(input, output);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (HashPrefixesWriter writer = new HashPrefixesWriter(expected, 4)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(
+                        hashInExtractionOrder(
+                                URLS.get(i % URLS.size()), PrefixLengths.FULL_HASH_ONLY));
+            }
+        }
+
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(output));
+        assertEquals(100, summary.getUrlCount());
+        assertEquals(Files.size(output), summary.getOutputBytes());
+    }
+
+    @Test
+    public void hashUrls_lineLongerThanChunk_shouldBeOk() throws Exception {
+        BulkHashingProperties properties = new BulkHashingProperties();
+        properties.setChunkSize(DataSize.ofBytes(8));
+        Path input = directory.resolve("input.txt");
+        Files.writeString(input, "http://www.google.com/\r\n\n  \nhttp://a.b.c/1/2.html");
+        Path output = directory.resolve("output.tsv");
+
+        BulkHashingSummary summary = bulkHashingService(properties).hashUrls(input, output);
+
+        assertEquals(2, summary.getUrlCount());
+        assertEquals(0, summary.getErrorCount());
+        assertTrue(Files.readString(output).startsWith("http://www.google.com/\twww.google.com/\t"));
+    }
+
+    @Test
+    public void hashUrls_emptyInput_shouldBeOk() throws Exception {
+        Path input = Files.createFile(directory.resolve("input.txt"));
+        Path output = directory.resolve("output.tsv");
+
+        BulkHashingSummary summary =
+                bulkHashingService(new BulkHashingProperties()).hashUrls(input, output);
+
+        assertEquals(0, summary.getUrlCount());
+        assertEquals(0, Files.size(output));
+    }
+
+    @Test
+    public void hashUrls_whenChunkFails_shouldStopChunksInFlight() throws Exception {
+        BulkHashingProperties properties = new BulkHashingProperties();
+        properties.setChunkSize(DataSize.ofKilobytes(16));
+        Path input = writeInput(4000);
+        Path output = directory.resolve("output.tsv");
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger hashed = new AtomicInteger();
+        UrlHashPrefixesService service = mock(UrlHashPrefixesService.class);
+        doAnswer(
+                        invocation -> {
+                            if (calls.getAndIncrement() == 0) {
+                                throw new IllegalStateException("Failed");
+                            }
+                            hashed.incrementAndGet();
+                            Thread.sleep(1);
+                            return null;
+                        })
+                .when(service)
+                .findUrlHashPrefixes(anyString(), anyInt(), any(UrlHashPrefixesArena.class));
+
+        BatchProperties parallelBatchProperties = new BatchProperties();
+        parallelBatchProperties.setParallelism(4);
+        ForkJoinPool executor = new ForkJoinPool(4);
+
+        try {
+            assertThrows(
+                    CompletionException.class,
+                    () -> new BulkHashingServiceImpl(
+                                    service, executor, parallelBatchProperties, properties)
+                            .hashUrls(input, output));
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        // A chunk of 16KB holds over 500 URLs; none should be hashed to its end.
+        assertTrue(hashed.get() < 500);
+    }
+
+    private BulkHashingServiceImpl bulkHashingService(BulkHashingProperties properties) {
+        return new BulkHashingServiceImpl(
+                urlHashPrefixesService, urlHashPrefixesExecutor, batchProperties, properties);
+    }
+
+    private UrlHashPrefixes hashInExtractionOrder(String url, PrefixLengths prefixLengths) {
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena()) {
+            urlHashPrefixesService.findUrlHashPrefixes(url, 0, arena);
+
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+            cursor.next();
+            return cursor.toUrlHashPrefixes(prefixLengths);
+        }
+    }
+
+    private Path writeInput(int urlCount) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < urlCount; i++) {
+            lines.add(URLS.get(i % URLS.size()));
+        }
+
+        Path input = directory.resolve("input.txt");
+        Files.write(input, lines, StandardCharsets.UTF_8);
+        return input;
+    }
+}
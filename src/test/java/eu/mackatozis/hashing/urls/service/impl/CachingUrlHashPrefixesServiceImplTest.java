@@ -0,0 +1,148 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "hashing-urls.cache.enabled=true")
+public class CachingUrlHashPrefixesServiceImplTest {
+
+    @Autowired
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @Autowired
+    private CachingUrlHashPrefixesServiceImpl cachingUrlHashPrefixesServiceImpl;
+
+    @Autowired
+    private UrlHashPrefixesServiceImpl urlHashPrefixesServiceImpl;
+
+    @Test
+    public void urlHashPrefixesService_shouldBeCaching() {
+        assertSame(cachingUrlHashPrefixesServiceImpl, urlHashPrefixesService);
+    }
+
+    @Test
+    public void findUrlHashPrefixes_shouldBeOk() throws MalformedURLException {
+        String url = "http://a.b.c.cached.example.com/1/2.html?param=1";
+
+        UrlHashPrefixes expected = urlHashPrefixesServiceImpl.findUrlHashPrefixes(url);
+
+        assertEquals(expected, cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url));
+        assertEquals(expected, cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withPrefixLengths_shouldSelectFromCachedPrefixes()
+            throws MalformedURLException {
+        String url = "http://a.b.c.selected.example.com/1/2.html?param=1";
+        PrefixLengths prefixLengths = PrefixLengths.parse("4-6,16");
+
+        UrlHashPrefixes expected = urlHashPrefixesServiceImpl.findUrlHashPrefixes(url, prefixLengths);
+
+        cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url);
+        UrlHashPrefixes actual = cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url, prefixLengths);
+
+        assertEquals(expected, actual);
+        actual.getExpressionHashes()
+                .forEach(expressionHashes -> assertEquals(
+                        List.of(
+                                expressionHashes.getFullHash().substring(0, 8),
+                                expressionHashes.getFullHash().substring(0, 10),
+                                expressionHashes.getFullHash().substring(0, 12),
+                                expressionHashes.getFullHash().substring(0, 32)),
+                        expressionHashes.getHashPrefixes()));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withSameUrl_shouldHitUrlCache()
+            throws MalformedURLException {
+        String url = "http://same.cached.example.com/";
+        CacheStatistics before = cachingUrlHashPrefixesServiceImpl.getUrlCacheStatistics();
+
+        UrlHashPrefixes first = cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url);
+        UrlHashPrefixes second = cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(url);
+
+        CacheStatistics after = cachingUrlHashPrefixesServiceImpl.getUrlCacheStatistics();
+        assertEquals(1, after.getMissCount() - before.getMissCount());
+        assertEquals(1, after.getHitCount() - before.getHitCount());
+        assertSame(first.getExpressionHashes(), second.getExpressionHashes());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withSameCanonicalUrl_shouldHitCanonicalUrlCache()
+            throws MalformedURLException {
+        CacheStatistics before =
+                cachingUrlHashPrefixesServiceImpl.getCanonicalUrlCacheStatistics();
+
+        UrlHashPrefixes first =
+                cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://canonical.cached.example.com/");
+        UrlHashPrefixes second =
+                cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://CANONICAL.cached.example.com/#fragment");
+
+        CacheStatistics after =
+                cachingUrlHashPrefixesServiceImpl.getCanonicalUrlCacheStatistics();
+        assertEquals(1, after.getMissCount() - before.getMissCount());
+        assertEquals(1, after.getHitCount() - before.getHitCount());
+        assertEquals("http://CANONICAL.cached.example.com/#fragment", second.getUrl());
+        assertSame(first.getExpressionHashes(), second.getExpressionHashes());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_shouldReturnUnmodifiableExpressionHashes()
+            throws MalformedURLException {
+        UrlHashPrefixes actual =
+                cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://unmodifiable.cached.example.com/");
+
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> actual.getExpressionHashes().clear());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withEmptyUrl_shouldThrowException() {
+        assertThrows(
+                MalformedURLException.class,
+                () -> cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(" "));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withMalformedUrl_shouldThrowException() {
+        assertThrows(
+                MalformedURLException.class,
+                () -> cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://example.com:-80/"));
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_shouldBeOk() throws MalformedURLException {
+        List<String> urls =
+                Arrays.asList(
+                        "http://batch.cached.example.com/",
+                        "",
+                        "http://batch.cached.example.com/",
+                        "http://BATCH.cached.example.com/");
+
+        List<UrlHashPrefixes> actual = cachingUrlHashPrefixesServiceImpl.findUrlHashPrefixes(urls);
+
+        UrlHashPrefixes expected =
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes("http://batch.cached.example.com/");
+        assertEquals(4, actual.size());
+        assertEquals(expected, actual.get(0));
+        assertEquals("The url should not be empty", actual.get(1).getError());
+        assertEquals(expected, actual.get(2));
+        assertEquals(expected.getExpressionHashes(), actual.get(3).getExpressionHashes());
+    }
+}
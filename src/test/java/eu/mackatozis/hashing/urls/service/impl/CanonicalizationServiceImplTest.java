@@ -1,211 +1,485 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
+import eu.mackatozis.hashing.urls.config.UrlLimitsProperties;
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.net.MalformedURLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiFunction;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 public class CanonicalizationServiceImplTest {
 
-    @Autowired
-    private CanonicalizationServiceImpl canonicalizationServiceImpl;
-
-    @Test
-    public void canonicalizeUrl_withUnicodeCharactersInHost_shouldBeOk()
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withUnicodeCharactersInHost_shouldBeOk(Engine engine)
             throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://xn--hxarsa5b.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("  http://ελλάς.com/"));
+                canonicalizationService.canonicalizeUrl("  http://ελλάς.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withLeadingTrailingWhitespaces_shouldBeOk()
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withHostRepeatedInPathAndQuery_shouldOnlyCanonicalizeHost(
+            Engine engine) throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
+        assertEquals(
+                "http://www.example.com/www.EXAMPLE.com:80/?r=www.EXAMPLE.com:80",
+                canonicalizationService.canonicalizeUrl(
+                        "http://www.EXAMPLE.com:80/www.EXAMPLE.com:80/?r=www.EXAMPLE.com:80"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withLeadingTrailingWhitespaces_shouldBeOk(Engine engine)
             throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("  http://www.google.com/  "));
+                canonicalizationService.canonicalizeUrl("  http://www.google.com/  "));
     }
 
-    @Test
-    public void canonicalizeUrl_withEncodedUrl_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withEncodedUrl_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://host/%25",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host/%25%32%35"));
+                canonicalizationService.canonicalizeUrl("http://host/%25%32%35"));
         assertEquals(
                 "http://host/%25%25",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host/%25%32%35%25%32%35"));
+                canonicalizationService.canonicalizeUrl("http://host/%25%32%35%25%32%35"));
         assertEquals(
                 "http://host/%25",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host/%2525252525252525"));
+                canonicalizationService.canonicalizeUrl("http://host/%2525252525252525"));
         assertEquals(
                 "http://168.188.99.26/.secure/www.ebay.com/",
-                canonicalizationServiceImpl.canonicalizeUrl(
+                canonicalizationService.canonicalizeUrl(
                         "http://%31%36%38%2e%31%38%38%2e%39%39%2e%32%36/%2E%73%65%63%75%72%65/%77%77%77%2E%65%62%61%79%2E%63%6F%6D/"));
         assertEquals(
                 "http://host%23.com/~a!b@c%23d$e%25f^00&11*22(33)44_55+",
-                canonicalizationServiceImpl.canonicalizeUrl(
+                canonicalizationService.canonicalizeUrl(
                         "http://host%23.com/%257Ea%2521b%2540c%2523d%2524e%25f%255E00%252611%252A22%252833%252944_55%252B"));
     }
 
-    @Test
-    public void canonicalizeUrl_withConsecutiveDots_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withConsecutiveDots_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com.../"));
+                canonicalizationService.canonicalizeUrl("http://www.google.com.../"));
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com/blah/.."));
+                canonicalizationService.canonicalizeUrl("http://www.google.com/blah/.."));
     }
 
-    @Test
-    public void canonicalizeUrl_withUppercaseCharacters_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withUppercaseCharacters_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.GOOgle.com/"));
+                canonicalizationService.canonicalizeUrl("http://www.GOOgle.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withSchemeMissing_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withSchemeMissing_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("www.google.com/"));
+                canonicalizationService.canonicalizeUrl("www.google.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withSchemeMissingAndNoTrailingSlash_shouldBeOk()
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withSchemeMissingAndNoTrailingSlash_shouldBeOk(Engine engine)
             throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("www.google.com"));
+                canonicalizationService.canonicalizeUrl("www.google.com"));
     }
 
-    @Test
-    public void canonicalizeUrl_withNoTrailingSlash_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withNoTrailingSlash_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://notrailingslash.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://notrailingslash.com"));
+                canonicalizationService.canonicalizeUrl("http://notrailingslash.com"));
     }
 
-    @Test
-    public void canonicalizeUrl_withEmbeddedTabAndCRAndLF_shouldBeOk()
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withEmbeddedTabAndCRAndLF_shouldBeOk(Engine engine)
             throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/foobarbaz2",
-                canonicalizationServiceImpl.canonicalizeUrl(
+                canonicalizationService.canonicalizeUrl(
                         "http://www.google.com/foo\tbar\rbaz\n2"));
     }
 
-    @Test
-    public void canonicalizeUrl_withFragment_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withFragment_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.evil.com/blah",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.evil.com/blah#frag"));
+                canonicalizationService.canonicalizeUrl("http://www.evil.com/blah#frag"));
         assertEquals(
                 "http://evil.com/foo",
-                canonicalizationServiceImpl.canonicalizeUrl("http://evil.com/foo#bar#baz"));
+                canonicalizationService.canonicalizeUrl("http://evil.com/foo#bar#baz"));
     }
 
-    @Test
-    public void canonicalizeUrl_withIntegerIpAddress_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withIntegerIpAddress_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://195.127.0.11/blah",
-                canonicalizationServiceImpl.canonicalizeUrl("http://3279880203/blah"));
+                canonicalizationService.canonicalizeUrl("http://3279880203/blah"));
     }
 
-    @Test
-    public void canonicalizeUrl_withPort_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withPort_shouldBeOk(Engine engine) throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.gotaport.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.gotaport.com:1234/"));
+                canonicalizationService.canonicalizeUrl("http://www.gotaport.com:1234/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withLeadingSpaceInHexFormatInHostname_shouldBeOk()
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withLeadingSpaceInHexFormatInHostname_shouldBeOk(Engine engine)
             throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://%20leadingspace.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://%20leadingspace.com/"));
+                canonicalizationService.canonicalizeUrl("http://%20leadingspace.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withSchemeMissingAndLeadingSpaceInHexFormatInHostname_shouldBeOk()
-            throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withSchemeMissingAndLeadingSpaceInHexFormatInHostname_shouldBeOk(
+            Engine engine) throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://%20leadingspace.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("%20leadingspace.com/"));
+                canonicalizationService.canonicalizeUrl("%20leadingspace.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withHexSymbols_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withHexSymbols_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://%01%80.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://\\x01\\x80.com/"));
+                canonicalizationService.canonicalizeUrl("http://\\x01\\x80.com/"));
     }
 
-    @Test
-    public void canonicalizeUrl_withTwoSlashes_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withTwoSlashes_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://host.com/twoslashes?more//slashes",
-                canonicalizationServiceImpl.canonicalizeUrl(
+                canonicalizationService.canonicalizeUrl(
                         "http://host.com//twoslashes?more//slashes"));
     }
 
-    @Test
-    public void canonicalizeUrl_shouldBeOk() throws MalformedURLException {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_shouldBeOk(Engine engine) throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertEquals(
                 "http://www.google.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com/"));
+                canonicalizationService.canonicalizeUrl("http://www.google.com/"));
         assertEquals(
                 "http://www.google.com/q?",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com/q?"));
+                canonicalizationService.canonicalizeUrl("http://www.google.com/q?"));
         assertEquals(
                 "http://www.google.com/q?r?",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com/q?r?"));
+                canonicalizationService.canonicalizeUrl("http://www.google.com/q?r?"));
         assertEquals(
                 "http://www.google.com/q?r?s",
-                canonicalizationServiceImpl.canonicalizeUrl("http://www.google.com/q?r?s"));
+                canonicalizationService.canonicalizeUrl("http://www.google.com/q?r?s"));
         assertEquals(
                 "http://evil.com/foo;",
-                canonicalizationServiceImpl.canonicalizeUrl("http://evil.com/foo;"));
+                canonicalizationService.canonicalizeUrl("http://evil.com/foo;"));
         assertEquals(
                 "http://evil.com/foo?bar;",
-                canonicalizationServiceImpl.canonicalizeUrl("http://evil.com/foo?bar;"));
+                canonicalizationService.canonicalizeUrl("http://evil.com/foo?bar;"));
         assertEquals(
                 "https://www.securesite.com/",
-                canonicalizationServiceImpl.canonicalizeUrl("https://www.securesite.com/"));
+                canonicalizationService.canonicalizeUrl("https://www.securesite.com/"));
         assertEquals(
                 "http://host.com/ab%23cd",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host.com/ab%23cd"));
+                canonicalizationService.canonicalizeUrl("http://host.com/ab%23cd"));
         assertEquals(
                 "http://195.127.0.11/uploads/%20%20%20%20/.verify/.eBaysecure=updateuserdataxplimnbqmn-xplmvalidateinfoswqpcmlx=hgplmcx/",
-                canonicalizationServiceImpl.canonicalizeUrl(
+                canonicalizationService.canonicalizeUrl(
                         "http://195.127.0.11/uploads/%20%20%20%20/.verify/.eBaysecure=updateuserdataxplimnbqmn-xplmvalidateinfoswqpcmlx=hgplmcx/"));
         assertEquals(
                 "http://host/asdf%25asd",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host/asdf%25%32%35asd"));
+                canonicalizationService.canonicalizeUrl("http://host/asdf%25%32%35asd"));
         assertEquals(
                 "http://host/%25%25%25asd%25%25",
-                canonicalizationServiceImpl.canonicalizeUrl("http://host/%%%25%32%35asd%%"));
+                canonicalizationService.canonicalizeUrl("http://host/%%%25%32%35asd%%"));
         assertEquals(
                 "http://zerod.me/%CE%B5%CE%BB%CE%BB%CE%AC%CF%82",
-                canonicalizationServiceImpl.canonicalizeUrl("  http://zerod.me/ελλάς"));
+                canonicalizationService.canonicalizeUrl("  http://zerod.me/ελλάς"));
     }
 
-    @Test
-    public void canonicalizeUrl_withEmptyUrl_shouldReturnNull() throws MalformedURLException {
-        assertNull(canonicalizationServiceImpl.canonicalizeUrl(""));
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_intoParsedUrl_shouldMatchParsedCanonicalUrl(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
+        List<String> urls =
+                List.of(
+                        "http://www.google.com/",
+                        "www.google.com",
+                        "http://www.google.com/q?r?s",
+                        "http://www.google.com?q",
+                        "http://3279880203/blah",
+                        "http://host/a%20",
+                        "http://host/a?b%20",
+                        "http://www.gotaport.com:1234/",
+                        "http://host%23.com/%257Ea%2521b%2540c%2523d%2524e%25f%255E00%252611%252A22%252833%252944_55%252B",
+                        "http://\\x01\\x80.com/",
+                        "  http://zerod.me/ελλάς");
+
+        for (String url : urls) {
+            ParsedUrl expected = new ParsedUrl();
+            ParsedUrl actual = new ParsedUrl();
+
+            assertTrue(expected.parse(canonicalizationService.canonicalizeUrl(url)));
+            assertSame(actual, canonicalizationService.canonicalizeUrl(url, actual));
+            assertEquals(expected.toString(), actual.toString(), url);
+            assertEquals(expected.getHostStart(), actual.getHostStart(), url);
+            assertEquals(expected.getHostEnd(), actual.getHostEnd(), url);
+            assertEquals(expected.getPathStart(), actual.getPathStart(), url);
+            assertEquals(expected.getPathEnd(), actual.getPathEnd(), url);
+            assertEquals(expected.getIpAddress(), actual.getIpAddress(), url);
+        }
+        assertThrows(
+                MalformedURLException.class,
+                () -> canonicalizationService.canonicalizeUrl("http://.../", new ParsedUrl()));
     }
 
-    @Test
-    public void canonicalizeUrl_withMalformedUrlWithUnicodeCharacters_shouldThrowMalformedURLException() {
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withEmptyUrl_shouldReturnNull(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
+        assertNull(canonicalizationService.canonicalizeUrl(""));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withMalformedUrlWithUnicodeCharacters_shouldThrowMalformedURLException(
+            Engine engine) {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
         assertThrows(
                 MalformedURLException.class,
-                () -> canonicalizationServiceImpl.canonicalizeUrl("http://ελλάς;\\;;"));
+                () -> canonicalizationService.canonicalizeUrl("http://ελλάς;\\;;"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withZeroValuedPrefixedIpComponents_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
+        assertEquals(
+                "http://0.0.0.0/",
+                canonicalizationService.canonicalizeUrl("http://0x0.0x0.0x0.0x0/"));
+        assertEquals(
+                "http://0.1.2.3/",
+                canonicalizationService.canonicalizeUrl("http://0x0.1.2.3/"));
+        assertEquals(
+                "http://1.0.3.4/",
+                canonicalizationService.canonicalizeUrl("http://1.00.3.4/"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withMissingHost_shouldThrowMalformedURLException(Engine engine) {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+
+        assertThrows(
+                MalformedURLException.class,
+                () -> canonicalizationService.canonicalizeUrl("http://:80/"));
+        assertThrows(
+                MalformedURLException.class,
+                () -> canonicalizationService.canonicalizeUrl("http://example.com:-80/"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_exceedingLimits_shouldThrowUrlLimitExceededException(
+            Engine engine) {
+        UrlLimitsProperties urlLimitsProperties = new UrlLimitsProperties();
+        urlLimitsProperties.setEnabled(true);
+        urlLimitsProperties.setMaxUrlLength(64);
+        urlLimitsProperties.setMaxDecodeIterations(2);
+        CanonicalizationService limitedCanonicalizationService =
+                engine.canonicalizationService(urlLimitsProperties);
+
+        UrlLimitExceededException tooLong =
+                assertThrows(
+                        UrlLimitExceededException.class,
+                        () -> limitedCanonicalizationService.canonicalizeUrl(
+                                "http://example.com/" + "a".repeat(64)));
+        assertEquals(UrlLimitExceededException.Limit.URL_LENGTH, tooLong.getLimit());
+
+        UrlLimitExceededException tooDeep =
+                assertThrows(
+                        UrlLimitExceededException.class,
+                        () -> limitedCanonicalizationService.canonicalizeUrl(
+                                "http://example.com/%252541"));
+        assertEquals(UrlLimitExceededException.Limit.DECODE_ITERATIONS, tooDeep.getLimit());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withinLimits_shouldBeOk(Engine engine)
+            throws MalformedURLException {
+        UrlLimitsProperties urlLimitsProperties = new UrlLimitsProperties();
+        urlLimitsProperties.setEnabled(true);
+        urlLimitsProperties.setMaxDecodeIterations(2);
+
+        assertEquals(
+                "http://example.com/A%25A",
+                engine.canonicalizationService(urlLimitsProperties)
+                        .canonicalizeUrl("http://example.com/%2541%2525A"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Engine.class)
+    public void canonicalizeUrl_withLongRunsOfDotsAndSlashes_shouldTakeLinearTime(Engine engine) {
+        CanonicalizationService canonicalizationService = engine.canonicalizationService();
+        String url = "http://a" + ".".repeat(100_000) + "b.com" + "/".repeat(100_000) + "c";
+
+        String canonicalUrl =
+                assertTimeoutPreemptively(
+                        Duration.ofSeconds(10),
+                        () -> canonicalizationService.canonicalizeUrl(url));
+
+        assertEquals("http://a.b.com/c", canonicalUrl);
+    }
+
+    @Test
+    public void canonicalizeUrl_shouldMatchRegexEngine() throws MalformedURLException {
+        String[] urls = {
+            "http://www.example.com",
+            "https://WWW.Example.COM:8443/a/./b/../c//d?x=1&y=%2F#frag",
+            "www.example.com/%7Euser/index.html?q=a%20b",
+            "http://..a...b..c../x/y/z/../../",
+            "http://0x7f.0x0.0x0.0x1/path",
+            "http://0177.0.0.01/",
+            "http://0x7f.1/",
+            "http://1.2.3/",
+            "http://012.034.01.055/",
+            "http://09.1.1.1/",
+            "http://0x0.0x0.0x0.0x0/",
+            "http://0x0.1.2.3/",
+            "http://1.00.3.4/",
+            "http://www.EXAMPLE.com:80/www.EXAMPLE.com:80/?r=www.EXAMPLE.com:80",
+            "http://a.b.c/1/2.html?param=1/2",
+            "http://host/%2541%2542",
+            "http://host/%%41%41",
+            "http://host/a b\tc\\x41",
+            "http://host/path/%E2%82%AC",
+            "http://host/%20",
+            "http://host%20",
+            "http://host?query",
+            "http://host/?",
+            "http://h\\x41st/\\X4g"
+        };
+        CanonicalizationService regexCanonicalizationService =
+                Engine.REGEX.canonicalizationService();
+        CanonicalizationService singlePassCanonicalizationService =
+                Engine.SINGLE_PASS.canonicalizationService();
+
+        for (String url : urls) {
+            assertEquals(
+                    regexCanonicalizationService.canonicalizeUrl(url),
+                    singlePassCanonicalizationService.canonicalizeUrl(url),
+                    url);
+        }
+    }
+
+    enum Engine {
+        REGEX(CanonicalizationServiceImpl::new),
+        SINGLE_PASS(SinglePassCanonicalizationServiceImpl::new);
+
+        private final BiFunction<PipelineMetrics, UrlLimitsProperties, CanonicalizationService>
+                constructor;
+
+        Engine(
+                BiFunction<PipelineMetrics, UrlLimitsProperties, CanonicalizationService>
+                        constructor) {
+            this.constructor = constructor;
+        }
+
+        CanonicalizationService canonicalizationService() {
+            return canonicalizationService(new UrlLimitsProperties());
+        }
+
+        CanonicalizationService canonicalizationService(UrlLimitsProperties urlLimitsProperties) {
+            return constructor.apply(PipelineMetrics.DISABLED, urlLimitsProperties);
+        }
     }
 }
@@ -1,15 +1,23 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
+import eu.mackatozis.hashing.urls.model.ParsedUrl;
 import org.hamcrest.collection.IsEmptyCollection;
 import org.hamcrest.core.IsIterableContaining;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 public class ExpressionExtractionServiceImplTest {
@@ -66,6 +74,51 @@ public class ExpressionExtractionServiceImplTest {
         assertThat(actual, IsIterableContaining.hasItems("1.2.3.4/1/", "1.2.3.4/"));
     }
 
+    @Test
+    public void resolveExpressions_withParsedUrlWithoutPath_shouldBeOk() {
+        ParsedUrl parsedUrl = new ParsedUrl();
+        parsedUrl.parse("http://a.b.c?param=1");
+
+        Set<String> actual = expressionExtractionServiceImpl.extractExpressions(parsedUrl);
+
+        assertThat(actual, hasSize(4));
+        assertThat(
+                actual,
+                IsIterableContaining.hasItems("a.b.c/?param=1", "a.b.c/", "b.c/?param=1", "b.c/"));
+    }
+
+    @Test
+    public void forEachExpression_withDuplicatePathPrefixes_shouldVisitEachExpressionOnce() {
+        ParsedUrl parsedUrl = new ParsedUrl();
+        parsedUrl.parse("http://a.b.c/1/");
+        List<String> visited = new ArrayList<>();
+
+        int count =
+                expressionExtractionServiceImpl.forEachExpression(
+                        parsedUrl,
+                        (expression, hostLength, length) -> {
+                            assertEquals('/', expression[hostLength]);
+                            visited.add(new String(expression, 0, length, StandardCharsets.UTF_8));
+                        });
+
+        assertEquals(4, count);
+        assertThat(visited, contains("a.b.c/1/", "a.b.c/", "b.c/1/", "b.c/"));
+    }
+
+    @Test
+    public void forEachExpression_withNonAsciiHost_shouldVisitUtf8Expressions() {
+        ParsedUrl parsedUrl = new ParsedUrl();
+        parsedUrl.parse("http://www.ελλάς.gr/");
+        Set<String> visited = new HashSet<>();
+
+        expressionExtractionServiceImpl.forEachExpression(
+                parsedUrl,
+                (expression, hostLength, length) ->
+                        visited.add(new String(expression, 0, length, StandardCharsets.UTF_8)));
+
+        assertThat(visited, containsInAnyOrder("www.ελλάς.gr/", "ελλάς.gr/"));
+    }
+
     @Test
     public void resolveExpressions_withEmptyUrl_shouldReturnEmptyCollection() {
         assertThat(
@@ -1,10 +1,14 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
+import eu.mackatozis.hashing.urls.model.HashPrefix;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -78,4 +82,73 @@ public class HashComputationServiceImplTest {
                 "cdc76e5c9914fb9281a1c7e284d73e67f1809a48a497200e046d39ccc7112cd0",
                 hashComputationServiceImpl.computeSha256Hash(input));
     }
+
+    @Test
+    public void computeSha256HashIntoDigest_B1_FIPS_180_2_shouldBeOk() {
+        byte[] digest = new byte[32];
+        hashComputationServiceImpl.computeSha256Hash("abc", digest);
+
+        assertEquals(
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                Hex.encodeHexString(digest));
+    }
+
+    @Test
+    public void computeSha256HashIntoDigest_withReusedDigest_shouldBeOk() {
+        byte[] digest = new byte[32];
+        hashComputationServiceImpl.computeSha256Hash("abc", digest);
+        hashComputationServiceImpl.computeSha256Hash(
+                "abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq", digest);
+
+        assertEquals(
+                "248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1",
+                Hex.encodeHexString(digest));
+    }
+
+    @Test
+    public void computeSha256HashIntoDigest_withNonAsciiExpression_shouldMatchHexVariant() {
+        byte[] digest = new byte[32];
+        hashComputationServiceImpl.computeSha256Hash("ελλάς.com/", digest);
+
+        assertEquals(
+                hashComputationServiceImpl.computeSha256Hash("ελλάς.com/"),
+                Hex.encodeHexString(digest));
+    }
+
+    @Test
+    public void computeSha256HashOfBytes_withOffset_shouldMatchHexVariant() {
+        byte[] expression = "xxελλάς.com/1/yy".getBytes(StandardCharsets.UTF_8);
+        byte[] digest = new byte[32];
+        hashComputationServiceImpl.computeSha256Hash(expression, 2, expression.length - 4, digest);
+
+        assertEquals(
+                hashComputationServiceImpl.computeSha256Hash("ελλάς.com/1/"),
+                Hex.encodeHexString(digest));
+    }
+
+    @Test
+    public void computeSha256HashIntoDigest_withShortDigest_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> hashComputationServiceImpl.computeSha256Hash("abc", new byte[31]));
+    }
+
+    @Test
+    public void computeSha256HashPrefixView_B1_FIPS_180_2_shouldBeOk() {
+        byte[] digest = new byte[32];
+        hashComputationServiceImpl.computeSha256Hash("abc", digest);
+
+        HashPrefix hashPrefix = hashComputationServiceImpl.computeSha256HashPrefix(digest, 4);
+
+        assertEquals(4, hashPrefix.length());
+        assertEquals((byte) 0xba, hashPrefix.byteAt(0));
+        assertEquals("ba7816bf", hashPrefix.toHex());
+    }
+
+    @Test
+    public void computeSha256HashPrefixView_withSignificantBytes_33_OutOfRange_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> hashComputationServiceImpl.computeSha256HashPrefix(new byte[32], 33));
+    }
 }
@@ -0,0 +1,76 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.model.PrefixMatch;
+import eu.mackatozis.hashing.urls.model.UrlPrefixMatches;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class PrefixMatchServiceImplTest {
+
+    @DynamicPropertySource
+    static void prefixStoreProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path path = Files.createTempDirectory("threat-list").resolve("threat-list.prefixes");
+        Files.copy(Path.of("src/test/resources/threat-list.prefixes"), path);
+        registry.add("hashing-urls.prefix-store.path", path::toString);
+    }
+
+    @Autowired
+    private PrefixMatchServiceImpl prefixMatchServiceImpl;
+
+    @Test
+    public void findUrlPrefixMatches_withHostMatch_shouldBeOk() throws MalformedURLException {
+        UrlPrefixMatches actual =
+                prefixMatchServiceImpl.findUrlPrefixMatches("http://evil.example.com/1/2.html");
+
+        assertTrue(actual.isMatch());
+        assertEquals(1, actual.getMatches().size());
+
+        PrefixMatch match = actual.getMatches().get(0);
+        assertEquals("evil.example.com/", match.getExpression());
+        assertEquals(
+                DigestUtils.sha256Hex("evil.example.com/").substring(0, 8), match.getHashPrefix());
+        assertEquals(DigestUtils.sha256Hex("evil.example.com/"), match.getFullHash());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_withFullHashMatch_shouldBeOk() throws MalformedURLException {
+        UrlPrefixMatches actual =
+                prefixMatchServiceImpl.findUrlPrefixMatches("http://example.com/malware/x.html");
+
+        assertTrue(actual.isMatch());
+        assertEquals(1, actual.getMatches().size());
+        assertEquals("example.com/malware/", actual.getMatches().get(0).getExpression());
+        assertEquals(
+                DigestUtils.sha256Hex("example.com/malware/"),
+                actual.getMatches().get(0).getHashPrefix());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_withCleanUrl_shouldNotMatch() throws MalformedURLException {
+        UrlPrefixMatches actual =
+                prefixMatchServiceImpl.findUrlPrefixMatches("http://www.example.com/");
+
+        assertEquals("http://www.example.com/", actual.getUrl());
+        assertFalse(actual.isMatch());
+        assertTrue(actual.getMatches().isEmpty());
+    }
+
+    @Test
+    public void findUrlPrefixMatches_withEmptyUrl_shouldThrowException() {
+        assertThrows(
+                MalformedURLException.class,
+                () -> prefixMatchServiceImpl.findUrlPrefixMatches(""));
+    }
+}
@@ -0,0 +1,186 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.mackatozis.hashing.urls.config.PrefixStoreProperties;
+import eu.mackatozis.hashing.urls.model.ThreatListDiff;
+import eu.mackatozis.hashing.urls.service.HashComputationService;
+import eu.mackatozis.hashing.urls.util.PrefixFilter;
+import eu.mackatozis.hashing.urls.util.PrefixStore;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ThreatListServiceImplTest {
+
+    private static final Path FIXTURE = Path.of("src/test/resources/threat-list.prefixes");
+
+    private static final Path DIFF_FIXTURE = Path.of("src/test/resources/threat-list-diff.json");
+
+    private static Path path;
+
+    @Autowired
+    private ThreatListServiceImpl threatListServiceImpl;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private HashComputationService hashComputationService;
+
+    @Autowired
+    private PrefixStoreProperties prefixStoreProperties;
+
+    @DynamicPropertySource
+    static void prefixStoreProperties(DynamicPropertyRegistry registry) throws IOException {
+        path = Files.createTempDirectory("threat-list").resolve("threat-list.prefixes");
+        Files.copy(FIXTURE, path);
+        registry.add("hashing-urls.prefix-store.path", path::toString);
+    }
+
+    @Test
+    public void getPrefixStore_shouldBeOk() {
+        PrefixStore original = threatListServiceImpl.getPrefixStore();
+
+        assertNull(threatListServiceImpl.getVersionToken());
+        assertNotNull(original.getFilter());
+        assertTrue(Files.exists(path.resolveSibling("threat-list.prefixes.filter")));
+        assertEquals(1011, original.size());
+        assertEquals(4, original.match(DigestUtils.sha256("evil.example.com/")));
+    }
+
+    @Test
+    public void applyDiff_withFixture_shouldBeOk() throws IOException {
+        ThreatListDiff diff = objectMapper.readValue(DIFF_FIXTURE.toFile(), ThreatListDiff.class);
+        PrefixStore original = threatListServiceImpl.getPrefixStore();
+
+        threatListServiceImpl.applyDiff(diff);
+
+        PrefixStore updated = threatListServiceImpl.getPrefixStore();
+        assertEquals("2", threatListServiceImpl.getVersionToken());
+        assertEquals(1010, updated.size());
+        assertEquals(0, updated.match(DigestUtils.sha256("evil.example.com/")));
+        assertEquals(4, updated.match(DigestUtils.sha256("phishing.example.com/")));
+        assertEquals(6, updated.match(DigestUtils.sha256("example.com/phishing/")));
+        assertEquals(1010, PrefixStore.open(path).size());
+        // the 2 additions are added to the filter, the 3 removals stay in it
+        assertEquals(1013, updated.getFilter().size());
+        assertEquals(
+                1013, PrefixFilter.read(path.resolveSibling("threat-list.prefixes.filter")).size());
+        assertEquals(
+                "2",
+                Files.readAllLines(path.resolveSibling("threat-list.prefixes.version")).get(0));
+        assertEquals(
+                "2",
+                new ThreatListServiceImpl(hashComputationService, prefixStoreProperties)
+                        .getVersionToken());
+        assertEquals(4, original.match(DigestUtils.sha256("evil.example.com/")));
+    }
+
+    @Test
+    public void applyDiff_exceedingFilterCapacity_shouldRebuildFilter() throws IOException {
+        byte[] rawHashes = new byte[400 * 4];
+        new Random(42).nextBytes(rawHashes);
+        PrefixStore additions = PrefixStore.ofRawHashes(4, rawHashes);
+        PrefixStore expected =
+                threatListServiceImpl.getPrefixStore().applyDiff(new int[0], additions);
+        byte[] checksum = new byte[32];
+        hashComputationService.computeSha256Hash(expected.sortedPrefixes(), checksum);
+        ThreatListDiff diff =
+                ThreatListDiff.builder()
+                        .responseType(ThreatListDiff.ResponseType.DIFF)
+                        .additions(
+                                ThreatListDiff.Additions.builder()
+                                        .rawHashes(
+                                                Collections.singletonList(
+                                                        ThreatListDiff.RawHashes.builder()
+                                                                .prefixSize(4)
+                                                                .rawHashes(rawHashes)
+                                                                .build()))
+                                        .build())
+                        .newVersionToken("2")
+                        .checksum(ThreatListDiff.Checksum.builder().sha256(checksum).build())
+                        .build();
+
+        threatListServiceImpl.applyDiff(diff);
+
+        PrefixStore updated = threatListServiceImpl.getPrefixStore();
+        assertEquals(expected.size(), updated.size());
+        assertEquals(updated.size(), updated.getFilter().size());
+        assertEquals(4, updated.match(DigestUtils.sha256("evil.example.com/")));
+    }
+
+    @Test
+    public void applyDiff_withWrongChecksum_shouldKeepCurrentVersion() throws IOException {
+        ThreatListDiff diff = objectMapper.readValue(DIFF_FIXTURE.toFile(), ThreatListDiff.class);
+        diff.getChecksum().setSha256(DigestUtils.sha256("wrong"));
+        PrefixStore original = threatListServiceImpl.getPrefixStore();
+
+        assertThrows(IllegalArgumentException.class, () -> threatListServiceImpl.applyDiff(diff));
+        assertSame(original, threatListServiceImpl.getPrefixStore());
+        assertNull(threatListServiceImpl.getVersionToken());
+        assertEquals(1011, PrefixStore.open(path).size());
+    }
+
+    @Test
+    public void constructor_withVersionOfAnotherStore_shouldDropVersionToken()
+            throws IOException {
+        ThreatListDiff diff = objectMapper.readValue(DIFF_FIXTURE.toFile(), ThreatListDiff.class);
+        threatListServiceImpl.applyDiff(diff);
+        Path versionPath = path.resolveSibling("threat-list.prefixes.version");
+        byte[] version = Files.readAllBytes(versionPath);
+
+        // the store of the previous version next to the version file of the new one
+        Files.copy(FIXTURE, path, StandardCopyOption.REPLACE_EXISTING);
+        Files.write(versionPath, version);
+
+        ThreatListServiceImpl restarted =
+                new ThreatListServiceImpl(hashComputationService, prefixStoreProperties);
+
+        assertNull(restarted.getVersionToken());
+        assertEquals(1011, restarted.getPrefixStore().size());
+        assertFalse(Files.exists(versionPath));
+    }
+
+    @Test
+    public void applyDiff_withReset_shouldReplaceList() throws IOException {
+        byte[] prefix = DigestUtils.sha256("reset.example.com/");
+        ThreatListDiff diff =
+                ThreatListDiff.builder()
+                        .responseType(ThreatListDiff.ResponseType.RESET)
+                        .additions(
+                                ThreatListDiff.Additions.builder()
+                                        .rawHashes(
+                                                Collections.singletonList(
+                                                        ThreatListDiff.RawHashes.builder()
+                                                                .prefixSize(32)
+                                                                .rawHashes(prefix)
+                                                                .build()))
+                                        .build())
+                        .newVersionToken("3")
+                        .checksum(
+                                ThreatListDiff.Checksum.builder()
+                                        .sha256(DigestUtils.sha256(prefix))
+                                        .build())
+                        .build();
+
+        threatListServiceImpl.applyDiff(diff);
+
+        assertEquals(1, threatListServiceImpl.getPrefixStore().size());
+        assertEquals(32, threatListServiceImpl.getPrefixStore().match(prefix));
+    }
+}
@@ -0,0 +1,49 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.service.ThreatListService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        properties = {
+            "hashing-urls.prefix-store.diff-path=src/test/resources/threat-list-diff.json",
+            "hashing-urls.prefix-store.update-interval=PT1H"
+        })
+public class ThreatListUpdateSchedulerTest {
+
+    @Autowired
+    private ThreatListUpdateScheduler threatListUpdateScheduler;
+
+    @Autowired
+    private ThreatListService threatListService;
+
+    @DynamicPropertySource
+    static void prefixStoreProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path path = Files.createTempDirectory("threat-list").resolve("threat-list.prefixes");
+        Files.copy(Path.of("src/test/resources/threat-list.prefixes"), path);
+        registry.add("hashing-urls.prefix-store.path", path::toString);
+    }
+
+    @Test
+    public void update_shouldApplyDiffOnce() {
+        threatListUpdateScheduler.update();
+        threatListUpdateScheduler.update();
+
+        assertEquals("2", threatListService.getVersionToken());
+        assertEquals(1010, threatListService.getPrefixStore().size());
+        assertEquals(
+                4,
+                threatListService.getPrefixStore()
+                        .match(DigestUtils.sha256("phishing.example.com/")));
+    }
+}
@@ -0,0 +1,61 @@
+package eu.mackatozis.hashing.urls.service.impl;
+
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+public class UrlHashPrefixesBatchProcessorTest {
+
+    @Autowired
+    private UrlHashPrefixesBatchProcessor urlHashPrefixesBatchProcessor;
+
+    @Test
+    public void findUrlHashPrefixesArena_whenChunkFails_shouldReleaseAllPages() {
+        List<String> urls =
+                IntStream.range(0, 4096)
+                        .mapToObj(i -> "http://www.example.com/" + i)
+                        .collect(Collectors.toList());
+        urls.set(1, "fail");
+
+        AtomicInteger added = new AtomicInteger();
+        UrlHashPrefixesService service = mock(UrlHashPrefixesService.class);
+        doAnswer(
+                        invocation -> {
+                            String url = invocation.getArgument(0);
+                            if ("fail".equals(url)) {
+                                throw new IllegalStateException("Failed");
+                            }
+                            UrlHashPrefixesArena arena = invocation.getArgument(2);
+                            arena.addError(invocation.getArgument(1), url, "Skipped");
+                            added.incrementAndGet();
+                            Thread.sleep(1);
+                            return null;
+                        })
+                .when(service)
+                .findUrlHashPrefixes(anyString(), anyInt(), any(UrlHashPrefixesArena.class));
+
+        int pagesInUse = UrlHashPrefixesArena.pagesInUse();
+
+        CompletionException exception =
+                assertThrows(
+                        CompletionException.class,
+                        () -> urlHashPrefixesBatchProcessor.findUrlHashPrefixesArena(urls, service));
+
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertTrue(added.get() < urls.size() - 1);
+        assertEquals(pagesInUse, UrlHashPrefixesArena.pagesInUse());
+    }
+}
@@ -1,14 +1,33 @@
 package eu.mackatozis.hashing.urls.service.impl;
 
+import eu.mackatozis.hashing.urls.config.UrlLimitsProperties;
 import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
 import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.CanonicalizationService;
+import eu.mackatozis.hashing.urls.service.ExpressionExtractionService;
+import eu.mackatozis.hashing.urls.service.HashComputationService;
+import eu.mackatozis.hashing.urls.service.UrlLimitExceededException;
+import eu.mackatozis.hashing.urls.util.PipelineMetrics;
+import eu.mackatozis.hashing.urls.util.UrlHashPrefixesArena;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,6 +37,18 @@ public class UrlHashPrefixesServiceImplTest {
     @Autowired
     private UrlHashPrefixesServiceImpl urlHashPrefixesServiceImpl;
 
+    @Autowired
+    private CanonicalizationService canonicalizationService;
+
+    @Autowired
+    private ExpressionExtractionService expressionExtractionService;
+
+    @Autowired
+    private HashComputationService hashComputationService;
+
+    @Autowired
+    private UrlHashPrefixesBatchProcessor urlHashPrefixesBatchProcessor;
+
     @Test
     public void findUrlHashPrefixes_shouldBeOk() throws MalformedURLException {
         UrlHashPrefixes actual =
@@ -28,6 +59,37 @@ public class UrlHashPrefixesServiceImplTest {
         assertTrue(expectedExpressionHashes().containsAll(actual.getExpressionHashes()));
     }
 
+    @Test
+    public void findUrlHashPrefixes_withPrefixLengths_shouldFindSelectedPrefixes()
+            throws MalformedURLException {
+        UrlHashPrefixes actual =
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://www.example.com/", PrefixLengths.of(4, 32));
+
+        assertEquals(2, actual.getExpressionHashes().size());
+        for (ExpressionHashes expressionHashes : actual.getExpressionHashes()) {
+            assertEquals(
+                    List.of(
+                            expressionHashes.getFullHash().substring(0, 8),
+                            expressionHashes.getFullHash()),
+                    expressionHashes.getHashPrefixes());
+        }
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withFullHashOnly_shouldFindNoPrefixes()
+            throws MalformedURLException {
+        UrlHashPrefixes actual =
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://www.example.com/", PrefixLengths.FULL_HASH_ONLY);
+
+        assertEquals(2, actual.getExpressionHashes().size());
+        for (ExpressionHashes expressionHashes : actual.getExpressionHashes()) {
+            assertEquals(64, expressionHashes.getFullHash().length());
+            assertTrue(expressionHashes.getHashPrefixes().isEmpty());
+        }
+    }
+
     @Test
     public void findUrlHashPrefixes_withEmptyUrl_shouldThrowException() {
         assertThrows(
@@ -42,6 +104,271 @@ public class UrlHashPrefixesServiceImplTest {
                 () -> urlHashPrefixesServiceImpl.findUrlHashPrefixes("http://example.com:-80/"));
     }
 
+    @Test
+    public void findUrlHashPrefixesBatch_shouldKeepInputOrder() {
+        List<String> urls =
+                IntStream.range(0, 5000)
+                        .mapToObj(i -> "http://host" + i + ".example.com/" + i + "/index.html")
+                        .collect(Collectors.toList());
+
+        List<UrlHashPrefixes> actual = urlHashPrefixesServiceImpl.findUrlHashPrefixes(urls);
+
+        assertEquals(urls.size(), actual.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(urls.get(i), actual.get(i).getUrl());
+            assertNull(actual.get(i).getError());
+            assertEquals(6, actual.get(i).getExpressionHashes().size());
+        }
+    }
+
+    @Test
+    public void findUrlHashPrefixesBatch_withMalformedUrl_shouldReturnErrorRecord()
+            throws MalformedURLException {
+        List<UrlHashPrefixes> actual =
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        List.of("http://www.example.com/", "http://example.com:-80/", ""));
+
+        assertEquals(3, actual.size());
+        assertEquals(
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes("http://www.example.com/"),
+                actual.get(0));
+        assertEquals("http://example.com:-80/", actual.get(1).getUrl());
+        assertNull(actual.get(1).getExpressionHashes());
+        assertNotNull(actual.get(1).getError());
+        assertEquals("The url should not be empty", actual.get(2).getError());
+    }
+
+    @Test
+    public void findUrlHashPrefixesArena_shouldMatchFindUrlHashPrefixes()
+            throws MalformedURLException {
+        List<String> urls =
+                IntStream.range(0, 1000)
+                        .mapToObj(i -> i % 10 == 0
+                                ? "http://example.com:-80/"
+                                : "http://host" + i % 7 + ".ελλάς.gr/" + i + "/index.html?q=" + i)
+                        .collect(Collectors.toList());
+
+        try (UrlHashPrefixesArena arena = urlHashPrefixesServiceImpl.findUrlHashPrefixesArena(urls)) {
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+            assertEquals(urls.size(), arena.size());
+            for (int i = 0; i < urls.size(); i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.getUrlIndex());
+                assertEquals(urls.get(i), cursor.getUrl());
+
+                if (i % 10 == 0) {
+                    assertTrue(cursor.isError());
+                    assertNotNull(cursor.getError());
+                } else {
+                    UrlHashPrefixes expected =
+                            urlHashPrefixesServiceImpl.findUrlHashPrefixes(urls.get(i));
+                    UrlHashPrefixes actual = cursor.toUrlHashPrefixes(PrefixLengths.ALL);
+
+                    assertFalse(cursor.isError());
+                    assertEquals(
+                            expected.getExpressionHashes(),
+                            new HashSet<>(actual.getExpressionHashes()));
+                }
+            }
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void findUrlHashPrefixesStream_shouldKeepInputOrder() {
+        List<String> urls =
+                IntStream.range(0, 10000)
+                        .mapToObj(i -> "http://example.com/" + i)
+                        .collect(Collectors.toList());
+
+        List<String> actual =
+                urlHashPrefixesServiceImpl.findUrlHashPrefixes(urls.stream())
+                        .map(UrlHashPrefixes::getUrl)
+                        .collect(Collectors.toList());
+
+        assertEquals(urls, actual);
+    }
+
+    @Test
+    public void findUrlHashPrefixesStream_withEmptyStream_shouldReturnEmptyStream() {
+        assertEquals(0, urlHashPrefixesServiceImpl.findUrlHashPrefixes(Stream.<String>empty()).count());
+    }
+
+    @Test
+    public void findUrlHashPrefixes_exceedingMaxExpressions_shouldThrowUrlLimitExceededException() {
+        UrlLimitsProperties urlLimitsProperties = new UrlLimitsProperties();
+        urlLimitsProperties.setEnabled(true);
+        urlLimitsProperties.setMaxExpressions(2);
+        UrlHashPrefixesServiceImpl limitedUrlHashPrefixesServiceImpl =
+                new UrlHashPrefixesServiceImpl(
+                        canonicalizationService,
+                        expressionExtractionService,
+                        hashComputationService,
+                        urlHashPrefixesBatchProcessor,
+                        PipelineMetrics.DISABLED,
+                        urlLimitsProperties);
+
+        assertDoesNotThrow(
+                () -> limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                        "http://www.example.com/"));
+        UrlLimitExceededException e =
+                assertThrows(
+                        UrlLimitExceededException.class,
+                        () -> limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                                "http://a.b.c/1/2.html"));
+        assertEquals(UrlLimitExceededException.Limit.EXPRESSIONS, e.getLimit());
+    }
+
+    @Test
+    public void findUrlHashPrefixesArena_shouldOnlyRecordUrlErrors() {
+        UrlLimitsProperties urlLimitsProperties = new UrlLimitsProperties();
+        urlLimitsProperties.setEnabled(true);
+        urlLimitsProperties.setMaxExpressions(2);
+        CanonicalizationService failingCanonicalizationService =
+                url -> {
+                    if (url.contains("bug")) {
+                        throw new IllegalStateException("Bug");
+                    }
+                    return canonicalizationService.canonicalizeUrl(url);
+                };
+        UrlHashPrefixesServiceImpl limitedUrlHashPrefixesServiceImpl =
+                new UrlHashPrefixesServiceImpl(
+                        failingCanonicalizationService,
+                        expressionExtractionService,
+                        hashComputationService,
+                        urlHashPrefixesBatchProcessor,
+                        PipelineMetrics.DISABLED,
+                        urlLimitsProperties);
+
+        try (UrlHashPrefixesArena arena =
+                limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixesArena(
+                        List.of("http://a.b.c/1/2.html", "http://example.com:-80/"))) {
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+            assertTrue(cursor.next());
+            assertTrue(cursor.isError());
+            assertTrue(cursor.next());
+            assertTrue(cursor.isError());
+        }
+        assertThrows(
+                IllegalStateException.class,
+                () -> limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixesArena(
+                        List.of("http://bug.example.com/")));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_whileRecording_shouldEmitEvents() throws Exception {
+        String url = "http://%2525252541.com/a/b";
+        UrlHashPrefixes actual;
+        List<RecordedEvent> events;
+
+        try (Recording recording = new Recording()) {
+            recording.enable("eu.mackatozis.hashing.urls.Canonicalization")
+                    .withThreshold(Duration.ZERO);
+            recording.enable("eu.mackatozis.hashing.urls.ExpressionExtraction")
+                    .withThreshold(Duration.ZERO);
+            recording.enable("eu.mackatozis.hashing.urls.HashComputation")
+                    .withThreshold(Duration.ZERO);
+            recording.start();
+
+            actual = urlHashPrefixesServiceImpl.findUrlHashPrefixes(url);
+
+            recording.stop();
+            Path file = Files.createTempFile("hashing-urls", ".jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+            Files.delete(file);
+        }
+
+        RecordedEvent canonicalization = event(events, "Canonicalization");
+        assertEquals(url, canonicalization.getString("url"));
+        assertEquals(url.length(), canonicalization.getInt("urlLength"));
+        assertEquals(5, canonicalization.getInt("percentDecodePasses"));
+        assertEquals(5, canonicalization.getInt("percentDecodes"));
+        assertFalse(canonicalization.getBoolean("malformed"));
+        assertNull(canonicalization.getString("limitExceeded"));
+
+        RecordedEvent expressionExtraction = event(events, "ExpressionExtraction");
+        assertEquals("http://a.com/a/b", expressionExtraction.getString("canonicalUrl"));
+        assertEquals(
+                actual.getExpressionHashes().size(),
+                expressionExtraction.getInt("expressionCount"));
+
+        RecordedEvent hashComputation = event(events, "HashComputation");
+        assertEquals(
+                actual.getExpressionHashes().size(), hashComputation.getInt("expressionCount"));
+        assertEquals(
+                actual.getExpressionHashes().stream()
+                        .mapToInt(
+                                expressionHashes ->
+                                        expressionHashes
+                                                .getExpression()
+                                                .getBytes(StandardCharsets.UTF_8)
+                                                .length)
+                        .sum(),
+                hashComputation.getInt("expressionBytes"));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_exceedingLimitsWhileRecording_shouldRecordLimit()
+            throws Exception {
+        UrlLimitsProperties urlLimitsProperties = new UrlLimitsProperties();
+        urlLimitsProperties.setEnabled(true);
+        urlLimitsProperties.setMaxDecodeIterations(1);
+        urlLimitsProperties.setMaxExpressions(2);
+        UrlHashPrefixesServiceImpl limitedUrlHashPrefixesServiceImpl =
+                new UrlHashPrefixesServiceImpl(
+                        new CanonicalizationServiceImpl(
+                                PipelineMetrics.DISABLED, urlLimitsProperties),
+                        expressionExtractionService,
+                        hashComputationService,
+                        urlHashPrefixesBatchProcessor,
+                        PipelineMetrics.DISABLED,
+                        urlLimitsProperties);
+        List<RecordedEvent> events;
+
+        try (Recording recording = new Recording()) {
+            recording.enable("eu.mackatozis.hashing.urls.Canonicalization")
+                    .withThreshold(Duration.ZERO);
+            recording.enable("eu.mackatozis.hashing.urls.ExpressionExtraction")
+                    .withThreshold(Duration.ZERO);
+            recording.start();
+
+            assertThrows(
+                    UrlLimitExceededException.class,
+                    () -> limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                            "http://%2525252541.com/a/b"));
+            assertThrows(
+                    UrlLimitExceededException.class,
+                    () -> limitedUrlHashPrefixesServiceImpl.findUrlHashPrefixes(
+                            "http://a.b.c/1/2.html"));
+
+            recording.stop();
+            Path file = Files.createTempFile("hashing-urls", ".jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+            Files.delete(file);
+        }
+
+        RecordedEvent canonicalization = event(events, "Canonicalization");
+        assertEquals("DECODE_ITERATIONS", canonicalization.getString("limitExceeded"));
+        assertFalse(canonicalization.getBoolean("malformed"));
+
+        RecordedEvent expressionExtraction = event(events, "ExpressionExtraction");
+        assertEquals("http://a.b.c/1/2.html", expressionExtraction.getString("canonicalUrl"));
+        assertEquals(2, expressionExtraction.getInt("expressionCount"));
+    }
+
+    private static RecordedEvent event(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType()
+                        .getName()
+                        .equals("eu.mackatozis.hashing.urls." + name))
+                .findFirst()
+                .orElseThrow();
+    }
+
     private Set<ExpressionHashes> expectedExpressionHashes() {
         ExpressionHashes expressionHashesOne =
                 ExpressionHashes.builder()
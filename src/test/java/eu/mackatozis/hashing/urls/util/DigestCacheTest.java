@@ -0,0 +1,140 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class DigestCacheTest {
+
+    @Test
+    public void get_afterPut_shouldBeOk() {
+        DigestCache digestCache = new DigestCache(64, 1);
+        byte[] digest = new byte[DigestCache.DIGEST_LENGTH];
+
+        digestCache.put("b.c/", DigestUtils.sha256("b.c/"), 1);
+
+        assertTrue(digestCache.get("b.c/", digest));
+        assertArrayEquals(DigestUtils.sha256("b.c/"), digest);
+    }
+
+    @Test
+    public void ceilingPowerOfTwo_shouldNotOverflow() {
+        assertEquals(1, SetAssociativeCache.ceilingPowerOfTwo(0));
+        assertEquals(8, SetAssociativeCache.ceilingPowerOfTwo(5));
+        assertEquals(1 << 30, SetAssociativeCache.ceilingPowerOfTwo((1 << 30) - 1));
+        assertEquals(1 << 30, SetAssociativeCache.ceilingPowerOfTwo((1 << 30) + 1));
+        assertEquals(1 << 30, SetAssociativeCache.ceilingPowerOfTwo(Integer.MAX_VALUE));
+        assertEquals(1 << 28, DigestCache.MAX_CAPACITY);
+    }
+
+    @Test
+    public void get_withMissingKey_shouldReturnFalse() {
+        DigestCache digestCache = new DigestCache(64, 1);
+
+        digestCache.put("b.c/", DigestUtils.sha256("b.c/"), 1);
+
+        assertFalse(digestCache.get("b.c/1/", new byte[DigestCache.DIGEST_LENGTH]));
+    }
+
+    @Test
+    public void put_withExistingKey_shouldReplaceDigest() {
+        DigestCache digestCache = new DigestCache(64, 1);
+        byte[] digest = new byte[DigestCache.DIGEST_LENGTH];
+
+        digestCache.put("b.c/", DigestUtils.sha256("a"), 1);
+        digestCache.put("b.c/", DigestUtils.sha256("b.c/"), 1);
+
+        assertTrue(digestCache.get("b.c/", digest));
+        assertArrayEquals(DigestUtils.sha256("b.c/"), digest);
+        assertEquals(1, digestCache.getStatistics().getSize());
+    }
+
+    @Test
+    public void put_beyondCapacity_shouldKeepFrequentlyUsedEntries() {
+        DigestCache digestCache = new DigestCache(8, 1);
+        byte[] digest = new byte[DigestCache.DIGEST_LENGTH];
+
+        digestCache.put("b.c/", DigestUtils.sha256("b.c/"), 8);
+        for (int i = 0; i < 7; i++) {
+            digestCache.put("b.c/" + i, DigestUtils.sha256("b.c/" + i), 1);
+        }
+        digestCache.put("b.c/7", DigestUtils.sha256("b.c/7"), 1);
+
+        CacheStatistics statistics = digestCache.getStatistics();
+        assertEquals(8, statistics.getCapacity());
+        assertEquals(8, statistics.getSize());
+        assertEquals(1, statistics.getEvictionCount());
+        assertTrue(digestCache.get("b.c/", digest));
+        assertTrue(digestCache.get("b.c/7", digest));
+    }
+
+    @Test
+    public void getStatistics_shouldCountHitsAndMisses() {
+        DigestCache digestCache = new DigestCache(64, 1);
+        byte[] digest = new byte[DigestCache.DIGEST_LENGTH];
+
+        digestCache.put("b.c/", DigestUtils.sha256("b.c/"), 1);
+        digestCache.get("b.c/", digest);
+        digestCache.get("b.c/", digest);
+        digestCache.get("a.b.c/", digest);
+
+        CacheStatistics statistics = digestCache.getStatistics();
+        assertEquals(64, statistics.getCapacity());
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(2.0 / 3, statistics.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void getAndPut_concurrently_shouldNeverReturnWrongDigest() throws Exception {
+        DigestCache digestCache = new DigestCache(256, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger wrongDigests = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    byte[] digest = new byte[DigestCache.DIGEST_LENGTH];
+                                    for (int i = 0; i < 20_000; i++) {
+                                        String key = "b.c/" + ((i * 31 + seed) % 1024);
+                                        if (digestCache.get(key, digest)) {
+                                            if (!Arrays.equals(DigestUtils.sha256(key), digest)) {
+                                                wrongDigests.incrementAndGet();
+                                            }
+                                        } else {
+                                            digestCache.put(key, DigestUtils.sha256(key), 1);
+                                        }
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, wrongDigests.get());
+    }
+
+    @Test
+    public void constructor_withNonPositiveCapacity_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new DigestCache(0, 1));
+    }
+}
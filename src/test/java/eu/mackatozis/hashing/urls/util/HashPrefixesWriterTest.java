@@ -0,0 +1,103 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+public class HashPrefixesWriterTest {
+
+    @Test
+    public void write_withFullHashOnlyAndLongUrl_shouldBeOk() throws IOException {
+        String url = "http://a.com/" + "x".repeat(200);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try (HashPrefixesWriter writer = new HashPrefixesWriter(outputStream, 4)) {
+            writer.write(
+                    UrlHashPrefixes.builder()
+                            .url(url)
+                            .expressionHashes(
+                                    Set.of(
+                                            ExpressionHashes.builder()
+                                                    .expression("a.com/")
+                                                    .fullHash(
+                                                            "73d986e009065f182c10bcb6a45db3d6"
+                                                                    + "eda9498f8930654af2653f8a938cd801")
+                                                    .build()))
+                            .build());
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(outputStream.toByteArray());
+        assertEquals(HashPrefixesWriter.MAGIC, buffer.getInt());
+        assertEquals(HashPrefixesWriter.VERSION, buffer.get());
+        assertEquals(4, buffer.get());
+
+        // 213 bytes as a two byte varint
+        assertEquals((byte) (213 & 0x7f | 0x80), buffer.get());
+        assertEquals(213 >>> 7, buffer.get());
+        buffer.position(buffer.position() + 213);
+
+        assertEquals(0, buffer.get());
+        assertEquals(1, buffer.get());
+        assertEquals(6, buffer.get());
+        byte[] expression = new byte[6];
+        buffer.get(expression);
+        assertArrayEquals("a.com/".getBytes(StandardCharsets.UTF_8), expression);
+
+        byte[] prefix = new byte[4];
+        buffer.get(prefix);
+        assertArrayEquals(new byte[] {0x73, (byte) 0xd9, (byte) 0x86, (byte) 0xe0}, prefix);
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void new_withPrefixLength_3_OutOfRange_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new HashPrefixesWriter(new ByteArrayOutputStream(), 3));
+    }
+
+    @Test
+    public void write_withCursor_shouldMatchUrlHashPrefixes() throws IOException {
+        byte[] expressions = "ελλάς.gr/ελλάς.gr/a".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena();
+                HashPrefixesWriter expectedWriter = new HashPrefixesWriter(expected, 4);
+                HashPrefixesWriter actualWriter = new HashPrefixesWriter(actual, 4)) {
+            arena.add(
+                    0,
+                    "http://ελλάς.gr/a",
+                    expressions,
+                    new int[] {0, 14},
+                    new int[] {14, 15},
+                    2,
+                    new byte[][] {
+                        DigestUtils.sha256("ελλάς.gr/"), DigestUtils.sha256("ελλάς.gr/a")
+                    });
+            arena.addError(1, "http://a.com:-80/", "Invalid port");
+
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+            while (cursor.next()) {
+                expectedWriter.write(cursor.toUrlHashPrefixes(PrefixLengths.FULL_HASH_ONLY));
+                actualWriter.write(cursor);
+            }
+        }
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+}
@@ -0,0 +1,27 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class HexUtilsTest {
+
+    private final byte[] data = {(byte) 0xba, 0x78, 0x16, (byte) 0xbf, 0x0f};
+
+    @Test
+    public void encode_shouldBeOk() {
+        assertEquals("ba7816bf0f", HexUtils.encode(data, data.length));
+    }
+
+    @Test
+    public void encode_withPrefixLength_shouldBeOk() {
+        assertEquals("ba7816", HexUtils.encode(data, 3));
+    }
+
+    @Test
+    public void encode_withZeroLength_shouldReturnEmptyString() {
+        assertEquals("", HexUtils.encode(data, 0));
+    }
+}
@@ -0,0 +1,107 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.CacheStatistics;
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "hashing-urls.host-cache.enabled=true")
+public class HostCacheTest {
+
+    @Autowired
+    private HostCache hostCache;
+
+    @Autowired
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @Test
+    public void get_afterPut_shouldBeOk() {
+        HostCache cache = new HostCache(64, 1, new JdkSha256Backend());
+        char[] chars = "http://a.b.c/1/".toCharArray();
+        byte[] host = "a.b.c".getBytes(StandardCharsets.UTF_8);
+
+        cache.put(chars, 7, 12, host, host.length, new int[] {0, 2}, 2);
+        HostCache.Entry entry = cache.get("a.b.c".toCharArray(), 0, 5);
+
+        assertNotNull(entry);
+        assertArrayEquals(host, entry.getHost());
+        assertEquals(2, entry.getSuffixCount());
+        assertEquals(2, entry.getSuffixStart(1));
+        assertArrayEquals(DigestUtils.sha256("a.b.c/"), entry.getDigest(0));
+        assertArrayEquals(DigestUtils.sha256("b.c/"), entry.getDigest(1));
+    }
+
+    @Test
+    public void get_withMissingHost_shouldReturnNull() {
+        HostCache cache = new HostCache(64, 1, new JdkSha256Backend());
+        byte[] host = "a.b.c".getBytes(StandardCharsets.UTF_8);
+
+        cache.put("a.b.c".toCharArray(), 0, 5, host, host.length, new int[] {0, 2}, 2);
+
+        assertNull(cache.get("b.c".toCharArray(), 0, 3));
+        assertNull(cache.get("a.b.cd".toCharArray(), 0, 6));
+    }
+
+    @Test
+    public void put_beyondCapacity_shouldKeepFrequentlyUsedEntries() {
+        HostCache cache = new HostCache(8, 1, new JdkSha256Backend());
+        byte[] host = "b.c".getBytes(StandardCharsets.UTF_8);
+
+        cache.put("b.c".toCharArray(), 0, 3, host, host.length, new int[] {0}, 1);
+        cache.get("b.c".toCharArray(), 0, 3);
+        cache.get("b.c".toCharArray(), 0, 3);
+        for (int i = 0; i < 8; i++) {
+            byte[] other = ("b" + i + ".c").getBytes(StandardCharsets.UTF_8);
+            cache.put(("b" + i + ".c").toCharArray(), 0, 4, other, other.length, new int[] {0}, 1);
+        }
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(8, statistics.getCapacity());
+        assertEquals(8, statistics.getSize());
+        assertEquals(1, statistics.getEvictionCount());
+        assertNotNull(cache.get("b.c".toCharArray(), 0, 3));
+        assertNotNull(cache.get("b7.c".toCharArray(), 0, 4));
+    }
+
+    @Test
+    public void findUrlHashPrefixes_withCachedHost_shouldComputeSameDigests()
+            throws MalformedURLException {
+        long hits = hostCache.getStatistics().getHitCount();
+
+        for (String url :
+                new String[] {
+                    "http://a.b.c/1/2.html?param=1",
+                    "http://a.b.c/3/",
+                    "http://ελλάς.gr/",
+                    "http://ελλάς.gr/a",
+                    "http://0x7f.1/%2541",
+                    "http://127.0.0.1/b"
+                }) {
+            UrlHashPrefixes urlHashPrefixes = urlHashPrefixesService.findUrlHashPrefixes(url);
+
+            for (ExpressionHashes expressionHashes : urlHashPrefixes.getExpressionHashes()) {
+                assertArrayEquals(
+                        DigestUtils.sha256(expressionHashes.getExpression()),
+                        expressionHashes.getDigest(),
+                        expressionHashes.getExpression());
+            }
+        }
+
+        assertTrue(hostCache.getStatistics().getHitCount() >= hits + 3);
+    }
+
+    @Test
+    public void constructor_withNonPositiveCapacity_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class, () -> new HostCache(0, 1, new JdkSha256Backend()));
+    }
+}
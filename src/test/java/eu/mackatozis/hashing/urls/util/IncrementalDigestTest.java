@@ -0,0 +1,65 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+public class IncrementalDigestTest {
+
+    @Test
+    public void digest_withSharedLeadingBlocks_shouldMatchDigestUtils() throws DigestException {
+        IncrementalDigest incrementalDigest = new IncrementalDigest(DigestUtils.getSha256Digest());
+        String path = "a.b.c/" + "1234567/".repeat(20);
+        String[] expressions = {
+            path + "6.html?q=1", path + "6.html", "a.b.c/", path, path.substring(0, 64),
+            path.substring(0, 65), "b.c/" + path.substring(6) + "6.html", ""
+        };
+
+        for (String expression : expressions) {
+            byte[] data = expression.getBytes(StandardCharsets.UTF_8);
+            byte[] digest = new byte[32];
+            incrementalDigest.digest(data, 0, data.length, digest);
+
+            assertArrayEquals(DigestUtils.sha256(data), digest, expression);
+        }
+    }
+
+    @Test
+    public void digest_withRandomInputsAndOffsets_shouldMatchDigestUtils() throws DigestException {
+        IncrementalDigest incrementalDigest = new IncrementalDigest(DigestUtils.getSha256Digest());
+        Random random = new Random(42);
+        byte[] data = new byte[8192];
+        random.nextBytes(data);
+
+        for (int i = 0; i < 1000; i++) {
+            int offset = random.nextInt(4) == 0 ? random.nextInt(64) : 0;
+            int length = random.nextInt(data.length - offset);
+            if (random.nextBoolean()) {
+                data[offset + random.nextInt(length + 1)] ^= 1;
+            }
+            byte[] digest = new byte[32];
+            incrementalDigest.digest(data, offset, length, digest);
+
+            byte[] expected = new byte[length];
+            System.arraycopy(data, offset, expected, 0, length);
+            assertArrayEquals(DigestUtils.sha256(expected), digest);
+        }
+    }
+
+    @Test
+    public void digest_withShortDigest_shouldThrowException() {
+        IncrementalDigest incrementalDigest = new IncrementalDigest(DigestUtils.getSha256Digest());
+
+        assertThrows(
+                DigestException.class,
+                () -> incrementalDigest.digest(new byte[1], 0, 1, new byte[31]));
+    }
+}
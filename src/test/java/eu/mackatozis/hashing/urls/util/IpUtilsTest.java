@@ -64,4 +64,60 @@ public class IpUtilsTest {
         assertEquals(ipAddress, IpUtils.resolveDecimalIpAddress(integerIp));
         assertNull(IpUtils.resolveDecimalIpAddress(RandomStringUtils.random(10, true, false)));
     }
+
+    @Test
+    public void resolveDecimalIpAddress_withShorthandAndMixedRadix_shouldBeOk() {
+        assertEquals("1.2.0.3", IpUtils.resolveDecimalIpAddress("1.2.3"));
+        assertEquals("1.0.0.2", IpUtils.resolveDecimalIpAddress("1.2"));
+        assertEquals("127.0.0.1", IpUtils.resolveDecimalIpAddress("0x7f.1"));
+        assertEquals("192.168.0.1", IpUtils.resolveDecimalIpAddress("0xc0.0250.1"));
+        assertEquals("10.28.1.45", IpUtils.resolveDecimalIpAddress("012.034.01.055"));
+        assertEquals("255.255.255.255", IpUtils.resolveDecimalIpAddress("0xFFFFFFFF"));
+        assertEquals("0.0.0.0", IpUtils.resolveDecimalIpAddress("0"));
+    }
+
+    @Test
+    public void resolveDecimalIpAddress_withZeroValuedPrefixedComponents_shouldBeOk() {
+        assertEquals("0.0.0.0", IpUtils.resolveDecimalIpAddress("0x0.0x0.0x0.0x0"));
+        assertEquals("0.1.2.3", IpUtils.resolveDecimalIpAddress("0x0.1.2.3"));
+        assertEquals("1.0.3.4", IpUtils.resolveDecimalIpAddress("1.00.3.4"));
+        assertFalse(IpUtils.isDecimalIpAddress("0x0.1.2.3"));
+        assertTrue(IpUtils.isHexEncodedIpAddress("0x0.0x0.0x0.0x0"));
+        assertTrue(IpUtils.isDecimalIpAddress("0.0.0.0"));
+    }
+
+    @Test
+    public void parseIpv4Address_withHostName_shouldReturnNotAnIpAddress() {
+        String[] hosts = {
+            "", ".", "1.", ".1", "1..2", "www.example.com", "example.123", "1.2.3.4.5",
+            "256.1.1.1", "1.256.1.1", "1.2.65536", "4294967296", "09.1.1.1", "0x1g.1.1.1",
+            "+1.2.3.4", "1.2.3.-4", "１.２.３.４"
+        };
+
+        for (String host : hosts) {
+            assertEquals(IpUtils.NOT_AN_IP_ADDRESS, IpUtils.parseIpv4Address(host), host);
+            assertFalse(IpUtils.isIpAddress(host), host);
+            assertNull(IpUtils.resolveDecimalIpAddress(host), host);
+        }
+    }
+
+    @Test
+    public void parseIpv4Address_withCharArrayRange_shouldBeOk() {
+        char[] chars = "[0300.0250.00.0001]".toCharArray();
+        long ipAddress = IpUtils.parseIpv4Address(chars, 1, chars.length - 1);
+
+        assertEquals(0xC0A80001L, ipAddress);
+        assertEquals(ipAddress, IpUtils.parseIpv4Address(integerIp));
+        assertEquals(IpUtils.NOT_AN_IP_ADDRESS, IpUtils.parseIpv4Address(chars, 0, chars.length));
+    }
+
+    @Test
+    public void formatIpv4Address_shouldBeOk() {
+        char[] chars = new char[20];
+
+        assertEquals("192.168.0.1", IpUtils.formatIpv4Address(0xC0A80001L));
+        assertEquals("10.0.100.255", IpUtils.formatIpv4Address(0x0A0064FFL));
+        assertEquals(16, IpUtils.formatIpv4Address(0xFFFFFFFFL, chars, 1));
+        assertEquals("255.255.255.255", new String(chars, 1, 15));
+    }
 }
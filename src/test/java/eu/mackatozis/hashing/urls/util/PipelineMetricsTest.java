@@ -0,0 +1,92 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.service.UrlHashPrefixesService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.MalformedURLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "hashing-urls.metrics.sample-rate=1")
+public class PipelineMetricsTest {
+
+    @Autowired
+    private UrlHashPrefixesService urlHashPrefixesService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void findUrlHashPrefixes_shouldRecordStagesAndCounters() throws MalformedURLException {
+        double hashed = count("hashing.urls.hashed");
+        double expressions = count("hashing.urls.expressions");
+        double idnConversions = count("hashing.urls.canonicalization.idn.conversions");
+        double ipLiterals = count("hashing.urls.canonicalization.ip.literals");
+        double percentDecodes = count("hashing.urls.canonicalization.percent.decodes");
+        double malformed = count("hashing.urls.malformed");
+        long hashComputations = stageCount("hash-computation");
+
+        urlHashPrefixesService.findUrlHashPrefixes("http://www.example.com/");
+        urlHashPrefixesService.findUrlHashPrefixes("http://ελλάς.com/");
+        urlHashPrefixesService.findUrlHashPrefixes("http://0x7f.1/%2541");
+        assertThrows(
+                MalformedURLException.class,
+                () -> urlHashPrefixesService.findUrlHashPrefixes("http://example.com:-80/"));
+
+        assertEquals(hashed + 3, count("hashing.urls.hashed"));
+        assertEquals(expressions + 6, count("hashing.urls.expressions"));
+        assertEquals(
+                idnConversions + 1, count("hashing.urls.canonicalization.idn.conversions"));
+        assertEquals(ipLiterals + 1, count("hashing.urls.canonicalization.ip.literals"));
+        assertEquals(
+                percentDecodes + 2, count("hashing.urls.canonicalization.percent.decodes"));
+        assertEquals(malformed + 1, count("hashing.urls.malformed"));
+        assertEquals(hashComputations + 3, stageCount("hash-computation"));
+        assertTrue(stageCount("canonicalization") >= 3);
+    }
+
+    @Test
+    public void startSample_disabled_shouldNotSample() {
+        assertEquals(PipelineMetrics.NOT_SAMPLED, PipelineMetrics.DISABLED.startSample());
+        assertEquals(
+                PipelineMetrics.NOT_SAMPLED,
+                PipelineMetrics.DISABLED.recordStage(
+                        PipelineMetrics.Stage.CANONICALIZATION, PipelineMetrics.NOT_SAMPLED));
+    }
+
+    @Test
+    public void recordStage_notSampled_shouldOnlyCount() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics pipelineMetrics = new PipelineMetrics(registry, 1);
+
+        pipelineMetrics.recordStage(
+                PipelineMetrics.Stage.CANONICALIZATION, PipelineMetrics.NOT_SAMPLED);
+        pipelineMetrics.recordHashedUrl(4, PipelineMetrics.NOT_SAMPLED);
+        pipelineMetrics.recordHashedUrl(2, pipelineMetrics.startSample());
+
+        assertEquals(0, registry.get("hashing.urls.stage").timer().count());
+        assertEquals(2, registry.get("hashing.urls.hashed").functionCounter().count());
+        assertEquals(6, registry.get("hashing.urls.expressions").functionCounter().count());
+        assertEquals(
+                1, registry.get("hashing.urls.expressions.per.url").summary().count());
+    }
+
+    @Test
+    public void constructor_withNonPositiveSampleRate_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new PipelineMetrics(new SimpleMeterRegistry(), 0));
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).functionCounter().count();
+    }
+
+    private long stageCount(String stage) {
+        return meterRegistry.get("hashing.urls.stage").tag("stage", stage).timer().count();
+    }
+}
@@ -0,0 +1,136 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class PrefixFilterTest {
+
+    private final Random random = new Random(42);
+
+    private final List<byte[]> prefixes = randomPrefixes(100_000);
+
+    private final PrefixStore prefixStore = PrefixStore.of(prefixes);
+
+    @Test
+    public void mightContain_withAddedPrefixes_shouldBeTrue() {
+        PrefixFilter prefixFilter = PrefixFilter.of(prefixStore, 10);
+
+        for (byte[] prefix : prefixes) {
+            assertTrue(prefixFilter.mightContain(ByteBuffer.wrap(prefix).getInt()));
+        }
+    }
+
+    @Test
+    public void mightContain_withLongerPrefix_shouldUseLeadingBytes() {
+        byte[] prefix = {1, 2, 3, 4, 5, 6, 7, 8};
+        PrefixFilter prefixFilter = PrefixFilter.of(PrefixStore.of(Arrays.asList(prefix)), 10);
+
+        assertTrue(prefixFilter.mightContain(0x01020304));
+    }
+
+    @Test
+    public void falsePositiveRate_shouldMatchMeasuredRate() {
+        PrefixFilter prefixFilter = PrefixFilter.of(prefixStore, 10);
+        int falsePositives = 0;
+        int probes = 1_000_000;
+
+        for (int i = 0; i < probes; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            if (prefixFilter.mightContain(ByteBuffer.wrap(digest).getInt())
+                    && prefixStore.match(digest) == 0) {
+                falsePositives++;
+            }
+        }
+
+        double measured = (double) falsePositives / probes;
+        assertTrue(prefixFilter.falsePositiveRate() < 0.02);
+        assertEquals(prefixFilter.falsePositiveRate(), measured, 0.002);
+    }
+
+    @Test
+    public void withKeysOf_shouldContainPrefixesOfBothStores() {
+        List<byte[]> additions = randomPrefixes(1000);
+        PrefixStore additionsStore = PrefixStore.of(additions);
+        PrefixFilter prefixFilter = PrefixFilter.of(prefixStore, 10);
+
+        PrefixFilter actual = prefixFilter.withKeysOf(additionsStore);
+
+        assertEquals(prefixStore.size() + additionsStore.size(), actual.size());
+        assertEquals(prefixFilter.capacity(10), actual.capacity(10));
+        for (byte[] prefix : prefixes) {
+            assertTrue(actual.mightContain(ByteBuffer.wrap(prefix).getInt()));
+        }
+        for (byte[] prefix : additions) {
+            assertTrue(actual.mightContain(ByteBuffer.wrap(prefix).getInt()));
+        }
+        assertEquals(prefixStore.size(), prefixFilter.size());
+    }
+
+    @Test
+    public void read_afterWriteTo_shouldBeOk(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("threat-list.prefixes.filter");
+        PrefixFilter prefixFilter = PrefixFilter.of(prefixStore, 10);
+
+        prefixFilter.writeTo(path);
+        PrefixFilter actual = PrefixFilter.read(path);
+
+        assertEquals(prefixFilter.size(), actual.size());
+        assertEquals(prefixFilter.falsePositiveRate(), actual.falsePositiveRate());
+        for (byte[] prefix : prefixes) {
+            assertTrue(actual.mightContain(ByteBuffer.wrap(prefix).getInt()));
+        }
+    }
+
+    @Test
+    public void read_withCorruptFile_shouldThrowException(@TempDir Path directory)
+            throws IOException {
+        Path path = directory.resolve("threat-list.prefixes.filter");
+        Files.write(path, new byte[] {0x48, 0x55, 0x50, 0x46, 0, 0, 0, 1});
+
+        assertThrows(IllegalArgumentException.class, () -> PrefixFilter.read(path));
+    }
+
+    @Test
+    public void of_withNonPositiveBitsPerPrefix_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> PrefixFilter.of(prefixStore, 0));
+    }
+
+    @Test
+    public void match_withFilteredStore_shouldAgreeWithUnfilteredStore() {
+        PrefixStore filtered = prefixStore.withFilter(PrefixFilter.of(prefixStore, 10));
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            if (i % 2 == 0) {
+                System.arraycopy(prefixes.get(i), 0, digest, 0, 4);
+            }
+
+            assertEquals(prefixStore.match(digest), filtered.match(digest));
+        }
+    }
+
+    private List<byte[]> randomPrefixes(int count) {
+        List<byte[]> randomPrefixes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] prefix = new byte[4];
+            random.nextBytes(prefix);
+            randomPrefixes.add(prefix);
+        }
+        return randomPrefixes;
+    }
+}
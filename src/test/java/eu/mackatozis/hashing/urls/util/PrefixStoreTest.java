@@ -0,0 +1,254 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class PrefixStoreTest {
+
+    private final byte[] digest = DigestUtils.sha256("evil.example.com/");
+
+    @Test
+    public void match_withFourBytePrefix_shouldBeOk() {
+        PrefixStore prefixStore =
+                PrefixStore.of(Arrays.asList(Arrays.copyOf(digest, 4), new byte[] {0, 0, 0, 1}));
+
+        assertEquals(4, prefixStore.match(digest));
+    }
+
+    @Test
+    public void match_withFullHash_shouldBeOk() {
+        PrefixStore prefixStore =
+                PrefixStore.of(Arrays.asList(digest, DigestUtils.sha256("example.com/")));
+
+        assertEquals(32, prefixStore.match(digest));
+    }
+
+    @Test
+    public void match_withSeveralPrefixLengths_shouldReturnShortest() {
+        PrefixStore prefixStore =
+                PrefixStore.of(Arrays.asList(Arrays.copyOf(digest, 6), Arrays.copyOf(digest, 10)));
+
+        assertEquals(6, prefixStore.match(digest));
+    }
+
+    @Test
+    public void match_withoutMatchingPrefix_shouldReturnZero() {
+        PrefixStore prefixStore =
+                PrefixStore.of(
+                        Arrays.asList(
+                                Arrays.copyOf(DigestUtils.sha256("example.com/"), 4),
+                                Arrays.copyOf(DigestUtils.sha256("example.com/"), 5)));
+
+        assertEquals(0, prefixStore.match(digest));
+        assertEquals(0, PrefixStore.of(new ArrayList<>()).match(digest));
+    }
+
+    @Test
+    public void match_withManyRandomPrefixes_shouldAgreeWithHashSet() {
+        Random random = new Random(42);
+        List<byte[]> prefixes = new ArrayList<>();
+        Set<ByteBuffer> expected = new HashSet<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] prefix = new byte[4];
+            random.nextBytes(prefix);
+            prefixes.add(prefix);
+            expected.add(ByteBuffer.wrap(prefix));
+        }
+        PrefixStore prefixStore = PrefixStore.of(prefixes);
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] candidate = new byte[32];
+            random.nextBytes(candidate);
+            if (i % 2 == 0) {
+                System.arraycopy(prefixes.get(i), 0, candidate, 0, 4);
+            }
+            boolean isExpected = expected.contains(ByteBuffer.wrap(candidate, 0, 4).slice());
+
+            assertEquals(isExpected ? 4 : 0, prefixStore.match(candidate));
+        }
+        assertEquals(expected.size(), prefixStore.size());
+    }
+
+    @Test
+    public void of_withDuplicates_shouldKeepDistinctPrefixes() {
+        PrefixStore prefixStore =
+                PrefixStore.of(
+                        Arrays.asList(
+                                Arrays.copyOf(digest, 4),
+                                Arrays.copyOf(digest, 4),
+                                Arrays.copyOf(digest, 8)));
+
+        assertEquals(2, prefixStore.size());
+    }
+
+    @Test
+    public void of_withInvalidPrefixLength_shouldThrowException() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PrefixStore.of(Arrays.asList(new byte[3])));
+    }
+
+    @Test
+    public void ofRawHashes_shouldBeOk() {
+        byte[] rawHashes = new byte[12];
+        System.arraycopy(DigestUtils.sha256("example.com/"), 0, rawHashes, 0, 4);
+        System.arraycopy(digest, 0, rawHashes, 4, 4);
+
+        PrefixStore prefixStore = PrefixStore.ofRawHashes(4, rawHashes);
+
+        assertEquals(3, prefixStore.size());
+        assertEquals(4, prefixStore.match(digest));
+    }
+
+    @Test
+    public void ofRawHashes_withPartialPrefix_shouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> PrefixStore.ofRawHashes(4, new byte[6]));
+    }
+
+    @Test
+    public void open_afterWriteTo_shouldBeOk(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("threat-list.prefixes");
+        PrefixStore.of(Arrays.asList(Arrays.copyOf(digest, 4), digest)).writeTo(path);
+
+        PrefixStore prefixStore = PrefixStore.open(path);
+
+        assertEquals(2, prefixStore.size());
+        assertEquals(4, prefixStore.match(digest));
+    }
+
+    @Test
+    public void open_withFixture_shouldBeOk() throws IOException {
+        PrefixStore prefixStore =
+                PrefixStore.open(Path.of("src/test/resources/threat-list.prefixes"));
+
+        assertEquals(1011, prefixStore.size());
+        assertEquals(4, prefixStore.match(digest));
+        assertEquals(32, prefixStore.match(DigestUtils.sha256("example.com/malware/")));
+    }
+
+    @Test
+    public void open_withCorruptFile_shouldThrowException(@TempDir Path directory)
+            throws IOException {
+        Path path = directory.resolve("threat-list.prefixes");
+        Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        assertThrows(IllegalArgumentException.class, () -> PrefixStore.open(path));
+    }
+
+    @Test
+    public void sortedPrefixes_withSeveralPrefixLengths_shouldBeLexicographic() {
+        PrefixStore prefixStore =
+                PrefixStore.of(
+                        Arrays.asList(
+                                new byte[] {1, 2, 3, 4, 5},
+                                new byte[] {1, 2, 3, 4},
+                                new byte[] {(byte) 0xff, 0, 0, 0},
+                                new byte[] {0, 9, 9, 9, 9}));
+
+        ByteBuffer actual = prefixStore.sortedPrefixes();
+        byte[] bytes = new byte[actual.remaining()];
+        actual.get(bytes);
+
+        assertArrayEquals(
+                new byte[] {0, 9, 9, 9, 9, 1, 2, 3, 4, 1, 2, 3, 4, 5, (byte) 0xff, 0, 0, 0},
+                bytes);
+    }
+
+    @Test
+    public void applyDiff_shouldBeOk() {
+        PrefixStore prefixStore =
+                PrefixStore.of(
+                        Arrays.asList(
+                                new byte[] {0, 9, 9, 9, 9},
+                                new byte[] {1, 2, 3, 4},
+                                new byte[] {1, 2, 3, 4, 5},
+                                new byte[] {(byte) 0xff, 0, 0, 0}));
+        PrefixStore additions =
+                PrefixStore.of(
+                        Arrays.asList(
+                                new byte[] {1, 2, 3, 4},
+                                new byte[] {2, 0, 0, 0},
+                                new byte[] {2, 0, 0, 0, 0, 0, 0, 0}));
+
+        PrefixStore actual = prefixStore.applyDiff(new int[] {3, 0, 1}, additions);
+
+        assertEquals(
+                PrefixStore.of(
+                                Arrays.asList(
+                                        new byte[] {1, 2, 3, 4},
+                                        new byte[] {1, 2, 3, 4, 5},
+                                        new byte[] {2, 0, 0, 0},
+                                        new byte[] {2, 0, 0, 0, 0, 0, 0, 0}))
+                        .sortedPrefixes(),
+                actual.sortedPrefixes());
+        assertEquals(4, actual.size());
+    }
+
+    @Test
+    public void applyDiff_withManyRandomPrefixes_shouldAgreeWithRebuild() {
+        Random random = new Random(7);
+        TreeSet<byte[]> sorted = new TreeSet<>(Arrays::compareUnsigned);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] prefix = new byte[i % 10 == 0 ? 8 : 4];
+            random.nextBytes(prefix);
+            sorted.add(prefix);
+        }
+        PrefixStore prefixStore = PrefixStore.of(sorted);
+
+        List<byte[]> expected = new ArrayList<>();
+        List<Integer> removals = new ArrayList<>();
+        int index = 0;
+        for (byte[] prefix : sorted) {
+            if (random.nextInt(5) == 0) {
+                removals.add(index);
+            } else {
+                expected.add(prefix);
+            }
+            index++;
+        }
+        List<byte[]> additions = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            byte[] prefix = new byte[4];
+            random.nextBytes(prefix);
+            additions.add(prefix);
+        }
+        expected.addAll(additions);
+
+        PrefixStore actual =
+                prefixStore.applyDiff(
+                        removals.stream().mapToInt(Integer::intValue).toArray(),
+                        PrefixStore.of(additions));
+
+        assertEquals(PrefixStore.of(expected).sortedPrefixes(), actual.sortedPrefixes());
+    }
+
+    @Test
+    public void applyDiff_withInvalidRemovalIndex_shouldThrowException() {
+        PrefixStore prefixStore = PrefixStore.of(Arrays.asList(Arrays.copyOf(digest, 4)));
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> prefixStore.applyDiff(new int[] {1}, PrefixStore.of(new ArrayList<>())));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> prefixStore.applyDiff(new int[] {0, 0}, PrefixStore.of(new ArrayList<>())));
+    }
+}
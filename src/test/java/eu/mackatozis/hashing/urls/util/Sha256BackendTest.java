@@ -0,0 +1,79 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@SpringBootTest
+public class Sha256BackendTest {
+
+    private final List<Sha256Backend> sha256Backends =
+            List.of(
+                    new JdkSha256Backend(),
+                    new CommonsCodecSha256Backend(),
+                    new MultiBufferSha256Backend());
+
+    @Test
+    public void digest_B1_FIPS_180_2_shouldBeOk() {
+        byte[] data = "abc".getBytes();
+
+        for (Sha256Backend sha256Backend : sha256Backends) {
+            byte[] digest = new byte[32];
+            sha256Backend.digest(data, 0, data.length, digest);
+
+            assertArrayEquals(DigestUtils.sha256(data), digest, sha256Backend.toString());
+        }
+    }
+
+    @Test
+    public void digest_withEveryLengthAroundTheBlock_shouldMatchDigestUtils() {
+        byte[] data = new byte[200];
+        new Random(7).nextBytes(data);
+
+        for (Sha256Backend sha256Backend : sha256Backends) {
+            for (int length = 0; length <= 130; length++) {
+                byte[] digest = new byte[32];
+                sha256Backend.digest(data, 3, length, digest);
+
+                assertArrayEquals(
+                        DigestUtils.sha256(Arrays.copyOfRange(data, 3, 3 + length)),
+                        digest,
+                        sha256Backend + " " + length);
+            }
+        }
+    }
+
+    @Test
+    public void digest_withBatchOfMixedLengths_shouldMatchDigestUtils() {
+        Random random = new Random(11);
+        int count = 37;
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        byte[] data = new byte[count * 100];
+        random.nextBytes(data);
+
+        for (int i = 0; i < count; i++) {
+            offsets[i] = i * 100;
+            lengths[i] = random.nextInt(4) == 0 ? 56 + random.nextInt(44) : random.nextInt(56);
+        }
+
+        for (Sha256Backend sha256Backend : sha256Backends) {
+            byte[][] digests = new byte[count][32];
+            sha256Backend.digest(data, offsets, lengths, count, digests);
+
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals(
+                        DigestUtils.sha256(
+                                Arrays.copyOfRange(data, offsets[i], offsets[i] + lengths[i])),
+                        digests[i],
+                        sha256Backend + " " + lengths[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package eu.mackatozis.hashing.urls.util;
+
+import eu.mackatozis.hashing.urls.model.ExpressionHashes;
+import eu.mackatozis.hashing.urls.model.PrefixLengths;
+import eu.mackatozis.hashing.urls.model.UrlHashPrefixes;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class UrlHashPrefixesArenaTest {
+
+    @Test
+    public void cursor_afterAdd_shouldBeOk() {
+        byte[] expressions = "a.b.c/1/b.c/1/".getBytes(StandardCharsets.UTF_8);
+        byte[][] digests = {DigestUtils.sha256("a.b.c/1/"), DigestUtils.sha256("b.c/1/")};
+
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena()) {
+            arena.add(7, "http://a.b.c/1/", expressions, new int[] {0, 8}, new int[] {8, 6}, 2, digests);
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+            assertTrue(cursor.next());
+            assertEquals(7, cursor.getUrlIndex());
+            assertFalse(cursor.isError());
+            assertEquals("http://a.b.c/1/", cursor.getUrl());
+            assertEquals(2, cursor.getExpressionCount());
+            assertEquals("a.b.c/1/", cursor.getExpression(0));
+            assertEquals("b.c/1/", cursor.getExpression(1));
+
+            byte[] digest = new byte[UrlHashPrefixesArena.DIGEST_LENGTH];
+            cursor.getDigest(1, digest);
+            assertArrayEquals(digests[1], digest);
+            assertThrows(IndexOutOfBoundsException.class, () -> cursor.getExpression(2));
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void cursor_afterAddError_shouldBeOk() {
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena()) {
+            arena.addError(0, "http://ελλάς.gr:-80/", "Invalid port");
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+            assertTrue(cursor.next());
+            assertTrue(cursor.isError());
+            assertEquals("http://ελλάς.gr:-80/", cursor.getUrl());
+            assertEquals("Invalid port", cursor.getError());
+            assertEquals(
+                    "Invalid port", cursor.toUrlHashPrefixes(PrefixLengths.ALL).getError());
+        }
+    }
+
+    @Test
+    public void addAll_shouldKeepOrderAcrossPages() {
+        String path = "x".repeat(UrlHashPrefixesArena.PAGE_SIZE / 3);
+        List<UrlHashPrefixesArena> arenas = new ArrayList<>();
+
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena()) {
+            for (int i = 0; i < 3; i++) {
+                UrlHashPrefixesArena chunk = new UrlHashPrefixesArena();
+                arenas.add(chunk);
+                for (int j = 0; j < 2; j++) {
+                    chunk.addError(i * 2 + j, "http://a.com/" + path, "error " + (i * 2 + j));
+                }
+            }
+            // a record larger than a page gets a page of its own
+            arenas.get(1).addError(99, "http://a.com/" + path.repeat(4), "error 99");
+            arenas.forEach(arena::addAll);
+
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+            int[] expected = {0, 1, 2, 3, 99, 4, 5};
+            assertEquals(expected.length, arena.size());
+            for (int urlIndex : expected) {
+                assertTrue(cursor.next());
+                assertEquals(urlIndex, cursor.getUrlIndex());
+                assertEquals("error " + urlIndex, cursor.getError());
+            }
+            assertFalse(cursor.next());
+            assertEquals(0, arenas.get(0).size());
+        } finally {
+            arenas.forEach(UrlHashPrefixesArena::close);
+        }
+    }
+
+    @Test
+    public void add_withUrlHashPrefixes_shouldBeOk() {
+        byte[] digest = DigestUtils.sha256("a.com/");
+        UrlHashPrefixes urlHashPrefixes =
+                UrlHashPrefixes.builder()
+                        .url("http://a.com/")
+                        .expressionHashes(
+                                Set.of(
+                                        ExpressionHashes.builder()
+                                                .expression("a.com/")
+                                                .digest(digest)
+                                                .build()))
+                        .build();
+
+        try (UrlHashPrefixesArena arena = new UrlHashPrefixesArena()) {
+            arena.add(0, urlHashPrefixes);
+            UrlHashPrefixesArena.Cursor cursor = arena.cursor();
+
+            assertTrue(cursor.next());
+            ExpressionHashes expressionHashes =
+                    cursor.toUrlHashPrefixes(PrefixLengths.of(4))
+                            .getExpressionHashes()
+                            .iterator()
+                            .next();
+            assertEquals("a.com/", expressionHashes.getExpression());
+            assertArrayEquals(digest, expressionHashes.getDigest());
+            assertEquals(
+                    HexUtils.encode(digest, 4),
+                    expressionHashes.getHashPrefixes().get(0));
+        }
+    }
+
+    @Test
+    public void cursor_afterClose_shouldThrowException() {
+        UrlHashPrefixesArena arena = new UrlHashPrefixesArena();
+        arena.addError(0, "http://a.com/", "error");
+        arena.close();
+
+        assertThrows(IllegalStateException.class, arena::cursor);
+    }
+}
@@ -0,0 +1,39 @@
+package eu.mackatozis.hashing.urls.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest
+public class VirtualThreadsTest {
+
+    @Test
+    public void isSupported_shouldMatchJavaVersion() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+    }
+
+    @Test
+    public void newVirtualThreadPerTaskExecutor_withoutVirtualThreads_shouldThrowException() {
+        assumeFalse(VirtualThreads.isSupported());
+
+        assertThrows(IllegalStateException.class, VirtualThreads::newVirtualThreadPerTaskExecutor);
+    }
+
+    @Test
+    public void newVirtualThreadPerTaskExecutor_shouldRunTasks() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try {
+            assertEquals("ok", executor.submit(() -> "ok").get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}